@@ -7,8 +7,12 @@ import androidx.annotation.Nullable;
 import com.google.auto.value.AutoValue;
 
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import pl.tomek_krzyszko.bluemanager.scanner.ListenerOverflowPolicy;
+import pl.tomek_krzyszko.bluemanager.scanner.ScanDutyProfile;
+import pl.tomek_krzyszko.bluemanager.scanner.ScanOverflowPolicy;
 
 @AutoValue
 public abstract class BlueConfig {
@@ -63,8 +67,28 @@ public abstract class BlueConfig {
                 .setAutoRestartService(false)
                 .setDiscoveryTimeoutMillis(5000)
                 .setWaitPeriodAfterErrorMillis(1000)
+                .setScanStartLimit(5)
+                .setScanStartWindowMillis(30000)
+                .setScanDutyProfile(ScanDutyProfile.CONTINUOUS)
+                .setScanWindowMillis(0)
+                .setScanIntervalMillis(0)
+                .setAdaptiveScanInterval(true)
                 .setServiceDiscoveryTimeoutMillis(15000)
+                .setRequestedMtu(0)
                 .setBufferSize(1024)
+                .setNotificationBufferCapacity(64)
+                .setNotificationSlotSize(512)
+                .setScanBufferCapacity(512)
+                .setScanOverflowPolicy(ScanOverflowPolicy.DROP_OLDEST)
+                .setScanWorkerCount(2)
+                .setAdaptiveLostTimeout(false)
+                .setMinLostTimeoutMillis(1000)
+                .setMaxLostTimeoutMillis(60000)
+                .setMinUpdateIntervalMillis(0)
+                .setScanBatchIntervalMillis(1000)
+                .setListenerMailboxCapacity(256)
+                .setListenerOverflowPolicy(ListenerOverflowPolicy.CONFLATE)
+                .setBeaconDecodingEnabled(true)
                 .setBluetoothClassicServerUUID(UUID.randomUUID())
                 .setNotificationsEnablingDescriptorUUID(UUID.fromString("00002902-0000-1000-8000-00805f9b34fb"));
     }
@@ -73,8 +97,34 @@ public abstract class BlueConfig {
     public abstract boolean getAutoRestartService();
     public abstract long getDiscoveryTimeoutMillis();
     public abstract long getWaitPeriodAfterErrorMillis();
+    public abstract int getScanStartLimit();
+    public abstract long getScanStartWindowMillis();
+    public abstract ScanDutyProfile getScanDutyProfile();
+    public abstract long getScanWindowMillis();
+    public abstract long getScanIntervalMillis();
+    public abstract boolean getAdaptiveScanInterval();
     public abstract long getServiceDiscoveryTimeoutMillis();
+    public abstract int getRequestedMtu();
     public abstract int getBufferSize();
+    public abstract int getNotificationBufferCapacity();
+    public abstract int getNotificationSlotSize();
+    public abstract int getScanBufferCapacity();
+    public abstract ScanOverflowPolicy getScanOverflowPolicy();
+    public abstract int getScanWorkerCount();
+    public abstract boolean getAdaptiveLostTimeout();
+    public abstract long getMinLostTimeoutMillis();
+    public abstract long getMaxLostTimeoutMillis();
+    public abstract long getMinUpdateIntervalMillis();
+    public abstract long getScanBatchIntervalMillis();
+    public abstract int getListenerMailboxCapacity();
+    public abstract ListenerOverflowPolicy getListenerOverflowPolicy();
+    public abstract boolean getBeaconDecodingEnabled();
+    @Nullable
+    public abstract Executor getScanCallbackExecutor();
+    @Nullable
+    public abstract Executor getConnectionCallbackExecutor();
+    @Nullable
+    public abstract Executor getActionCallbackExecutor();
     public abstract UUID getNotificationsEnablingDescriptorUUID();
     public abstract UUID getBluetoothClassicServerUUID();
 
@@ -98,21 +148,157 @@ public abstract class BlueConfig {
         public abstract Builder setDiscoveryTimeoutMillis(long discoveryTimeoutMillis);
 
         /**
-         * Time in milliseconds to wait if error occurs when trying to startScan the scan.
-         * Error may be a consequence of bluetooth being disabled in the system or permissions being revoked.
+         * Time in milliseconds to wait before retrying a scan which failed to start, doubled with every further failure.
+         * Error may be a consequence of permissions being revoked, a disabled adapter is waited for without retrying.
          */
         public abstract Builder setWaitPeriodAfterErrorMillis(long waitPeriodAfterErrorMillis);
 
+        /**
+         * Maximum number of scan starts in {@link BlueConfig#getScanStartWindowMillis()}.
+         * Android stops delivering results to applications starting scans more than 5 times in 30 seconds,
+         * starts over the limit are deferred until they fit.
+         */
+        public abstract Builder setScanStartLimit(int scanStartLimit);
+
+        /**
+         * Time window in milliseconds of {@link BlueConfig#getScanStartLimit()}
+         */
+        public abstract Builder setScanStartWindowMillis(long scanStartWindowMillis);
+
+        /**
+         * {@link ScanDutyProfile} with the scan window and interval, {@link ScanDutyProfile#CONTINUOUS} scans without breaks
+         */
+        public abstract Builder setScanDutyProfile(ScanDutyProfile scanDutyProfile);
+
+        /**
+         * Time in milliseconds of one scan window overriding the window of the profile, 0 uses the profile's window
+         */
+        public abstract Builder setScanWindowMillis(long scanWindowMillis);
+
+        /**
+         * Time in milliseconds between starts of two scan windows overriding the interval of the profile, 0 uses the profile's interval.
+         * Scanning is continuous if the interval is not longer than the window.
+         */
+        public abstract Builder setScanIntervalMillis(long scanIntervalMillis);
+
+        /**
+         * Flag which halves the scan interval after a window in which new devices appeared and lengthens it
+         * while no new devices appear, between half and four times the configured interval
+         */
+        public abstract Builder setAdaptiveScanInterval(boolean adaptiveScanInterval);
+
         /**
          * Time in milliseconds after which service discovery process is considered to have failed
          */
         public abstract Builder setServiceDiscoveryTimeoutMillis(long serviceDiscoveryTimeoutMillis);
 
+        /**
+         * MTU requested from Bluetooth Low Energy devices when they connect, before their services are discovered.
+         * 517 asks for the largest MTU, the device answers with the largest one it supports. When it is set, longer values of
+         * {@link pl.tomek_krzyszko.bluemanager.action.WriteAction}s are written in fragments of the negotiated size,
+         * every fragment is a separate write which the peripheral must join. MTU 23 is kept below Android 5.0.
+         * 0 keeps the default MTU of 23 and leaves long values to the system's long writes. The exchange counts into the service discovery timeout.
+         */
+        public abstract Builder setRequestedMtu(int requestedMtu);
+
         /**
          * Buffer store for the input stream
          */
         public abstract Builder setBufferSize(int size);
 
+        /**
+         * Number of notifications which can wait in one {@link pl.tomek_krzyszko.bluemanager.device.NotificationSubscription}
+         * before the oldest one is overwritten
+         */
+        public abstract Builder setNotificationBufferCapacity(int notificationBufferCapacity);
+
+        /**
+         * Size in bytes of one preallocated notification slot, longer values are truncated.
+         * 512 bytes is the longest value of a characteristic.
+         */
+        public abstract Builder setNotificationSlotSize(int notificationSlotSize);
+
+        /**
+         * Number of scan results which can wait for processing between scan callbacks and the scanner worker thread
+         */
+        public abstract Builder setScanBufferCapacity(int scanBufferCapacity);
+
+        /**
+         * What happens with a new scan result when the scan buffer is full
+         * @param scanOverflowPolicy {@link ScanOverflowPolicy}
+         */
+        public abstract Builder setScanOverflowPolicy(ScanOverflowPolicy scanOverflowPolicy);
+
+        /**
+         * Number of threads processing scan results. Results are assigned to threads by device address,
+         * so results of one device are always processed in order.
+         */
+        public abstract Builder setScanWorkerCount(int scanWorkerCount);
+
+        /**
+         * Flag which derives the lost timeout of every {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice}
+         * from its estimated advertising interval instead of using the discovery timeout for all devices.
+         * The discovery timeout is still used until the interval of a device is known.
+         */
+        public abstract Builder setAdaptiveLostTimeout(boolean adaptiveLostTimeout);
+
+        /**
+         * Lower bound in milliseconds of the adaptive lost timeout
+         */
+        public abstract Builder setMinLostTimeoutMillis(long minLostTimeoutMillis);
+
+        /**
+         * Upper bound in milliseconds of the adaptive lost timeout
+         */
+        public abstract Builder setMaxLostTimeoutMillis(long maxLostTimeoutMillis);
+
+        /**
+         * Minimum time in milliseconds between two {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener#onDeviceUpdate(pl.tomek_krzyszko.bluemanager.device.BlueDevice)}
+         * callbacks for the same device. Updates inside the interval are conflated into one callback carrying the newest state.
+         * 0 delivers every scan result.
+         */
+        public abstract Builder setMinUpdateIntervalMillis(long minUpdateIntervalMillis);
+
+        /**
+         * Time in milliseconds between two {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceBatchScanListener#onScanDelta(pl.tomek_krzyszko.bluemanager.scanner.ScanDelta)} callbacks
+         */
+        public abstract Builder setScanBatchIntervalMillis(long scanBatchIntervalMillis);
+
+        /**
+         * Maximum number of scan events waiting for one {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener}
+         */
+        public abstract Builder setListenerMailboxCapacity(int listenerMailboxCapacity);
+
+        /**
+         * {@link ListenerOverflowPolicy} of listeners registered without their own policy
+         */
+        public abstract Builder setListenerOverflowPolicy(ListenerOverflowPolicy listenerOverflowPolicy);
+
+        /**
+         * Flag which decodes iBeacon, AltBeacon and Eddystone frames of scan results into {@link pl.tomek_krzyszko.bluemanager.beacon.Beacon}
+         * of the {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice}. Beacon subscriptions are applied only when it is enabled.
+         */
+        public abstract Builder setBeaconDecodingEnabled(boolean beaconDecodingEnabled);
+
+        /**
+         * {@link Executor} running {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener}
+         * and {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceBatchScanListener} callbacks.
+         * Main thread is used when not set, see {@link pl.tomek_krzyszko.bluemanager.callback.CallbackExecutors}.
+         */
+        public abstract Builder setScanCallbackExecutor(@Nullable Executor scanCallbackExecutor);
+
+        /**
+         * {@link Executor} running {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceConnectionListener} callbacks.
+         * Main thread is used when not set.
+         */
+        public abstract Builder setConnectionCallbackExecutor(@Nullable Executor connectionCallbackExecutor);
+
+        /**
+         * {@link Executor} running {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener} callbacks.
+         * When not set callbacks are called on the Bluetooth binder thread which completed the action.
+         */
+        public abstract Builder setActionCallbackExecutor(@Nullable Executor actionCallbackExecutor);
+
         /**
          * UUID of notification descriptor
          * @param uuid {@link UUID}
@@ -17,22 +17,38 @@ import android.provider.Settings;
 import androidx.annotation.Nullable;
 
 import java.lang.reflect.Method;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 
 import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.action.NotifyAction;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconFilter;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceBatchScanListener;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceConnectionListener;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
 import pl.tomek_krzyszko.bluemanager.callback.BlueScannerServiceConnection;
+import pl.tomek_krzyszko.bluemanager.callback.NotificationListener;
+import pl.tomek_krzyszko.bluemanager.callback.TargetScanListener;
 import pl.tomek_krzyszko.bluemanager.dagger.ApplicationScope;
 import pl.tomek_krzyszko.bluemanager.dagger.components.BlueManagerComponent;
 import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import pl.tomek_krzyszko.bluemanager.device.GattOperation;
+import pl.tomek_krzyszko.bluemanager.device.GattQueueStats;
+import pl.tomek_krzyszko.bluemanager.device.NotificationSubscription;
 import pl.tomek_krzyszko.bluemanager.exception.BlueManagerExceptions;
 import pl.tomek_krzyszko.bluemanager.scanner.BlueScanner;
+import pl.tomek_krzyszko.bluemanager.scanner.ListenerMailboxStats;
+import pl.tomek_krzyszko.bluemanager.scanner.ListenerOverflowPolicy;
+import pl.tomek_krzyszko.bluemanager.scanner.ScanCriteria;
+import pl.tomek_krzyszko.bluemanager.scanner.ScanDutyCycleStats;
+import pl.tomek_krzyszko.bluemanager.scanner.ScanSession;
+import pl.tomek_krzyszko.bluemanager.scanner.ScanStartStats;
 import timber.log.Timber;
 
 /**
@@ -306,6 +322,76 @@ public class BlueManager{
         }
     }
 
+    /**
+     * Start bluetooth scanning process which reports only devices meeting the criteria.
+     * Criteria are applied in software to results of every scanner, including Bluetooth Classic discovery.
+     * @param scanCriteria {@link ScanCriteria} built with {@link ScanCriteria#builder()}
+     * @param lowEnergy {@link Boolean} whether or not you will be using bluetooth low energy scanner
+     */
+    public void startScanning(ScanCriteria scanCriteria, boolean lowEnergy){
+        if (blueScanner != null) {
+            blueScanner.startScan(null,null,null,scanCriteria,null,null,lowEnergy);
+        }
+    }
+
+    /**
+     * Start bluetooth scanning process for specific amount of time which reports only devices meeting the criteria.
+     * @param time in milliseconds
+     * @param scanCriteria {@link ScanCriteria} built with {@link ScanCriteria#builder()}
+     * @param lowEnergy {@link Boolean} whether or not you will be using bluetooth low energy scanner
+     */
+    public void startScanning(long time, ScanCriteria scanCriteria, boolean lowEnergy){
+        if (blueScanner != null) {
+            blueScanner.startScan(null,time,null,scanCriteria,null,null,lowEnergy);
+        }
+    }
+
+    /**
+     * Start bluetooth scanning process looking for a set of known devices.
+     * Every target is reported to the listener when it is scanned for the first time,
+     * scanning stops when all targets are found or the timeout passes.
+     * @param targetAddresses {@link String}s in format XX:XX:XX:XX:XX:XX
+     * @param timeoutMillis time in milliseconds after which scanning stops, 0 to scan until all targets are found
+     * @param targetScanListener {@link TargetScanListener} receiving found targets and the end of the scan
+     * @param lowEnergy {@link Boolean} whether or not you will be using bluetooth low energy scanner
+     * @throws IllegalArgumentException when there are no targets or an address is malformed
+     */
+    public void startScanning(Collection<String> targetAddresses, long timeoutMillis, TargetScanListener targetScanListener, boolean lowEnergy){
+        if (blueScanner != null) {
+            blueScanner.startTargetScan(targetAddresses, timeoutMillis, targetScanListener, null, lowEnergy);
+        }
+    }
+
+    /**
+     * @return hardware addresses of targets not found yet by the running scan started with
+     * {@link BlueManager#startScanning(Collection, long, TargetScanListener, boolean)}, empty if no such scan is running
+     */
+    public Set<String> getPendingTargetAddresses(){
+        if (blueScanner != null) {
+            return blueScanner.getPendingTargetAddresses();
+        } else {
+            return new HashSet<>();
+        }
+    }
+
+    /**
+     * Open a session of the shared bluetooth scan. Every client can open its own session with its own criteria,
+     * sessions are merged into one scan which runs while any of them is open.
+     * @param scanCriteria {@link ScanCriteria} of devices reported to the listener, null for all devices
+     * @param blueDeviceScanListener {@link BlueDeviceScanListener} receiving devices of the session only
+     * @param lowEnergy {@link Boolean} whether or not you will be using bluetooth low energy scanner, the same for all open sessions
+     * @return {@link ScanSession} to close when scanning is not needed anymore, null if the scanner service is not bound
+     * @throws IllegalStateException when sessions of the other scanning type are open
+     */
+    @Nullable
+    public ScanSession openScanSession(ScanCriteria scanCriteria, BlueDeviceScanListener blueDeviceScanListener, boolean lowEnergy){
+        if (blueScanner != null) {
+            return blueScanner.openScanSession(scanCriteria, blueDeviceScanListener, lowEnergy);
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Stop bluetooth scanning process.
      */
@@ -366,7 +452,7 @@ public class BlueManager{
      * @param blueDevice on which action will be performed
      * @param blueAction represents {@link BlueAction} which will be performed
      * @param blueDeviceActionListener represents {@link BlueDeviceActionListener} class which will be returning callbacks
-     * @return true if method successfully starts proper bluetooth process, false if device or action are wrong
+     * @return true if the action is started or, for Bluetooth Low Energy devices, queued behind earlier actions of the device. False if device or action are wrong
      */
     public boolean performActionOnDevice(BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener blueDeviceActionListener){
         if(blueScanner!=null){
@@ -376,6 +462,57 @@ public class BlueManager{
         }
     }
 
+    /**
+     * Submits {@link BlueAction} to the queue of a connected Bluetooth Low Energy device.
+     * Every action gets its own {@link GattOperation} handle and listener, so actions of many connected devices can run at once.
+     * @param blueDevice connected {@link BlueDevice} on which action will be performed
+     * @param blueAction represents {@link BlueAction} which will be performed
+     * @param blueDeviceActionListener listener of this action only, may be null
+     * @return handle of the action, null if the device is not connected, it has no characteristic of the action
+     * or the scanner service is not bound
+     */
+    @Nullable
+    public GattOperation submitActionToDevice(BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener blueDeviceActionListener) {
+        if (blueScanner != null) {
+            return blueScanner.submitAction(blueDevice, blueAction, blueDeviceActionListener);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Subscribes to notifications of a characteristic of a connected Bluetooth Low Energy device.
+     * The subscription stays active until it is cancelled or the device disconnects, many characteristics of a device
+     * can be subscribed at once. Notifications are buffered in the subscription and read with {@link NotificationSubscription#poll(pl.tomek_krzyszko.bluemanager.device.NotificationPacket)}.
+     * @param blueDevice connected {@link BlueDevice}
+     * @param notifyAction {@link NotifyAction} with the characteristic whose notifications are enabled
+     * @param notificationListener listener told when notifications are waiting, may be null
+     * @return subscription of the characteristic, null if the device is not connected, it has no notification descriptor
+     * of the characteristic, the characteristic is already subscribed or the scanner service is not bound
+     */
+    @Nullable
+    public NotificationSubscription subscribeToNotifications(BlueDevice blueDevice, NotifyAction notifyAction, NotificationListener notificationListener) {
+        if (blueScanner != null) {
+            return blueScanner.subscribe(blueDevice, notifyAction, notificationListener);
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @param blueDevice connected Bluetooth Low Energy {@link BlueDevice}
+     * @return depth and wait times of the device's action queue, null if the device has not been connected
+     * or the scanner service is not bound
+     */
+    @Nullable
+    public GattQueueStats getGattQueueStats(BlueDevice blueDevice) {
+        if (blueScanner != null) {
+            return blueScanner.getGattQueueStats(blueDevice);
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Adds {@link BlueDeviceScanListener} to the scanner.
      * @param blueDeviceScanListener listener to add
@@ -387,6 +524,33 @@ public class BlueManager{
         }
     }
 
+    /**
+     * Adds {@link BlueDeviceScanListener} to the scanner with its own mailbox.
+     * A slow listener only delays itself, events which it cannot keep up with are handled by the overflow policy.
+     * @param blueDeviceScanListener listener to add
+     * @param executor {@link Executor} on which the listener is called
+     * @param overflowPolicy {@link ListenerOverflowPolicy} used when the mailbox of the listener is full
+     * @throws IllegalArgumentException when any of the arguments is null
+     */
+    public void addBlueDeviceScanListener(BlueDeviceScanListener blueDeviceScanListener, Executor executor, ListenerOverflowPolicy overflowPolicy) {
+        if (blueScanner != null) {
+            blueScanner.addBlueDeviceScanListener(blueDeviceScanListener, executor, overflowPolicy);
+        }
+    }
+
+    /**
+     * @param blueDeviceScanListener registered listener
+     * @return queue depth, delivered, dropped and conflated event counts of the listener,
+     * null if the listener is not registered or the scanner is not started
+     */
+    public ListenerMailboxStats getBlueDeviceScanListenerStats(BlueDeviceScanListener blueDeviceScanListener) {
+        if (blueScanner != null) {
+            return blueScanner.getBlueDeviceScanListenerStats(blueDeviceScanListener);
+        } else {
+            return null;
+        }
+    }
+
     /**
      * Removes {@link BlueDeviceScanListener} from the scanner.
      *
@@ -406,6 +570,104 @@ public class BlueManager{
         }
     }
 
+    /**
+     * Adds {@link BlueDeviceBatchScanListener} to the scanner.
+     * @param blueDeviceBatchScanListener listener to add
+     * @throws IllegalArgumentException when provided listener is null
+     */
+    public void addBlueDeviceBatchScanListener(BlueDeviceBatchScanListener blueDeviceBatchScanListener) {
+        if (blueScanner != null) {
+            blueScanner.addBlueDeviceBatchScanListener(blueDeviceBatchScanListener);
+        }
+    }
+
+    /**
+     * Removes {@link BlueDeviceBatchScanListener} from the scanner.
+     *
+     * @param blueDeviceBatchScanListener listener to remove. If null it removes all {@link BlueDeviceBatchScanListener}s registered in the scanner.
+     * @return {@code true} if object was removed from the scanner, {@code false} if the listener was not registered in the scanner
+     */
+    public boolean removeBlueDeviceBatchScanListener(BlueDeviceBatchScanListener blueDeviceBatchScanListener) {
+        if(blueScanner!=null) {
+            if (blueDeviceBatchScanListener != null) {
+                return blueScanner.removeBlueDeviceBatchScanListener(blueDeviceBatchScanListener);
+            } else {
+                blueScanner.removeAllBlueDeviceBatchScanListener();
+                return true;
+            }
+        }else{
+            return false;
+        }
+    }
+
+    /**
+     * Subscribes to a group of beacons. Once there is at least one subscription, scan results which are not frames
+     * of subscribed beacons are dropped before they reach {@link BlueDeviceScanListener}s.
+     * Requires {@link BlueConfig#getBeaconDecodingEnabled()}.
+     * @param beaconFilter beacons to subscribe to, e.g. {@link BeaconFilter#proximityUuid(UUID)}
+     * @throws IllegalArgumentException when provided filter is null
+     */
+    public void addBeaconSubscription(BeaconFilter beaconFilter) {
+        if (blueScanner != null) {
+            blueScanner.addBeaconSubscription(beaconFilter);
+        }
+    }
+
+    /**
+     * Removes beacon subscription.
+     *
+     * @param beaconFilter filter to remove. If null it removes all subscriptions and every scan result is accepted again.
+     * @return {@code true} if the subscription was removed, {@code false} if it was not registered in the scanner
+     */
+    public boolean removeBeaconSubscription(BeaconFilter beaconFilter) {
+        if (blueScanner != null) {
+            if (beaconFilter != null) {
+                return blueScanner.removeBeaconSubscription(beaconFilter);
+            } else {
+                blueScanner.clearBeaconSubscriptions();
+                return true;
+            }
+        } else {
+            return false;
+        }
+    }
+
+    /**
+     * @return number of {@link BlueDeviceScanListener#onDeviceUpdate(BlueDevice)} callbacks merged into a newer one
+     * because of {@link BlueConfig#getMinUpdateIntervalMillis()}, 0 if the scanner is not started
+     */
+    public long getConflatedUpdateCount() {
+        if (blueScanner != null) {
+            return blueScanner.getConflatedUpdateCount();
+        } else {
+            return 0;
+        }
+    }
+
+    /**
+     * @return state of the scan start budget and numbers of deferred and coalesced starts, null if the scanner service is not bound
+     */
+    @Nullable
+    public ScanStartStats getScanStartStats() {
+        if (blueScanner != null) {
+            return blueScanner.getScanStartStats();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * @return window, interval and effective duty cycle of the scan, null if scanning continuously or the scanner service is not bound
+     */
+    @Nullable
+    public ScanDutyCycleStats getScanDutyCycleStats() {
+        if (blueScanner != null) {
+            return blueScanner.getScanDutyCycleStats();
+        } else {
+            return null;
+        }
+    }
+
     /**
      * @param address hardware address of the device. If null it returns all nearby devices.
      * @return {@link List} containing all {@link BlueDevice}s currently considered to be nearby Android device.
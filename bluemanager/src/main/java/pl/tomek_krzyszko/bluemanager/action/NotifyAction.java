@@ -7,16 +7,36 @@ import java.util.UUID;
  */
 public class NotifyAction extends BlueAction {
 
+    /**
+     * Whether the action enables or disables notifications of the characteristic
+     */
+    private final boolean enable;
+
     public NotifyAction(UUID service, UUID characteristic) {
+        this(service, characteristic, true);
+    }
+
+    /**
+     * @param service {@link UUID} of the service
+     * @param characteristic {@link UUID} of the characteristic
+     * @param enable true to enable notifications of the characteristic, false to disable them
+     */
+    public NotifyAction(UUID service, UUID characteristic, boolean enable) {
         super(service, characteristic);
+        this.enable = enable;
     }
 
     public NotifyAction() {
         super();
+        this.enable = true;
+    }
+
+    public boolean isEnabled() {
+        return enable;
     }
 
     @Override
     public ActionType getActionType() {
         return ActionType.NOTIFY;
     }
-}
\ No newline at end of file
+}
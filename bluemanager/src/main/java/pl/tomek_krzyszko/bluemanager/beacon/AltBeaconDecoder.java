@@ -0,0 +1,36 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingData;
+
+/**
+ * Decodes AltBeacon frames: manufacturer specific data of any company starting with the 0xBEAC code,
+ * followed by the 20 byte beacon id and the reference RSSI.
+ * The id is exposed as proximity UUID, major and minor, the layout used by nearly all AltBeacon deployments.
+ */
+public class AltBeaconDecoder implements BeaconDecoder {
+
+    private static final int BEACON_CODE = 0xBEAC;
+    private static final int LENGTH = 2 + 2 + 20 + 1;
+
+    @Override
+    public boolean decode(AdvertisingData advertisingData, BeaconFrame beaconFrame) {
+        advertisingData.rewind();
+        while (advertisingData.moveToNext(AdvertisingData.TYPE_MANUFACTURER_SPECIFIC_DATA)) {
+            if (advertisingData.getValueLength() < LENGTH) {
+                continue;
+            }
+            int offset = advertisingData.getValueOffset() + 2;
+            if (advertisingData.getUint16BigEndian(offset) != BEACON_CODE) {
+                continue;
+            }
+            beaconFrame.setIdentifier(BeaconType.ALTBEACON,
+                    advertisingData.getInt64BigEndian(offset + 2),
+                    advertisingData.getInt64BigEndian(offset + 10),
+                    advertisingData.getUint16BigEndian(offset + 18),
+                    advertisingData.getUint16BigEndian(offset + 20),
+                    advertisingData.getData()[offset + 22]);
+            return true;
+        }
+        return false;
+    }
+}
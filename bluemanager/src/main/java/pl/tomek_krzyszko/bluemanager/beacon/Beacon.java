@@ -0,0 +1,171 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * Immutable identity of a beacon decoded from its advertising data.
+ * A new instance is created only when a device starts advertising different identifiers,
+ * repeated frames with the same values keep the existing instance.
+ */
+public final class Beacon implements Serializable {
+
+    private static final String[] URL_SCHEMES = {"http://www.", "https://www.", "http://", "https://"};
+    private static final String[] URL_EXPANSIONS = {".com/", ".org/", ".edu/", ".net/", ".info/", ".biz/", ".gov/",
+            ".com", ".org", ".edu", ".net", ".info", ".biz", ".gov"};
+
+    private final BeaconType type;
+    private final long idMostSignificantBits;
+    private final long idLeastSignificantBits;
+    private final int major;
+    private final int minor;
+    private final int txPower;
+    private final byte[] encodedUrl;
+
+    Beacon(BeaconType type, long idMostSignificantBits, long idLeastSignificantBits, int major, int minor, int txPower, byte[] encodedUrl) {
+        this.type = type;
+        this.idMostSignificantBits = idMostSignificantBits;
+        this.idLeastSignificantBits = idLeastSignificantBits;
+        this.major = major;
+        this.minor = minor;
+        this.txPower = txPower;
+        this.encodedUrl = encodedUrl != null ? encodedUrl : new byte[0];
+    }
+
+    public BeaconType getType() {
+        return type;
+    }
+
+    public long getIdMostSignificantBits() {
+        return idMostSignificantBits;
+    }
+
+    public long getIdLeastSignificantBits() {
+        return idLeastSignificantBits;
+    }
+
+    /**
+     * @return proximity UUID of iBeacon and AltBeacon frames, null for Eddystone
+     */
+    public UUID getProximityUuid() {
+        if (type == BeaconType.IBEACON || type == BeaconType.ALTBEACON) {
+            return new UUID(idMostSignificantBits, idLeastSignificantBits);
+        }
+        return null;
+    }
+
+    /**
+     * @return major of iBeacon and AltBeacon frames, -1 for Eddystone
+     */
+    public int getMajor() {
+        return major;
+    }
+
+    /**
+     * @return minor of iBeacon and AltBeacon frames, -1 for Eddystone
+     */
+    public int getMinor() {
+        return minor;
+    }
+
+    /**
+     * @return calibrated TX power in dBm, measured at 1 m for iBeacon and AltBeacon and at 0 m for Eddystone
+     */
+    public int getTxPower() {
+        return txPower;
+    }
+
+    /**
+     * @return Eddystone-UID namespace as 20 hex digits, null for other frames
+     */
+    public String getNamespaceId() {
+        if (type != BeaconType.EDDYSTONE_UID) {
+            return null;
+        }
+        return hex(idMostSignificantBits, 16) + hex(idLeastSignificantBits >>> 48, 4);
+    }
+
+    /**
+     * @return Eddystone-UID instance as 12 hex digits, null for other frames
+     */
+    public String getInstanceId() {
+        if (type != BeaconType.EDDYSTONE_UID) {
+            return null;
+        }
+        return hex(idLeastSignificantBits & 0xFFFFFFFFFFFFL, 12);
+    }
+
+    /**
+     * @return expanded Eddystone-URL, null for other frames
+     */
+    public String getUrl() {
+        if (type != BeaconType.EDDYSTONE_URL || encodedUrl.length == 0) {
+            return null;
+        }
+        int scheme = encodedUrl[0] & 0xFF;
+        StringBuilder url = new StringBuilder(scheme < URL_SCHEMES.length ? URL_SCHEMES[scheme] : "");
+        for (int i = 1; i < encodedUrl.length; i++) {
+            int code = encodedUrl[i] & 0xFF;
+            if (code < URL_EXPANSIONS.length) {
+                url.append(URL_EXPANSIONS[code]);
+            } else {
+                url.append((char) code);
+            }
+        }
+        return url.toString();
+    }
+
+    byte[] getEncodedUrl() {
+        return encodedUrl;
+    }
+
+    private static String hex(long value, int digits) {
+        StringBuilder hex = new StringBuilder(Long.toHexString(value));
+        while (hex.length() < digits) {
+            hex.insert(0, '0');
+        }
+        return hex.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof Beacon)) {
+            return false;
+        }
+        Beacon beacon = (Beacon) o;
+        return type == beacon.type
+                && idMostSignificantBits == beacon.idMostSignificantBits
+                && idLeastSignificantBits == beacon.idLeastSignificantBits
+                && major == beacon.major
+                && minor == beacon.minor
+                && txPower == beacon.txPower
+                && Arrays.equals(encodedUrl, beacon.encodedUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + (int) (idMostSignificantBits ^ (idMostSignificantBits >>> 32));
+        result = 31 * result + (int) (idLeastSignificantBits ^ (idLeastSignificantBits >>> 32));
+        result = 31 * result + major;
+        result = 31 * result + minor;
+        result = 31 * result + Arrays.hashCode(encodedUrl);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case EDDYSTONE_UID:
+                return "Beacon{" + type + ", namespace=" + getNamespaceId() + ", instance=" + getInstanceId() + "}";
+            case EDDYSTONE_URL:
+                return "Beacon{" + type + ", url=" + getUrl() + "}";
+            default:
+                return "Beacon{" + type + ", uuid=" + getProximityUuid() + ", major=" + major + ", minor=" + minor + "}";
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingData;
+
+/**
+ * Recognizes one family of beacon frames in raw advertising data.
+ * Decoders are called on scan worker threads for every scan result, so they should not allocate.
+ */
+public interface BeaconDecoder {
+
+    /**
+     * @param advertisingData view wrapped around the scan record, its position may be changed by the decoder
+     * @param beaconFrame reusable holder which receives the decoded values
+     * @return true if the frame was recognized and {@link BeaconFrame} was filled
+     */
+    boolean decode(AdvertisingData advertisingData, BeaconFrame beaconFrame);
+}
@@ -0,0 +1,114 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import java.util.UUID;
+
+/**
+ * Subscription of a caller to a group of beacons. Matching compares primitives only,
+ * so it can run for every scan result before any {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice} work.
+ */
+public final class BeaconFilter {
+
+    /**
+     * Value of major or minor matching every beacon
+     */
+    public static final int ANY = -1;
+
+    private static final long NAMESPACE_MASK = 0xFFFFL << 48;
+
+    private final boolean eddystone;
+    private final long idMostSignificantBits;
+    private final long idLeastSignificantBits;
+    private final int major;
+    private final int minor;
+
+    private BeaconFilter(boolean eddystone, long idMostSignificantBits, long idLeastSignificantBits, int major, int minor) {
+        this.eddystone = eddystone;
+        this.idMostSignificantBits = idMostSignificantBits;
+        this.idLeastSignificantBits = idLeastSignificantBits;
+        this.major = major;
+        this.minor = minor;
+    }
+
+    /**
+     * @param proximityUuid proximity UUID of iBeacon or AltBeacon frames
+     * @return filter matching all beacons with the UUID
+     */
+    public static BeaconFilter proximityUuid(UUID proximityUuid) {
+        return proximityUuid(proximityUuid, ANY, ANY);
+    }
+
+    /**
+     * @param proximityUuid proximity UUID of iBeacon or AltBeacon frames
+     * @param major major value or {@link BeaconFilter#ANY}
+     * @param minor minor value or {@link BeaconFilter#ANY}
+     * @return filter matching beacons with the UUID, major and minor
+     */
+    public static BeaconFilter proximityUuid(UUID proximityUuid, int major, int minor) {
+        if (proximityUuid == null) {
+            throw new IllegalArgumentException("Proximity UUID is required");
+        }
+        return new BeaconFilter(false, proximityUuid.getMostSignificantBits(), proximityUuid.getLeastSignificantBits(), major, minor);
+    }
+
+    /**
+     * @param namespaceId Eddystone-UID namespace as 20 hex digits
+     * @return filter matching Eddystone-UID beacons with the namespace
+     */
+    public static BeaconFilter eddystoneNamespace(String namespaceId) {
+        if (namespaceId == null || namespaceId.length() != 20) {
+            throw new IllegalArgumentException("Namespace must have 20 hex digits");
+        }
+        try {
+            long mostSignificantBits = Long.parseLong(namespaceId.substring(0, 8), 16) << 32
+                    | Long.parseLong(namespaceId.substring(8, 16), 16);
+            long leastSignificantBits = Long.parseLong(namespaceId.substring(16), 16) << 48;
+            return new BeaconFilter(true, mostSignificantBits, leastSignificantBits, ANY, ANY);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Namespace must have 20 hex digits", e);
+        }
+    }
+
+    /**
+     * @param beaconFrame identifying frame
+     * @return true if the frame belongs to the subscribed group
+     */
+    public boolean matches(BeaconFrame beaconFrame) {
+        BeaconType type = beaconFrame.getType();
+        if (eddystone) {
+            return type == BeaconType.EDDYSTONE_UID
+                    && beaconFrame.getIdMostSignificantBits() == idMostSignificantBits
+                    && (beaconFrame.getIdLeastSignificantBits() & NAMESPACE_MASK) == idLeastSignificantBits;
+        }
+        return (type == BeaconType.IBEACON || type == BeaconType.ALTBEACON)
+                && beaconFrame.getIdMostSignificantBits() == idMostSignificantBits
+                && beaconFrame.getIdLeastSignificantBits() == idLeastSignificantBits
+                && (major == ANY || beaconFrame.getMajor() == major)
+                && (minor == ANY || beaconFrame.getMinor() == minor);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof BeaconFilter)) {
+            return false;
+        }
+        BeaconFilter that = (BeaconFilter) o;
+        return eddystone == that.eddystone
+                && idMostSignificantBits == that.idMostSignificantBits
+                && idLeastSignificantBits == that.idLeastSignificantBits
+                && major == that.major
+                && minor == that.minor;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = eddystone ? 1 : 0;
+        result = 31 * result + (int) (idMostSignificantBits ^ (idMostSignificantBits >>> 32));
+        result = 31 * result + (int) (idLeastSignificantBits ^ (idLeastSignificantBits >>> 32));
+        result = 31 * result + major;
+        result = 31 * result + minor;
+        return result;
+    }
+}
@@ -0,0 +1,167 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import java.util.Arrays;
+
+/**
+ * Reusable holder of one decoded beacon frame. Filled by {@link BeaconDecoder}s on scan worker threads
+ * and valid only while the scan result is processed. Identifiers are kept as primitives,
+ * so matching against {@link BeaconFilter}s and comparing with the {@link Beacon} of a device does not allocate.
+ * 128-bit identifiers are stored in big endian order: iBeacon and AltBeacon proximity UUID,
+ * Eddystone-UID namespace in the first 10 bytes and instance in the last 6 bytes.
+ */
+public class BeaconFrame {
+
+    private BeaconType type;
+    private long idMostSignificantBits;
+    private long idLeastSignificantBits;
+    private int major;
+    private int minor;
+    private int txPower;
+
+    private byte[] urlData;
+    private int urlOffset;
+    private int urlLength;
+
+    private int telemetryVersion;
+    private int batteryMillivolts;
+    private int rawTemperature;
+    private long advertisingCount;
+    private long uptimeDeciseconds;
+
+    /**
+     * Sets identifying frame values.
+     *
+     * @param type {@link BeaconType#IBEACON}, {@link BeaconType#ALTBEACON} or {@link BeaconType#EDDYSTONE_UID}
+     * @param idMostSignificantBits first 8 bytes of the identifier
+     * @param idLeastSignificantBits last 8 bytes of the identifier
+     * @param major major value or -1 for Eddystone
+     * @param minor minor value or -1 for Eddystone
+     * @param txPower calibrated TX power in dBm
+     */
+    public void setIdentifier(BeaconType type, long idMostSignificantBits, long idLeastSignificantBits, int major, int minor, int txPower) {
+        this.type = type;
+        this.idMostSignificantBits = idMostSignificantBits;
+        this.idLeastSignificantBits = idLeastSignificantBits;
+        this.major = major;
+        this.minor = minor;
+        this.txPower = txPower;
+        this.urlData = null;
+    }
+
+    /**
+     * Sets Eddystone-URL frame values. The URL is referenced in the scan record, not copied.
+     *
+     * @param txPower calibrated TX power in dBm
+     * @param data scan record
+     * @param offset offset of the URL scheme byte
+     * @param length number of bytes of the scheme and the encoded URL
+     */
+    public void setUrl(int txPower, byte[] data, int offset, int length) {
+        this.type = BeaconType.EDDYSTONE_URL;
+        this.txPower = txPower;
+        this.urlData = data;
+        this.urlOffset = offset;
+        this.urlLength = length;
+    }
+
+    /**
+     * Sets unencrypted Eddystone-TLM frame values.
+     *
+     * @param version TLM version
+     * @param batteryMillivolts battery voltage or 0 if not supported
+     * @param rawTemperature temperature in signed 8.8 fixed point format, 0x8000 if not supported
+     * @param advertisingCount number of frames sent since power on
+     * @param uptimeDeciseconds time since power on in 0.1 second resolution
+     */
+    public void setTelemetry(int version, int batteryMillivolts, int rawTemperature, long advertisingCount, long uptimeDeciseconds) {
+        this.type = BeaconType.EDDYSTONE_TLM;
+        this.telemetryVersion = version;
+        this.batteryMillivolts = batteryMillivolts;
+        this.rawTemperature = rawTemperature;
+        this.advertisingCount = advertisingCount;
+        this.uptimeDeciseconds = uptimeDeciseconds;
+        this.urlData = null;
+    }
+
+    public void clear() {
+        type = null;
+        urlData = null;
+    }
+
+    /**
+     * @return type of the decoded frame or null if nothing was decoded
+     */
+    public BeaconType getType() {
+        return type;
+    }
+
+    public long getIdMostSignificantBits() {
+        return idMostSignificantBits;
+    }
+
+    public long getIdLeastSignificantBits() {
+        return idLeastSignificantBits;
+    }
+
+    public int getMajor() {
+        return major;
+    }
+
+    public int getMinor() {
+        return minor;
+    }
+
+    public int getTxPower() {
+        return txPower;
+    }
+
+    /**
+     * @return true if the frame identifies the beacon, false for telemetry
+     */
+    public boolean isIdentifying() {
+        return type != null && type != BeaconType.EDDYSTONE_TLM;
+    }
+
+    /**
+     * @param beacon {@link Beacon} previously created from a frame
+     * @return true if the beacon was created from a frame with the same values
+     */
+    public boolean sameAs(Beacon beacon) {
+        if (beacon == null || beacon.getType() != type || beacon.getTxPower() != txPower) {
+            return false;
+        }
+        if (type == BeaconType.EDDYSTONE_URL) {
+            byte[] encodedUrl = beacon.getEncodedUrl();
+            if (encodedUrl.length != urlLength) {
+                return false;
+            }
+            for (int i = 0; i < urlLength; i++) {
+                if (encodedUrl[i] != urlData[urlOffset + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return beacon.getIdMostSignificantBits() == idMostSignificantBits
+                && beacon.getIdLeastSignificantBits() == idLeastSignificantBits
+                && beacon.getMajor() == major
+                && beacon.getMinor() == minor;
+    }
+
+    /**
+     * @return immutable {@link Beacon} with the identifying values of the frame
+     */
+    public Beacon toBeacon() {
+        byte[] encodedUrl = type == BeaconType.EDDYSTONE_URL
+                ? Arrays.copyOfRange(urlData, urlOffset, urlOffset + urlLength) : null;
+        return new Beacon(type, idMostSignificantBits, idLeastSignificantBits, major, minor, txPower, encodedUrl);
+    }
+
+    /**
+     * @param timestamp time in milliseconds when the frame was received
+     * @return immutable {@link BeaconTelemetry} with the telemetry values of the frame
+     */
+    public BeaconTelemetry toTelemetry(long timestamp) {
+        return new BeaconTelemetry(telemetryVersion, batteryMillivolts, rawTemperature, advertisingCount, uptimeDeciseconds, timestamp);
+    }
+}
@@ -0,0 +1,161 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingData;
+
+/**
+ * Decodes beacon frames from raw scan records and decides which of them are interesting for the caller.
+ * Runs on scan worker threads before any {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice} work,
+ * every worker thread decodes into its own {@link AdvertisingData} view and {@link BeaconFrame},
+ * so decoding and filtering do not allocate.
+ * Decoders and subscriptions are kept in copy-on-write arrays, they are rarely changed and read for every scan result.
+ */
+public class BeaconRegistry {
+
+    private static final class Scratch {
+        final AdvertisingData advertisingData = new AdvertisingData();
+        final BeaconFrame beaconFrame = new BeaconFrame();
+    }
+
+    private volatile BeaconDecoder[] decoders = {new IBeaconDecoder(), new EddystoneDecoder(), new AltBeaconDecoder()};
+    private volatile BeaconFilter[] filters = new BeaconFilter[0];
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch();
+        }
+    };
+
+    /**
+     * Adds a decoder of another frame format. Decoders are tried in the order in which they were added,
+     * the first one recognizing the frame wins.
+     *
+     * @param beaconDecoder {@link BeaconDecoder}
+     */
+    public synchronized void addDecoder(BeaconDecoder beaconDecoder) {
+        BeaconDecoder[] newDecoders = Arrays.copyOf(decoders, decoders.length + 1);
+        newDecoders[decoders.length] = beaconDecoder;
+        decoders = newDecoders;
+    }
+
+    /**
+     * Subscribes to a group of beacons. Once there is at least one subscription,
+     * scan results which are not frames of subscribed beacons are dropped.
+     *
+     * @param beaconFilter {@link BeaconFilter}
+     */
+    public synchronized void addSubscription(BeaconFilter beaconFilter) {
+        if (indexOf(beaconFilter) < 0) {
+            BeaconFilter[] newFilters = Arrays.copyOf(filters, filters.length + 1);
+            newFilters[filters.length] = beaconFilter;
+            filters = newFilters;
+        }
+    }
+
+    /**
+     * @param beaconFilter {@link BeaconFilter} passed to {@link BeaconRegistry#addSubscription(BeaconFilter)}
+     * @return true if the subscription was removed
+     */
+    public synchronized boolean removeSubscription(BeaconFilter beaconFilter) {
+        int index = indexOf(beaconFilter);
+        if (index < 0) {
+            return false;
+        }
+        BeaconFilter[] newFilters = new BeaconFilter[filters.length - 1];
+        System.arraycopy(filters, 0, newFilters, 0, index);
+        System.arraycopy(filters, index + 1, newFilters, index, filters.length - index - 1);
+        filters = newFilters;
+        return true;
+    }
+
+    /**
+     * Removes all subscriptions, all scan results are accepted again
+     */
+    public synchronized void clearSubscriptions() {
+        filters = new BeaconFilter[0];
+    }
+
+    private int indexOf(BeaconFilter beaconFilter) {
+        for (int i = 0; i < filters.length; i++) {
+            if (filters[i].equals(beaconFilter)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return true if scan results are filtered by subscriptions
+     */
+    public boolean hasSubscriptions() {
+        return filters.length > 0;
+    }
+
+    /**
+     * Decodes the scan record into the {@link BeaconFrame} of the calling thread.
+     *
+     * @param scanRecord raw advertising data, may be null
+     * @return frame valid until the next call on the same thread or null if the record is not a beacon frame
+     */
+    public BeaconFrame decode(byte[] scanRecord) {
+        if (scanRecord == null) {
+            return null;
+        }
+        Scratch threadScratch = scratch.get();
+        AdvertisingData advertisingData = threadScratch.advertisingData.wrap(scanRecord);
+        BeaconFrame beaconFrame = threadScratch.beaconFrame;
+        BeaconDecoder[] currentDecoders = decoders;
+        for (int i = 0; i < currentDecoders.length; i++) {
+            BeaconDecoder decoder = currentDecoders[i];
+            beaconFrame.clear();
+            if (decoder.decode(advertisingData, beaconFrame)) {
+                return beaconFrame;
+            }
+        }
+        beaconFrame.clear();
+        return null;
+    }
+
+    /**
+     * Decides whether the scan result should be processed. Without subscriptions every result is accepted.
+     * With subscriptions only identifying frames matching one of them are accepted,
+     * and telemetry frames only of devices which have been accepted before,
+     * because telemetry does not say which beacon sent it.
+     *
+     * @param beaconFrame decoded frame or null
+     * @param knownDevice true if the device sending the frame is already discovered
+     * @return true if the scan result should be processed
+     */
+    public boolean accept(BeaconFrame beaconFrame, boolean knownDevice) {
+        BeaconFilter[] currentFilters = filters;
+        if (currentFilters.length == 0) {
+            return true;
+        }
+        if (beaconFrame != null) {
+            if (!beaconFrame.isIdentifying()) {
+                if (knownDevice) {
+                    return true;
+                }
+            } else {
+                for (int i = 0; i < currentFilters.length; i++) {
+                    if (currentFilters[i].matches(beaconFrame)) {
+                        return true;
+                    }
+                }
+            }
+        }
+        rejectedCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * @return number of scan results dropped because they did not match any subscription
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
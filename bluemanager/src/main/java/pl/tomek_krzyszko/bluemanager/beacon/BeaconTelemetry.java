@@ -0,0 +1,69 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import java.io.Serializable;
+
+/**
+ * Immutable values of the latest unencrypted Eddystone-TLM frame of a device.
+ */
+public final class BeaconTelemetry implements Serializable {
+
+    private static final int TEMPERATURE_NOT_SUPPORTED = 0x8000;
+
+    private final int version;
+    private final int batteryMillivolts;
+    private final int rawTemperature;
+    private final long advertisingCount;
+    private final long uptimeDeciseconds;
+    private final long timestamp;
+
+    BeaconTelemetry(int version, int batteryMillivolts, int rawTemperature, long advertisingCount, long uptimeDeciseconds, long timestamp) {
+        this.version = version;
+        this.batteryMillivolts = batteryMillivolts;
+        this.rawTemperature = rawTemperature;
+        this.advertisingCount = advertisingCount;
+        this.uptimeDeciseconds = uptimeDeciseconds;
+        this.timestamp = timestamp;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return battery voltage in millivolts or 0 if the beacon does not report it
+     */
+    public int getBatteryMillivolts() {
+        return batteryMillivolts;
+    }
+
+    /**
+     * @return beacon temperature in degrees Celsius or {@link Float#NaN} if the beacon does not report it
+     */
+    public float getTemperature() {
+        if (rawTemperature == TEMPERATURE_NOT_SUPPORTED) {
+            return Float.NaN;
+        }
+        return ((short) rawTemperature) / 256f;
+    }
+
+    /**
+     * @return number of frames sent by the beacon since power on
+     */
+    public long getAdvertisingCount() {
+        return advertisingCount;
+    }
+
+    /**
+     * @return time in milliseconds since the beacon was powered on
+     */
+    public long getUptimeMillis() {
+        return uptimeDeciseconds * 100;
+    }
+
+    /**
+     * @return time in milliseconds when the frame was received
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+}
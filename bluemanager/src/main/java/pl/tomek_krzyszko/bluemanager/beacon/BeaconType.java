@@ -0,0 +1,32 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+/**
+ * Beacon frame formats recognized by {@link BeaconRegistry}.
+ */
+public enum BeaconType {
+
+    /**
+     * Apple iBeacon: proximity UUID, major and minor in manufacturer specific data of company 0x004C
+     */
+    IBEACON,
+
+    /**
+     * AltBeacon: 20 byte beacon id in manufacturer specific data of any company, by convention UUID, major and minor
+     */
+    ALTBEACON,
+
+    /**
+     * Eddystone-UID: 10 byte namespace and 6 byte instance in service data of 0xFEAA
+     */
+    EDDYSTONE_UID,
+
+    /**
+     * Eddystone-URL: compressed URL in service data of 0xFEAA
+     */
+    EDDYSTONE_URL,
+
+    /**
+     * Eddystone-TLM: telemetry of the beacon, it does not identify the beacon
+     */
+    EDDYSTONE_TLM
+}
@@ -0,0 +1,63 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingData;
+
+/**
+ * Decodes Eddystone-UID, Eddystone-URL and unencrypted Eddystone-TLM frames from service data of 0xFEAA.
+ */
+public class EddystoneDecoder implements BeaconDecoder {
+
+    public static final int EDDYSTONE_SERVICE_UUID = 0xFEAA;
+
+    private static final int FRAME_UID = 0x00;
+    private static final int FRAME_URL = 0x10;
+    private static final int FRAME_TLM = 0x20;
+
+    /**
+     * Only version 0 TLM frames are unencrypted
+     */
+    private static final int TLM_VERSION_UNENCRYPTED = 0x00;
+
+    private static final int UID_LENGTH = 2 + 1 + 1 + 16;
+    private static final int URL_MIN_LENGTH = 2 + 1 + 1 + 1;
+    private static final int TLM_LENGTH = 2 + 1 + 1 + 2 + 2 + 4 + 4;
+
+    @Override
+    public boolean decode(AdvertisingData advertisingData, BeaconFrame beaconFrame) {
+        if (!advertisingData.findServiceData(EDDYSTONE_SERVICE_UUID) || advertisingData.getValueLength() < 3) {
+            return false;
+        }
+        int offset = advertisingData.getValueOffset() + 2;
+        int length = advertisingData.getValueLength();
+        byte[] data = advertisingData.getData();
+        switch (advertisingData.getUint8(offset)) {
+            case FRAME_UID:
+                if (length < UID_LENGTH) {
+                    return false;
+                }
+                beaconFrame.setIdentifier(BeaconType.EDDYSTONE_UID,
+                        advertisingData.getInt64BigEndian(offset + 2),
+                        advertisingData.getInt64BigEndian(offset + 10),
+                        -1, -1, data[offset + 1]);
+                return true;
+            case FRAME_URL:
+                if (length < URL_MIN_LENGTH) {
+                    return false;
+                }
+                beaconFrame.setUrl(data[offset + 1], data, offset + 2, length - 4);
+                return true;
+            case FRAME_TLM:
+                if (length < TLM_LENGTH || advertisingData.getUint8(offset + 1) != TLM_VERSION_UNENCRYPTED) {
+                    return false;
+                }
+                beaconFrame.setTelemetry(TLM_VERSION_UNENCRYPTED,
+                        advertisingData.getUint16BigEndian(offset + 2),
+                        advertisingData.getUint16BigEndian(offset + 4),
+                        advertisingData.getUint32BigEndian(offset + 6),
+                        advertisingData.getUint32BigEndian(offset + 10));
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingData;
+
+/**
+ * Decodes iBeacon frames: manufacturer specific data of company 0x004C
+ * with type 0x02, length 0x15, proximity UUID, major, minor and measured power.
+ */
+public class IBeaconDecoder implements BeaconDecoder {
+
+    public static final int APPLE_COMPANY_ID = 0x004C;
+
+    private static final int IBEACON_TYPE = 0x0215;
+    private static final int LENGTH = 2 + 2 + 16 + 2 + 2 + 1;
+
+    @Override
+    public boolean decode(AdvertisingData advertisingData, BeaconFrame beaconFrame) {
+        if (!advertisingData.findManufacturerData(APPLE_COMPANY_ID) || advertisingData.getValueLength() < LENGTH) {
+            return false;
+        }
+        int offset = advertisingData.getValueOffset() + 2;
+        if (advertisingData.getUint16BigEndian(offset) != IBEACON_TYPE) {
+            return false;
+        }
+        beaconFrame.setIdentifier(BeaconType.IBEACON,
+                advertisingData.getInt64BigEndian(offset + 2),
+                advertisingData.getInt64BigEndian(offset + 10),
+                advertisingData.getUint16BigEndian(offset + 18),
+                advertisingData.getUint16BigEndian(offset + 20),
+                advertisingData.getData()[offset + 22]);
+        return true;
+    }
+}
@@ -0,0 +1,16 @@
+package pl.tomek_krzyszko.bluemanager.callback;
+
+import pl.tomek_krzyszko.bluemanager.scanner.ScanDelta;
+
+/**
+ * Used to receive scan results in batches instead of one callback per device.
+ * Called on main thread once per {@link pl.tomek_krzyszko.bluemanager.BlueConfig#getScanBatchIntervalMillis()}
+ * when at least one device has been found, updated or lost since the previous call.
+ */
+public interface BlueDeviceBatchScanListener {
+
+    /**
+     * @param scanDelta devices found, updated and lost since the previous call
+     */
+    void onScanDelta(ScanDelta scanDelta);
+}
@@ -0,0 +1,50 @@
+package pl.tomek_krzyszko.bluemanager.callback;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Ready to use {@link Executor}s for {@link pl.tomek_krzyszko.bluemanager.BlueConfig.Builder#setScanCallbackExecutor(Executor)},
+ * {@link pl.tomek_krzyszko.bluemanager.BlueConfig.Builder#setConnectionCallbackExecutor(Executor)} and
+ * {@link pl.tomek_krzyszko.bluemanager.BlueConfig.Builder#setActionCallbackExecutor(Executor)}.
+ */
+public final class CallbackExecutors {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    private static Executor mainThread;
+
+    private CallbackExecutors() {
+    }
+
+    /**
+     * @return {@link Executor} running callbacks on the main thread
+     */
+    public static synchronized Executor mainThread() {
+        if (mainThread == null) {
+            mainThread = handler(new Handler(Looper.getMainLooper()));
+        }
+        return mainThread;
+    }
+
+    /**
+     * @param handler {@link Handler} of the thread which should receive callbacks
+     * @return {@link Executor} posting callbacks to the handler
+     */
+    public static Executor handler(final Handler handler) {
+        return handler::post;
+    }
+
+    /**
+     * Callbacks are called inline on the thread which produced them: scanner worker thread for scan callbacks
+     * and binder threads for connection and action callbacks. There is no thread hop,
+     * but the listener must return quickly and be thread safe.
+     *
+     * @return {@link Executor} running callbacks on the calling thread
+     */
+    public static Executor direct() {
+        return DIRECT;
+    }
+}
@@ -0,0 +1,21 @@
+package pl.tomek_krzyszko.bluemanager.callback;
+
+import pl.tomek_krzyszko.bluemanager.device.NotificationSubscription;
+
+public interface NotificationListener {
+
+    /**
+     * Callback initiated when notifications are waiting in the buffer of the subscription.
+     * It is not repeated for every notification: the listener should call {@link NotificationSubscription#poll(pl.tomek_krzyszko.bluemanager.device.NotificationPacket)}
+     * until it returns false, notifications received later initiate the callback again.
+     * @param subscription {@link NotificationSubscription} with waiting notifications
+     */
+    void onNotificationsAvailable(NotificationSubscription subscription);
+
+    /**
+     * Callback initiated once when the subscription ends: it was cancelled, notifications could not be enabled
+     * or the device disconnected. Notifications still in the buffer can be polled.
+     * @param subscription closed {@link NotificationSubscription}
+     */
+    void onSubscriptionClosed(NotificationSubscription subscription);
+}
@@ -0,0 +1,32 @@
+package pl.tomek_krzyszko.bluemanager.callback;
+
+import java.util.Set;
+
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+/**
+ * Used to receive progress of a scan looking for a set of known devices,
+ * see {@link pl.tomek_krzyszko.bluemanager.BlueManager#startScanning(java.util.Collection, long, TargetScanListener, boolean)}.
+ * Called with {@link pl.tomek_krzyszko.bluemanager.BlueConfig#getScanCallbackExecutor()} or on main thread.
+ */
+public interface TargetScanListener {
+
+    /**
+     * Called once for every target, when it is scanned for the first time during the scan
+     *
+     * @param blueDevice found target
+     */
+    void onTargetFound(BlueDevice blueDevice);
+
+    /**
+     * Called when the last target has been found. Scanning is stopped.
+     */
+    void onAllTargetsFound();
+
+    /**
+     * Called when the deadline passed before all targets were found. Scanning is stopped.
+     *
+     * @param pendingAddresses hardware addresses of targets which were not found
+     */
+    void onTargetScanTimeout(Set<String> pendingAddresses);
+}
@@ -1,20 +1,23 @@
 package pl.tomek_krzyszko.bluemanager.dagger.modules;
 
 import android.os.Handler;
+import android.os.Looper;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Executor;
 
 import dagger.Module;
 import dagger.Provides;
-import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.BlueConfig;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconRegistry;
+import pl.tomek_krzyszko.bluemanager.callback.CallbackExecutors;
 import pl.tomek_krzyszko.bluemanager.dagger.scopes.InstanceScope;
 import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
 import pl.tomek_krzyszko.bluemanager.device.BlueDeviceController;
+import pl.tomek_krzyszko.bluemanager.device.DeviceRegistry;
 import pl.tomek_krzyszko.bluemanager.scanner.BlueScanner;
 import pl.tomek_krzyszko.bluemanager.scanner.BlueScannerTask;
+import pl.tomek_krzyszko.bluemanager.scanner.ExpiryWheel;
+import pl.tomek_krzyszko.bluemanager.scanner.ScanListenerDispatcher;
 
 @Module
 public class ScannerModule {
@@ -30,20 +33,37 @@ public class ScannerModule {
      */
     @InstanceScope
     @Provides
-    public BlueScannerTask provideBlueScannerTask(){
-        return new BlueScannerTask(blueScanner);
+    public BlueScannerTask provideBlueScannerTask(BeaconRegistry beaconRegistry){
+        return new BlueScannerTask(blueScanner, beaconRegistry);
     }
 
+    /**
+     * Beacon decoders and subscriptions applied to scan results on the scanner worker threads.
+     */
+    @InstanceScope
+    @Provides
+    public BeaconRegistry provideBeaconRegistry(){
+        return new BeaconRegistry();
+    }
+
+    /**
+     * Handler of the main thread, independent of the thread which creates the component.
+     */
     @InstanceScope
     @Provides
     public Handler provideHandler(){
-        return new Handler();
+        return new Handler(Looper.getMainLooper());
     }
 
+    /**
+     * Registered {@link pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener}s,
+     * called with {@link BlueConfig#getScanCallbackExecutor()} or on main thread unless registered with their own executor.
+     */
     @InstanceScope
     @Provides
-    public Set<BlueDeviceScanListener> provideBlueDeviceScanListeners(){
-        return new HashSet<>();
+    public ScanListenerDispatcher provideScanListenerDispatcher(Handler handler, BlueConfig blueConfig){
+        Executor executor = blueConfig.getScanCallbackExecutor() != null ? blueConfig.getScanCallbackExecutor() : CallbackExecutors.handler(handler);
+        return new ScanListenerDispatcher(executor, blueConfig.getListenerOverflowPolicy(), blueConfig.getListenerMailboxCapacity());
     }
 
     /**
@@ -52,10 +72,18 @@ public class ScannerModule {
      */
     @InstanceScope
     @Provides
-    public Map<String, BlueDevice> provideDiscoveredDevices(){
-        return new HashMap<>();
+    public DeviceRegistry provideDiscoveredDevices(){
+        return new DeviceRegistry();
     }
 
+    /**
+     * Deadlines of discovered devices. One lap of the wheel covers sixteen discovery timeouts.
+     */
+    @InstanceScope
+    @Provides
+    public ExpiryWheel<BlueDevice> provideExpiryWheel(BlueConfig blueConfig){
+        return new ExpiryWheel<>(Math.max(10, blueConfig.getDiscoveryTimeoutMillis() / 16), 256);
+    }
 
     @InstanceScope
     @Provides
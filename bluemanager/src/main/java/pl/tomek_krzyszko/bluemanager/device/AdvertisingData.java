@@ -0,0 +1,324 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.nio.charset.Charset;
+
+/**
+ * Flyweight view over raw advertising data, a sequence of AD structures
+ * ({@code length, type, value[length - 1]}) defined in Bluetooth Core Specification Supplement, Part A.
+ * The view only keeps offsets into the wrapped array, nothing is copied or allocated while reading,
+ * so one instance can be reused for every scan result. Values are valid until the view is wrapped around another array.
+ * Malformed structures end the iteration, data after them is ignored.
+ */
+public class AdvertisingData {
+
+    public static final int TYPE_FLAGS = 0x01;
+    public static final int TYPE_SERVICE_UUIDS_16_BIT_PARTIAL = 0x02;
+    public static final int TYPE_SERVICE_UUIDS_16_BIT_COMPLETE = 0x03;
+    public static final int TYPE_SERVICE_UUIDS_32_BIT_PARTIAL = 0x04;
+    public static final int TYPE_SERVICE_UUIDS_32_BIT_COMPLETE = 0x05;
+    public static final int TYPE_SERVICE_UUIDS_128_BIT_PARTIAL = 0x06;
+    public static final int TYPE_SERVICE_UUIDS_128_BIT_COMPLETE = 0x07;
+    public static final int TYPE_LOCAL_NAME_SHORT = 0x08;
+    public static final int TYPE_LOCAL_NAME_COMPLETE = 0x09;
+    public static final int TYPE_TX_POWER_LEVEL = 0x0A;
+    public static final int TYPE_SERVICE_DATA_16_BIT = 0x16;
+    public static final int TYPE_SERVICE_DATA_32_BIT = 0x20;
+    public static final int TYPE_SERVICE_DATA_128_BIT = 0x21;
+    public static final int TYPE_MANUFACTURER_SPECIFIC_DATA = 0xFF;
+
+    /**
+     * Returned by {@link AdvertisingData#getTxPowerLevel()} when the level is not advertised
+     */
+    public static final int TX_POWER_UNKNOWN = Integer.MIN_VALUE;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private byte[] data;
+    private int start;
+    private int end;
+
+    /**
+     * Offset of the length byte of the current structure, -1 before the first {@link AdvertisingData#moveToNext()}
+     */
+    private int current = -1;
+    private int type;
+    private int valueOffset;
+    private int valueLength;
+
+    /**
+     * Wraps the whole array.
+     *
+     * @param data raw advertising data, may be null
+     * @return this view positioned before the first structure
+     */
+    public AdvertisingData wrap(byte[] data) {
+        return wrap(data, 0, data != null ? data.length : 0);
+    }
+
+    /**
+     * @param data raw advertising data, may be null
+     * @param offset offset of the first structure
+     * @param length number of bytes of the advertising data
+     * @return this view positioned before the first structure
+     */
+    public AdvertisingData wrap(byte[] data, int offset, int length) {
+        if (data != null && (offset < 0 || length < 0 || offset + length > data.length)) {
+            throw new IndexOutOfBoundsException("Advertising data out of array bounds");
+        }
+        this.data = data;
+        this.start = offset;
+        this.end = data != null ? offset + length : offset;
+        rewind();
+        return this;
+    }
+
+    /**
+     * Positions the view before the first structure again
+     */
+    public void rewind() {
+        current = -1;
+        type = 0;
+        valueOffset = 0;
+        valueLength = 0;
+    }
+
+    /**
+     * Moves to the next AD structure.
+     *
+     * @return false when there are no more well formed structures
+     */
+    public boolean moveToNext() {
+        int position = current < 0 ? start : valueOffset + valueLength;
+        if (data == null || position >= end) {
+            return finish();
+        }
+        int length = data[position] & 0xFF;
+        // zero length marks the significant part end, the rest is padding
+        if (length == 0 || position + 1 + length > end) {
+            return finish();
+        }
+        current = position;
+        type = data[position + 1] & 0xFF;
+        valueOffset = position + 2;
+        valueLength = length - 1;
+        return true;
+    }
+
+    private boolean finish() {
+        current = end;
+        valueOffset = end;
+        valueLength = 0;
+        type = 0;
+        return false;
+    }
+
+    /**
+     * Moves to the next structure of the given type.
+     *
+     * @param type AD type
+     * @return false if there is no such structure after the current position
+     */
+    public boolean moveToNext(int type) {
+        while (moveToNext()) {
+            if (this.type == type) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the first structure of the given type.
+     *
+     * @param type AD type
+     * @return false if the data does not contain such structure
+     */
+    public boolean find(int type) {
+        rewind();
+        return moveToNext(type);
+    }
+
+    /**
+     * @return AD type of the current structure
+     */
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return offset in {@link AdvertisingData#getData()} of the first value byte of the current structure
+     */
+    public int getValueOffset() {
+        return valueOffset;
+    }
+
+    /**
+     * @return number of value bytes of the current structure
+     */
+    public int getValueLength() {
+        return valueLength;
+    }
+
+    /**
+     * @return wrapped array, not a copy
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return advertised flags or -1 if they are not present
+     */
+    public int getFlags() {
+        return find(TYPE_FLAGS) && valueLength >= 1 ? getUint8(valueOffset) : -1;
+    }
+
+    /**
+     * @return advertised TX power level in dBm or {@link AdvertisingData#TX_POWER_UNKNOWN}
+     */
+    public int getTxPowerLevel() {
+        return find(TYPE_TX_POWER_LEVEL) && valueLength >= 1 ? data[valueOffset] : TX_POWER_UNKNOWN;
+    }
+
+    /**
+     * @return company identifier of the first manufacturer specific data or -1 if it is not present
+     */
+    public int getManufacturerId() {
+        return find(TYPE_MANUFACTURER_SPECIFIC_DATA) && valueLength >= 2 ? getUint16(valueOffset) : -1;
+    }
+
+    /**
+     * Moves to the manufacturer specific data of the company.
+     * On success {@link AdvertisingData#getValueOffset()} points at the company identifier,
+     * the payload starts two bytes later.
+     *
+     * @param companyId Bluetooth SIG company identifier
+     * @return false if the company's data is not present
+     */
+    public boolean findManufacturerData(int companyId) {
+        rewind();
+        while (moveToNext(TYPE_MANUFACTURER_SPECIFIC_DATA)) {
+            if (valueLength >= 2 && getUint16(valueOffset) == companyId) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the service data of the 16-bit service UUID.
+     * On success {@link AdvertisingData#getValueOffset()} points at the UUID, the payload starts two bytes later.
+     *
+     * @param uuid16 16-bit service UUID, e.g. 0xFEAA
+     * @return false if the service data is not present
+     */
+    public boolean findServiceData(int uuid16) {
+        rewind();
+        while (moveToNext(TYPE_SERVICE_DATA_16_BIT)) {
+            if (valueLength >= 2 && getUint16(valueOffset) == uuid16) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param uuid16 16-bit service UUID
+     * @return true if the UUID is listed in partial or complete 16-bit service UUID lists
+     */
+    public boolean hasServiceUuid(int uuid16) {
+        rewind();
+        while (moveToNext()) {
+            if (type == TYPE_SERVICE_UUIDS_16_BIT_PARTIAL || type == TYPE_SERVICE_UUIDS_16_BIT_COMPLETE) {
+                for (int i = valueOffset; i + 2 <= valueOffset + valueLength; i += 2) {
+                    if (getUint16(i) == uuid16) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param mostSignificantBits most significant bits of the 128-bit service UUID, see {@link java.util.UUID#getMostSignificantBits()}
+     * @param leastSignificantBits least significant bits of the 128-bit service UUID
+     * @return true if the UUID is listed in partial or complete 128-bit service UUID lists
+     */
+    public boolean hasServiceUuid(long mostSignificantBits, long leastSignificantBits) {
+        rewind();
+        while (moveToNext()) {
+            if (type == TYPE_SERVICE_UUIDS_128_BIT_PARTIAL || type == TYPE_SERVICE_UUIDS_128_BIT_COMPLETE) {
+                for (int i = valueOffset; i + 16 <= valueOffset + valueLength; i += 16) {
+                    // 128-bit UUIDs are advertised in little endian order
+                    if (getInt64(i) == leastSignificantBits && getInt64(i + 8) == mostSignificantBits) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Decodes the complete or shortened local name. Unlike other accessors this allocates a {@link String}.
+     *
+     * @return advertised local name or null if it is not present
+     */
+    public String readLocalName() {
+        if (find(TYPE_LOCAL_NAME_COMPLETE) || find(TYPE_LOCAL_NAME_SHORT)) {
+            return new String(data, valueOffset, valueLength, UTF_8);
+        }
+        return null;
+    }
+
+    /**
+     * @return unsigned byte at the offset of the wrapped array
+     */
+    public int getUint8(int offset) {
+        return data[offset] & 0xFF;
+    }
+
+    /**
+     * @return unsigned little endian 16-bit value at the offset, byte order of AD structures
+     */
+    public int getUint16(int offset) {
+        return (data[offset] & 0xFF) | (data[offset + 1] & 0xFF) << 8;
+    }
+
+    /**
+     * @return unsigned big endian 16-bit value at the offset, byte order of most beacon payloads
+     */
+    public int getUint16BigEndian(int offset) {
+        return (data[offset] & 0xFF) << 8 | (data[offset + 1] & 0xFF);
+    }
+
+    /**
+     * @return little endian 64-bit value at the offset
+     */
+    public long getInt64(int offset) {
+        long value = 0;
+        for (int i = 7; i >= 0; i--) {
+            value = value << 8 | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    /**
+     * @return unsigned big endian 32-bit value at the offset
+     */
+    public long getUint32BigEndian(int offset) {
+        return ((long) getUint16BigEndian(offset)) << 16 | getUint16BigEndian(offset + 2);
+    }
+
+    /**
+     * @return big endian 64-bit value at the offset, byte order of beacon identifiers
+     */
+    public long getInt64BigEndian(int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = value << 8 | (data[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
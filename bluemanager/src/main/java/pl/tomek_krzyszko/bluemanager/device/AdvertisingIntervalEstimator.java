@@ -0,0 +1,133 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.io.Serializable;
+
+/**
+ * Streaming estimate of the advertising interval of one device.
+ * Interval and jitter are exponentially weighted moving averages of the time between sightings,
+ * computed the same way as smoothed round trip time and its variation in TCP.
+ * The lost timeout derived from them grows immediately when the device slows down
+ * and shrinks only gradually when it speeds up, so a single burst does not cause found/lost flapping.
+ */
+public class AdvertisingIntervalEstimator implements Serializable {
+
+    /**
+     * Weight of a new sample in the interval average
+     */
+    private static final double INTERVAL_GAIN = 0.125;
+
+    /**
+     * Weight of a new sample in the jitter average
+     */
+    private static final double JITTER_GAIN = 0.25;
+
+    /**
+     * How many jitters are added to the interval to cover late advertisements
+     */
+    private static final int JITTER_MULTIPLIER = 4;
+
+    /**
+     * Number of advertisements which may be missed before the device is considered lost
+     */
+    private static final int MISSED_ADVERTISEMENTS = 3;
+
+    /**
+     * Number of intervals needed before the derived timeout may be shorter than the default one
+     */
+    static final int MIN_SAMPLES = 3;
+
+    /**
+     * Fraction of the difference by which a too long timeout is shortened on every sighting
+     */
+    private static final double SHRINK_GAIN = 0.125;
+
+    private final long defaultTimeoutMillis;
+    private final long minTimeoutMillis;
+    private final long maxTimeoutMillis;
+
+    private long lastSightingMillis = -1;
+    private double intervalMillis;
+    private double jitterMillis;
+    private int samples;
+    private long timeoutMillis;
+
+    /**
+     * @param defaultTimeoutMillis timeout used until enough sightings have been seen
+     * @param minTimeoutMillis lower bound of the derived timeout
+     * @param maxTimeoutMillis upper bound of the derived timeout
+     */
+    public AdvertisingIntervalEstimator(long defaultTimeoutMillis, long minTimeoutMillis, long maxTimeoutMillis) {
+        if (minTimeoutMillis > maxTimeoutMillis) {
+            throw new IllegalArgumentException("Minimal timeout cannot be greater than maximal timeout");
+        }
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        this.minTimeoutMillis = minTimeoutMillis;
+        this.maxTimeoutMillis = maxTimeoutMillis;
+        this.timeoutMillis = defaultTimeoutMillis;
+    }
+
+    /**
+     * Adds a sighting of the device. Sightings with the same or older timestamp are ignored.
+     *
+     * @param timestamp time in milliseconds when the device was scanned
+     */
+    public void onSighting(long timestamp) {
+        if (lastSightingMillis >= 0) {
+            long sample = timestamp - lastSightingMillis;
+            if (sample <= 0) {
+                return;
+            }
+            if (samples == 0) {
+                intervalMillis = sample;
+                jitterMillis = sample / 2.0;
+            } else {
+                jitterMillis += JITTER_GAIN * (Math.abs(sample - intervalMillis) - jitterMillis);
+                intervalMillis += INTERVAL_GAIN * (sample - intervalMillis);
+            }
+            samples++;
+            updateTimeout();
+        }
+        lastSightingMillis = timestamp;
+    }
+
+    private void updateTimeout() {
+        long derived = (long) (MISSED_ADVERTISEMENTS * (intervalMillis + JITTER_MULTIPLIER * jitterMillis));
+        derived = Math.max(minTimeoutMillis, Math.min(maxTimeoutMillis, derived));
+        if (samples < MIN_SAMPLES) {
+            // the estimate is not reliable yet, it may only extend the default timeout for slow devices
+            timeoutMillis = Math.max(defaultTimeoutMillis, derived);
+        } else if (samples == MIN_SAMPLES || derived > timeoutMillis) {
+            timeoutMillis = derived;
+        } else {
+            timeoutMillis -= (long) Math.ceil(SHRINK_GAIN * (timeoutMillis - derived));
+        }
+    }
+
+    /**
+     * @return estimated advertising interval in milliseconds or 0 when there are not enough sightings yet
+     */
+    public long getIntervalMillis() {
+        return samples > 0 ? Math.round(intervalMillis) : 0;
+    }
+
+    /**
+     * @return estimated mean deviation of the advertising interval in milliseconds
+     */
+    public long getJitterMillis() {
+        return samples > 0 ? Math.round(jitterMillis) : 0;
+    }
+
+    /**
+     * @return number of intervals the estimate is based on
+     */
+    public int getSampleCount() {
+        return samples;
+    }
+
+    /**
+     * @return time in milliseconds without sightings after which the device should be considered lost
+     */
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+}
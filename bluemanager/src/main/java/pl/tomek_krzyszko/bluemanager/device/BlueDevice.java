@@ -3,6 +3,7 @@ package pl.tomek_krzyszko.bluemanager.device;
 import android.annotation.TargetApi;
 import android.bluetooth.BluetoothDevice;
 import android.bluetooth.BluetoothGatt;
+import android.bluetooth.BluetoothGattCharacteristic;
 import android.bluetooth.BluetoothSocket;
 import android.os.Build;
 
@@ -12,8 +13,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.concurrent.ConcurrentMap;
 
 import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.beacon.Beacon;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconFrame;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconTelemetry;
 
 /**
  * Main data model class wich represent Bluetooth Device in the library
@@ -26,9 +31,29 @@ public class BlueDevice implements Serializable {
     private BluetoothDevice bluetoothDevice;
 
     /**
-     * blue action
+     * blue action, set by the {@link GattOperationQueue} of a connected Bluetooth Low Energy device under the queue's lock
      */
-    private BlueAction currentAction;
+    private volatile BlueAction currentAction;
+
+    /**
+     * queue of GATT operations, created when a Bluetooth Low Energy device is connected
+     */
+    private transient GattOperationQueue operationQueue;
+
+    /**
+     * characteristics of the connected device indexed when its services are discovered, null when not discovered yet
+     */
+    private transient volatile GattHandleCache<GattHandle> gattHandleCache;
+
+    /**
+     * notification subscriptions of the connected device by their characteristic, created when a Bluetooth Low Energy device is connected
+     */
+    private transient ConcurrentMap<BluetoothGattCharacteristic, NotificationSubscription> notificationSubscriptions;
+
+    /**
+     * MTU negotiated for the connected Bluetooth Low Energy device, 0 when not negotiated
+     */
+    private transient volatile int mtu;
 
     /**
      * bluetooth server socket
@@ -58,15 +83,51 @@ public class BlueDevice implements Serializable {
      */
     private String address;
 
+    /**
+     * hardware address packed with {@link MacAddress#pack(String)}, used as the key of {@link DeviceRegistry}
+     */
+    private long packedAddress = MacAddress.INVALID;
+
     /**
      * bluetooth device name
      */
-    private String name;
+    private volatile String name;
 
     /**
      * time in milliseconds when the device was last scanned
      */
-    private long discoveredTimestamp; // wytłumaczyć
+    private volatile long discoveredTimestamp; // wytłumaczyć
+
+    /**
+     * Received Signal Strength Indication of the last scan result
+     */
+    private volatile int rssi;
+
+    /**
+     * number of scan results received for the device
+     */
+    private long sightingCount;
+
+    /**
+     * estimate of the advertising interval, null if the device is not tracked by the scanner
+     */
+    private AdvertisingIntervalEstimator intervalEstimator;
+
+    /**
+     * raw advertising data of the latest scan result, null for Bluetooth Classic devices.
+     * A new array is received with every scan result, so it is kept without copying.
+     */
+    private volatile byte[] scanRecord;
+
+    /**
+     * beacon identity decoded from the advertising data, null if the device is not a recognized beacon
+     */
+    private volatile Beacon beacon;
+
+    /**
+     * latest Eddystone-TLM values, null if the device does not send telemetry
+     */
+    private volatile BeaconTelemetry beaconTelemetry;
 
     public BlueDevice() {
     }
@@ -80,6 +141,14 @@ public class BlueDevice implements Serializable {
 
     public void setAddress(String address) {
         this.address = address;
+        this.packedAddress = MacAddress.pack(address);
+    }
+
+    /**
+     * @return hardware address packed into a {@code long} or {@link MacAddress#INVALID}
+     */
+    public long getPackedAddress() {
+        return packedAddress;
     }
 
     public String getName() {
@@ -101,6 +170,136 @@ public class BlueDevice implements Serializable {
         this.discoveredTimestamp = discoveredTimestamp;
     }
 
+    /**
+     * @return Received Signal Strength Indication of the last scan result
+     */
+    public int getRssi() {
+        return rssi;
+    }
+
+    public void setRssi(int rssi) {
+        this.rssi = rssi;
+    }
+
+    /**
+     * Updates the record like {@link BlueDevice#updateSighting(String, int, long)} and keeps the advertising data of the result.
+     *
+     * @param name device name reported with the scan result, ignored if null or unchanged
+     * @param rssi Received Signal Strength Indication
+     * @param timestamp time in milliseconds when the device was scanned
+     * @param scanRecord raw advertising data of the result, ignored if null
+     */
+    public synchronized void updateSighting(String name, int rssi, long timestamp, byte[] scanRecord) {
+        if (scanRecord != null) {
+            this.scanRecord = scanRecord;
+        }
+        updateSighting(name, rssi, timestamp);
+    }
+
+    /**
+     * Updates the record in place with a new scan result of the same device.
+     * The record is shared with listeners, use {@link BlueDevice#snapshot()} to keep stable values.
+     *
+     * @param name device name reported with the scan result, ignored if null or unchanged
+     * @param rssi Received Signal Strength Indication
+     * @param timestamp time in milliseconds when the device was scanned
+     */
+    public synchronized void updateSighting(String name, int rssi, long timestamp) {
+        if (name != null && !name.equals(this.name)) {
+            this.name = name;
+        }
+        this.rssi = rssi;
+        this.discoveredTimestamp = timestamp;
+        this.sightingCount++;
+        if (intervalEstimator != null) {
+            intervalEstimator.onSighting(timestamp);
+        }
+    }
+
+    /**
+     * @return raw advertising data of the latest scan result or null if it is not known. The array must not be modified.
+     */
+    public byte[] getScanRecord() {
+        return scanRecord;
+    }
+
+    /**
+     * Wraps the view around the latest advertising data without copying it.
+     *
+     * @param advertisingData reusable {@link AdvertisingData} view
+     * @return the given view
+     */
+    public AdvertisingData readAdvertisingData(AdvertisingData advertisingData) {
+        return advertisingData.wrap(scanRecord);
+    }
+
+    /**
+     * Updates the beacon identity or telemetry with a decoded frame.
+     * A new {@link Beacon} is created only when the identifying values differ from the current ones.
+     *
+     * @param beaconFrame frame decoded from the latest scan result
+     * @param timestamp time in milliseconds when the device was scanned
+     */
+    public synchronized void updateBeacon(BeaconFrame beaconFrame, long timestamp) {
+        if (beaconFrame.isIdentifying()) {
+            if (!beaconFrame.sameAs(beacon)) {
+                beacon = beaconFrame.toBeacon();
+            }
+        } else if (beaconFrame.getType() != null) {
+            beaconTelemetry = beaconFrame.toTelemetry(timestamp);
+        }
+    }
+
+    /**
+     * @return decoded beacon identity or null if the device is not a recognized beacon
+     */
+    @Nullable
+    public Beacon getBeacon() {
+        return beacon;
+    }
+
+    /**
+     * @return latest Eddystone-TLM values or null if the device does not send telemetry
+     */
+    @Nullable
+    public BeaconTelemetry getBeaconTelemetry() {
+        return beaconTelemetry;
+    }
+
+    public synchronized void setIntervalEstimator(AdvertisingIntervalEstimator intervalEstimator) {
+        this.intervalEstimator = intervalEstimator;
+    }
+
+    /**
+     * @return estimated advertising interval in milliseconds or 0 if it is not known yet
+     */
+    public synchronized long getAdvertisingIntervalMillis() {
+        return intervalEstimator != null ? intervalEstimator.getIntervalMillis() : 0;
+    }
+
+    /**
+     * @param defaultTimeoutMillis value returned when the interval is not estimated for the device
+     * @return time in milliseconds without sightings after which the device should be considered lost,
+     * derived from the estimated advertising interval
+     */
+    public synchronized long getLostTimeoutMillis(long defaultTimeoutMillis) {
+        return intervalEstimator != null ? intervalEstimator.getTimeoutMillis() : defaultTimeoutMillis;
+    }
+
+    /**
+     * @return number of scan results received for the device
+     */
+    public synchronized long getSightingCount() {
+        return sightingCount;
+    }
+
+    /**
+     * @return immutable copy of the values updated by scan results
+     */
+    public synchronized BlueDeviceSnapshot snapshot() {
+        return new BlueDeviceSnapshot(address, name, rssi, discoveredTimestamp, getAdvertisingIntervalMillis());
+    }
+
     public BluetoothDevice getBluetoothDevice() {
         return bluetoothDevice;
     }
@@ -152,6 +351,44 @@ public class BlueDevice implements Serializable {
         this.currentAction = currentAction;
     }
 
+    @Nullable
+    public GattOperationQueue getOperationQueue() {
+        return operationQueue;
+    }
+
+    public void setOperationQueue(GattOperationQueue operationQueue) {
+        this.operationQueue = operationQueue;
+    }
+
+    @Nullable
+    public GattHandleCache<GattHandle> getGattHandleCache() {
+        return gattHandleCache;
+    }
+
+    public void setGattHandleCache(GattHandleCache<GattHandle> gattHandleCache) {
+        this.gattHandleCache = gattHandleCache;
+    }
+
+    @Nullable
+    public ConcurrentMap<BluetoothGattCharacteristic, NotificationSubscription> getNotificationSubscriptions() {
+        return notificationSubscriptions;
+    }
+
+    public void setNotificationSubscriptions(ConcurrentMap<BluetoothGattCharacteristic, NotificationSubscription> notificationSubscriptions) {
+        this.notificationSubscriptions = notificationSubscriptions;
+    }
+
+    /**
+     * @return MTU of the connection, {@link WriteFragmenter#DEFAULT_MTU} when it has not been negotiated
+     */
+    public int getMtu() {
+        return mtu > 0 ? mtu : WriteFragmenter.DEFAULT_MTU;
+    }
+
+    public void setMtu(int mtu) {
+        this.mtu = mtu;
+    }
+
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
     public boolean isBLEDevice() {
         if(bluetoothDevice!=null){
@@ -14,10 +14,11 @@ import android.os.Build;
 
 import java.io.IOException;
 import java.lang.reflect.Method;
-import java.util.Arrays;
+import java.util.List;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.inject.Inject;
 
@@ -29,6 +30,7 @@ import pl.tomek_krzyszko.bluemanager.action.ReadAction;
 import pl.tomek_krzyszko.bluemanager.action.WriteAction;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceConnectionListener;
+import pl.tomek_krzyszko.bluemanager.callback.NotificationListener;
 import pl.tomek_krzyszko.bluemanager.dagger.modules.DeviceModule;
 import timber.log.Timber;
 
@@ -42,7 +44,6 @@ public class BlueDeviceController {
     @Inject Timer timer;
 
     private Context context;
-    private BlueDeviceActionListener blueDeviceActionListener;
 
 
     /**
@@ -64,7 +65,7 @@ public class BlueDeviceController {
      * @param blueDevice {@link BlueDevice} on which the {@link BlueAction} will be performed
      * @param blueAction {@link BlueAction} that will be performed
      * @param blueDeviceActionListener {@link BlueDeviceActionListener} as a callback method to return information about the action
-     * @return true if method successfully starts proper bluetooth process, false if device or action are wrong
+     * @return true if the action is started or, for Bluetooth Low Energy devices, queued behind earlier actions of the device. False if device or action are wrong
      */
     public boolean performAction(BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener blueDeviceActionListener) {
         if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && blueDevice.isBLEDevice()){
@@ -75,52 +76,240 @@ public class BlueDeviceController {
     }
 
     /**
-     * Specific wethod which perform proper action on the Bluetooth Low Energy device
+     * Specific method which perform proper action on the Bluetooth Low Energy device.
+     * The action is added to {@link GattOperationQueue} of the device and issued as soon as the previous action completes.
      *
      * @param blueDevice {@link BlueDevice} on which the {@link BlueAction} will be performed
      * @param blueAction {@link BlueAction} that will be performed
      * @param blueDeviceActionListener {@link BlueDeviceActionListener} as a callback method to return information about the action
-     * @return true if method successfully starts proper bluetooth process, false if device or action are wrong
+     * @return true if the action is queued, false if the device is not connected or it has no characteristic of the action
      */
     public boolean performActionOnBluetoothLowEnergyDevice(BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener blueDeviceActionListener){
+        return submitAction(blueDevice, blueAction, blueDeviceActionListener) != null;
+    }
+
+    /**
+     * Adds the action to {@link GattOperationQueue} of the connected Bluetooth Low Energy device.
+     * The returned handle carries the listener, so results are routed to it even when other actions of the device
+     * or of other devices are in flight.
+     *
+     * @param blueDevice connected Bluetooth Low Energy {@link BlueDevice}
+     * @param blueAction {@link BlueAction} that will be performed
+     * @param blueDeviceActionListener {@link BlueDeviceActionListener} of this action only, may be null
+     * @return {@link GattOperation} handle of the action, null if the device is not connected or it has no characteristic of the action
+     */
+    public GattOperation submitAction(BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener blueDeviceActionListener) {
+        if (blueDevice == null || blueAction == null) {
+            return null;
+        }
         BluetoothGatt bluetoothGatt = blueDevice.getBluetoothGatt();
-        if (bluetoothGatt != null && blueDevice.getCurrentAction() == null) {
-            for (BluetoothGattService bluetoothGattService : bluetoothGatt.getServices()) {
-                if (bluetoothGattService.getUuid().equals(blueAction.getService())) {
-                    BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(blueAction.getCharacteristic());
-                    if (bluetoothGattCharacteristic != null) {
-                        boolean isSuccessful = false;
-                        this.blueDeviceActionListener = blueDeviceActionListener;
-                        if (blueAction instanceof WriteAction) {
-                            bluetoothGattCharacteristic.setValue(((WriteAction) blueAction).getValue());
-                            isSuccessful = bluetoothGatt.writeCharacteristic(bluetoothGattCharacteristic);
-                            blueDevice.setCurrentAction(blueAction);
-                        } else if (blueAction instanceof ReadAction) {
-                            blueDevice.setCurrentAction(blueAction);
-                            isSuccessful = bluetoothGatt.readCharacteristic(bluetoothGattCharacteristic);
-                        }else if( blueAction instanceof NotifyAction){
-                            for (BluetoothGattDescriptor descriptor : bluetoothGattCharacteristic.getDescriptors()) {
-                                UUID uuid = blueConfig.getNotificationsEnablingDescriptorUUID();
-                                if (descriptor.getUuid().equals(uuid)) {
-                                    blueDevice.setCurrentAction(blueAction);
-                                    bluetoothGatt.setCharacteristicNotification(bluetoothGattCharacteristic, true);
-                                    descriptor.setValue(BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
-                                    isSuccessful = bluetoothGatt.writeDescriptor(descriptor);
-                                }
-                            }
-                        }
-                        if (!isSuccessful) {
-                            blueDevice.setCurrentAction(blueAction);
-                            this.blueDeviceActionListener = null;
-                        }
-                        return isSuccessful;
-                    }
-                }
+        GattOperationQueue operationQueue = blueDevice.getOperationQueue();
+        if (bluetoothGatt == null || operationQueue == null || findHandle(blueDevice, bluetoothGatt, blueAction) == null) {
+            return null;
+        }
+        return operationQueue.enqueue(blueAction, blueDeviceActionListener);
+    }
+
+    /**
+     * Subscribes to notifications of a characteristic of the connected Bluetooth Low Energy device. Enabling them is queued
+     * like other actions of the device. Notifications are buffered in the returned subscription until it is cancelled
+     * or the device disconnects, the listener is called on {@link BlueConfig#getActionCallbackExecutor()} when it is set.
+     *
+     * @param blueDevice connected Bluetooth Low Energy {@link BlueDevice}
+     * @param notifyAction {@link NotifyAction} with the characteristic whose notifications are enabled
+     * @param notificationListener {@link NotificationListener} of the subscription, may be null when the consumer polls on its own
+     * @return {@link NotificationSubscription} of the characteristic, null if the device is not connected, it has no notification descriptor
+     * of the characteristic or the characteristic is already subscribed
+     */
+    public NotificationSubscription subscribe(BlueDevice blueDevice, NotifyAction notifyAction, NotificationListener notificationListener) {
+        if (blueDevice == null || notifyAction == null || !notifyAction.isEnabled()) {
+            return null;
+        }
+        BluetoothGatt bluetoothGatt = blueDevice.getBluetoothGatt();
+        GattOperationQueue operationQueue = blueDevice.getOperationQueue();
+        final ConcurrentMap<BluetoothGattCharacteristic, NotificationSubscription> subscriptions = blueDevice.getNotificationSubscriptions();
+        if (bluetoothGatt == null || operationQueue == null || subscriptions == null) {
+            return null;
+        }
+        GattHandle gattHandle = findHandle(blueDevice, bluetoothGatt, notifyAction);
+        if (gattHandle == null || gattHandle.getNotificationDescriptor() == null) {
+            return null;
+        }
+        final BluetoothGattCharacteristic bluetoothGattCharacteristic = gattHandle.getCharacteristic();
+        final NotificationSubscription subscription = new NotificationSubscription(blueDevice, notifyAction,
+                blueConfig.getNotificationBufferCapacity(), blueConfig.getNotificationSlotSize(), notificationListener,
+                blueConfig.getActionCallbackExecutor(), cancelled -> unsubscribe(blueDevice, bluetoothGattCharacteristic, cancelled));
+        // registered before enabling, so notifications sent right after the descriptor write are not lost
+        if (subscriptions.putIfAbsent(bluetoothGattCharacteristic, subscription) != null) {
+            Timber.w("Notifications of characteristic %s are already subscribed", bluetoothGattCharacteristic.getUuid());
+            return null;
+        }
+        GattOperation enabling = operationQueue.enqueue(notifyAction, new BlueDeviceActionListener() {
+            @Override
+            public void onActionSuccess(BlueDevice blueDevice, BlueAction blueAction, byte[] value) {
+                subscription.onEnabled();
+            }
+
+            @Override
+            public void onActionFailure(BlueDevice blueDevice, BlueAction blueAction) {
+                subscriptions.remove(bluetoothGattCharacteristic, subscription);
+                subscription.close();
+            }
+        });
+        if (enabling == null) {
+            subscriptions.remove(bluetoothGattCharacteristic, subscription);
+            return null;
+        }
+        return subscription;
+    }
+
+    /**
+     * Removes the cancelled subscription and queues disabling notifications of its characteristic
+     */
+    private void unsubscribe(BlueDevice blueDevice, BluetoothGattCharacteristic bluetoothGattCharacteristic, NotificationSubscription subscription) {
+        ConcurrentMap<BluetoothGattCharacteristic, NotificationSubscription> subscriptions = blueDevice.getNotificationSubscriptions();
+        if (subscriptions == null || !subscriptions.remove(bluetoothGattCharacteristic, subscription)) {
+            // the device disconnected meanwhile
+            return;
+        }
+        GattOperationQueue operationQueue = blueDevice.getOperationQueue();
+        if (operationQueue != null) {
+            NotifyAction notifyAction = subscription.getAction();
+            operationQueue.enqueue(new NotifyAction(notifyAction.getService(), notifyAction.getCharacteristic(), false), null);
+        }
+    }
+
+    /**
+     * Ends all subscriptions of the device, called when it disconnects
+     */
+    private void closeSubscriptions(ConcurrentMap<BluetoothGattCharacteristic, NotificationSubscription> subscriptions) {
+        for (NotificationSubscription subscription : subscriptions.values()) {
+            subscription.close();
+        }
+        subscriptions.clear();
+    }
+
+    /**
+     * Starts the GATT operation of the action, called by {@link GattCallbackRouter} when the previous operation of the device completes
+     *
+     * @param blueDevice connected {@link BlueDevice}
+     * @param blueAction {@link BlueAction} to start
+     * @return true if the operation was started and its GATT callback will complete it
+     */
+    private boolean issueAction(BlueDevice blueDevice, BlueAction blueAction) {
+        BluetoothGatt bluetoothGatt = blueDevice.getBluetoothGatt();
+        if (bluetoothGatt == null) {
+            return false;
+        }
+        GattHandle gattHandle = findHandle(blueDevice, bluetoothGatt, blueAction);
+        if (gattHandle == null) {
+            return false;
+        }
+        BluetoothGattCharacteristic bluetoothGattCharacteristic = gattHandle.getCharacteristic();
+        if (blueAction instanceof WriteAction) {
+            bluetoothGattCharacteristic.setValue(((WriteAction) blueAction).getValue());
+            return bluetoothGatt.writeCharacteristic(bluetoothGattCharacteristic);
+        } else if (blueAction instanceof ReadAction) {
+            return bluetoothGatt.readCharacteristic(bluetoothGattCharacteristic);
+        } else if (blueAction instanceof NotifyAction) {
+            BluetoothGattDescriptor descriptor = gattHandle.getNotificationDescriptor();
+            if (descriptor != null) {
+                boolean enable = ((NotifyAction) blueAction).isEnabled();
+                bluetoothGatt.setCharacteristicNotification(bluetoothGattCharacteristic, enable);
+                descriptor.setValue(enable ? BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE : BluetoothGattDescriptor.DISABLE_NOTIFICATION_VALUE);
+                return bluetoothGatt.writeDescriptor(descriptor);
             }
         }
         return false;
     }
 
+    /**
+     * Writes one fragment of a {@link WriteAction} split by {@link WriteFragmenter}
+     *
+     * @param blueDevice connected {@link BlueDevice}
+     * @param writeAction {@link WriteAction} which is the issued operation of the device
+     * @param fragment part of the action's value
+     * @return true if the write was started
+     */
+    private boolean writeFragment(BlueDevice blueDevice, WriteAction writeAction, byte[] fragment) {
+        BluetoothGatt bluetoothGatt = blueDevice.getBluetoothGatt();
+        if (bluetoothGatt == null) {
+            return false;
+        }
+        GattHandle gattHandle = findHandle(blueDevice, bluetoothGatt, writeAction);
+        if (gattHandle == null) {
+            return false;
+        }
+        BluetoothGattCharacteristic bluetoothGattCharacteristic = gattHandle.getCharacteristic();
+        bluetoothGattCharacteristic.setValue(fragment);
+        return bluetoothGatt.writeCharacteristic(bluetoothGattCharacteristic);
+    }
+
+    /**
+     * @return true if {@link BlueConfig#getRequestedMtu()} is set and the system can request it
+     */
+    private boolean isMtuRequestEnabled() {
+        return blueConfig.getRequestedMtu() > WriteFragmenter.DEFAULT_MTU
+                && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP;
+    }
+
+    /**
+     * Requests {@link BlueConfig#getRequestedMtu()} from the connected device
+     *
+     * @param gatt {@link BluetoothGatt} of the device
+     * @return true if the request was sent and {@link BluetoothGattCallback#onMtuChanged(BluetoothGatt, int, int)} will follow
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private boolean requestMtu(BluetoothGatt gatt) {
+        return gatt.requestMtu(blueConfig.getRequestedMtu());
+    }
+
+    /**
+     * Looks the characteristic of the action up in {@link GattHandleCache} of the device. Services are walked
+     * only when they have not been indexed yet, e.g. right after the cache was refreshed.
+     *
+     * @param blueDevice connected {@link BlueDevice}
+     * @param bluetoothGatt {@link BluetoothGatt} of the device
+     * @param blueAction {@link BlueAction} with service and characteristic {@link UUID}s
+     * @return handle of the action's characteristic or null if the device does not have it
+     */
+    private GattHandle findHandle(BlueDevice blueDevice, BluetoothGatt bluetoothGatt, BlueAction blueAction) {
+        GattHandleCache<GattHandle> gattHandleCache = blueDevice.getGattHandleCache();
+        if (gattHandleCache != null) {
+            return gattHandleCache.get(blueAction.getService(), blueAction.getCharacteristic());
+        }
+        for (BluetoothGattService bluetoothGattService : bluetoothGatt.getServices()) {
+            if (bluetoothGattService.getUuid().equals(blueAction.getService())) {
+                BluetoothGattCharacteristic bluetoothGattCharacteristic = bluetoothGattService.getCharacteristic(blueAction.getCharacteristic());
+                if (bluetoothGattCharacteristic != null) {
+                    return toHandle(bluetoothGattCharacteristic);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Builds {@link GattHandleCache} of discovered services, called once per service discovery
+     *
+     * @param services services returned by {@link BluetoothGatt#getServices()}
+     * @return index of all characteristics of the services
+     */
+    private GattHandleCache<GattHandle> indexServices(List<BluetoothGattService> services) {
+        GattHandleCache.Builder<GattHandle> builder = GattHandleCache.builder();
+        for (BluetoothGattService bluetoothGattService : services) {
+            for (BluetoothGattCharacteristic bluetoothGattCharacteristic : bluetoothGattService.getCharacteristics()) {
+                builder.put(bluetoothGattService.getUuid(), bluetoothGattCharacteristic.getUuid(), toHandle(bluetoothGattCharacteristic));
+            }
+        }
+        return builder.build();
+    }
+
+    private GattHandle toHandle(BluetoothGattCharacteristic bluetoothGattCharacteristic) {
+        return new GattHandle(bluetoothGattCharacteristic,
+                bluetoothGattCharacteristic.getDescriptor(blueConfig.getNotificationsEnablingDescriptorUUID()));
+    }
+
     /**
      * Specific method which perform proper action on the Bluetooth Classic device
      *
@@ -171,6 +360,18 @@ public class BlueDeviceController {
         }
     }
 
+    /**
+     * Method that cleans the internal database of scanned {@link BluetoothGattService} of the device
+     * and drops its {@link GattHandleCache}, which is built again when services are discovered
+     *
+     * @param blueDevice {@link BlueDevice} of which we want to refresh internal cache
+     * @return true if method successfully cleans or false when it failed
+     */
+    public boolean refreshDeviceCache(BlueDevice blueDevice) {
+        blueDevice.setGattHandleCache(null);
+        return refreshDeviceCache(blueDevice.getBluetoothGatt());
+    }
+
     /**
      * Method that cleans the internal database of scanned {@link BluetoothGattService}
      *
@@ -216,18 +417,20 @@ public class BlueDeviceController {
             private TimerTask timerTask;
             private boolean taskCanceled = false;
             private boolean disconnected = false;
+            /**
+             * Whether or not service discovery waits for {@link BluetoothGattCallback#onMtuChanged(BluetoothGatt, int, int)}
+             */
+            private volatile boolean mtuRequested = false;
+            private final GattCallbackRouter<BluetoothGattCharacteristic> router = new GattCallbackRouter<>(blueDevice,
+                    blueConfig.getRequestedMtu() > 0, blueAction -> issueAction(blueDevice, blueAction),
+                    (action, fragment) -> writeFragment(blueDevice, action, fragment));
 
             private void onDisconnect(final BluetoothGatt gatt) {
                 gatt.close();
-
-                if (blueDevice.getCurrentAction() != null) {
-                    BlueAction completedAction = blueDevice.getCurrentAction();
-                    // cleared before callback to be able to perform another action right after current one
-                    blueDevice.setCurrentAction(null);
-                    if (blueDeviceActionListener != null) {
-                        blueDeviceActionListener.onActionFailure(blueDevice, completedAction);
-                    }
-                }
+                blueDevice.setGattHandleCache(null);
+                blueDevice.setMtu(0);
+                router.close();
+                closeSubscriptions(router.getSubscriptions());
                 if (blueDeviceConnectionListener != null) {
                     blueDeviceConnectionListener.onDeviceClosed(blueDevice);
                 }
@@ -240,7 +443,21 @@ public class BlueDeviceController {
                 if (blueDeviceConnectionListener != null) {
                     if (newState == BluetoothProfile.STATE_CONNECTED && status == BluetoothGatt.GATT_SUCCESS) {
                         blueDevice.setBluetoothGatt(gatt);
-                        gatt.discoverServices();
+                        blueDevice.setOperationQueue(router.getOperationQueue());
+                        blueDevice.setNotificationSubscriptions(router.getSubscriptions());
+                        // services are discovered when the MTU exchange completes, the flag is set first
+                        // because onMtuChanged may arrive on another binder thread before requestMtu returns
+                        boolean requested = false;
+                        if (isMtuRequestEnabled()) {
+                            mtuRequested = true;
+                            requested = requestMtu(gatt);
+                            if (!requested) {
+                                mtuRequested = false;
+                            }
+                        }
+                        if (!requested) {
+                            gatt.discoverServices();
+                        }
                         timerTask = new TimerTask() {
                             @Override
                             public void run() {
@@ -263,6 +480,21 @@ public class BlueDeviceController {
                 }
             }
 
+            @Override
+            public void onMtuChanged(BluetoothGatt gatt, int mtu, int status) {
+                if (status == BluetoothGatt.GATT_SUCCESS) {
+                    blueDevice.setMtu(mtu);
+                } else {
+                    Timber.w("MTU exchange failed with status %d, keeping MTU %d", status, blueDevice.getMtu());
+                }
+                if (mtuRequested) {
+                    mtuRequested = false;
+                    if (!taskCanceled) {
+                        gatt.discoverServices();
+                    }
+                }
+            }
+
             @Override
             public void onServicesDiscovered(BluetoothGatt gatt, int status) {
                 if (!taskCanceled) {
@@ -271,6 +503,7 @@ public class BlueDeviceController {
                         timerTask = null;
                     }
                     if (status == BluetoothGatt.GATT_SUCCESS) {
+                        blueDevice.setGattHandleCache(indexServices(gatt.getServices()));
                         if (blueDeviceConnectionListener != null) {
                             blueDeviceConnectionListener.onDeviceReady(blueDevice);
                         }
@@ -282,79 +515,22 @@ public class BlueDeviceController {
 
             @Override
             public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
-                if (blueDevice.getCurrentAction() != null && blueDevice.getCurrentAction() instanceof NotifyAction) {
-                    if (status == 0 ) {
-                        BlueAction completedAction = blueDevice.getCurrentAction();
-                        // cleared before callback to be able to perform another action right after current one
-
-                        if (blueDeviceActionListener != null) {
-                            blueDeviceActionListener.onActionSuccess(blueDevice, completedAction,descriptor.getValue());
-                        }
-
-                    } else {
-                        BlueAction completedAction = blueDevice.getCurrentAction();
-                        // cleared before callback to be able to perform another action right after current one
-                        blueDevice.setCurrentAction(null);
-                        if (blueDeviceActionListener != null) {
-                            blueDeviceActionListener.onActionFailure(blueDevice, completedAction);
-                        }
-                    }
-                }
+                router.onDescriptorWrite(descriptor.getCharacteristic(), status == BluetoothGatt.GATT_SUCCESS, descriptor.getValue());
             }
 
-
             @Override
             public void onCharacteristicChanged(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic) {
-                byte[] data = characteristic.getValue();
-                if (blueDevice.getCurrentAction() != null && blueDevice.getCurrentAction() instanceof NotifyAction) {
-                    BlueAction completedAction = blueDevice.getCurrentAction();
-                    // cleared before callback to be able to perform another action right after current one
-                    blueDevice.setCurrentAction(null);
-                    if (blueDeviceActionListener != null) {
-                        blueDeviceActionListener.onActionSuccess(blueDevice, completedAction, characteristic.getValue());
-                    }
-                }
+                router.onCharacteristicChanged(characteristic, characteristic.getValue());
             }
 
             @Override
             public void onCharacteristicRead(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-                if (blueDevice.getCurrentAction() != null && blueDevice.getCurrentAction() instanceof ReadAction) {
-
-                    BlueAction completedAction = blueDevice.getCurrentAction();
-                    // cleared before callback to be able to perform another action right after current one
-                    blueDevice.setCurrentAction(null);
-                    if (status == BluetoothGatt.GATT_SUCCESS) {
-                        if (blueDeviceActionListener != null) {
-                            blueDeviceActionListener.onActionSuccess(blueDevice, completedAction, characteristic.getValue());
-                        }
-                    } else {
-                        if (blueDeviceActionListener != null) {
-                            blueDeviceActionListener.onActionFailure(blueDevice, completedAction);
-                        }
-                    }
-                }
+                router.onCharacteristicRead(status == BluetoothGatt.GATT_SUCCESS, characteristic.getValue());
             }
 
             @Override
             public void onCharacteristicWrite(BluetoothGatt gatt, BluetoothGattCharacteristic characteristic, int status) {
-                if (blueDevice.getCurrentAction() != null && blueDevice.getCurrentAction() instanceof WriteAction) {
-                    if (status == BluetoothGatt.GATT_SUCCESS && Arrays.equals(characteristic.getValue(), ((WriteAction) blueDevice.getCurrentAction()).getValue())) {
-                        BlueAction completedAction = blueDevice.getCurrentAction();
-                        // cleared before callback to be able to perform another action right after current one
-                        blueDevice.setCurrentAction(null);
-                        if (blueDeviceActionListener != null) {
-                            blueDeviceActionListener.onActionSuccess(blueDevice, completedAction, ((WriteAction) completedAction).getValue());
-                        }
-
-                    } else {
-                        BlueAction completedAction = blueDevice.getCurrentAction();
-                        // cleared before callback to be able to perform another action right after current one
-                        blueDevice.setCurrentAction(null);
-                        if (blueDeviceActionListener != null) {
-                            blueDeviceActionListener.onActionFailure(blueDevice, completedAction);
-                        }
-                    }
-                }
+                router.onCharacteristicWrite(status == BluetoothGatt.GATT_SUCCESS, characteristic.getValue());
             }
         });
     }
@@ -404,6 +580,17 @@ public class BlueDeviceController {
                 bluetoothGatt.disconnect();
                 blueDevice.setBluetoothGatt(null);
             }
+            blueDevice.setGattHandleCache(null);
+            blueDevice.setMtu(0);
+            GattOperationQueue operationQueue = blueDevice.getOperationQueue();
+            if (operationQueue != null) {
+                // queued actions would never be issued
+                operationQueue.close();
+            }
+            ConcurrentMap<BluetoothGattCharacteristic, NotificationSubscription> subscriptions = blueDevice.getNotificationSubscriptions();
+            if (subscriptions != null) {
+                closeSubscriptions(subscriptions);
+            }
         }else{
             try {
                 blueDevice.getBluetoothSocket().close();
@@ -0,0 +1,62 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.io.Serializable;
+
+/**
+ * Immutable copy of the scan related values of {@link BlueDevice}.
+ * {@link BlueDevice} records are updated in place by the scanner, so listeners
+ * which keep values for later should take a snapshot with {@link BlueDevice#snapshot()}.
+ */
+public final class BlueDeviceSnapshot implements Serializable {
+
+    private final String address;
+    private final String name;
+    private final int rssi;
+    private final long discoveredTimestamp;
+    private final long advertisingIntervalMillis;
+
+    BlueDeviceSnapshot(String address, String name, int rssi, long discoveredTimestamp, long advertisingIntervalMillis) {
+        this.address = address;
+        this.name = name;
+        this.rssi = rssi;
+        this.discoveredTimestamp = discoveredTimestamp;
+        this.advertisingIntervalMillis = advertisingIntervalMillis;
+    }
+
+    /**
+     * @return hardware unique address of the device
+     */
+    public String getAddress() {
+        return address;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return Received Signal Strength Indication at the time of the snapshot
+     */
+    public int getRssi() {
+        return rssi;
+    }
+
+    /**
+     * @return last point in time when the device was scanned before the snapshot
+     */
+    public long getDiscoveredTimestamp() {
+        return discoveredTimestamp;
+    }
+
+    /**
+     * @return estimated advertising interval in milliseconds or 0 if it was not known yet
+     */
+    public long getAdvertisingIntervalMillis() {
+        return advertisingIntervalMillis;
+    }
+
+    @Override
+    public String toString() {
+        return address;
+    }
+}
@@ -0,0 +1,280 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Thread safe open addressing hash map with non-negative {@code long} keys, e.g. packed hardware addresses.
+ * Keys are stored in primitive arrays with linear probing, so lookups neither box keys nor chase entry objects.
+ * The map is divided into segments, writes lock only the segment of the key and reads never block:
+ * a value is published before its key and a key is replaced by a tombstone after its value is cleared,
+ * so a reader which sees a key also sees its value. Growing a segment publishes a new table,
+ * the old one is never modified again.
+ *
+ * @param <V> type of values
+ */
+public class ConcurrentLongMap<V> {
+
+    private static final long EMPTY = -1L;
+    private static final long TOMBSTONE = -2L;
+
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_CAPACITY = 8;
+
+    private static final class Table<V> {
+        final AtomicLongArray keys;
+        final AtomicReferenceArray<V> values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                keys.lazySet(i, EMPTY);
+            }
+            values = new AtomicReferenceArray<>(capacity);
+            mask = capacity - 1;
+        }
+    }
+
+    private static final class Segment<V> {
+        volatile Table<V> table;
+        volatile int size;
+        /**
+         * guarded by the segment monitor
+         */
+        int tombstones;
+
+        Segment(int capacity) {
+            table = new Table<>(capacity);
+        }
+    }
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+    private final int segmentShift;
+
+    public ConcurrentLongMap() {
+        this(DEFAULT_SEGMENTS, DEFAULT_SEGMENTS * MIN_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * @param segmentCount number of independently locked segments, rounded up to a power of two
+     * @param initialCapacity expected number of entries
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLongMap(int segmentCount, int initialCapacity) {
+        int count = powerOfTwo(Math.max(1, segmentCount));
+        int segmentCapacity = powerOfTwo(Math.max(MIN_SEGMENT_CAPACITY, initialCapacity / count * 4 / 3 + 1));
+        segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+        segmentMask = count - 1;
+        segmentShift = Integer.numberOfTrailingZeros(count);
+    }
+
+    private static int powerOfTwo(int value) {
+        int power = Integer.highestOneBit(value);
+        return power == value ? value : power << 1;
+    }
+
+    /**
+     * Spreads the bits of the key, packed addresses of one vendor share the high bytes
+     */
+    private static int hash(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        return (int) key;
+    }
+
+    private static void checkKey(long key) {
+        if (key < 0) {
+            throw new IllegalArgumentException("Key must not be negative: " + key);
+        }
+    }
+
+    /**
+     * @return value mapped to the key or null
+     */
+    public V get(long key) {
+        if (key < 0) {
+            return null;
+        }
+        int hash = hash(key);
+        Table<V> table = segments[hash & segmentMask].table;
+        int index = (hash >>> segmentShift) & table.mask;
+        for (int probes = 0; probes <= table.mask; probes++) {
+            long slotKey = table.keys.get(index);
+            if (slotKey == EMPTY) {
+                return null;
+            }
+            if (slotKey == key) {
+                V value = table.values.get(index);
+                // the slot could have been removed and reused for another key between the two reads
+                return table.keys.get(index) == key ? value : null;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @param key non-negative key
+     * @param value value, not null
+     * @return value already mapped to the key or null if the given value was mapped
+     */
+    public V putIfAbsent(long key, V value) {
+        checkKey(key);
+        if (value == null) {
+            throw new IllegalArgumentException("Value cannot be null");
+        }
+        int hash = hash(key);
+        Segment<V> segment = segments[hash & segmentMask];
+        synchronized (segment) {
+            Table<V> table = segment.table;
+            int index = (hash >>> segmentShift) & table.mask;
+            int free = -1;
+            for (int probes = 0; probes <= table.mask; probes++) {
+                long slotKey = table.keys.get(index);
+                if (slotKey == key) {
+                    return table.values.get(index);
+                }
+                if (slotKey == TOMBSTONE && free < 0) {
+                    free = index;
+                } else if (slotKey == EMPTY) {
+                    if (free < 0) {
+                        free = index;
+                    }
+                    break;
+                }
+                index = (index + 1) & table.mask;
+            }
+            if (table.keys.get(free) == TOMBSTONE) {
+                segment.tombstones--;
+            }
+            table.values.set(free, value);
+            table.keys.set(free, key);
+            segment.size++;
+            if ((segment.size + segment.tombstones) * 4 > (table.mask + 1) * 3) {
+                rehash(segment);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * @return removed value or null if the key was not mapped
+     */
+    public V remove(long key) {
+        return remove(key, null);
+    }
+
+    /**
+     * Removes the key only if it is mapped to the given value.
+     *
+     * @param expected expected value, null removes any value
+     * @return removed value or null if nothing was removed
+     */
+    public V remove(long key, V expected) {
+        if (key < 0) {
+            return null;
+        }
+        int hash = hash(key);
+        Segment<V> segment = segments[hash & segmentMask];
+        synchronized (segment) {
+            Table<V> table = segment.table;
+            int index = (hash >>> segmentShift) & table.mask;
+            for (int probes = 0; probes <= table.mask; probes++) {
+                long slotKey = table.keys.get(index);
+                if (slotKey == EMPTY) {
+                    return null;
+                }
+                if (slotKey == key) {
+                    V value = table.values.get(index);
+                    if (expected != null && value != expected) {
+                        return null;
+                    }
+                    table.values.set(index, null);
+                    table.keys.set(index, TOMBSTONE);
+                    segment.size--;
+                    segment.tombstones++;
+                    return value;
+                }
+                index = (index + 1) & table.mask;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Copies live entries into a new table, doubled when the segment is more than 3/8 full.
+     * Called with the segment monitor held.
+     */
+    private void rehash(Segment<V> segment) {
+        Table<V> table = segment.table;
+        int capacity = table.mask + 1;
+        Table<V> newTable = new Table<>(segment.size * 8 > capacity * 3 ? capacity << 1 : capacity);
+        for (int i = 0; i < capacity; i++) {
+            long key = table.keys.get(i);
+            if (key >= 0) {
+                int index = (hash(key) >>> segmentShift) & newTable.mask;
+                while (newTable.keys.get(index) != EMPTY) {
+                    index = (index + 1) & newTable.mask;
+                }
+                newTable.values.lazySet(index, table.values.get(i));
+                newTable.keys.lazySet(index, key);
+            }
+        }
+        segment.tombstones = 0;
+        // volatile write publishes the whole table
+        segment.table = newTable;
+    }
+
+    /**
+     * @return copy of the values, weakly consistent with concurrent writes
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        for (Segment<V> segment : segments) {
+            Table<V> table = segment.table;
+            for (int i = 0; i <= table.mask; i++) {
+                if (table.keys.get(i) >= 0) {
+                    V value = table.values.get(i);
+                    if (value != null) {
+                        values.add(value);
+                    }
+                }
+            }
+        }
+        return values;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                segment.table = new Table<>(MIN_SEGMENT_CAPACITY);
+                segment.size = 0;
+                segment.tombstones = 0;
+            }
+        }
+    }
+}
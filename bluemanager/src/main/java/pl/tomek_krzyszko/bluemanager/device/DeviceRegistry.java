@@ -0,0 +1,156 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Thread safe mapping between hardware address and {@link BlueDevice}.
+ * Addresses are kept packed into {@code long}s, see {@link MacAddress}, in a {@link ConcurrentLongMap},
+ * so lookups on the scan path compare primitives instead of hashing 17 character strings.
+ * Reads never block, writes only lock the segment of the written address,
+ * so scan processing, lost device checks and UI queries do not share a single lock.
+ * Values of a registered {@link BlueDevice} are updated in place under the record's own monitor,
+ * see {@link BlueDevice#updateSighting(String, int, long)}.
+ * Methods taking {@link String} addresses are kept for the API boundary, malformed addresses are never registered.
+ */
+public class DeviceRegistry {
+
+    private final ConcurrentLongMap<BlueDevice> devices = new ConcurrentLongMap<>();
+
+    /**
+     * @param address hardware address of the device
+     * @return registered {@link BlueDevice} or null when the address is unknown
+     */
+    public BlueDevice get(String address) {
+        return devices.get(MacAddress.pack(address));
+    }
+
+    /**
+     * @param packedAddress hardware address packed with {@link MacAddress#pack(String)}
+     * @return registered {@link BlueDevice} or null when the address is unknown
+     */
+    public BlueDevice get(long packedAddress) {
+        return devices.get(packedAddress);
+    }
+
+    public boolean contains(String address) {
+        return devices.containsKey(MacAddress.pack(address));
+    }
+
+    public boolean contains(long packedAddress) {
+        return devices.containsKey(packedAddress);
+    }
+
+    /**
+     * Registers the device unless another record for the address has been registered already.
+     *
+     * @param address hardware address of the device
+     * @param blueDevice {@link BlueDevice} to register
+     * @return previously registered {@link BlueDevice} or null if the given one was registered
+     * @throws IllegalArgumentException when the address is malformed
+     */
+    public BlueDevice putIfAbsent(String address, BlueDevice blueDevice) {
+        long packedAddress = MacAddress.pack(address);
+        if (packedAddress == MacAddress.INVALID) {
+            throw new IllegalArgumentException("Invalid hardware address: " + address);
+        }
+        return devices.putIfAbsent(packedAddress, blueDevice);
+    }
+
+    /**
+     * @param packedAddress hardware address packed with {@link MacAddress#pack(String)}
+     * @param blueDevice {@link BlueDevice} to register
+     * @return previously registered {@link BlueDevice} or null if the given one was registered
+     */
+    public BlueDevice putIfAbsent(long packedAddress, BlueDevice blueDevice) {
+        return devices.putIfAbsent(packedAddress, blueDevice);
+    }
+
+    /**
+     * Updates the registered record of the address with a scan result, see {@link BlueDevice#updateSighting(String, int, long, byte[])}.
+     *
+     * @param packedAddress hardware address packed with {@link MacAddress#pack(String)}
+     * @return updated {@link BlueDevice} or null when the address is unknown, register it with
+     * {@link #registerSighting(long, BlueDevice, String, int, long, byte[])} then
+     */
+    public BlueDevice updateSighting(long packedAddress, String name, int rssi, long timestamp, byte[] scanRecord) {
+        BlueDevice blueDevice = devices.get(packedAddress);
+        if (blueDevice != null) {
+            blueDevice.updateSighting(name, rssi, timestamp, scanRecord);
+        }
+        return blueDevice;
+    }
+
+    /**
+     * Registers a device seen for the first time. The new record is updated with the scan result before it is registered,
+     * so readers never see it without a sighting. If another thread registered the address meanwhile,
+     * the scan result updates that record instead and the new one is dropped.
+     *
+     * @param packedAddress hardware address packed with {@link MacAddress#pack(String)}
+     * @param newBlueDevice new {@link BlueDevice} of the address
+     * @return null if the new record was registered, otherwise the previously registered {@link BlueDevice} which was updated
+     */
+    public BlueDevice registerSighting(long packedAddress, BlueDevice newBlueDevice, String name, int rssi, long timestamp, byte[] scanRecord) {
+        newBlueDevice.updateSighting(name, rssi, timestamp, scanRecord);
+        BlueDevice blueDevice = devices.putIfAbsent(packedAddress, newBlueDevice);
+        if (blueDevice != null) {
+            blueDevice.updateSighting(name, rssi, timestamp, scanRecord);
+        }
+        return blueDevice;
+    }
+
+    /**
+     * @param address hardware address of the device
+     * @return removed {@link BlueDevice} or null when the address was not registered
+     */
+    public BlueDevice remove(String address) {
+        return devices.remove(MacAddress.pack(address));
+    }
+
+    public BlueDevice remove(long packedAddress) {
+        return devices.remove(packedAddress);
+    }
+
+    /**
+     * Removes the device only if the address is still mapped to the given record.
+     *
+     * @param address hardware address of the device
+     * @param blueDevice expected {@link BlueDevice}
+     * @return true if the record was removed by this call
+     */
+    public boolean remove(String address, BlueDevice blueDevice) {
+        return remove(MacAddress.pack(address), blueDevice);
+    }
+
+    public boolean remove(long packedAddress, BlueDevice blueDevice) {
+        return blueDevice != null && devices.remove(packedAddress, blueDevice) != null;
+    }
+
+    /**
+     * @return read only snapshot of the registered devices. Creating it does not block writers
+     * and reflects the state at some point at or since the call.
+     */
+    public Collection<BlueDevice> devices() {
+        return Collections.unmodifiableList(devices.values());
+    }
+
+    /**
+     * @return copy of the registered devices
+     */
+    public List<BlueDevice> toList() {
+        return devices.values();
+    }
+
+    public int size() {
+        return devices.size();
+    }
+
+    public boolean isEmpty() {
+        return devices.isEmpty();
+    }
+
+    public void clear() {
+        devices.clear();
+    }
+}
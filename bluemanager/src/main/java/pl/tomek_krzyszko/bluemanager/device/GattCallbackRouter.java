@@ -0,0 +1,165 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.action.NotifyAction;
+import pl.tomek_krzyszko.bluemanager.action.ReadAction;
+import pl.tomek_krzyszko.bluemanager.action.WriteAction;
+
+/**
+ * Routes GATT callbacks of one connection to the {@link GattOperationQueue} of its device. Every connection of
+ * {@link BlueDeviceController} has its own router, so results arriving on binder threads complete only operations
+ * of the device they belong to. A callback completes the issued operation only when its kind matches the issued action,
+ * a {@link WriteAction} split by {@link WriteFragmenter} completes when its last fragment is written.
+ *
+ * @param <C> type of the characteristic key, {@link android.bluetooth.BluetoothGattCharacteristic} in {@link BlueDeviceController}
+ */
+class GattCallbackRouter<C> {
+
+    private final BlueDevice blueDevice;
+    private final boolean fragmentWrites;
+    private final GattOperationQueue.Issuer issuer;
+    private final WriteFragmenter.Writer writer;
+    private final GattOperationQueue operationQueue;
+
+    /**
+     * Fragments of the issued {@link WriteAction} when its value is longer than one write of the connection
+     */
+    private volatile WriteFragmenter writeFragmenter;
+
+    /**
+     * Notify operations performed without a subscription, their listener receives every notification
+     * of the characteristic until a {@link NotifyAction} disables them
+     */
+    private final Map<C, GattOperation> notifyOperations = new ConcurrentHashMap<>();
+    private final ConcurrentMap<C, NotificationSubscription> subscriptions = new ConcurrentHashMap<>();
+
+    /**
+     * @param blueDevice connected {@link BlueDevice}
+     * @param fragmentWrites whether or not a {@link WriteAction} longer than one write of the connection is split by {@link WriteFragmenter}
+     * @param issuer {@link GattOperationQueue.Issuer} starting the GATT operation of an action
+     * @param writer {@link WriteFragmenter.Writer} starting the write of one fragment
+     */
+    GattCallbackRouter(BlueDevice blueDevice, boolean fragmentWrites, GattOperationQueue.Issuer issuer, WriteFragmenter.Writer writer) {
+        this.blueDevice = blueDevice;
+        this.fragmentWrites = fragmentWrites;
+        this.issuer = issuer;
+        this.writer = writer;
+        this.operationQueue = new GattOperationQueue(blueDevice, this::issue);
+    }
+
+    GattOperationQueue getOperationQueue() {
+        return operationQueue;
+    }
+
+    ConcurrentMap<C, NotificationSubscription> getSubscriptions() {
+        return subscriptions;
+    }
+
+    /**
+     * Issues the action. When writes are fragmented, a {@link WriteAction} longer than one write
+     * of the connection starts with its first fragment, otherwise the system writes it as a long write
+     */
+    private boolean issue(BlueAction blueAction) {
+        writeFragmenter = null;
+        if (blueAction instanceof WriteAction && fragmentWrites) {
+            WriteAction writeAction = (WriteAction) blueAction;
+            int fragmentSize = WriteFragmenter.fragmentSize(blueDevice.getMtu());
+            if (writeAction.getValue() != null && writeAction.getValue().length > fragmentSize) {
+                WriteFragmenter fragmenter = new WriteFragmenter(writeAction, fragmentSize, writer);
+                writeFragmenter = fragmenter;
+                return fragmenter.start();
+            }
+        }
+        return issuer.issue(blueAction);
+    }
+
+    /**
+     * Called from {@link android.bluetooth.BluetoothGattCallback#onDescriptorWrite}
+     *
+     * @param characteristic characteristic of the written descriptor
+     * @param success whether or not the GATT write succeeded
+     * @param value value of the descriptor
+     */
+    void onDescriptorWrite(C characteristic, boolean success, byte[] value) {
+        BlueAction currentAction = operationQueue.getCurrentAction();
+        if (currentAction instanceof NotifyAction) {
+            boolean enable = ((NotifyAction) currentAction).isEnabled();
+            if (!enable) {
+                notifyOperations.remove(characteristic);
+            }
+            GattOperation operation = operationQueue.complete(success, value);
+            if (enable && operation != null && success && operation.getListener() != null
+                    && !subscriptions.containsKey(characteristic)) {
+                notifyOperations.put(characteristic, operation);
+            }
+        }
+    }
+
+    /**
+     * Called from {@link android.bluetooth.BluetoothGattCallback#onCharacteristicChanged}
+     *
+     * @param characteristic characteristic which sent the notification
+     * @param value notified value
+     */
+    void onCharacteristicChanged(C characteristic, byte[] value) {
+        NotificationSubscription subscription = subscriptions.get(characteristic);
+        if (subscription != null) {
+            subscription.offer(value);
+        }
+        GattOperation operation = notifyOperations.get(characteristic);
+        if (operation != null) {
+            operation.getListener().onActionSuccess(blueDevice, operation.getAction(), value);
+        }
+    }
+
+    /**
+     * Called from {@link android.bluetooth.BluetoothGattCallback#onCharacteristicRead}
+     *
+     * @param success whether or not the GATT read succeeded
+     * @param value value of the characteristic
+     */
+    void onCharacteristicRead(boolean success, byte[] value) {
+        if (operationQueue.getCurrentAction() instanceof ReadAction) {
+            operationQueue.complete(success, value);
+        }
+    }
+
+    /**
+     * Called from {@link android.bluetooth.BluetoothGattCallback#onCharacteristicWrite}
+     *
+     * @param success whether or not the GATT write succeeded
+     * @param value value of the characteristic reported by the callback
+     */
+    void onCharacteristicWrite(boolean success, byte[] value) {
+        BlueAction currentAction = operationQueue.getCurrentAction();
+        if (currentAction instanceof WriteAction) {
+            WriteAction writeAction = (WriteAction) currentAction;
+            WriteFragmenter fragmenter = writeFragmenter;
+            if (fragmenter != null && fragmenter.getAction() == writeAction) {
+                WriteFragmenter.Progress progress = fragmenter.onFragmentWritten(success, value);
+                if (progress == WriteFragmenter.Progress.WRITING) {
+                    // the action stays issued until its last fragment is written
+                    return;
+                }
+                writeFragmenter = null;
+                operationQueue.complete(progress == WriteFragmenter.Progress.SUCCEEDED, writeAction.getValue());
+            } else {
+                operationQueue.complete(success && Arrays.equals(value, writeAction.getValue()), writeAction.getValue());
+            }
+        }
+    }
+
+    /**
+     * Fails the operations of the device and drops its notify operations, called when the device disconnects.
+     * Subscriptions are closed by {@link BlueDeviceController}.
+     */
+    void close() {
+        operationQueue.close();
+        notifyOperations.clear();
+    }
+}
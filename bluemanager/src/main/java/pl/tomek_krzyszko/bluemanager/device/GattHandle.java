@@ -0,0 +1,29 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import android.bluetooth.BluetoothGattCharacteristic;
+import android.bluetooth.BluetoothGattDescriptor;
+
+/**
+ * Characteristic of a connected device with its notification enabling descriptor, resolved once by {@link GattHandleCache}
+ */
+public final class GattHandle {
+
+    private final BluetoothGattCharacteristic characteristic;
+    private final BluetoothGattDescriptor notificationDescriptor;
+
+    GattHandle(BluetoothGattCharacteristic characteristic, BluetoothGattDescriptor notificationDescriptor) {
+        this.characteristic = characteristic;
+        this.notificationDescriptor = notificationDescriptor;
+    }
+
+    public BluetoothGattCharacteristic getCharacteristic() {
+        return characteristic;
+    }
+
+    /**
+     * @return descriptor with {@link pl.tomek_krzyszko.bluemanager.BlueConfig#getNotificationsEnablingDescriptorUUID()}, null if the characteristic has none
+     */
+    public BluetoothGattDescriptor getNotificationDescriptor() {
+        return notificationDescriptor;
+    }
+}
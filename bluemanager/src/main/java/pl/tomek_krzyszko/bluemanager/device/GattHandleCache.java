@@ -0,0 +1,74 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Index of GATT handles of a connected device by service and characteristic {@link UUID}, built once when services are discovered.
+ * Replaces the walk over all services, their characteristics and descriptors on every action with two hash lookups.
+ * The index is immutable after {@link Builder#build()}, so it is read without locking and replaced as a whole when services change.
+ *
+ * @param <T> type of the handle, {@link GattHandle} in {@link BlueDeviceController}
+ */
+public final class GattHandleCache<T> {
+
+    private final Map<UUID, Map<UUID, T>> handles;
+    private final int size;
+
+    private GattHandleCache(Map<UUID, Map<UUID, T>> handles, int size) {
+        this.handles = handles;
+        this.size = size;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    /**
+     * @param service service {@link UUID}
+     * @param characteristic characteristic {@link UUID}
+     * @return handle of the characteristic or null if the device does not have it
+     */
+    public T get(UUID service, UUID characteristic) {
+        Map<UUID, T> characteristics = handles.get(service);
+        return characteristics != null ? characteristics.get(characteristic) : null;
+    }
+
+    /**
+     * @return number of indexed characteristics
+     */
+    public int size() {
+        return size;
+    }
+
+    public static final class Builder<T> {
+
+        private final Map<UUID, Map<UUID, T>> handles = new HashMap<>();
+        private int size = 0;
+
+        private Builder() {
+        }
+
+        /**
+         * Adds a handle unless the pair is indexed already. Services are added in discovery order,
+         * so a characteristic present in several instances of a service resolves to the first one, like the linear walk.
+         */
+        public Builder<T> put(UUID service, UUID characteristic, T handle) {
+            Map<UUID, T> characteristics = handles.get(service);
+            if (characteristics == null) {
+                characteristics = new HashMap<>();
+                handles.put(service, characteristics);
+            }
+            if (!characteristics.containsKey(characteristic)) {
+                characteristics.put(characteristic, handle);
+                size++;
+            }
+            return this;
+        }
+
+        public GattHandleCache<T> build() {
+            return new GattHandleCache<>(handles, size);
+        }
+    }
+}
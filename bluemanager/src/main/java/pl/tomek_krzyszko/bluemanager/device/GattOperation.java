@@ -0,0 +1,135 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
+
+/**
+ * Completion handle of one {@link BlueAction} submitted to a connected device. The handle carries the action's own listener,
+ * so GATT callbacks of the device complete exactly the operation they belong to, whatever other actions or devices are in flight.
+ * Returned by {@link BlueDeviceController#submitAction(BlueDevice, BlueAction, BlueDeviceActionListener)}.
+ */
+public final class GattOperation {
+
+    public enum Status {
+        /**
+         * Waiting in {@link GattOperationQueue} of the device
+         */
+        QUEUED,
+        /**
+         * Issued to the device, waiting for its GATT callback
+         */
+        ISSUED,
+        SUCCEEDED,
+        /**
+         * Failed, refused by the stack or dropped by a disconnection
+         */
+        FAILED,
+        /**
+         * Removed from the queue with {@link GattOperation#cancel()} before it was issued
+         */
+        CANCELLED
+    }
+
+    private final GattOperationQueue queue;
+    private final BlueDevice blueDevice;
+    private final BlueAction blueAction;
+    private final BlueDeviceActionListener listener;
+    private final long enqueuedAtNanos;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    private volatile Status status = Status.QUEUED;
+    private volatile byte[] value;
+
+    GattOperation(GattOperationQueue queue, BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener listener) {
+        this.queue = queue;
+        this.blueDevice = blueDevice;
+        this.blueAction = blueAction;
+        this.listener = listener;
+        this.enqueuedAtNanos = System.nanoTime();
+    }
+
+    public BlueDevice getDevice() {
+        return blueDevice;
+    }
+
+    public BlueAction getAction() {
+        return blueAction;
+    }
+
+    BlueDeviceActionListener getListener() {
+        return listener;
+    }
+
+    long getEnqueuedAtNanos() {
+        return enqueuedAtNanos;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return value of the characteristic or descriptor passed on success, null otherwise
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    /**
+     * @return true if the operation succeeded, failed or was cancelled
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Removes the operation from the queue if it has not been issued yet. The listener is not called for a cancelled operation.
+     *
+     * @return true if the operation was cancelled, false if it was issued or done already
+     */
+    public boolean cancel() {
+        return queue.cancel(this);
+    }
+
+    /**
+     * Waits until the operation is done. Must not be called on the thread receiving GATT callbacks.
+     *
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if the operation is done, false if the time elapsed
+     * @throws InterruptedException when the waiting thread is interrupted
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return done.await(timeout, unit);
+    }
+
+    void markIssued() {
+        status = Status.ISSUED;
+    }
+
+    void markCancelled() {
+        status = Status.CANCELLED;
+        done.countDown();
+    }
+
+    /**
+     * Completes the handle and calls the listener on the calling thread
+     */
+    void finish(boolean success, byte[] value) {
+        if (success) {
+            this.value = value;
+        }
+        status = success ? Status.SUCCEEDED : Status.FAILED;
+        done.countDown();
+        if (listener != null) {
+            if (success) {
+                listener.onActionSuccess(blueDevice, blueAction, value);
+            } else {
+                listener.onActionFailure(blueDevice, blueAction);
+            }
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.action.WriteAction;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
+
+/**
+ * GattOperations of one connected Bluetooth Low Energy device. Android runs one GATT operation of a connection at a time,
+ * so actions are accepted at any time and issued one after another: the next one is issued the moment the GATT callback
+ * of the previous one completes it. Every device has its own queue, queues of different devices progress in parallel.
+ * Every action is wrapped in its own {@link GattOperation} handle carrying its listener. Listeners are never called with the queue's lock held.
+ */
+public class GattOperationQueue {
+
+    /**
+     * Starts GATT operations of {@link BlueAction}s, implemented by {@link BlueDeviceController} with {@link android.bluetooth.BluetoothGatt}
+     */
+    public interface Issuer {
+
+        /**
+         * @param blueAction action to start
+         * @return false if the operation could not be started, the action fails then and the next one is issued
+         */
+        boolean issue(BlueAction blueAction);
+    }
+
+    private final BlueDevice blueDevice;
+    private final Issuer issuer;
+
+    private final ArrayDeque<GattOperation> pending = new ArrayDeque<>();
+
+    /**
+     * Operation issued to the device and waiting for its GATT callback, null when the device is idle
+     */
+    private GattOperation current;
+    private long currentIssuedAtNanos;
+    private boolean closed = false;
+
+    private int maxDepth = 0;
+    private long issuedCount = 0;
+    private long completedCount = 0;
+    private long failedCount = 0;
+    private long cancelledCount = 0;
+    private long totalWaitNanos = 0;
+    private long maxWaitNanos = 0;
+    private long writtenBytes = 0;
+    private long writeNanos = 0;
+
+    /**
+     * @param blueDevice {@link BlueDevice} passed to listeners, its current action follows the issued operation
+     * @param issuer {@link Issuer} starting the operations
+     */
+    public GattOperationQueue(BlueDevice blueDevice, Issuer issuer) {
+        this.blueDevice = blueDevice;
+        this.issuer = issuer;
+    }
+
+    /**
+     * Adds the action to the queue, it is issued right away when the device is idle.
+     *
+     * @param blueAction {@link BlueAction} to perform
+     * @param listener {@link BlueDeviceActionListener} notified when the action completes, may be null
+     * @return handle of the operation or null if the queue is closed because the device disconnected
+     */
+    public GattOperation enqueue(BlueAction blueAction, BlueDeviceActionListener listener) {
+        GattOperation operation = new GattOperation(this, blueDevice, blueAction, listener);
+        synchronized (this) {
+            if (closed) {
+                return null;
+            }
+            pending.add(operation);
+            maxDepth = Math.max(maxDepth, depth());
+            if (current != null) {
+                return operation;
+            }
+        }
+        issueNext();
+        return operation;
+    }
+
+    /**
+     * Called by {@link GattOperation#cancel()}
+     */
+    boolean cancel(GattOperation operation) {
+        synchronized (this) {
+            if (!pending.remove(operation)) {
+                return false;
+            }
+            cancelledCount++;
+        }
+        operation.markCancelled();
+        return true;
+    }
+
+    /**
+     * Called from the GATT callback which completed the issued operation. The next operation is issued
+     * before the listener of the completed one is called.
+     *
+     * @param success whether or not the operation succeeded
+     * @param value value of the characteristic or descriptor, passed to the listener on success
+     * @return the completed operation, null if no operation was issued
+     */
+    GattOperation complete(boolean success, byte[] value) {
+        GattOperation completed;
+        synchronized (this) {
+            completed = current;
+            if (completed == null) {
+                return null;
+            }
+            current = null;
+            blueDevice.setCurrentAction(null);
+            if (success) {
+                completedCount++;
+                if (completed.getAction() instanceof WriteAction && value != null) {
+                    writtenBytes += value.length;
+                    writeNanos += System.nanoTime() - currentIssuedAtNanos;
+                }
+            } else {
+                failedCount++;
+            }
+        }
+        issueNext();
+        completed.finish(success, value);
+        return completed;
+    }
+
+    /**
+     * Fails the issued and all waiting operations and rejects new ones. Called when the device disconnects.
+     */
+    public void close() {
+        List<GattOperation> failed = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (current != null) {
+                failed.add(current);
+                current = null;
+                blueDevice.setCurrentAction(null);
+            }
+            failed.addAll(pending);
+            pending.clear();
+            failedCount += failed.size();
+        }
+        for (GattOperation operation : failed) {
+            operation.finish(false, null);
+        }
+    }
+
+    private void issueNext() {
+        while (true) {
+            GattOperation next;
+            synchronized (this) {
+                if (current != null || closed || pending.isEmpty()) {
+                    return;
+                }
+                next = pending.poll();
+                current = next;
+                next.markIssued();
+                blueDevice.setCurrentAction(next.getAction());
+                currentIssuedAtNanos = System.nanoTime();
+                issuedCount++;
+                long waitNanos = currentIssuedAtNanos - next.getEnqueuedAtNanos();
+                totalWaitNanos += waitNanos;
+                maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+            }
+            if (issuer.issue(next.getAction())) {
+                return;
+            }
+            synchronized (this) {
+                if (current != next) {
+                    // completed or closed meanwhile
+                    continue;
+                }
+                current = null;
+                blueDevice.setCurrentAction(null);
+                failedCount++;
+            }
+            next.finish(false, null);
+        }
+    }
+
+    private int depth() {
+        return pending.size() + (current != null ? 1 : 0);
+    }
+
+    /**
+     * @return number of operations issued or waiting
+     */
+    public synchronized int getDepth() {
+        return depth();
+    }
+
+    /**
+     * @return action of the operation issued to the device, null when the device is idle
+     */
+    public synchronized BlueAction getCurrentAction() {
+        return current != null ? current.getAction() : null;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return depth, counters, wait times and write throughput of the queue
+     */
+    public synchronized GattQueueStats getStats() {
+        return new GattQueueStats(depth(), maxDepth, issuedCount, completedCount, failedCount, cancelledCount,
+                issuedCount > 0 ? totalWaitNanos / issuedCount / 1000 : 0, maxWaitNanos / 1000,
+                blueDevice.getMtu(), writtenBytes, writeNanos > 0 ? writtenBytes * 1000000000L / writeNanos : 0);
+    }
+}
@@ -0,0 +1,112 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+/**
+ * Immutable copy of the counters of {@link GattOperationQueue}.
+ */
+public final class GattQueueStats {
+
+    private final int depth;
+    private final int maxDepth;
+    private final long issuedCount;
+    private final long completedCount;
+    private final long failedCount;
+    private final long cancelledCount;
+    private final long averageWaitMicros;
+    private final long maxWaitMicros;
+    private final int mtu;
+    private final long writtenBytes;
+    private final long writeBytesPerSecond;
+
+    GattQueueStats(int depth, int maxDepth, long issuedCount, long completedCount, long failedCount,
+                   long cancelledCount, long averageWaitMicros, long maxWaitMicros,
+                   int mtu, long writtenBytes, long writeBytesPerSecond) {
+        this.depth = depth;
+        this.maxDepth = maxDepth;
+        this.issuedCount = issuedCount;
+        this.completedCount = completedCount;
+        this.failedCount = failedCount;
+        this.cancelledCount = cancelledCount;
+        this.averageWaitMicros = averageWaitMicros;
+        this.maxWaitMicros = maxWaitMicros;
+        this.mtu = mtu;
+        this.writtenBytes = writtenBytes;
+        this.writeBytesPerSecond = writeBytesPerSecond;
+    }
+
+    /**
+     * @return number of operations issued or waiting
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return highest depth since the device was connected
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return number of operations issued to the device
+     */
+    public long getIssuedCount() {
+        return issuedCount;
+    }
+
+    /**
+     * @return number of operations completed successfully
+     */
+    public long getCompletedCount() {
+        return completedCount;
+    }
+
+    /**
+     * @return number of operations which failed, could not be issued or were dropped by a disconnection
+     */
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**
+     * @return number of operations removed from the queue with {@link GattOperation#cancel()}
+     */
+    public long getCancelledCount() {
+        return cancelledCount;
+    }
+
+    /**
+     * @return average time in microseconds between adding an operation to the queue and issuing it
+     */
+    public long getAverageWaitMicros() {
+        return averageWaitMicros;
+    }
+
+    /**
+     * @return longest time in microseconds an operation waited in the queue
+     */
+    public long getMaxWaitMicros() {
+        return maxWaitMicros;
+    }
+
+    /**
+     * @return MTU of the connection when the stats were taken
+     */
+    public int getMtu() {
+        return mtu;
+    }
+
+    /**
+     * @return number of bytes of {@link pl.tomek_krzyszko.bluemanager.action.WriteAction}s completed successfully
+     */
+    public long getWrittenBytes() {
+        return writtenBytes;
+    }
+
+    /**
+     * @return effective write throughput: written bytes divided by the time their actions were issued, all fragments included
+     */
+    public long getWriteBytesPerSecond() {
+        return writeBytesPerSecond;
+    }
+}
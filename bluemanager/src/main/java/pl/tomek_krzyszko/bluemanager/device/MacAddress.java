@@ -0,0 +1,77 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+/**
+ * Conversion between textual hardware addresses ({@code XX:XX:XX:XX:XX:XX}) and 48-bit values packed into a {@code long}.
+ * Packed addresses are compared and hashed as primitives, so the scanner uses them internally
+ * and keeps {@link String} addresses only at the API boundary.
+ */
+public final class MacAddress {
+
+    /**
+     * Returned by {@link MacAddress#pack(String)} for malformed addresses. Valid packed addresses are never negative.
+     */
+    public static final long INVALID = -1L;
+
+    private static final int LENGTH = 17;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private MacAddress() {
+    }
+
+    /**
+     * Parses the address without allocating. Upper and lower case digits are accepted.
+     *
+     * @param address hardware address, e.g. 00:11:22:AA:BB:CC
+     * @return address packed into the 48 low bits or {@link MacAddress#INVALID}
+     */
+    public static long pack(String address) {
+        if (address == null || address.length() != LENGTH) {
+            return INVALID;
+        }
+        long value = 0;
+        for (int i = 0; i < LENGTH; i += 3) {
+            int high = digit(address.charAt(i));
+            int low = digit(address.charAt(i + 1));
+            if (high < 0 || low < 0 || (i + 2 < LENGTH && address.charAt(i + 2) != ':')) {
+                return INVALID;
+            }
+            value = value << 8 | high << 4 | low;
+        }
+        return value;
+    }
+
+    /**
+     * @param packedAddress value returned by {@link MacAddress#pack(String)}
+     * @return upper case hardware address
+     */
+    public static String unpack(long packedAddress) {
+        if (packedAddress < 0 || packedAddress > 0xFFFFFFFFFFFFL) {
+            throw new IllegalArgumentException("Invalid packed address: " + packedAddress);
+        }
+        char[] chars = new char[LENGTH];
+        for (int i = 0; i < 6; i++) {
+            int octet = (int) (packedAddress >>> (40 - 8 * i)) & 0xFF;
+            chars[3 * i] = HEX_DIGITS[octet >>> 4];
+            chars[3 * i + 1] = HEX_DIGITS[octet & 0x0F];
+            if (i < 5) {
+                chars[3 * i + 2] = ':';
+            }
+        }
+        return new String(chars);
+    }
+
+    public static boolean isValid(String address) {
+        return pack(address) != INVALID;
+    }
+
+    private static int digit(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        } else if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        } else if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,67 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+/**
+ * Reusable holder of one notification copied out of {@link NotificationSubscription} by
+ * {@link NotificationSubscription#poll(NotificationPacket)}. The consumer keeps one packet and polls into it repeatedly,
+ * so reading notifications does not allocate.
+ */
+public final class NotificationPacket {
+
+    private final byte[] value;
+    private int length;
+    private long sequence = -1;
+    private long timestampNanos;
+
+    /**
+     * @param capacity size of the value array, notifications longer than that are truncated when polled,
+     *                 use {@link NotificationSubscription#getSlotSize()} to fit every notification
+     */
+    public NotificationPacket(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.value = new byte[capacity];
+    }
+
+    void set(byte[] source, int length, long sequence, long timestampNanos) {
+        this.length = Math.min(length, value.length);
+        System.arraycopy(source, 0, value, 0, this.length);
+        this.sequence = sequence;
+        this.timestampNanos = timestampNanos;
+    }
+
+    /**
+     * @return array holding the value in its first {@link #getLength()} bytes, reused by the next poll
+     */
+    public byte[] getValue() {
+        return value;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * @return copy of the value trimmed to its length
+     */
+    public byte[] copyValue() {
+        byte[] copy = new byte[length];
+        System.arraycopy(value, 0, copy, 0, length);
+        return copy;
+    }
+
+    /**
+     * @return number of the notification within the subscription, starting at 0. A gap between two polled
+     * packets means notifications were overwritten because the consumer was too slow
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @return {@link System#nanoTime()} when the notification was received
+     */
+    public long getTimestampNanos() {
+        return timestampNanos;
+    }
+}
@@ -0,0 +1,66 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+/**
+ * Immutable copy of the counters of {@link NotificationSubscription}.
+ */
+public final class NotificationStats {
+
+    private final long receivedCount;
+    private final long polledCount;
+    private final long overrunCount;
+    private final long truncatedCount;
+    private final int bufferedCount;
+    private final int maxBufferedCount;
+
+    NotificationStats(long receivedCount, long polledCount, long overrunCount, long truncatedCount,
+                      int bufferedCount, int maxBufferedCount) {
+        this.receivedCount = receivedCount;
+        this.polledCount = polledCount;
+        this.overrunCount = overrunCount;
+        this.truncatedCount = truncatedCount;
+        this.bufferedCount = bufferedCount;
+        this.maxBufferedCount = maxBufferedCount;
+    }
+
+    /**
+     * @return number of notifications received while the subscription was open, equal to the next sequence number
+     */
+    public long getReceivedCount() {
+        return receivedCount;
+    }
+
+    /**
+     * @return number of notifications polled by the consumer
+     */
+    public long getPolledCount() {
+        return polledCount;
+    }
+
+    /**
+     * @return number of notifications overwritten before they were polled because the buffer was full
+     */
+    public long getOverrunCount() {
+        return overrunCount;
+    }
+
+    /**
+     * @return number of notifications longer than a slot of the buffer
+     */
+    public long getTruncatedCount() {
+        return truncatedCount;
+    }
+
+    /**
+     * @return number of notifications waiting in the buffer
+     */
+    public int getBufferedCount() {
+        return bufferedCount;
+    }
+
+    /**
+     * @return highest number of notifications waiting in the buffer at once
+     */
+    public int getMaxBufferedCount() {
+        return maxBufferedCount;
+    }
+}
@@ -0,0 +1,262 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import pl.tomek_krzyszko.bluemanager.action.NotifyAction;
+import pl.tomek_krzyszko.bluemanager.callback.NotificationListener;
+
+/**
+ * Notifications of one characteristic of a connected device, active until it is cancelled or the device disconnects.
+ * A device can have subscriptions of many characteristics at once.
+ * Notifications are copied on the Bluetooth binder thread into preallocated slots of a ring buffer and numbered,
+ * the consumer copies them out with {@link #poll(NotificationPacket)}, so no object is allocated per notification.
+ * When the consumer falls behind the oldest notification is overwritten and counted as an overrun.
+ * Returned by {@link BlueDeviceController#subscribe(BlueDevice, NotifyAction, NotificationListener)}.
+ */
+public class NotificationSubscription {
+
+    public enum Status {
+        /**
+         * Waiting for the notification descriptor of the characteristic to be written
+         */
+        ENABLING,
+        /**
+         * Receiving notifications
+         */
+        ACTIVE,
+        /**
+         * Ended with {@link NotificationSubscription#cancel()}
+         */
+        CANCELLED,
+        /**
+         * Ended because notifications could not be enabled or the device disconnected
+         */
+        CLOSED
+    }
+
+    /**
+     * Disables notifications of a cancelled subscription, implemented by {@link BlueDeviceController}
+     */
+    interface Canceller {
+
+        void cancel(NotificationSubscription subscription);
+    }
+
+    private final BlueDevice blueDevice;
+    private final NotifyAction notifyAction;
+    private final NotificationListener listener;
+    private final Executor executor;
+    private final Canceller canceller;
+
+    private final byte[][] slots;
+    private final int[] lengths;
+    private final long[] sequences;
+    private final long[] timestamps;
+
+    /**
+     * Index of the oldest buffered notification
+     */
+    private int head = 0;
+
+    /**
+     * Number of buffered notifications
+     */
+    private int size = 0;
+
+    private volatile Status status = Status.ENABLING;
+
+    private long receivedCount = 0;
+    private long polledCount = 0;
+    private long overrunCount = 0;
+    private long truncatedCount = 0;
+    private int maxSize = 0;
+
+    /**
+     * Whether or not {@link #signal} has been passed to the executor and not run yet
+     */
+    private final AtomicBoolean signalPending = new AtomicBoolean(false);
+
+    private final Runnable signal = new Runnable() {
+        @Override
+        public void run() {
+            signalPending.set(false);
+            listener.onNotificationsAvailable(NotificationSubscription.this);
+        }
+    };
+
+    /**
+     * @param blueDevice {@link BlueDevice} of the characteristic
+     * @param notifyAction {@link NotifyAction} which enabled notifications of the characteristic
+     * @param capacity number of preallocated slots
+     * @param slotSize size in bytes of one slot
+     * @param listener {@link NotificationListener} of the subscription, may be null when the consumer polls on its own
+     * @param executor {@link Executor} running listener callbacks, null to run them on the thread which received the notification
+     * @param canceller {@link Canceller} disabling notifications when the subscription is cancelled
+     */
+    NotificationSubscription(BlueDevice blueDevice, NotifyAction notifyAction, int capacity, int slotSize,
+                             NotificationListener listener, Executor executor, Canceller canceller) {
+        if (capacity <= 0 || slotSize <= 0) {
+            throw new IllegalArgumentException("Capacity and slot size must be positive");
+        }
+        this.blueDevice = blueDevice;
+        this.notifyAction = notifyAction;
+        this.listener = listener;
+        this.executor = executor;
+        this.canceller = canceller;
+        this.slots = new byte[capacity][slotSize];
+        this.lengths = new int[capacity];
+        this.sequences = new long[capacity];
+        this.timestamps = new long[capacity];
+    }
+
+    public BlueDevice getDevice() {
+        return blueDevice;
+    }
+
+    public NotifyAction getAction() {
+        return notifyAction;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    /**
+     * @return true if the subscription is enabling or receiving notifications
+     */
+    public boolean isOpen() {
+        Status current = status;
+        return current == Status.ENABLING || current == Status.ACTIVE;
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public int getSlotSize() {
+        return slots[0].length;
+    }
+
+    /**
+     * @return packet holding the longest notification of the subscription, to be reused for all polls
+     */
+    public NotificationPacket newPacket() {
+        return new NotificationPacket(getSlotSize());
+    }
+
+    /**
+     * Copies the notification into the next slot, called on the thread which received it.
+     *
+     * @param value value of the characteristic
+     * @return false if the subscription is not open and the notification was dropped
+     */
+    boolean offer(byte[] value) {
+        synchronized (this) {
+            if (!isOpen()) {
+                return false;
+            }
+            if (size == slots.length) {
+                head = (head + 1) % slots.length;
+                size--;
+                overrunCount++;
+            }
+            int index = (head + size) % slots.length;
+            int length = value != null ? value.length : 0;
+            if (length > slots[index].length) {
+                length = slots[index].length;
+                truncatedCount++;
+            }
+            if (length > 0) {
+                System.arraycopy(value, 0, slots[index], 0, length);
+            }
+            lengths[index] = length;
+            sequences[index] = receivedCount++;
+            timestamps[index] = System.nanoTime();
+            size++;
+            maxSize = Math.max(maxSize, size);
+        }
+        if (listener != null && signalPending.compareAndSet(false, true)) {
+            run(signal);
+        }
+        return true;
+    }
+
+    /**
+     * Moves the oldest buffered notification to the given packet.
+     *
+     * @param out {@link NotificationPacket} which receives the notification
+     * @return true if a notification was copied, false if the buffer is empty
+     */
+    public synchronized boolean poll(NotificationPacket out) {
+        if (size == 0) {
+            return false;
+        }
+        out.set(slots[head], lengths[head], sequences[head], timestamps[head]);
+        head = (head + 1) % slots.length;
+        size--;
+        polledCount++;
+        return true;
+    }
+
+    /**
+     * Ends the subscription and disables notifications of the characteristic. Notifications still in the buffer can be polled.
+     *
+     * @return true if the subscription was cancelled, false if it had already ended
+     */
+    public boolean cancel() {
+        if (!end(Status.CANCELLED)) {
+            return false;
+        }
+        if (canceller != null) {
+            canceller.cancel(this);
+        }
+        return true;
+    }
+
+    /**
+     * Called when the notification descriptor of the characteristic was written
+     */
+    void onEnabled() {
+        synchronized (this) {
+            if (status == Status.ENABLING) {
+                status = Status.ACTIVE;
+            }
+        }
+    }
+
+    /**
+     * Ends the subscription without disabling notifications, called when they could not be enabled or the device disconnected
+     */
+    void close() {
+        end(Status.CLOSED);
+    }
+
+    private boolean end(Status endStatus) {
+        synchronized (this) {
+            if (!isOpen()) {
+                return false;
+            }
+            status = endStatus;
+        }
+        if (listener != null) {
+            run(() -> listener.onSubscriptionClosed(this));
+        }
+        return true;
+    }
+
+    private void run(Runnable runnable) {
+        if (executor != null) {
+            executor.execute(runnable);
+        } else {
+            runnable.run();
+        }
+    }
+
+    /**
+     * @return counters of received, polled and overwritten notifications
+     */
+    public synchronized NotificationStats getStats() {
+        return new NotificationStats(receivedCount, polledCount, overrunCount, truncatedCount, size, maxSize);
+    }
+}
@@ -0,0 +1,123 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import java.util.Arrays;
+
+import pl.tomek_krzyszko.bluemanager.action.WriteAction;
+
+/**
+ * Writes the value of a {@link WriteAction} longer than one GATT write of the connection in consecutive fragments.
+ * Fragments are written one after another while the action stays the issued operation of {@link GattOperationQueue},
+ * so the action completes once, when its last fragment is written or the first one fails. Every fragment is a separate
+ * write of the characteristic and overwrites the previous one, the peripheral has to join them.
+ * Used only when {@link pl.tomek_krzyszko.bluemanager.BlueConfig#getRequestedMtu()} is set.
+ */
+public final class WriteFragmenter {
+
+    /**
+     * MTU of a connection before it is negotiated
+     */
+    public static final int DEFAULT_MTU = 23;
+
+    /**
+     * Bytes of every write taken by the ATT opcode and attribute handle
+     */
+    public static final int ATT_WRITE_HEADER_SIZE = 3;
+
+    public enum Progress {
+        /**
+         * The next fragment is being written
+         */
+        WRITING,
+        /**
+         * The last fragment was written
+         */
+        SUCCEEDED,
+        /**
+         * A fragment failed, was not written as sent or could not be started
+         */
+        FAILED
+    }
+
+    /**
+     * Starts the write of one fragment, implemented by {@link BlueDeviceController} with {@link android.bluetooth.BluetoothGatt}
+     */
+    interface Writer {
+
+        /**
+         * @return false if the write could not be started
+         */
+        boolean write(WriteAction writeAction, byte[] fragment);
+    }
+
+    private final WriteAction writeAction;
+    private final byte[] value;
+    private final int fragmentSize;
+    private final Writer writer;
+    private int offset = 0;
+    private byte[] fragment;
+
+    /**
+     * @param writeAction {@link WriteAction} with the value to split
+     * @param fragmentSize longest value of one write, see {@link #fragmentSize(int)}
+     * @param writer {@link Writer} starting the writes
+     */
+    WriteFragmenter(WriteAction writeAction, int fragmentSize, Writer writer) {
+        if (fragmentSize <= 0) {
+            throw new IllegalArgumentException("Fragment size must be positive");
+        }
+        this.writeAction = writeAction;
+        this.value = writeAction.getValue() != null ? writeAction.getValue() : new byte[0];
+        this.fragmentSize = fragmentSize;
+        this.writer = writer;
+    }
+
+    /**
+     * @param mtu MTU of the connection
+     * @return longest value of one write with the given MTU
+     */
+    public static int fragmentSize(int mtu) {
+        return mtu - ATT_WRITE_HEADER_SIZE;
+    }
+
+    public WriteAction getAction() {
+        return writeAction;
+    }
+
+    public int getFragmentCount() {
+        return (value.length + fragmentSize - 1) / fragmentSize;
+    }
+
+    /**
+     * Writes the first fragment
+     *
+     * @return false if the write could not be started
+     */
+    boolean start() {
+        return writeNext();
+    }
+
+    /**
+     * Called from the GATT callback of the written fragment, writes the next one if the fragment succeeded
+     *
+     * @param success whether or not the GATT write succeeded
+     * @param writtenValue value of the characteristic reported by the callback
+     * @return {@link Progress#WRITING} while fragments remain, otherwise the result of the whole action
+     */
+    Progress onFragmentWritten(boolean success, byte[] writtenValue) {
+        if (!success || !Arrays.equals(writtenValue, fragment)) {
+            return Progress.FAILED;
+        }
+        if (offset == value.length) {
+            return Progress.SUCCEEDED;
+        }
+        return writeNext() ? Progress.WRITING : Progress.FAILED;
+    }
+
+    private boolean writeNext() {
+        int length = Math.min(fragmentSize, value.length - offset);
+        fragment = new byte[length];
+        System.arraycopy(value, offset, fragment, 0, length);
+        offset += length;
+        return writer.write(writeAction, fragment);
+    }
+}
@@ -12,29 +12,43 @@ import android.os.IBinder;
 
 import androidx.localbroadcastmanager.content.LocalBroadcastManager;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.UUID;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 
 import javax.inject.Inject;
 
 import pl.tomek_krzyszko.bluemanager.BlueConfig;
 import pl.tomek_krzyszko.bluemanager.BlueManager;
 import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.action.NotifyAction;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconFilter;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconFrame;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconRegistry;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceBatchScanListener;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceConnectionListener;
 import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.callback.CallbackExecutors;
+import pl.tomek_krzyszko.bluemanager.callback.NotificationListener;
+import pl.tomek_krzyszko.bluemanager.callback.TargetScanListener;
 import pl.tomek_krzyszko.bluemanager.dagger.modules.ScannerModule;
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingIntervalEstimator;
 import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
 import pl.tomek_krzyszko.bluemanager.device.BlueDeviceController;
+import pl.tomek_krzyszko.bluemanager.device.DeviceRegistry;
+import pl.tomek_krzyszko.bluemanager.device.GattOperation;
+import pl.tomek_krzyszko.bluemanager.device.GattOperationQueue;
+import pl.tomek_krzyszko.bluemanager.device.GattQueueStats;
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
+import pl.tomek_krzyszko.bluemanager.device.NotificationSubscription;
 import timber.log.Timber;
 
 /**
@@ -47,10 +61,12 @@ public class BlueScanner extends Service {
 
     @Inject BlueConfig blueConfig;
     @Inject BlueScannerTask blueScannerTask;
-    @Inject Set<BlueDeviceScanListener> blueDeviceScanListeners;
-    @Inject Map<String, BlueDevice> discoveredDevices;
+    @Inject ScanListenerDispatcher scanListenerDispatcher;
+    @Inject DeviceRegistry discoveredDevices;
+    @Inject ExpiryWheel<BlueDevice> expiryWheel;
     @Inject Handler handler;
     @Inject BlueDeviceController blueDeviceController;
+    @Inject BeaconRegistry beaconRegistry;
 
     /**
      * Holds information about devices currently connected to.
@@ -58,7 +74,7 @@ public class BlueScanner extends Service {
      * They can be used to perform actions.
      * Mapping between hardware address and {@link BlueDevice} object.
      */
-    Map<String, BlueDevice> connectedDevices = new HashMap<>();
+    DeviceRegistry connectedDevices = new DeviceRegistry();
 
     /**
      * Whether or not the scanner is running for bluetooth low energy devices or not
@@ -70,9 +86,119 @@ public class BlueScanner extends Service {
      */
     private Timer timer = new Timer();
 
+    /**
+     * Task of {@link BlueScanner#timer} checking lost devices, null when it is not scheduled
+     */
+    private TimerTask deviceCheckTask;
+
+    /**
+     * Guards {@link BlueScanner#timer}, the service lock cannot be used because sessions start the scan with the session lock held
+     */
+    private final Object deviceCheckLock = new Object();
+
+    /**
+     * Sessions sharing one hardware scan, see {@link BlueScanner#openScanSession(ScanCriteria, BlueDeviceScanListener, boolean)}
+     */
+    private ScanSessionManager scanSessionManager;
+
+    /**
+     * Runs the hardware scan for {@link BlueScanner#scanSessionManager}. It does not take the service lock,
+     * the manager calls it with its own lock held.
+     */
+    private final ScanSessionManager.SharedScan sessionScan = new ScanSessionManager.SharedScan() {
+        @Override
+        public void start(Set<ScanCriteria> union, boolean lowEnergy) {
+            startSessionScan(union, lowEnergy);
+        }
+
+        @Override
+        public void reconfigure(Set<ScanCriteria> union) {
+            blueScannerTask.setScanCriteria(union);
+            blueScannerTask.reconfigure();
+        }
+
+        @Override
+        public void stop() {
+            stopDeviceCheck();
+            blueScannerTask.stop();
+        }
+    };
+
+    /**
+     * Called by {@link BlueScanner#expiryWheel} for devices which have not been scanned before their deadline
+     */
+    private final ExpiryWheel.ExpiryHandler<BlueDevice> lostDeviceHandler = this::onExpired;
+
+    /**
+     * Rate limits {@link BlueDeviceScanListener#onDeviceUpdate(BlueDevice)} callbacks per device
+     */
+    private UpdateConflator<BlueDevice> updateConflator;
+
+    /**
+     * Listeners receiving one {@link ScanDelta} per batch interval
+     */
+    private final Set<BlueDeviceBatchScanListener> blueDeviceBatchScanListeners = new CopyOnWriteArraySet<>();
+
+    /**
+     * Changes collected for {@link BlueScanner#blueDeviceBatchScanListeners} since the last batch
+     */
+    private final ScanDeltaAccumulator scanDeltaAccumulator = new ScanDeltaAccumulator();
+
+    /**
+     * Delivers the collected batch on main thread and schedules the next one
+     */
+    private final Runnable batchTick = new Runnable() {
+        @Override
+        public void run() {
+            if (batchCallbackExecutor != null) {
+                batchCallbackExecutor.execute(batchDelivery);
+            } else {
+                deliverBatch();
+            }
+            if (!blueDeviceBatchScanListeners.isEmpty()) {
+                handler.postDelayed(this, blueConfig.getScanBatchIntervalMillis());
+            }
+        }
+    };
+
+    /**
+     * {@link Executor} of {@link BlueDeviceConnectionListener} callbacks
+     */
+    private Executor connectionCallbackExecutor;
+
+    /**
+     * {@link Executor} of {@link BlueDeviceBatchScanListener} callbacks, null when they run on the handler tick
+     */
+    private Executor batchCallbackExecutor;
+
+    private final Runnable batchDelivery = this::deliverBatch;
+
+    /**
+     * Targets of the running multi-target scan, null when no such scan is running
+     */
+    private volatile TargetTracker targetTracker;
+
+    /**
+     * Stops the multi-target scan when its deadline passes
+     */
+    private final Runnable targetDeadline = new Runnable() {
+        @Override
+        public void run() {
+            TargetTracker tracker = targetTracker;
+            if (tracker != null && tracker.expire()) {
+                stopTask();
+            }
+        }
+    };
+
     @Override
     public void onCreate() {
         injectDependencies();
+        updateConflator = new UpdateConflator<>(blueConfig.getMinUpdateIntervalMillis(), handler::postDelayed, this::deliverUpdate);
+        connectionCallbackExecutor = blueConfig.getConnectionCallbackExecutor() != null
+                ? blueConfig.getConnectionCallbackExecutor() : CallbackExecutors.handler(handler);
+        batchCallbackExecutor = blueConfig.getScanCallbackExecutor();
+        scanSessionManager = new ScanSessionManager(sessionScan);
         super.onCreate();
     }
 
@@ -101,7 +227,10 @@ public class BlueScanner extends Service {
 
     @Override
     public void onDestroy() {
+        scanSessionManager.closeAll();
         stopScan(isLowEnergy);
+        blueScannerTask.release();
+        handler.removeCallbacks(batchTick);
         disconnectAll();
         super.onDestroy();
     }
@@ -113,29 +242,108 @@ public class BlueScanner extends Service {
 
     public void addBlueDeviceScanListener(BlueDeviceScanListener blueDeviceScanListener) {
         if (blueDeviceScanListener != null) {
-            blueDeviceScanListeners.add(blueDeviceScanListener);
+            scanListenerDispatcher.add(blueDeviceScanListener);
         } else {
             throw new IllegalArgumentException("Argument cannot be null");
         }
     }
 
+    /**
+     * @param blueDeviceScanListener listener to add
+     * @param executor {@link Executor} on which the listener is called
+     * @param overflowPolicy {@link ListenerOverflowPolicy} used when the listener falls behind
+     */
+    public void addBlueDeviceScanListener(BlueDeviceScanListener blueDeviceScanListener, Executor executor, ListenerOverflowPolicy overflowPolicy) {
+        if (blueDeviceScanListener != null && executor != null && overflowPolicy != null) {
+            scanListenerDispatcher.add(blueDeviceScanListener, executor, overflowPolicy, blueConfig.getListenerMailboxCapacity());
+        } else {
+            throw new IllegalArgumentException("Argument cannot be null");
+        }
+    }
+
+    /**
+     * @return counters of the listener's mailbox or null if the listener is not registered
+     */
+    public ListenerMailboxStats getBlueDeviceScanListenerStats(BlueDeviceScanListener blueDeviceScanListener) {
+        return scanListenerDispatcher.getStats(blueDeviceScanListener);
+    }
+
     public boolean removeBlueDeviceScanListener(BlueDeviceScanListener blueDeviceScanListener) {
         if (blueDeviceScanListener != null) {
-            return blueDeviceScanListeners.remove(blueDeviceScanListener);
+            return scanListenerDispatcher.remove(blueDeviceScanListener);
         } else {
             throw new IllegalArgumentException("Argument cannot be null");
         }
     }
 
     public void removeAllBlueDeviceScanListener() {
-        blueDeviceScanListeners.clear();
+        scanListenerDispatcher.clear();
     }
 
-    public synchronized List<BlueDevice> getDiscoveredDevices() {
-        return new ArrayList<>(discoveredDevices.values());
+    public void addBlueDeviceBatchScanListener(BlueDeviceBatchScanListener blueDeviceBatchScanListener) {
+        if (blueDeviceBatchScanListener != null) {
+            if (blueDeviceBatchScanListeners.isEmpty()) {
+                // changes collected before the first listener was registered are not interesting to anyone
+                scanDeltaAccumulator.clear();
+                handler.removeCallbacks(batchTick);
+                handler.postDelayed(batchTick, blueConfig.getScanBatchIntervalMillis());
+            }
+            blueDeviceBatchScanListeners.add(blueDeviceBatchScanListener);
+        } else {
+            throw new IllegalArgumentException("Argument cannot be null");
+        }
+    }
+
+    public boolean removeBlueDeviceBatchScanListener(BlueDeviceBatchScanListener blueDeviceBatchScanListener) {
+        if (blueDeviceBatchScanListener != null) {
+            boolean removed = blueDeviceBatchScanListeners.remove(blueDeviceBatchScanListener);
+            if (blueDeviceBatchScanListeners.isEmpty()) {
+                handler.removeCallbacks(batchTick);
+                scanDeltaAccumulator.clear();
+            }
+            return removed;
+        } else {
+            throw new IllegalArgumentException("Argument cannot be null");
+        }
+    }
+
+    public void removeAllBlueDeviceBatchScanListener() {
+        blueDeviceBatchScanListeners.clear();
+        handler.removeCallbacks(batchTick);
+        scanDeltaAccumulator.clear();
     }
 
-    public synchronized BlueDevice getDiscoveredDevice(String address) {
+    /**
+     * Subscribes to a group of beacons, see {@link BeaconRegistry#addSubscription(BeaconFilter)}
+     */
+    public void addBeaconSubscription(BeaconFilter beaconFilter) {
+        if (beaconFilter != null) {
+            beaconRegistry.addSubscription(beaconFilter);
+        } else {
+            throw new IllegalArgumentException("Argument cannot be null");
+        }
+    }
+
+    public boolean removeBeaconSubscription(BeaconFilter beaconFilter) {
+        return beaconRegistry.removeSubscription(beaconFilter);
+    }
+
+    public void clearBeaconSubscriptions() {
+        beaconRegistry.clearSubscriptions();
+    }
+
+    /**
+     * @return number of scan results dropped because they did not match any beacon subscription
+     */
+    public long getRejectedBeaconCount() {
+        return beaconRegistry.getRejectedCount();
+    }
+
+    public List<BlueDevice> getDiscoveredDevices() {
+        return discoveredDevices.toList();
+    }
+
+    public BlueDevice getDiscoveredDevice(String address) {
         return discoveredDevices.get(address);
     }
 
@@ -156,21 +364,92 @@ public class BlueScanner extends Service {
         return binder;
     }
 
+    /**
+     * Code to run for every scan result.
+     * Existing {@link BlueDevice} for the address is updated in place, a new one is created only
+     * when the device is not present in {@link BlueScanner#discoveredDevices} collection.
+     *
+     * @param device    Android object associated with detected Bluetooth device
+     * @param address   hardware address of the bluetooth device
+     * @param packedAddress hardware address packed with {@link MacAddress#pack(String)}
+     * @param name      device name reported with the scan result
+     * @param rssi      Received Signal Strength Indication
+     * @param scanRecord raw advertising data, null for Bluetooth Classic results
+     * @param beaconFrame beacon frame decoded from the scan record, null if it is not a beacon frame
+     * @param timestamp time in milliseconds when the device was scanned
+     */
+    void onSighting(BluetoothDevice device, String address, long packedAddress, String name, int rssi, byte[] scanRecord, BeaconFrame beaconFrame, long timestamp) {
+        BlueDevice blueDevice = discoveredDevices.updateSighting(packedAddress, name, rssi, timestamp, scanRecord);
+        if (blueDevice == null) {
+            BlueDevice newBlueDevice = new BlueDevice();
+            newBlueDevice.setAddress(address);
+            newBlueDevice.setBluetoothDevice(device);
+            newBlueDevice.setIntervalEstimator(new AdvertisingIntervalEstimator(blueConfig.getDiscoveryTimeoutMillis(),
+                    blueConfig.getMinLostTimeoutMillis(), blueConfig.getMaxLostTimeoutMillis()));
+            if (beaconFrame != null) {
+                newBlueDevice.updateBeacon(beaconFrame, timestamp);
+            }
+            blueDevice = discoveredDevices.registerSighting(packedAddress, newBlueDevice, name, rssi, timestamp, scanRecord);
+            if (blueDevice == null) {
+                expiryWheel.schedule(newBlueDevice, timestamp + getLostTimeoutMillis(newBlueDevice));
+                onDiscovery(newBlueDevice);
+                onTargetSighting(packedAddress, newBlueDevice);
+                return;
+            }
+        }
+        if (beaconFrame != null) {
+            blueDevice.updateBeacon(beaconFrame, timestamp);
+        }
+        expiryWheel.schedule(blueDevice, timestamp + getLostTimeoutMillis(blueDevice));
+        onUpdate(blueDevice);
+        onTargetSighting(packedAddress, blueDevice);
+    }
+
+    /**
+     * Reports the device to the running multi-target scan and stops scanning when it was the last target
+     */
+    private void onTargetSighting(long packedAddress, BlueDevice blueDevice) {
+        TargetTracker tracker = targetTracker;
+        if (tracker != null && tracker.onSighting(packedAddress, blueDevice)) {
+            handler.removeCallbacks(targetDeadline);
+            stopTask();
+        }
+    }
+
+    /**
+     * @param packedAddress hardware address packed with {@link MacAddress#pack(String)}
+     * @return true if the device is present in {@link BlueScanner#discoveredDevices} collection
+     */
+    boolean isDiscovered(long packedAddress) {
+        return discoveredDevices.contains(packedAddress);
+    }
+
+    /**
+     * @param blueDevice scanned {@link BlueDevice}
+     * @return time in milliseconds without sightings after which the device is considered lost
+     */
+    private long getLostTimeoutMillis(BlueDevice blueDevice) {
+        // devices are not scanned between windows of the duty cycle
+        long gap = blueScannerTask.getMaxScanGapMillis();
+        if (blueConfig.getAdaptiveLostTimeout()) {
+            return blueDevice.getLostTimeoutMillis(blueConfig.getDiscoveryTimeoutMillis()) + gap;
+        } else {
+            return blueConfig.getDiscoveryTimeoutMillis() + gap;
+        }
+    }
+
     /**
      * Code to run when a new device is discovered that is not present in {@link BlueScanner#discoveredDevices} collection
      *
-     * @param address          hardware address of the bluetooth device
      * @param blueDevice {@link BlueDevice} object
      */
-    void onDiscovery(String address, final BlueDevice blueDevice) {
-        synchronized (this) {
-            discoveredDevices.put(address, blueDevice);
-        }
-        Set<BlueDeviceScanListener> blueDeviceScanListenersCopy = new CopyOnWriteArraySet<>(blueDeviceScanListeners); //Prevent set from ConcurrentModificationException #99
-        for (final BlueDeviceScanListener blueDeviceScanListener : blueDeviceScanListenersCopy) {
-            // run callback on main thread to easily update UI
-            handler.post(() -> blueDeviceScanListener.onDeviceFound(blueDevice));
+    void onDiscovery(final BlueDevice blueDevice) {
+        if (!blueDeviceBatchScanListeners.isEmpty()) {
+            scanDeltaAccumulator.onAdded(blueDevice);
         }
+        // run callback on main thread to easily update UI
+        scanListenerDispatcher.postFound(blueDevice);
+        scanSessionManager.onFound(blueDevice);
         if (blueConfig.getShouldSendBroadcast()) {
             Intent intent = new Intent(BlueConfig.BLUE_BROADCAST_ACTION);
             intent.putExtra(BlueConfig.BLUE_SCAN_TYPE, BlueConfig.BLUE_SCAN_DISCOVERED);
@@ -180,21 +459,36 @@ public class BlueScanner extends Service {
     }
 
     /**
-     * Code to run when a device present in {@link BlueScanner#discoveredDevices} collection has been updated
+     * Code to run when a device present in {@link BlueScanner#discoveredDevices} collection has been updated in place
      *
-     * @param address MAC of the bluetooth device
      * @param blueDevice {@link BlueDevice} object represents the device
      */
-    void onUpdate(String address, final BlueDevice blueDevice) {
-        synchronized (this) {
-            discoveredDevices.remove(address);
-            discoveredDevices.put(address, blueDevice);
+    void onUpdate(final BlueDevice blueDevice) {
+        if (!blueDeviceBatchScanListeners.isEmpty()) {
+            scanDeltaAccumulator.onUpdated(blueDevice);
         }
-        Set<BlueDeviceScanListener> blueDeviceScanListenersCopy = new CopyOnWriteArraySet<>(blueDeviceScanListeners); //Prevent set from ConcurrentModificationException
-        for (final BlueDeviceScanListener deviceListener : blueDeviceScanListenersCopy) {
-            // run callback on main thread to easily update UI
-            handler.post(() -> deviceListener.onDeviceUpdate(blueDevice));
+        if (updateConflator.getMinIntervalMillis() > 0) {
+            updateConflator.offer(blueDevice, System.currentTimeMillis());
+            return;
         }
+        // run callback on main thread to easily update UI
+        scanListenerDispatcher.postUpdate(blueDevice);
+        scanSessionManager.onUpdate(blueDevice);
+        sendUpdateBroadcast(blueDevice);
+    }
+
+    /**
+     * Code to run on main thread when {@link BlueScanner#updateConflator} delivers the newest state of the device
+     *
+     * @param blueDevice {@link BlueDevice} object represents the device
+     */
+    private void deliverUpdate(BlueDevice blueDevice) {
+        scanListenerDispatcher.postUpdate(blueDevice);
+        scanSessionManager.onUpdate(blueDevice);
+        sendUpdateBroadcast(blueDevice);
+    }
+
+    private void sendUpdateBroadcast(BlueDevice blueDevice) {
         if (blueConfig.getShouldSendBroadcast()) {
             Intent intent = new Intent(BlueConfig.BLUE_BROADCAST_ACTION);
             intent.putExtra(BlueConfig.BLUE_SCAN_TYPE, BlueConfig.BLUE_SCAN_UPDATED);
@@ -203,17 +497,35 @@ public class BlueScanner extends Service {
         }
     }
 
+    /**
+     * Code to run once per {@link BlueConfig#getScanBatchIntervalMillis()} on main thread or {@link BlueConfig#getScanCallbackExecutor()}.
+     * All changes of the interval are passed to every {@link BlueDeviceBatchScanListener} with a single {@link ScanDelta}.
+     */
+    private void deliverBatch() {
+        ScanDelta scanDelta = scanDeltaAccumulator.drain(System.currentTimeMillis());
+        if (scanDelta != null) {
+            for (BlueDeviceBatchScanListener blueDeviceBatchScanListener : blueDeviceBatchScanListeners) {
+                blueDeviceBatchScanListener.onScanDelta(scanDelta);
+            }
+        }
+    }
+
+    /**
+     * @return number of {@link BlueDeviceScanListener#onDeviceUpdate(BlueDevice)} callbacks merged into a newer one
+     * because of {@link BlueConfig#getMinUpdateIntervalMillis()}
+     */
+    public long getConflatedUpdateCount() {
+        return updateConflator != null ? updateConflator.getConflatedCount() : 0;
+    }
+
     /**
      * Code to run when scanning process failed
      *
      * @param errorCode which represents status of the error
      */
     void onFailure(int errorCode) {
-        Set<BlueDeviceScanListener> blueDeviceListenersCopy = new CopyOnWriteArraySet<>(blueDeviceScanListeners); //Prevent set from ConcurrentModificationException
-        for (final BlueDeviceScanListener blueDeviceScanListener : blueDeviceListenersCopy) {
-            // ScanCallback's methods are called on main thread already
-            blueDeviceScanListener.onDeviceScanError(errorCode);
-        }
+        scanListenerDispatcher.postError(errorCode);
+        scanSessionManager.onError(errorCode);
         if (blueConfig.getShouldSendBroadcast()) {
             Intent intent = new Intent(BlueConfig.BLUE_BROADCAST_ACTION);
             intent.putExtra(BlueConfig.BLUE_SCAN_TYPE, BlueConfig.BLUE_SCAN_ERROR);
@@ -224,29 +536,40 @@ public class BlueScanner extends Service {
 
     /**
      * Code to run when the list of {@link BlueDevice} is checking to remove unseen devices
-     * This method based on the discoveryTimestamp configured in {@link BlueConfig} class
-     */
-    public synchronized void checkBlueDevices() {
-        Iterator<Map.Entry<String, BlueDevice>> iterator = discoveredDevices.entrySet().iterator();
-        while (iterator.hasNext()) {
-            final Map.Entry<String, BlueDevice> entry = iterator.next();
-            long currentTimestamp = System.currentTimeMillis();
-            long discoveredTimestamp = entry.getValue().getDiscoveredTimestamp();
-            if (currentTimestamp - discoveredTimestamp > blueConfig.getDiscoveryTimeoutMillis() && !connectedDevices.containsKey(entry.getValue().getAddress())) {
-                // if device was not detected for some time and it is not connected right now, remove device from discovered devices
-                // when the device is connected it does not send advertising data
-                iterator.remove();
-                final BlueDevice blueDevice = entry.getValue();
-                Set<BlueDeviceScanListener> blueDeviceScanListenersCopy = new CopyOnWriteArraySet<>(blueDeviceScanListeners); //Prevent set from ConcurrentModificationException
-                for (final BlueDeviceScanListener blueDeviceScanListener : blueDeviceScanListenersCopy) {
-                    handler.post(() -> blueDeviceScanListener.onDeviceLost(blueDevice));
-                }
-                if (blueConfig.getShouldSendBroadcast()) {
-                    Intent intent = new Intent(BlueConfig.BLUE_BROADCAST_ACTION);
-                    intent.putExtra(BlueConfig.BLUE_SCAN_TYPE, BlueConfig.BLUE_SCAN_LOST);
-                    intent.putExtra(BlueConfig.BLUE_DEVICE_VALUE, blueDevice);
-                    LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
-                }
+     * This method based on the discoveryTimestamp configured in {@link BlueConfig} class.
+     * Only devices which deadline has passed are visited, see {@link ExpiryWheel}.
+     */
+    public void checkBlueDevices() {
+        expiryWheel.expire(System.currentTimeMillis(), lostDeviceHandler);
+    }
+
+    /**
+     * Code to run when a device has not been scanned before its deadline
+     *
+     * @param blueDevice {@link BlueDevice} which deadline has passed
+     * @param currentTimestamp time in milliseconds of the check
+     */
+    private void onExpired(final BlueDevice blueDevice, long currentTimestamp) {
+        long deadline = blueDevice.getDiscoveredTimestamp() + getLostTimeoutMillis(blueDevice);
+        if (connectedDevices.contains(blueDevice.getPackedAddress())) {
+            // when the device is connected it does not send advertising data
+            expiryWheel.schedule(blueDevice, currentTimestamp + getLostTimeoutMillis(blueDevice));
+        } else if (deadline >= currentTimestamp) {
+            // scanned again while the check was running
+            expiryWheel.schedule(blueDevice, deadline);
+        } else if (discoveredDevices.remove(blueDevice.getPackedAddress(), blueDevice)) {
+            updateConflator.remove(blueDevice);
+            if (!blueDeviceBatchScanListeners.isEmpty()) {
+                scanDeltaAccumulator.onRemoved(blueDevice);
+            }
+            // if device was not detected for some time and it is not connected right now, remove device from discovered devices
+            scanListenerDispatcher.postLost(blueDevice);
+            scanSessionManager.onLost(blueDevice);
+            if (blueConfig.getShouldSendBroadcast()) {
+                Intent intent = new Intent(BlueConfig.BLUE_BROADCAST_ACTION);
+                intent.putExtra(BlueConfig.BLUE_SCAN_TYPE, BlueConfig.BLUE_SCAN_LOST);
+                intent.putExtra(BlueConfig.BLUE_DEVICE_VALUE, blueDevice);
+                LocalBroadcastManager.getInstance(this).sendBroadcast(intent);
             }
         }
     }
@@ -259,23 +582,22 @@ public class BlueScanner extends Service {
      * @param blueDeviceConnectionListener {@link BlueDeviceConnectionListener} as a callback method for monitoring connection process
      * @return true if process start properly, false when there is a problem with {@link BlueDevice}
      */
-    public synchronized boolean connectToDevice(BlueDevice blueDevice, final BlueDeviceConnectionListener blueDeviceConnectionListener) {
+    public boolean connectToDevice(BlueDevice blueDevice, final BlueDeviceConnectionListener blueDeviceConnectionListener) {
         if (blueDevice != null) {
-            String address = blueDevice.getAddress();
-            if (address != null && !connectedDevices.containsKey(address)) {
-                connectedDevices.put(address, blueDevice);
+            long packedAddress = blueDevice.getPackedAddress();
+            if (packedAddress != MacAddress.INVALID && connectedDevices.putIfAbsent(packedAddress, blueDevice) == null) {
                 blueDeviceController.connectDevice(blueDevice, new BlueDeviceConnectionListener() {
                     @Override
                     public void onDeviceReady(final BlueDevice blueDevice) {
                         if (blueDeviceConnectionListener != null) {
-                            handler.post(() -> blueDeviceConnectionListener.onDeviceReady(blueDevice));
+                            connectionCallbackExecutor.execute(() -> blueDeviceConnectionListener.onDeviceReady(blueDevice));
                         }
                     }
 
                     @Override
                     public void onDeviceClosed(final BlueDevice blueDevice) {
                         if (blueDeviceConnectionListener != null) {
-                            handler.post(() -> blueDeviceConnectionListener.onDeviceClosed(blueDevice));
+                            connectionCallbackExecutor.execute(() -> blueDeviceConnectionListener.onDeviceClosed(blueDevice));
                         }
                     }
                 });
@@ -291,17 +613,17 @@ public class BlueScanner extends Service {
      * @param blueDevice {@link BlueDevice} with which we want to disconnect
      * @return true if process start properly, false when there is a problem with {@link BlueDevice}
      */
-    public synchronized boolean disconnectFromDevice(BlueDevice blueDevice) {
+    public boolean disconnectFromDevice(BlueDevice blueDevice) {
         if (blueDevice != null) {
-            String address = blueDevice.getAddress();
-            if (address != null && connectedDevices.containsKey(address)) {
-                synchronized (this) {
-                    if (discoveredDevices.containsKey(address)) {
-                        // to prevent deleting device from discovered devices right after disconnecting from it
-                        discoveredDevices.get(address).setDiscoveredTimestamp(System.currentTimeMillis());
-                    }
+            long packedAddress = blueDevice.getPackedAddress();
+            if (connectedDevices.remove(packedAddress) != null) {
+                BlueDevice discoveredDevice = discoveredDevices.get(packedAddress);
+                if (discoveredDevice != null) {
+                    // to prevent deleting device from discovered devices right after disconnecting from it
+                    long currentTimestamp = System.currentTimeMillis();
+                    discoveredDevice.setDiscoveredTimestamp(currentTimestamp);
+                    expiryWheel.schedule(discoveredDevice, currentTimestamp + getLostTimeoutMillis(discoveredDevice));
                 }
-                connectedDevices.remove(address);
                 blueDeviceController.disconnect(blueDevice);
                 return true;
             }
@@ -313,11 +635,12 @@ public class BlueScanner extends Service {
     /**
      * Method responsible for disconnect with all connected {@link BlueDevice}
      */
-    public synchronized boolean disconnectAll() {
-        for (BlueDevice blueDevice : connectedDevices.values()) {
-            blueDeviceController.disconnect(blueDevice);
+    public boolean disconnectAll() {
+        for (BlueDevice blueDevice : connectedDevices.devices()) {
+            if (connectedDevices.remove(blueDevice.getPackedAddress(), blueDevice)) {
+                blueDeviceController.disconnect(blueDevice);
+            }
         }
-        connectedDevices.clear();
         return true;
     }
 
@@ -331,9 +654,28 @@ public class BlueScanner extends Service {
      * @param lowEnergy information about type of the device we want to find
      */
     public synchronized void startScan(String address, Long time, UUID[] serviceUUIDs,ScanSettings scanSettings, List<ScanFilter> scanFilters, boolean lowEnergy) {
-        if(address!=null && !address.isEmpty()){
-            blueScannerTask.setAddress(address);
+        startScan(address, time, serviceUUIDs, null, scanSettings, scanFilters, lowEnergy);
+    }
+
+    /**
+     * Method used to start scanning process
+     * @param address device address which scanner should looking for, null to scan for all devices
+     * @param time scanning time in milliseconds, null to scan until stopped
+     * @param serviceUUIDs service UUIDs which scanned devices have to advertise, null for all devices
+     * @param scanCriteria {@link ScanCriteria} applied in software to every scan result, null for all devices.
+     *                     Service UUIDs are added to the criteria.
+     * @param scanSettings settings of the API level &gt;= 21 scanner
+     * @param scanFilters filters of the API level &gt;= 21 scanner, applied by the controller
+     * @param lowEnergy information about scanning type
+     */
+    public synchronized void startScan(String address, Long time, UUID[] serviceUUIDs, ScanCriteria scanCriteria, ScanSettings scanSettings, List<ScanFilter> scanFilters, boolean lowEnergy) {
+        if (serviceUUIDs != null && serviceUUIDs.length > 0) {
+            ScanCriteria.Builder builder = scanCriteria != null ? scanCriteria.toBuilder() : ScanCriteria.builder();
+            scanCriteria = builder.addServiceUuids(serviceUUIDs).build();
         }
+        blueScannerTask.setScanCriteria(scanCriteria);
+        // a target address of the previous scan must not stop this one
+        blueScannerTask.setAddress(address);
         if(time!=null) {
             blueScannerTask.setScanningTime(time);
         }
@@ -348,17 +690,163 @@ public class BlueScanner extends Service {
         if(scanSettings!=null) {
             blueScannerTask.setScanSettings(scanSettings);
         }
-        if(timer==null){
-            timer = new Timer();
+        startTask();
+    }
+
+    /**
+     * Requests scanning and starts the lost device check. When the scan is running already,
+     * it is not started again and only the changed criteria are applied.
+     */
+    private void startTask() {
+        startDeviceCheck();
+        blueScannerTask.start();
+        blueScannerTask.reconfigure();
+    }
+
+    /**
+     * Schedules {@link BlueScanner#checkBlueDevices()} unless it is scheduled already, so repeated starts do not stack timers
+     */
+    private void startDeviceCheck() {
+        synchronized (deviceCheckLock) {
+            if (deviceCheckTask != null) {
+                return;
+            }
+            if(timer==null){
+                timer = new Timer();
+            }
+            deviceCheckTask = new TimerTask() {
+                @Override
+                public void run() {
+                    checkBlueDevices();
+                }
+            };
+            timer.scheduleAtFixedRate(deviceCheckTask, expiryWheel.getTickMillis(), expiryWheel.getTickMillis());
         }
-        timer.scheduleAtFixedRate(new TimerTask() {
-            @Override
-            public void run() {
-                checkBlueDevices();
+    }
+
+    private void stopDeviceCheck() {
+        synchronized (deviceCheckLock) {
+            if(timer!=null) {
+                timer.cancel();
             }
-        },blueConfig.getDiscoveryTimeoutMillis(), blueConfig.getDiscoveryTimeoutMillis());
+            timer = null;
+            deviceCheckTask = null;
+        }
+    }
+
+    /**
+     * Called by {@link BlueScanner#scanSessionManager} when the first session opens
+     */
+    private void startSessionScan(Set<ScanCriteria> union, boolean lowEnergy) {
+        blueScannerTask.setScanCriteria(union);
+        blueScannerTask.setAddress(null);
+        blueScannerTask.setScanningTime(null);
+        blueScannerTask.setUuids(null);
+        isLowEnergy = lowEnergy;
+        blueScannerTask.setLowEnergy(lowEnergy);
+        startTask();
+    }
 
-        new Thread(blueScannerTask).start();
+    /**
+     * Opens a session of the shared scan, see {@link ScanSession}.
+     * Sessions with different criteria are merged into one hardware scan, which is started with the first session
+     * and stopped when the last one is closed. Direct {@link BlueScanner#startScan(String, Long, UUID[], ScanCriteria, ScanSettings, List, boolean)}
+     * calls replace the criteria of the merged scan until {@link BlueScanner#stopScan(boolean)}, which then restores them.
+     * @param scanCriteria {@link ScanCriteria} of devices reported to the session, null for all devices
+     * @param blueDeviceScanListener listener receiving devices of the session
+     * @param lowEnergy information about scanning type, all open sessions have to use the same one
+     * @return handle of the session, close it when the results are not needed anymore
+     */
+    public ScanSession openScanSession(ScanCriteria scanCriteria, BlueDeviceScanListener blueDeviceScanListener, boolean lowEnergy) {
+        Executor executor = blueConfig.getScanCallbackExecutor() != null
+                ? blueConfig.getScanCallbackExecutor() : CallbackExecutors.handler(handler);
+        return openScanSession(scanCriteria, blueDeviceScanListener, executor, blueConfig.getListenerOverflowPolicy(), lowEnergy);
+    }
+
+    /**
+     * @param scanCriteria {@link ScanCriteria} of devices reported to the session, null for all devices
+     * @param blueDeviceScanListener listener receiving devices of the session
+     * @param executor {@link Executor} on which the listener is called
+     * @param overflowPolicy {@link ListenerOverflowPolicy} used when the listener falls behind
+     * @param lowEnergy information about scanning type, all open sessions have to use the same one
+     * @return handle of the session
+     */
+    public ScanSession openScanSession(ScanCriteria scanCriteria, BlueDeviceScanListener blueDeviceScanListener, Executor executor,
+                                       ListenerOverflowPolicy overflowPolicy, boolean lowEnergy) {
+        if (blueDeviceScanListener == null || executor == null || overflowPolicy == null) {
+            throw new IllegalArgumentException("Argument cannot be null");
+        }
+        ListenerMailbox mailbox = new ListenerMailbox(blueDeviceScanListener, executor, overflowPolicy, blueConfig.getListenerMailboxCapacity());
+        return scanSessionManager.open(scanCriteria, mailbox, lowEnergy);
+    }
+
+    /**
+     * @return current {@link ScanStateMachine.State} of the hardware scan
+     */
+    public ScanStateMachine.State getScanState() {
+        return blueScannerTask.getScanState();
+    }
+
+    /**
+     * @return scan start budget and start counters, see {@link BlueConfig#getScanStartLimit()}
+     */
+    public ScanStartStats getScanStartStats() {
+        return blueScannerTask.getStateMachine().getStats();
+    }
+
+    /**
+     * @return window, interval and effective duty cycle of the scan, null when scanning continuously,
+     * see {@link BlueConfig#getScanDutyProfile()}
+     */
+    public ScanDutyCycleStats getScanDutyCycleStats() {
+        return blueScannerTask.getDutyCycleStats();
+    }
+
+    /**
+     * @return number of open scan sessions
+     */
+    public int getScanSessionCount() {
+        return scanSessionManager.getSessionCount();
+    }
+
+    /**
+     * Method used to start scanning for a set of known devices. Every target is reported once, when it is scanned
+     * for the first time, and scanning stops when all targets are found or the deadline passes.
+     * Other devices are processed as in a regular scan, restrict them with {@link ScanCriteria.Builder#addAddresses(Collection)}.
+     * @param addresses hardware addresses of the targets
+     * @param timeoutMillis deadline in milliseconds, 0 or less to scan until all targets are found
+     * @param targetScanListener {@link TargetScanListener} receiving the progress
+     * @param scanCriteria {@link ScanCriteria} applied in software to every scan result, null for all devices
+     * @param lowEnergy information about scanning type
+     */
+    public synchronized void startTargetScan(Collection<String> addresses, long timeoutMillis, TargetScanListener targetScanListener,
+                                             ScanCriteria scanCriteria, boolean lowEnergy) {
+        Executor executor = blueConfig.getScanCallbackExecutor() != null
+                ? blueConfig.getScanCallbackExecutor() : CallbackExecutors.handler(handler);
+        TargetTracker tracker = new TargetTracker(addresses, targetScanListener, executor);
+        cancelTargetScan();
+        targetTracker = tracker;
+        if (timeoutMillis > 0) {
+            handler.postDelayed(targetDeadline, timeoutMillis);
+        }
+        startScan(null, null, null, scanCriteria, null, null, lowEnergy);
+    }
+
+    /**
+     * @return hardware addresses of targets not found yet by the running multi-target scan, empty when no such scan is running
+     */
+    public Set<String> getPendingTargetAddresses() {
+        TargetTracker tracker = targetTracker;
+        return tracker != null && !tracker.isFinished() ? tracker.getPendingAddresses() : Collections.<String>emptySet();
+    }
+
+    private void cancelTargetScan() {
+        TargetTracker tracker = targetTracker;
+        if (tracker != null) {
+            tracker.cancel();
+            handler.removeCallbacks(targetDeadline);
+            targetTracker = null;
+        }
     }
 
     /**
@@ -367,10 +855,13 @@ public class BlueScanner extends Service {
      */
     public synchronized void stopScan(boolean lowEnergy) {
         if (blueScannerTask != null) {
-            if(timer!=null) {
-                timer.cancel();
+            cancelTargetScan();
+            if (!scanSessionManager.isEmpty()) {
+                Timber.i("Scan sessions are open, restoring their scan.");
+                scanSessionManager.endDirectScan(blueScannerTask::stop);
+                return;
             }
-            timer = null;
+            stopDeviceCheck();
             blueScannerTask.setLowEnergy(lowEnergy);
             isLowEnergy = lowEnergy;
             blueScannerTask.stop();
@@ -379,13 +870,30 @@ public class BlueScanner extends Service {
         }
     }
 
+    /**
+     * Stops the scan started by a direct or multi-target scan, the scan of open sessions keeps running.
+     * Called by {@link BlueScannerTask} when the scanning time of a direct scan passes or its device is scanned.
+     */
+    void stopTask() {
+        scanSessionManager.endDirectScan(blueScannerTask::stop);
+    }
+
     /**
      * Methof used to refresh internal cache
      * @param blueDevice to get proper {@link android.bluetooth.BluetoothGatt}
      * @return information about status of the method
      */
     public boolean refreshDeviceCache(BlueDevice blueDevice) {
-      return blueDeviceController.refreshDeviceCache(blueDevice.getBluetoothGatt());
+      return blueDeviceController.refreshDeviceCache(blueDevice);
+    }
+
+    /**
+     * @param blueDevice connected Bluetooth Low Energy {@link BlueDevice}
+     * @return depth and wait times of the device's action queue, null if the device has not been connected
+     */
+    public GattQueueStats getGattQueueStats(BlueDevice blueDevice) {
+        GattOperationQueue operationQueue = blueDevice != null ? blueDevice.getOperationQueue() : null;
+        return operationQueue != null ? operationQueue.getStats() : null;
     }
 
     /**
@@ -403,13 +911,63 @@ public class BlueScanner extends Service {
 
     /**
      * Method which perform action on the device
-     * This is only wrapper to use method from {@link BlueDeviceController} class
+     * This is only wrapper to use method from {@link BlueDeviceController} class,
+     * callbacks are moved to {@link BlueConfig#getActionCallbackExecutor()} when it is set
      * @param blueDevice {@link BlueDevice} on which action should be done
      * @param blueAction {@link BlueAction} which we want to use
      * @param blueDeviceActionListener {@link BlueDeviceActionListener} as callback method to get information about performed action
-     * @return true if method successfully starts proper bluetooth process, false if device or action are wrong
+     * @return true if the action is started or, for Bluetooth Low Energy devices, queued behind earlier actions of the device. False if device or action are wrong
+     */
+    public boolean performAction(BlueDevice blueDevice, BlueAction blueAction, final BlueDeviceActionListener blueDeviceActionListener){
+        return blueDeviceController.performAction(blueDevice, blueAction, onActionCallbackExecutor(blueDeviceActionListener));
+    }
+
+    /**
+     * Method which submits action to the queue of a connected Bluetooth Low Energy device,
+     * callbacks are moved to {@link BlueConfig#getActionCallbackExecutor()} when it is set
+     * @param blueDevice connected {@link BlueDevice} on which action should be done
+     * @param blueAction {@link BlueAction} which we want to use
+     * @param blueDeviceActionListener {@link BlueDeviceActionListener} of this action only, may be null
+     * @return {@link GattOperation} handle of the action, null if the device is not connected or it has no characteristic of the action
      */
-    public boolean performAction(BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener blueDeviceActionListener){
-        return blueDeviceController.performAction(blueDevice,blueAction,blueDeviceActionListener);
+    public GattOperation submitAction(BlueDevice blueDevice, BlueAction blueAction, BlueDeviceActionListener blueDeviceActionListener) {
+        return blueDeviceController.submitAction(blueDevice, blueAction, onActionCallbackExecutor(blueDeviceActionListener));
+    }
+
+    /**
+     * Method which subscribes to notifications of a characteristic of a connected Bluetooth Low Energy device.
+     * This is only wrapper to use method from {@link BlueDeviceController} class
+     * @param blueDevice connected {@link BlueDevice}
+     * @param notifyAction {@link NotifyAction} with the characteristic whose notifications are enabled
+     * @param notificationListener {@link NotificationListener} of the subscription, may be null
+     * @return {@link NotificationSubscription} of the characteristic, null if the device is not connected,
+     * it has no notification descriptor of the characteristic or the characteristic is already subscribed
+     */
+    public NotificationSubscription subscribe(BlueDevice blueDevice, NotifyAction notifyAction, NotificationListener notificationListener) {
+        return blueDeviceController.subscribe(blueDevice, notifyAction, notificationListener);
+    }
+
+    /**
+     * @param blueDeviceActionListener listener of an action, may be null
+     * @return listener calling the given one on {@link BlueConfig#getActionCallbackExecutor()}, the given one if the executor is not set
+     */
+    private BlueDeviceActionListener onActionCallbackExecutor(final BlueDeviceActionListener blueDeviceActionListener) {
+        final Executor executor = blueConfig.getActionCallbackExecutor();
+        if (executor == null || blueDeviceActionListener == null) {
+            return blueDeviceActionListener;
+        }
+        return new BlueDeviceActionListener() {
+            @Override
+            public void onActionSuccess(final BlueDevice blueDevice, final BlueAction blueAction, byte[] value) {
+                // the array may be reused by the stream or characteristic before the executor runs
+                final byte[] valueCopy = value != null ? value.clone() : null;
+                executor.execute(() -> blueDeviceActionListener.onActionSuccess(blueDevice, blueAction, valueCopy));
+            }
+
+            @Override
+            public void onActionFailure(final BlueDevice blueDevice, final BlueAction blueAction) {
+                executor.execute(() -> blueDeviceActionListener.onActionFailure(blueDevice, blueAction));
+            }
+        };
     }
 }
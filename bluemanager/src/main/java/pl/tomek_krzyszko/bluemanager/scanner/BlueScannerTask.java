@@ -13,51 +13,80 @@ import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.ParcelUuid;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.Timer;
-import java.util.TimerTask;
 import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.inject.Inject;
 
 import pl.tomek_krzyszko.bluemanager.BlueConfig;
 import pl.tomek_krzyszko.bluemanager.BlueManager;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconFrame;
+import pl.tomek_krzyszko.bluemanager.beacon.BeaconRegistry;
 import pl.tomek_krzyszko.bluemanager.dagger.modules.TaskModule;
-import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
 import timber.log.Timber;
 
-public class BlueScannerTask implements Runnable {
+/**
+ * Scan backend of {@link BlueScanner}. Starting and stopping is driven by {@link ScanStateMachine}
+ * on one long-lived worker thread, scan results are handed over to {@link ScanIngestionPipeline}.
+ */
+public class BlueScannerTask implements ScanRadio {
+
+    /**
+     * Values of {@link BlueScannerTask#backend}.
+     * Bluetooth Low Energy was introduced in Android 4.3 (API level 18)
+     * and changed in Android 5.0 (API level 21), Bluetooth Classic discovery is used otherwise.
+     */
+    private static final int BACKEND_NONE = 0;
+    private static final int BACKEND_CLASSIC = 1;
+    private static final int BACKEND_LEGACY = 2;
+    private static final int BACKEND_LOW_ENERGY = 3;
 
     @Inject BlueConfig blueConfig;
     @Inject Context context;
     @Inject BluetoothAdapter bluetoothAdapter;
     @Inject BluetoothLeScanner bluetoothLeScanner;
-    @Inject Timer timer;
     private BlueScanner blueScanner;
 
     /**
-     * Whether or not the scanner is running on a device with API level < 21
-     * Bluetooth Low Energy was introduced in Android 4.3 (API level 18)
-     * and changed in Android 5.0 (API level 21).
-     * {@link BlueScanner} detects system version and runs appropriate code.
+     * Backend started by {@link BlueScannerTask#startScan()}, accessed only on the worker thread
      */
-    private boolean isLegacy = false;
+    private int backend = BACKEND_NONE;
 
     /**
-     * Whether or not internal scanner object and its callback has been initialized.
-     * Scanning cannot be started without initialization.
+     * Worker thread running {@link BlueScannerTask#stateMachine} events and the scanning time limit
      */
-    private boolean initialized=false;
+    private final ScheduledExecutorService worker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "BlueScanner-worker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ScanStateMachine.Worker stateMachineWorker;
+    private final ScanStateMachine stateMachine;
 
     /**
-     * Whether or not {@link BlueScanner}'s scanning worker thread is allowed to run.
+     * Pauses the scan between windows of {@link BlueConfig#getScanDutyProfile()}, null when scanning continuously
      */
-    private boolean isRunning = false;
+    private final ScanDutyCycle dutyCycle;
+
+    /**
+     * Scanning time and address limits of the scan, ended through {@link BlueScanner} so open scan sessions keep scanning
+     */
+    private final DirectScanLimit directScanLimit;
 
     /**
      * Scan callback used in API level < 21.
@@ -75,9 +104,9 @@ public class BlueScannerTask implements Runnable {
     private Long scanningTime = null;
 
     /**
-     * Bluetooth device MAC address passed from {@link BlueScanner} for scanner
+     * Bluetooth device MAC address passed from {@link BlueScanner} for scanner, packed with {@link MacAddress#pack(String)}
      */
-    private String address = null;
+    private long address = MacAddress.INVALID;
 
     /**
      * Whether or not the scanner is running for bluetooth low energy devices or not
@@ -100,13 +129,90 @@ public class BlueScannerTask implements Runnable {
      */
     private List<ScanFilter> scanFilters;
 
+    /**
+     * Criteria set with {@link BlueScannerTask#setScanCriteria(Collection)}, service UUIDs common to all of them are offloaded to the controller
+     */
+    private volatile Collection<ScanCriteria> scanCriteria = Collections.emptySet();
+
+    /**
+     * Software filters applied to results of every scan backend before they are buffered, a result matching any of them is accepted.
+     * Null accepts every result.
+     */
+    private volatile ScanPredicate[] scanPredicates;
+
+    /**
+     * Service UUIDs offloaded to the controller by the running API level &gt;= 21 scan, null if none
+     */
+    private volatile Set<UUID> offloadedServiceUuids;
 
-    public BlueScannerTask(BlueScanner blueScanner) {
+    /**
+     * Number of results rejected by {@link BlueScannerTask#scanPredicates}
+     */
+    private final AtomicLong filteredCount = new AtomicLong();
+
+    /**
+     * Buffers and worker threads which process scan results outside of scan callbacks
+     */
+    private final ScanIngestionPipeline ingestionPipeline;
+
+    /**
+     * Beacon decoders and subscriptions applied before scan results reach {@link BlueScanner}
+     */
+    private final BeaconRegistry beaconRegistry;
+
+
+    public BlueScannerTask(BlueScanner blueScanner, BeaconRegistry beaconRegistry) {
         BlueManager.getInstance()
                     .getComponent()
                     .module(new TaskModule(blueScanner))
                     .inject(this);
         this.blueScanner = blueScanner;
+        this.beaconRegistry = beaconRegistry;
+        this.ingestionPipeline = new ScanIngestionPipeline(blueConfig.getScanBufferCapacity(), blueConfig.getScanOverflowPolicy(),
+                blueConfig.getScanWorkerCount(), this::onScan);
+        this.stateMachineWorker = new ScanStateMachine.Worker() {
+            @Override
+            public void execute(Runnable runnable) {
+                try {
+                    worker.execute(runnable);
+                } catch (RejectedExecutionException e) {
+                    // released, late events of scan callbacks are not interesting anymore
+                    Timber.d("Scan event after release ignored");
+                }
+            }
+
+            @Override
+            public void schedule(Runnable runnable, long delayMillis) {
+                try {
+                    worker.schedule(runnable, delayMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    Timber.d("Scan retry after release ignored");
+                }
+            }
+        };
+        this.stateMachine = new ScanStateMachine(this, stateMachineWorker, blueConfig.getWaitPeriodAfterErrorMillis(),
+                new ScanStartBudget(blueConfig.getScanStartLimit(), blueConfig.getScanStartWindowMillis(), Clock.SYSTEM));
+        this.dutyCycle = createDutyCycle();
+        this.directScanLimit = new DirectScanLimit(stateMachineWorker, blueScanner::stopTask);
+        context.registerReceiver(adapterStateReceiver, new IntentFilter(BluetoothAdapter.ACTION_STATE_CHANGED));
+    }
+
+    /**
+     * Window and interval of the profile may be overridden in {@link BlueConfig}. The adaptive interval is kept
+     * between half and four times the configured one, and never below the spacing of starts allowed by the start budget.
+     *
+     * @return {@link ScanDutyCycle} for the configuration or null if scanning is continuous
+     */
+    private ScanDutyCycle createDutyCycle() {
+        ScanDutyProfile profile = blueConfig.getScanDutyProfile();
+        long window = blueConfig.getScanWindowMillis() > 0 ? blueConfig.getScanWindowMillis() : profile.getWindowMillis();
+        long interval = blueConfig.getScanIntervalMillis() > 0 ? blueConfig.getScanIntervalMillis() : profile.getIntervalMillis();
+        if (window <= 0 || interval <= window) {
+            return null;
+        }
+        long startSpacing = blueConfig.getScanStartWindowMillis() / Math.max(1, blueConfig.getScanStartLimit());
+        return new ScanDutyCycle(stateMachine, stateMachineWorker, Clock.SYSTEM, window, interval,
+                Math.max(interval / 2, startSpacing), interval * 4, blueConfig.getAdaptiveScanInterval());
     }
 
     public void setScanningTime(Long scanningTime) {
@@ -114,7 +220,7 @@ public class BlueScannerTask implements Runnable {
     }
 
     public void setAddress(String address) {
-        this.address = address;
+        this.address = MacAddress.pack(address);
     }
 
     public void setLowEnergy(boolean lowEnergy) {
@@ -133,6 +239,83 @@ public class BlueScannerTask implements Runnable {
         this.scanFilters = scanFilters;
     }
 
+    /**
+     * @param scanCriteria {@link ScanCriteria} applied in software to every scan result, null accepts every result
+     */
+    public void setScanCriteria(ScanCriteria scanCriteria) {
+        setScanCriteria(scanCriteria != null ? Collections.singleton(scanCriteria) : Collections.<ScanCriteria>emptySet());
+    }
+
+    /**
+     * @param scanCriteria union of {@link ScanCriteria}, a result matching any of them is accepted.
+     *                     Empty or containing empty criteria accepts every result.
+     */
+    public void setScanCriteria(Collection<ScanCriteria> scanCriteria) {
+        ScanPredicate[] predicates = scanCriteria.isEmpty() ? null : new ScanPredicate[scanCriteria.size()];
+        int count = 0;
+        for (ScanCriteria criteria : scanCriteria) {
+            if (criteria.isEmpty()) {
+                predicates = null;
+                break;
+            }
+            predicates[count++] = criteria.compile();
+        }
+        this.scanCriteria = scanCriteria;
+        this.scanPredicates = predicates;
+    }
+
+    /**
+     * Applies criteria changed while scanning. The software filters are swapped without stopping the scan,
+     * the API level &gt;= 21 scan is restarted only if the service UUIDs offloaded to the controller change.
+     */
+    public void reconfigure() {
+        stateMachine.requestReconfigure();
+    }
+
+    @Override
+    public boolean isConfigurationChanged() {
+        if (backend != BACKEND_LOW_ENERGY || scanFilters != null) {
+            return false;
+        }
+        Set<UUID> serviceUuids = offloadedServiceUuids();
+        return serviceUuids == null ? offloadedServiceUuids != null : !serviceUuids.equals(offloadedServiceUuids);
+    }
+
+    /**
+     * @return true if scanning has been requested and not stopped yet, whether or not the backend is running at the moment
+     */
+    public boolean isRunning() {
+        return stateMachine.isActive();
+    }
+
+    /**
+     * @return current {@link ScanStateMachine.State} of the scan
+     */
+    public ScanStateMachine.State getScanState() {
+        return stateMachine.getState();
+    }
+
+    /**
+     * @return {@link ScanStateMachine} driving the scan
+     */
+    public ScanStateMachine getStateMachine() {
+        return stateMachine;
+    }
+
+    /**
+     * @return window, interval and effective duty cycle of the scan, null when scanning continuously
+     */
+    public ScanDutyCycleStats getDutyCycleStats() {
+        return dutyCycle != null ? dutyCycle.getStats() : null;
+    }
+
+    /**
+     * @return longest time in milliseconds the scan may be paused between two windows, 0 when scanning continuously
+     */
+    public long getMaxScanGapMillis() {
+        return dutyCycle != null && dutyCycle.isRunning() ? dutyCycle.getMaxGapMillis() : 0;
+    }
+
     /**
      * Initializes scan callback used in Android devices with API level < 18.
      */
@@ -142,14 +325,18 @@ public class BlueScannerTask implements Runnable {
         Timber.d("initClassicScanner");
         IntentFilter filter = new IntentFilter(BluetoothDevice.ACTION_FOUND);
         context.registerReceiver(mReceiver, filter);
-        initialized = true;
     }
 
     /**
      * Starts Bluetooth Classic scanning on Android devices with API level < 18.
      */
-    private void startClassicScanning() {
-        bluetoothAdapter.startDiscovery();
+    private boolean startClassicScanning() {
+        initClassicScanner();
+        if (!bluetoothAdapter.startDiscovery()) {
+            context.unregisterReceiver(mReceiver);
+            return false;
+        }
+        return true;
     }
 
 
@@ -166,27 +353,18 @@ public class BlueScannerTask implements Runnable {
      */
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
     private void initLegacyScanner() {
-        isLegacy = true;
-
-        legacyScanCallback = (device, rssi, rawScanRecord) -> new AsyncTask<Void, Void, Void>() {
-
-            @Override
-            protected Void doInBackground(Void... params) {
-                onScan(device, rssi);
-                return null;
-            }
-
-        }.execute();
-
-        initialized = true;
+        legacyScanCallback = (device, rssi, rawScanRecord) -> publish(device, rssi, rawScanRecord, null);
     }
 
     /**
      * Starts Bluetooth Low Energy scanning on Android devices with API level < 21.
      */
     @TargetApi(Build.VERSION_CODES.JELLY_BEAN_MR2)
-    private void startLegacyScanning() {
-        bluetoothAdapter.startLeScan(uuids,legacyScanCallback);
+    private boolean startLegacyScanning() {
+        if (legacyScanCallback == null) {
+            initLegacyScanner();
+        }
+        return bluetoothAdapter.startLeScan(uuids,legacyScanCallback);
     }
 
     /**
@@ -196,7 +374,7 @@ public class BlueScannerTask implements Runnable {
     private void stopLegacyScanning() {
         if (bluetoothAdapter != null) {
             try { //sometimes throw npe from os.Parcel.eadException() - only try catch is a solution
-                bluetoothAdapter.startLeScan(legacyScanCallback);
+                bluetoothAdapter.stopLeScan(legacyScanCallback);
             } catch (NullPointerException e) {
                 e.printStackTrace();
             }
@@ -208,27 +386,12 @@ public class BlueScannerTask implements Runnable {
      */
     @TargetApi(Build.VERSION_CODES.LOLLIPOP)
     private void initScanner() {
-        isLegacy = false;
-
         scanCallback = new ScanCallback() {
             @Override
             public void onScanResult(int callbackType, final ScanResult result) {
-                new AsyncTask<Void, Void, Void>() {
-                    @Override
-                    protected Void doInBackground(Void... params) {
-                        BluetoothDevice device = result.getDevice();
-                        if (result.getScanRecord() != null) {
-                            try { //#80 - exception caused by internal sdk function - only try catch is a solution
-                                onScan(device, result.getRssi());
-                            } catch (NullPointerException e) {
-                                e.printStackTrace();
-                            }
-                        }
-                        return null;
-                    }
-
-
-                }.execute();
+                if (result.getScanRecord() != null) {
+                    publish(result.getDevice(), result.getRssi(), result.getScanRecord().getBytes(), null);
+                }
             }
 
             @Override
@@ -241,23 +404,59 @@ public class BlueScannerTask implements Runnable {
             @Override
             public void onScanFailed(int errorCode) {
                 blueScanner.onFailure(errorCode);
+                if (errorCode != SCAN_FAILED_ALREADY_STARTED) {
+                    stateMachine.onScanFailed(errorCode);
+                }
             }
         };
-
-        initialized = true;
     }
 
     /**
      * Starts Bluetooth Low Energy scanning on Android devices with API level >= 21.
      */
     @TargetApi(Build.VERSION_CODES.LOLLIPOP | Build.VERSION_CODES.M)
-    private void startScanning() {
-        if (bluetoothLeScanner != null) { //FIX crash #69 on Crashlitics
-            if(scanSettings==null){
-                scanSettings = new ScanSettings.Builder().setScanMode(ScanSettings.SCAN_MODE_LOW_POWER).build();
-            }
-            bluetoothLeScanner.startScan(scanFilters, scanSettings, scanCallback);
+    private boolean startScanning() {
+        if (bluetoothLeScanner == null) {
+            // the scanner is not available while the adapter is turned off
+            bluetoothLeScanner = bluetoothAdapter.getBluetoothLeScanner();
+        }
+        if (bluetoothLeScanner == null) { //FIX crash #69 on Crashlitics
+            return false;
+        }
+        if (scanCallback == null) {
+            initScanner();
+        }
+        if(scanSettings==null){
+            scanSettings = new ScanSettings.Builder().setScanMode(blueConfig.getScanDutyProfile().getScanMode()).build();
+        }
+        offloadedServiceUuids = scanFilters != null ? null : offloadedServiceUuids();
+        bluetoothLeScanner.startScan(scanFilters != null ? scanFilters : toScanFilters(offloadedServiceUuids), scanSettings, scanCallback);
+        return true;
+    }
+
+    /**
+     * @return service UUIDs which every accepted result advertises one of, null if results are not narrowed down by them
+     */
+    private Set<UUID> offloadedServiceUuids() {
+        return ScanSessionManager.serviceUuidsOf(scanCriteria);
+    }
+
+    /**
+     * Service UUIDs are offloaded to the controller when possible, {@link BlueScannerTask#scanPredicates} check them again in software.
+     *
+     * @param uuids service UUIDs of the criteria, may be null
+     * @return one {@link ScanFilter} per service UUID or null if there are no UUIDs
+     */
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static List<ScanFilter> toScanFilters(Set<UUID> uuids) {
+        if (uuids == null || uuids.isEmpty()) {
+            return null;
+        }
+        List<ScanFilter> filters = new ArrayList<>(uuids.size());
+        for (UUID uuid : uuids) {
+            filters.add(new ScanFilter.Builder().setServiceUuid(new ParcelUuid(uuid)).build());
         }
+        return filters;
     }
 
     /**
@@ -277,6 +476,77 @@ public class BlueScannerTask implements Runnable {
         }
     }
 
+    /**
+     * Called by {@link BlueScannerTask#stateMachine} on the worker thread, chooses the backend by system version and scanning type
+     */
+    @Override
+    public boolean startScan() {
+        boolean started;
+        int startedBackend;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && isLowEnergy) {
+            // API changed in 5.0
+            started = startScanning();
+            startedBackend = BACKEND_LOW_ENERGY;
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && isLowEnergy) {
+            started = startLegacyScanning();
+            startedBackend = BACKEND_LEGACY;
+        } else {
+            started = startClassicScanning();
+            startedBackend = BACKEND_CLASSIC;
+        }
+        backend = started ? startedBackend : BACKEND_NONE;
+        return started;
+    }
+
+    /**
+     * Called by {@link BlueScannerTask#stateMachine} on the worker thread, stops the backend which was started
+     */
+    @Override
+    public void stopScan() {
+        if (!bluetoothAdapter.isEnabled()) {
+            // the system has stopped the scan of the disabled adapter already
+            if (backend == BACKEND_CLASSIC) {
+                context.unregisterReceiver(mReceiver);
+            }
+            backend = BACKEND_NONE;
+            return;
+        }
+        switch (backend) {
+            case BACKEND_LOW_ENERGY:
+                stopScanning();
+                break;
+            case BACKEND_LEGACY:
+                stopLegacyScanning();
+                break;
+            case BACKEND_CLASSIC:
+                stopClassicScanning();
+                break;
+            default:
+                break;
+        }
+        backend = BACKEND_NONE;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return bluetoothAdapter.isEnabled();
+    }
+
+    /**
+     * Passes adapter state changes to {@link BlueScannerTask#stateMachine}, so it waits for the adapter without polling
+     */
+    private final BroadcastReceiver adapterStateReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            int state = intent.getIntExtra(BluetoothAdapter.EXTRA_STATE, BluetoothAdapter.ERROR);
+            if (state == BluetoothAdapter.STATE_ON) {
+                stateMachine.onAdapterEnabled();
+            } else if (state == BluetoothAdapter.STATE_TURNING_OFF || state == BluetoothAdapter.STATE_OFF) {
+                stateMachine.onAdapterDisabled();
+            }
+        }
+    };
+
     /**
      * Create a BroadcastReceiver for ACTION_FOUND.
      */
@@ -287,137 +557,131 @@ public class BlueScannerTask implements Runnable {
                 // Discovery has found a device. Get the BluetoothDevice
                 // object and its info from the Intent.
                 BluetoothDevice device = intent.getParcelableExtra(BluetoothDevice.EXTRA_DEVICE);
-                onScan(device,0);
+                short rssi = intent.getShortExtra(BluetoothDevice.EXTRA_RSSI, Short.MIN_VALUE);
+                publish(device, rssi, null, intent.getStringExtra(BluetoothDevice.EXTRA_NAME));
             }
         }
     };
 
     /**
-     * Used by both {@link BlueScannerTask#legacyScanCallback} and {@link BlueScannerTask#scanCallback}
-     * to process scanned devices. Discovered device processing runs on a worker thread.
+     * Used by {@link BlueScannerTask#legacyScanCallback}, {@link BlueScannerTask#scanCallback} and {@link BlueScannerTask#mReceiver}
+     * to hand scan results over to {@link ScanIngestionPipeline}. Runs on the scan callback thread, so it only applies
+     * {@link BlueScannerTask#scanPredicates} and copies accepted results.
      *
      * @param device           Android object associated with detected Bluetooth device
      * @param rssi             Received Signal Strength Indication
+     * @param scanRecord       raw advertisement payload
+     * @param name             device name reported by Bluetooth Classic discovery, null for Bluetooth Low Energy results
      */
-    private void onScan(BluetoothDevice device, int rssi) {
-        long currentTimestamp = System.currentTimeMillis();
+    private void publish(BluetoothDevice device, int rssi, byte[] scanRecord, String name) {
         if (device != null) {
-                String macAddress = device.getAddress();
-                final BlueDevice blueDevice = new BlueDevice();
-                blueDevice.setAddress(device.getAddress());
-                blueDevice.setName(device.getName());
-                blueDevice.setDiscoveredTimestamp(currentTimestamp);
-                blueDevice.setBluetoothDevice(device);
-                if (!blueScanner.discoveredDevices.containsKey(macAddress)) {
-                    blueScanner.onDiscovery(macAddress, blueDevice);
-                } else {
-                    blueScanner.onUpdate(macAddress, blueDevice);
-                }
-                if(address!=null && !address.isEmpty() && macAddress.equals(address)){
-                    stop();
-                }
+            String macAddress = device.getAddress();
+            ScanPredicate[] predicates = scanPredicates;
+            if (predicates != null && !matchesAny(predicates, macAddress, rssi, scanRecord, name)) {
+                filteredCount.incrementAndGet();
+                return;
+            }
+            ingestionPipeline.publish(device, macAddress, rssi, scanRecord, System.currentTimeMillis());
         }
     }
 
+    private static boolean matchesAny(ScanPredicate[] predicates, String address, int rssi, byte[] scanRecord, String name) {
+        for (ScanPredicate predicate : predicates) {
+            if (predicate.matches(address, rssi, scanRecord, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
-     * Method which handles wait process after error
+     * @return number of scan results rejected by {@link ScanCriteria}
      */
-    private void waitError() {
-        try {
-            Thread.sleep(blueConfig.getWaitPeriodAfterErrorMillis());
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
+    public long getFilteredCount() {
+        return filteredCount.get();
     }
 
     /**
-     * Used to initialize internal Bluetooth scanner and scan callback.
+     * Called by {@link ScanIngestionPipeline} to process scanned devices. Discovered device processing runs on a worker thread,
+     * results of one device are always processed in order on the same one.
+     * Beacon frames are decoded first, results not matching beacon subscriptions are dropped before any {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice} work.
+     *
+     * @param scanEvent        {@link ScanEvent} holding the scan result
      */
-    private void initialize() {
-        if (bluetoothAdapter.isEnabled()) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && isLowEnergy) {
-                // API changed in 5.0
-                initScanner();
-            }else if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2 && isLowEnergy) {
-                initLegacyScanner();
-            }else{
-                initClassicScanner();
+    private void onScan(ScanEvent scanEvent) {
+        BluetoothDevice device = scanEvent.getDevice();
+        String macAddress = scanEvent.getAddress();
+        long packedAddress = MacAddress.pack(macAddress);
+        if (packedAddress == MacAddress.INVALID) {
+            Timber.w("Ignoring scan result with malformed address %s", macAddress);
+            return;
+        }
+        boolean beaconDecodingEnabled = blueConfig.getBeaconDecodingEnabled();
+        boolean discovered = (beaconDecodingEnabled || dutyCycle != null) && blueScanner.isDiscovered(packedAddress);
+        if (dutyCycle != null && !discovered) {
+            dutyCycle.onNewDevice();
+        }
+        BeaconFrame beaconFrame = null;
+        if (beaconDecodingEnabled) {
+            beaconFrame = beaconRegistry.decode(scanEvent.getScanRecord());
+            if (!beaconRegistry.accept(beaconFrame, discovered)) {
+                return;
             }
-        } else {
-           Timber.e("Bluetooth is not enabled");
         }
+        try { //#80 - exception caused by internal sdk function - only try catch is a solution
+            blueScanner.onSighting(device, macAddress, packedAddress, device.getName(), scanEvent.getRssi(), scanEvent.getScanRecord(), beaconFrame, scanEvent.getTimestamp());
+        } catch (NullPointerException e) {
+            e.printStackTrace();
+        }
+        directScanLimit.onSighting(packedAddress);
     }
 
-    @Override
-    public void run() {
-        while (!isRunning) {
-            if (bluetoothAdapter.isEnabled()) {
-                if (!initialized) {
-                    initialize();
-                }
-                if(isLowEnergy) {
-                    if (!isLegacy) {
-                        stopScanning();
-                    } else {
-                        stopLegacyScanning();
-                    }
-                }else{
-                    stopClassicScanning();
-                }
-                blueScanner.checkBlueDevices();
-                synchronized (this) {
-                    if (!isRunning) {
-                        if(bluetoothAdapter.isEnabled()) {
-                            //Start scanning
-                            isRunning=true;
-                            if(scanningTime!=null && scanningTime >0){
-                                startScanningTimer();
-                            }
-                            if(isLowEnergy) {
-                                if (!isLegacy) {
-                                    startScanning();
-                                } else {
-                                    startLegacyScanning();
-                                }
-                            }else{
-                                startClassicScanning();
-                            }
-                        }
-                    }
-                }
-            } else {
-                waitError();
-            }
+    /**
+     * @return {@link ScanIngestionPipeline} used to process scan results
+     */
+    public ScanIngestionPipeline getIngestionPipeline() {
+        return ingestionPipeline;
+    }
+
+    /**
+     * Requests scanning with the current configuration. The scan is started on the worker thread
+     * as soon as the adapter is turned on, requests while scanning is requested already do nothing
+     * except starting the next window of the duty cycle early.
+     */
+    public void start() {
+        ingestionPipeline.start();
+        directScanLimit.start(address, scanningTime);
+        stateMachine.requestStart();
+        if (dutyCycle != null) {
+            dutyCycle.start();
         }
     }
 
     /**
-     * Method which start scanning timer
+     * Method which stops all scanning process
      */
-    private void startScanningTimer(){
-        timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                stop();
-            }
-        },scanningTime);
+    public void stop() {
+        directScanLimit.cancel();
+        if (dutyCycle != null) {
+            dutyCycle.stop();
+        }
+        stateMachine.requestStop();
     }
 
 
     /**
-     * Method which stops all scanning process
+     * Method which stops scanning, the scan worker and the ingestion worker threads.
+     * Used when {@link BlueScanner} service is destroyed.
      */
-    public synchronized void stop() {
-        isRunning = false;
-        if (bluetoothAdapter.isEnabled()) {
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-                stopScanning();
-            }else if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-                stopLegacyScanning();
-            }else{
-                stopClassicScanning();
-            }
+    public void release() {
+        directScanLimit.cancel();
+        if (dutyCycle != null) {
+            dutyCycle.stop();
         }
+        stateMachine.release();
+        worker.shutdown();
+        ingestionPipeline.stop();
+        context.unregisterReceiver(adapterStateReceiver);
     }
 
 
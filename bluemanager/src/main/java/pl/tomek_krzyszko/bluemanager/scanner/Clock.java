@@ -0,0 +1,24 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import android.os.SystemClock;
+
+/**
+ * Monotonic time source of scan scheduling, replaced by a simulated clock in tests.
+ */
+public interface Clock {
+
+    /**
+     * {@link SystemClock#elapsedRealtime()}, which keeps counting in deep sleep like the system's scan rate limit
+     */
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long elapsedRealtime() {
+            return SystemClock.elapsedRealtime();
+        }
+    };
+
+    /**
+     * @return milliseconds since an arbitrary origin, never decreasing
+     */
+    long elapsedRealtime();
+}
@@ -0,0 +1,100 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
+
+/**
+ * Ends a direct scan of {@link BlueScanner#startScan(String, Long, java.util.UUID[], ScanCriteria, android.bluetooth.le.ScanSettings, java.util.List, boolean)}
+ * when its scanning time passes or the device it looks for is scanned. The scan is ended once, through {@link Ender},
+ * so open scan sessions get their shared scan back. A limit is replaced by the next start and dropped by a stop,
+ * a timer of a replaced limit does nothing.
+ */
+class DirectScanLimit {
+
+    /**
+     * Ends the direct scan, implemented by {@link BlueScanner}
+     */
+    interface Ender {
+
+        void endDirectScan();
+    }
+
+    private final ScanStateMachine.Worker worker;
+    private final Ender ender;
+
+    /**
+     * Incremented by every start, stop and end, so a timer ends only the scan it was set for
+     */
+    private int generation = 0;
+
+    /**
+     * Hardware address the scan looks for, packed with {@link MacAddress#pack(String)}, read without locking for every result
+     */
+    private volatile long address = MacAddress.INVALID;
+
+    /**
+     * @param worker {@link ScanStateMachine.Worker} running the scanning time timer
+     * @param ender {@link Ender} called when a limit is reached
+     */
+    DirectScanLimit(ScanStateMachine.Worker worker, Ender ender) {
+        this.worker = worker;
+        this.ender = ender;
+    }
+
+    /**
+     * Sets the limits of a started scan, replacing the previous ones
+     *
+     * @param packedAddress hardware address which ends the scan when scanned, {@link MacAddress#INVALID} for none
+     * @param scanningTimeMillis time in milliseconds after which the scan ends, null or 0 for none
+     */
+    void start(long packedAddress, Long scanningTimeMillis) {
+        final int started;
+        synchronized (this) {
+            started = ++generation;
+            address = packedAddress;
+        }
+        if (scanningTimeMillis != null && scanningTimeMillis > 0) {
+            worker.schedule(() -> end(started), scanningTimeMillis);
+        }
+    }
+
+    /**
+     * Drops the limits, called when the scan is stopped
+     */
+    synchronized void cancel() {
+        generation++;
+        address = MacAddress.INVALID;
+    }
+
+    /**
+     * Called for every processed scan result, ends the scan when it is the device the scan looks for
+     *
+     * @param packedAddress hardware address of the result packed with {@link MacAddress#pack(String)}
+     */
+    void onSighting(long packedAddress) {
+        if (packedAddress == MacAddress.INVALID || packedAddress != address) {
+            return;
+        }
+        boolean reached;
+        synchronized (this) {
+            reached = packedAddress == address;
+            if (reached) {
+                generation++;
+                address = MacAddress.INVALID;
+            }
+        }
+        if (reached) {
+            ender.endDirectScan();
+        }
+    }
+
+    private void end(int started) {
+        synchronized (this) {
+            if (started != generation) {
+                return;
+            }
+            generation++;
+            address = MacAddress.INVALID;
+        }
+        ender.endDirectScan();
+    }
+}
@@ -0,0 +1,188 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Hashed timing wheel used to expire items after their deadline.
+ * Every item is linked into the bucket of its deadline tick, so rescheduling is O(1)
+ * and {@link ExpiryWheel#expire(long, ExpiryHandler)} only visits buckets of the elapsed ticks
+ * instead of the whole collection.
+ * Items are tracked by {@link Object#equals(Object)}, {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice} uses identity.
+ *
+ * @param <T> type of the expiring items
+ */
+public class ExpiryWheel<T> {
+
+    /**
+     * Receives items which deadline has passed.
+     */
+    public interface ExpiryHandler<T> {
+
+        /**
+         * Called outside of the wheel lock, the item is no longer scheduled.
+         *
+         * @param item expired item
+         * @param now time in milliseconds passed to {@link ExpiryWheel#expire(long, ExpiryHandler)}
+         */
+        void onExpired(T item, long now);
+    }
+
+    private static final class Entry<T> {
+        T item;
+        long deadline;
+        Entry<T> previous;
+        Entry<T> next;
+    }
+
+    private final long tickMillis;
+    private final int mask;
+
+    /**
+     * Sentinel heads of circular doubly linked bucket lists
+     */
+    private final Entry<T>[] buckets;
+    private final Map<T, Entry<T>> entries = new HashMap<>();
+
+    /**
+     * Last tick processed by {@link ExpiryWheel#expire(long, ExpiryHandler)}, -1 before the first call
+     */
+    private long currentTick = -1;
+
+    /**
+     * @param tickMillis resolution of the wheel in milliseconds
+     * @param wheelSize number of buckets, rounded up to a power of two. One lap of the wheel
+     *                  should cover typical deadlines, so items are not visited before they expire.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ExpiryWheel(long tickMillis, int wheelSize) {
+        if (tickMillis <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("Tick and wheel size must be positive");
+        }
+        int size = Integer.highestOneBit(wheelSize);
+        if (size < wheelSize) {
+            size <<= 1;
+        }
+        this.tickMillis = tickMillis;
+        this.mask = size - 1;
+        this.buckets = new Entry[size];
+        for (int i = 0; i < size; i++) {
+            Entry<T> head = new Entry<>();
+            head.previous = head;
+            head.next = head;
+            buckets[i] = head;
+        }
+    }
+
+    /**
+     * Schedules the item or moves it to a new deadline.
+     *
+     * @param item item to expire
+     * @param deadline time in milliseconds after which the item expires
+     */
+    public synchronized void schedule(T item, long deadline) {
+        Entry<T> entry = entries.get(item);
+        if (entry == null) {
+            entry = new Entry<>();
+            entry.item = item;
+            entries.put(item, entry);
+        } else {
+            unlink(entry);
+        }
+        entry.deadline = deadline;
+        link(entry);
+    }
+
+    /**
+     * @param item item to remove from the wheel
+     * @return true if the item was scheduled
+     */
+    public synchronized boolean cancel(T item) {
+        Entry<T> entry = entries.remove(item);
+        if (entry != null) {
+            unlink(entry);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Removes all items which deadline is not later than the given time and passes them to the handler.
+     * Only the buckets of ticks elapsed since the previous call are visited.
+     *
+     * @param now current time in milliseconds
+     * @param expiryHandler {@link ExpiryHandler} called for every expired item
+     * @return number of expired items
+     */
+    public int expire(long now, ExpiryHandler<T> expiryHandler) {
+        Entry<T> expired = null;
+        int count = 0;
+        synchronized (this) {
+            long nowTick = now / tickMillis;
+            long fromTick = currentTick < 0 ? nowTick - mask : currentTick;
+            if (nowTick - fromTick > mask) {
+                fromTick = nowTick - mask;
+            }
+            for (long tick = fromTick; tick <= nowTick; tick++) {
+                Entry<T> head = buckets[(int) (tick & mask)];
+                Entry<T> entry = head.next;
+                while (entry != head) {
+                    Entry<T> next = entry.next;
+                    if (entry.deadline <= now) {
+                        unlink(entry);
+                        entries.remove(entry.item);
+                        entry.next = expired;
+                        expired = entry;
+                        count++;
+                    }
+                    entry = next;
+                }
+            }
+            currentTick = Math.max(currentTick, nowTick);
+        }
+        while (expired != null) {
+            Entry<T> next = expired.next;
+            expiryHandler.onExpired(expired.item, now);
+            expired.item = null;
+            expired.next = null;
+            expired = next;
+        }
+        return count;
+    }
+
+    /**
+     * @return number of scheduled items
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized void clear() {
+        for (Entry<T> head : buckets) {
+            head.previous = head;
+            head.next = head;
+        }
+        entries.clear();
+    }
+
+    public long getTickMillis() {
+        return tickMillis;
+    }
+
+    private void link(Entry<T> entry) {
+        // deadlines in already processed ticks go to the current bucket, which is visited again by the next expire call
+        long tick = Math.max(entry.deadline / tickMillis, currentTick);
+        Entry<T> head = buckets[(int) (tick & mask)];
+        entry.previous = head.previous;
+        entry.next = head;
+        head.previous.next = entry;
+        head.previous = entry;
+    }
+
+    private void unlink(Entry<T> entry) {
+        entry.previous.next = entry.next;
+        entry.next.previous = entry.previous;
+        entry.previous = null;
+        entry.next = null;
+    }
+}
@@ -0,0 +1,226 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.IdentityHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import timber.log.Timber;
+
+/**
+ * Bounded queue of scan events for one {@link BlueDeviceScanListener}.
+ * Events are stored in preallocated slots and delivered in order by the mailbox itself,
+ * posted to the listener's own {@link Executor}. A slow listener only fills its own mailbox,
+ * what happens then is decided by {@link ListenerOverflowPolicy}.
+ */
+public class ListenerMailbox implements Runnable {
+
+    static final int FOUND = 0;
+    static final int UPDATED = 1;
+    static final int LOST = 2;
+    static final int ERROR = 3;
+
+    /**
+     * Maximum number of events delivered by one run, so a shared executor is not blocked by a long backlog
+     */
+    private static final int DELIVERY_BATCH = 32;
+
+    private final BlueDeviceScanListener listener;
+    private final Executor executor;
+    private final ListenerOverflowPolicy overflowPolicy;
+
+    private final int[] types;
+    private final BlueDevice[] devices;
+    private final int[] errorCodes;
+
+    /**
+     * Devices with an update waiting in the mailbox, used by {@link ListenerOverflowPolicy#CONFLATE}.
+     * {@link IdentityHashMap} does not allocate entries, so conflation does not allocate per event.
+     */
+    private final IdentityHashMap<BlueDevice, Boolean> pendingUpdates;
+
+    private int head = 0;
+    private int size = 0;
+
+    /**
+     * Whether or not the mailbox has been posted to the executor and not finished yet
+     */
+    private boolean scheduled = false;
+    private boolean failed = false;
+    private boolean closed = false;
+
+    private volatile long deliveredCount = 0;
+    private long droppedCount = 0;
+    private long conflatedCount = 0;
+
+    /**
+     * @param listener {@link BlueDeviceScanListener} receiving the events
+     * @param executor {@link Executor} on which the listener is called
+     * @param overflowPolicy {@link ListenerOverflowPolicy} used when the mailbox is full
+     * @param capacity maximum number of waiting events
+     */
+    public ListenerMailbox(BlueDeviceScanListener listener, Executor executor, ListenerOverflowPolicy overflowPolicy, int capacity) {
+        if (listener == null || executor == null || overflowPolicy == null) {
+            throw new IllegalArgumentException("Argument cannot be null");
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.listener = listener;
+        this.executor = executor;
+        this.overflowPolicy = overflowPolicy;
+        this.types = new int[capacity];
+        this.devices = new BlueDevice[capacity];
+        this.errorCodes = new int[capacity];
+        this.pendingUpdates = overflowPolicy == ListenerOverflowPolicy.CONFLATE ? new IdentityHashMap<BlueDevice, Boolean>(capacity) : null;
+    }
+
+    public BlueDeviceScanListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Adds the event to the mailbox and schedules delivery.
+     *
+     * @param type one of event types
+     * @param blueDevice device of the event, null for errors
+     * @param errorCode error code of the event
+     * @return false if the mailbox has failed or has been closed and the event was discarded
+     */
+    boolean offer(int type, BlueDevice blueDevice, int errorCode) {
+        synchronized (this) {
+            if (failed || closed) {
+                droppedCount++;
+                return false;
+            }
+            if (type == UPDATED && pendingUpdates != null && pendingUpdates.containsKey(blueDevice)) {
+                conflatedCount++;
+                return true;
+            }
+            if (size == types.length) {
+                if (overflowPolicy == ListenerOverflowPolicy.FAIL_FAST) {
+                    failed = true;
+                    droppedCount += size + 1;
+                    discard();
+                    Timber.e("Mailbox of %s overflowed, the listener does not receive scan events anymore", listener);
+                    return false;
+                }
+                droppedCount++;
+                removeHead();
+            }
+            int tail = (head + size) % types.length;
+            types[tail] = type;
+            devices[tail] = blueDevice;
+            errorCodes[tail] = errorCode;
+            size++;
+            if (type == UPDATED && pendingUpdates != null) {
+                pendingUpdates.put(blueDevice, Boolean.TRUE);
+            }
+            if (scheduled) {
+                return true;
+            }
+            scheduled = true;
+        }
+        schedule();
+        return true;
+    }
+
+    /**
+     * Delivers waiting events on the executor thread
+     */
+    @Override
+    public void run() {
+        for (int i = 0; i < DELIVERY_BATCH; i++) {
+            int type;
+            BlueDevice blueDevice;
+            int errorCode;
+            synchronized (this) {
+                if (size == 0) {
+                    scheduled = false;
+                    return;
+                }
+                type = types[head];
+                blueDevice = devices[head];
+                errorCode = errorCodes[head];
+                removeHead();
+            }
+            try {
+                deliver(type, blueDevice, errorCode);
+            } catch (RuntimeException e) {
+                Timber.e(e, "Scan listener %s failed", listener);
+            }
+            deliveredCount++;
+        }
+        synchronized (this) {
+            if (size == 0) {
+                scheduled = false;
+                return;
+            }
+        }
+        // let other work on the executor run before the rest of the backlog
+        schedule();
+    }
+
+    /**
+     * Discards waiting events, the listener does not receive any event after this call returns
+     * unless it is being called already.
+     */
+    synchronized void close() {
+        closed = true;
+        discard();
+    }
+
+    public synchronized boolean isFailed() {
+        return failed;
+    }
+
+    public synchronized ListenerMailboxStats getStats() {
+        return new ListenerMailboxStats(size, deliveredCount, droppedCount, conflatedCount, failed);
+    }
+
+    private void schedule() {
+        try {
+            executor.execute(this);
+        } catch (RejectedExecutionException e) {
+            Timber.e(e, "Executor of %s rejected scan events", listener);
+            synchronized (this) {
+                droppedCount += size;
+                discard();
+                scheduled = false;
+            }
+        }
+    }
+
+    private void deliver(int type, BlueDevice blueDevice, int errorCode) {
+        switch (type) {
+            case FOUND:
+                listener.onDeviceFound(blueDevice);
+                break;
+            case UPDATED:
+                listener.onDeviceUpdate(blueDevice);
+                break;
+            case LOST:
+                listener.onDeviceLost(blueDevice);
+                break;
+            default:
+                listener.onDeviceScanError(errorCode);
+                break;
+        }
+    }
+
+    private void removeHead() {
+        if (types[head] == UPDATED && pendingUpdates != null) {
+            pendingUpdates.remove(devices[head]);
+        }
+        devices[head] = null;
+        head = (head + 1) % types.length;
+        size--;
+    }
+
+    private void discard() {
+        while (size > 0) {
+            removeHead();
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+/**
+ * Immutable copy of the counters of one {@link ListenerMailbox}.
+ */
+public final class ListenerMailboxStats {
+
+    private final int queueDepth;
+    private final long deliveredCount;
+    private final long droppedCount;
+    private final long conflatedCount;
+    private final boolean failed;
+
+    ListenerMailboxStats(int queueDepth, long deliveredCount, long droppedCount, long conflatedCount, boolean failed) {
+        this.queueDepth = queueDepth;
+        this.deliveredCount = deliveredCount;
+        this.droppedCount = droppedCount;
+        this.conflatedCount = conflatedCount;
+        this.failed = failed;
+    }
+
+    /**
+     * @return number of events waiting for the listener
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return number of events passed to the listener
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    /**
+     * @return number of events discarded because the mailbox was full or failed
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * @return number of updates merged into a waiting update of the same device
+     */
+    public long getConflatedCount() {
+        return conflatedCount;
+    }
+
+    /**
+     * @return true if the mailbox overflowed with {@link ListenerOverflowPolicy#FAIL_FAST}
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+}
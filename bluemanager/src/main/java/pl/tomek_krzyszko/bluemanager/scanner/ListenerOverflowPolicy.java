@@ -0,0 +1,24 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+/**
+ * Policy used by {@link ListenerMailbox} when a new event arrives and the listener has not consumed the previous ones.
+ */
+public enum ListenerOverflowPolicy {
+
+    /**
+     * An update of a device which already has an update waiting is merged into it.
+     * {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice} is updated in place,
+     * so the listener still gets the newest state. When the mailbox is full the oldest event is dropped.
+     */
+    CONFLATE,
+
+    /**
+     * The oldest waiting event is dropped to make room for the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * The listener stops receiving events and its waiting events are discarded
+     */
+    FAIL_FAST
+}
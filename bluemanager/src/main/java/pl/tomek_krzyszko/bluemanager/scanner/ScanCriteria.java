@@ -0,0 +1,258 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
+
+/**
+ * Conditions which a scan result has to meet to be processed by {@link BlueScanner}.
+ * Every condition which is set has to be met, a result has to match any of the addresses and any of the service UUIDs.
+ * Criteria are compiled into {@link ScanPredicate} and applied in software to results of every scan backend,
+ * so they behave the same on Bluetooth Classic, API level &lt; 21 and API level &gt;= 21 scanners.
+ * Conditions on advertising data never match Bluetooth Classic results, which do not have it.
+ */
+public final class ScanCriteria {
+
+    /**
+     * Value of {@link ScanCriteria#getMinRssi()} accepting every signal strength
+     */
+    public static final int ANY_RSSI = Integer.MIN_VALUE;
+
+    private final Set<String> addresses;
+    private final List<UUID> serviceUuids;
+    private final int manufacturerId;
+    private final byte[] manufacturerData;
+    private final byte[] manufacturerDataMask;
+    private final String namePrefix;
+    private final int minRssi;
+
+    private ScanCriteria(Builder builder) {
+        this.addresses = Collections.unmodifiableSet(new LinkedHashSet<>(builder.addresses));
+        this.serviceUuids = Collections.unmodifiableList(new ArrayList<>(builder.serviceUuids));
+        this.manufacturerId = builder.manufacturerId;
+        this.manufacturerData = builder.manufacturerData;
+        this.manufacturerDataMask = builder.manufacturerDataMask;
+        this.namePrefix = builder.namePrefix;
+        this.minRssi = builder.minRssi;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return upper case hardware addresses, empty if any address is accepted
+     */
+    public Set<String> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * @return advertised service UUIDs, empty if any service is accepted
+     */
+    public List<UUID> getServiceUuids() {
+        return serviceUuids;
+    }
+
+    /**
+     * @return Bluetooth SIG company identifier or -1 if manufacturer data is not checked
+     */
+    public int getManufacturerId() {
+        return manufacturerId;
+    }
+
+    /**
+     * @return expected manufacturer data following the company identifier, may be null
+     */
+    public byte[] getManufacturerData() {
+        return manufacturerData != null ? manufacturerData.clone() : null;
+    }
+
+    /**
+     * @return mask of the compared bits of manufacturer data, null if all bits are compared
+     */
+    public byte[] getManufacturerDataMask() {
+        return manufacturerDataMask != null ? manufacturerDataMask.clone() : null;
+    }
+
+    /**
+     * @return required beginning of the device name or null
+     */
+    public String getNamePrefix() {
+        return namePrefix;
+    }
+
+    /**
+     * @return minimum Received Signal Strength Indication or {@link ScanCriteria#ANY_RSSI}
+     */
+    public int getMinRssi() {
+        return minRssi;
+    }
+
+    /**
+     * @return true if no condition is set and every result is accepted
+     */
+    public boolean isEmpty() {
+        return addresses.isEmpty() && serviceUuids.isEmpty() && manufacturerId < 0 && namePrefix == null && minRssi == ANY_RSSI;
+    }
+
+    /**
+     * @return builder initialized with the criteria
+     */
+    public Builder toBuilder() {
+        Builder builder = new Builder();
+        builder.addresses.addAll(addresses);
+        builder.serviceUuids.addAll(serviceUuids);
+        builder.manufacturerId = manufacturerId;
+        builder.manufacturerData = manufacturerData;
+        builder.manufacturerDataMask = manufacturerDataMask;
+        builder.namePrefix = namePrefix;
+        builder.minRssi = minRssi;
+        return builder;
+    }
+
+    /**
+     * @return {@link ScanPredicate} evaluating the criteria on raw scan results
+     */
+    public ScanPredicate compile() {
+        return new ScanPredicate(this);
+    }
+
+    /**
+     * Criteria are equal when they accept the same results, the order of addresses and service UUIDs does not matter
+     */
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ScanCriteria)) {
+            return false;
+        }
+        ScanCriteria that = (ScanCriteria) o;
+        return manufacturerId == that.manufacturerId
+                && minRssi == that.minRssi
+                && addresses.equals(that.addresses)
+                && new HashSet<>(serviceUuids).equals(new HashSet<>(that.serviceUuids))
+                && Arrays.equals(manufacturerData, that.manufacturerData)
+                && Arrays.equals(manufacturerDataMask, that.manufacturerDataMask)
+                && (namePrefix != null ? namePrefix.equals(that.namePrefix) : that.namePrefix == null);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = addresses.hashCode();
+        result = 31 * result + new HashSet<>(serviceUuids).hashCode();
+        result = 31 * result + manufacturerId;
+        result = 31 * result + Arrays.hashCode(manufacturerData);
+        result = 31 * result + Arrays.hashCode(manufacturerDataMask);
+        result = 31 * result + (namePrefix != null ? namePrefix.hashCode() : 0);
+        result = 31 * result + minRssi;
+        return result;
+    }
+
+    public static final class Builder {
+
+        private final Set<String> addresses = new LinkedHashSet<>();
+        private final Set<UUID> serviceUuids = new LinkedHashSet<>();
+        private int manufacturerId = -1;
+        private byte[] manufacturerData;
+        private byte[] manufacturerDataMask;
+        private String namePrefix;
+        private int minRssi = ANY_RSSI;
+
+        private Builder() {
+        }
+
+        /**
+         * Accepts results of the device. May be called many times, results of any of the devices are accepted.
+         * @param address hardware address, e.g. 00:11:22:AA:BB:CC
+         */
+        public Builder addAddress(String address) {
+            if (!MacAddress.isValid(address)) {
+                throw new IllegalArgumentException("Invalid hardware address: " + address);
+            }
+            addresses.add(address.toUpperCase(Locale.US));
+            return this;
+        }
+
+        public Builder addAddresses(Collection<String> addresses) {
+            for (String address : addresses) {
+                addAddress(address);
+            }
+            return this;
+        }
+
+        /**
+         * Accepts results advertising the service in 16-bit, 32-bit or 128-bit service UUID lists.
+         * May be called many times, results advertising any of the services are accepted.
+         */
+        public Builder addServiceUuid(UUID serviceUuid) {
+            if (serviceUuid == null) {
+                throw new IllegalArgumentException("Argument cannot be null");
+            }
+            serviceUuids.add(serviceUuid);
+            return this;
+        }
+
+        public Builder addServiceUuids(UUID[] serviceUuids) {
+            for (UUID serviceUuid : serviceUuids) {
+                addServiceUuid(serviceUuid);
+            }
+            return this;
+        }
+
+        /**
+         * Accepts results with manufacturer specific data of the company.
+         * @param manufacturerId Bluetooth SIG company identifier
+         * @param data expected data following the company identifier, null to check only the identifier
+         * @param mask 1 bits select the compared bits of the data, null compares all bits
+         */
+        public Builder setManufacturerData(int manufacturerId, byte[] data, byte[] mask) {
+            if (manufacturerId < 0 || manufacturerId > 0xFFFF) {
+                throw new IllegalArgumentException("Invalid manufacturer id: " + manufacturerId);
+            }
+            if (mask != null && (data == null || mask.length != data.length)) {
+                throw new IllegalArgumentException("Mask length must match data length");
+            }
+            this.manufacturerId = manufacturerId;
+            this.manufacturerData = data != null ? data.clone() : null;
+            this.manufacturerDataMask = mask != null ? mask.clone() : null;
+            return this;
+        }
+
+        public Builder setManufacturerData(int manufacturerId, byte[] data) {
+            return setManufacturerData(manufacturerId, data, null);
+        }
+
+        /**
+         * Accepts results of devices whose advertised local name, or Bluetooth Classic name, starts with the prefix
+         */
+        public Builder setNamePrefix(String namePrefix) {
+            this.namePrefix = namePrefix != null && !namePrefix.isEmpty() ? namePrefix : null;
+            return this;
+        }
+
+        /**
+         * Accepts results received with at least the signal strength
+         * @param minRssi minimum Received Signal Strength Indication in dBm
+         */
+        public Builder setMinRssi(int minRssi) {
+            this.minRssi = minRssi;
+            return this;
+        }
+
+        public ScanCriteria build() {
+            return new ScanCriteria(this);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.Collections;
+import java.util.List;
+
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+/**
+ * Changes of the discovered devices collected during one batch interval.
+ * Every device is present in at most one of the lists: a device found and updated in the same interval
+ * is only added, a device updated and lost is only removed and a device found and lost in the same interval is skipped.
+ */
+public final class ScanDelta {
+
+    private final List<BlueDevice> added;
+    private final List<BlueDevice> updated;
+    private final List<BlueDevice> removed;
+    private final long timestamp;
+
+    ScanDelta(List<BlueDevice> added, List<BlueDevice> updated, List<BlueDevice> removed, long timestamp) {
+        this.added = Collections.unmodifiableList(added);
+        this.updated = Collections.unmodifiableList(updated);
+        this.removed = Collections.unmodifiableList(removed);
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return devices discovered during the interval
+     */
+    public List<BlueDevice> getAdded() {
+        return added;
+    }
+
+    /**
+     * @return previously discovered devices scanned again during the interval
+     */
+    public List<BlueDevice> getUpdated() {
+        return updated;
+    }
+
+    /**
+     * @return devices lost during the interval
+     */
+    public List<BlueDevice> getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return time in milliseconds when the interval was closed
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isEmpty() {
+        return added.isEmpty() && updated.isEmpty() && removed.isEmpty();
+    }
+}
@@ -0,0 +1,86 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+/**
+ * Collects found, updated and lost devices between two batch deliveries.
+ * Repeated events of one device are merged, so the size of a {@link ScanDelta}
+ * depends on the number of devices and not on the number of scan results.
+ */
+public class ScanDeltaAccumulator {
+
+    private static final int ADDED = 0;
+    private static final int UPDATED = 1;
+    private static final int REMOVED = 2;
+
+    /**
+     * Pending change of every device in order of its first event. {@link BlueDevice} uses identity,
+     * so a device lost and found again is tracked as two records.
+     */
+    private Map<BlueDevice, Integer> changes = new LinkedHashMap<>();
+
+    public synchronized void onAdded(BlueDevice blueDevice) {
+        changes.put(blueDevice, ADDED);
+    }
+
+    public synchronized void onUpdated(BlueDevice blueDevice) {
+        if (!changes.containsKey(blueDevice)) {
+            changes.put(blueDevice, UPDATED);
+        }
+    }
+
+    public synchronized void onRemoved(BlueDevice blueDevice) {
+        Integer previous = changes.put(blueDevice, REMOVED);
+        if (previous != null && previous == ADDED) {
+            // the device appeared and disappeared before anyone was told about it
+            changes.remove(blueDevice);
+        }
+    }
+
+    /**
+     * Closes the current interval.
+     *
+     * @param timestamp time in milliseconds of the delivery
+     * @return changes collected since the previous call or null when there are none
+     */
+    public ScanDelta drain(long timestamp) {
+        Map<BlueDevice, Integer> drained;
+        synchronized (this) {
+            if (changes.isEmpty()) {
+                return null;
+            }
+            drained = changes;
+            changes = new LinkedHashMap<>();
+        }
+        List<BlueDevice> added = new ArrayList<>();
+        List<BlueDevice> updated = new ArrayList<>();
+        List<BlueDevice> removed = new ArrayList<>();
+        for (Map.Entry<BlueDevice, Integer> change : drained.entrySet()) {
+            switch (change.getValue()) {
+                case ADDED:
+                    added.add(change.getKey());
+                    break;
+                case UPDATED:
+                    updated.add(change.getKey());
+                    break;
+                default:
+                    removed.add(change.getKey());
+                    break;
+            }
+        }
+        return new ScanDelta(added, updated, removed, timestamp);
+    }
+
+    public synchronized int size() {
+        return changes.size();
+    }
+
+    public synchronized void clear() {
+        changes.clear();
+    }
+}
@@ -0,0 +1,194 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import timber.log.Timber;
+
+/**
+ * Runs the scan in windows: the backend is resumed for the window once per interval and paused in between
+ * with {@link ScanStateMachine#pause()}. When adaptive, the interval is halved after a window in which new devices appeared
+ * and grows by half after a window without them, within the given bounds. Timers run on the {@link ScanStateMachine.Worker}
+ * and are invalidated by a generation counter when the cycle is stopped.
+ */
+public class ScanDutyCycle {
+
+    private final ScanStateMachine stateMachine;
+    private final ScanStateMachine.Worker worker;
+    private final Clock clock;
+    private final long windowMillis;
+    private final long initialIntervalMillis;
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final boolean adaptive;
+
+    private long intervalMillis;
+    private int generation = 0;
+    private boolean running = false;
+    private boolean inWindow = false;
+    private int newDevicesInWindow = 0;
+
+    /**
+     * Time of the start of the cycle and of the current window in {@link Clock#elapsedRealtime()}
+     */
+    private long startedAt;
+    private long windowStartedAt;
+
+    /**
+     * Time in milliseconds spent in finished windows since the start of the cycle
+     */
+    private long windowTimeMillis = 0;
+    private long windowCount = 0;
+
+    /**
+     * @param stateMachine {@link ScanStateMachine} paused and resumed by the cycle
+     * @param worker {@link ScanStateMachine.Worker} running the timers
+     * @param clock {@link Clock} measuring the effective duty cycle
+     * @param windowMillis time in milliseconds of one scan window
+     * @param intervalMillis initial time in milliseconds between starts of two windows, longer than the window
+     * @param minIntervalMillis shortest interval the adaptive cycle may use
+     * @param maxIntervalMillis longest interval the adaptive cycle may use
+     * @param adaptive whether or not the interval follows the appearance of new devices
+     */
+    public ScanDutyCycle(ScanStateMachine stateMachine, ScanStateMachine.Worker worker, Clock clock, long windowMillis,
+                         long intervalMillis, long minIntervalMillis, long maxIntervalMillis, boolean adaptive) {
+        if (windowMillis <= 0 || intervalMillis <= windowMillis) {
+            throw new IllegalArgumentException("Scan interval has to be longer than a positive scan window");
+        }
+        this.stateMachine = stateMachine;
+        this.worker = worker;
+        this.clock = clock;
+        this.windowMillis = windowMillis;
+        this.minIntervalMillis = Math.max(minIntervalMillis, windowMillis + 1);
+        this.maxIntervalMillis = Math.max(maxIntervalMillis, this.minIntervalMillis);
+        this.initialIntervalMillis = clamp(intervalMillis);
+        this.intervalMillis = this.initialIntervalMillis;
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * Starts the cycle with a window. When the cycle runs already the adapted interval is kept,
+     * and a new window is started right away if the scan is paused, so new requests do not wait for the next window.
+     */
+    public synchronized void start() {
+        if (!running) {
+            running = true;
+            startedAt = clock.elapsedRealtime();
+            windowTimeMillis = 0;
+            windowCount = 0;
+            intervalMillis = initialIntervalMillis;
+        } else if (inWindow) {
+            return;
+        }
+        openWindow();
+    }
+
+    /**
+     * Stops the timers of the cycle, stopping the scan itself is up to the caller
+     */
+    public synchronized void stop() {
+        if (running) {
+            closeWindow();
+            running = false;
+            generation++;
+        }
+    }
+
+    /**
+     * Called when a scan result of a device which was not discovered yet is received
+     */
+    public synchronized void onNewDevice() {
+        if (inWindow) {
+            newDevicesInWindow++;
+        }
+    }
+
+    private void openWindow() {
+        inWindow = true;
+        newDevicesInWindow = 0;
+        windowStartedAt = clock.elapsedRealtime();
+        final int current = ++generation;
+        stateMachine.resume();
+        worker.schedule(() -> onWindowEnd(current), windowMillis);
+    }
+
+    private void closeWindow() {
+        if (inWindow) {
+            inWindow = false;
+            windowCount++;
+            windowTimeMillis += clock.elapsedRealtime() - windowStartedAt;
+        }
+    }
+
+    private synchronized void onWindowEnd(int expected) {
+        if (!running || expected != generation) {
+            return;
+        }
+        closeWindow();
+        stateMachine.pause();
+        if (adaptive) {
+            long previous = intervalMillis;
+            intervalMillis = newDevicesInWindow > 0 ? clamp(intervalMillis / 2) : clamp(intervalMillis + intervalMillis / 2);
+            if (intervalMillis != previous) {
+                Timber.d("Scan interval %d -> %d ms after %d new devices", previous, intervalMillis, newDevicesInWindow);
+            }
+        }
+        final int current = ++generation;
+        worker.schedule(() -> onWindowStart(current), intervalMillis - windowMillis);
+    }
+
+    private synchronized void onWindowStart(int expected) {
+        if (running && expected == generation) {
+            openWindow();
+        }
+    }
+
+    private long clamp(long interval) {
+        return Math.max(minIntervalMillis, Math.min(maxIntervalMillis, interval));
+    }
+
+    public synchronized boolean isRunning() {
+        return running;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return current time in milliseconds between starts of two windows
+     */
+    public synchronized long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Devices are not scanned between windows, so they should not be considered lost before the gap passes
+     *
+     * @return longest time in milliseconds without scanning which may follow the current window
+     */
+    public synchronized long getMaxGapMillis() {
+        long nextInterval = adaptive ? clamp(intervalMillis + intervalMillis / 2) : intervalMillis;
+        return nextInterval - windowMillis;
+    }
+
+    /**
+     * @return ratio of time spent in scan windows to time since the start of the cycle, 0 if the cycle is not running
+     */
+    public synchronized double getEffectiveDutyCycle() {
+        if (!running) {
+            return 0;
+        }
+        long now = clock.elapsedRealtime();
+        long elapsed = now - startedAt;
+        if (elapsed <= 0) {
+            return 1;
+        }
+        long scanned = windowTimeMillis + (inWindow ? now - windowStartedAt : 0);
+        return (double) scanned / elapsed;
+    }
+
+    /**
+     * @return counters and the effective duty cycle of the scan
+     */
+    public synchronized ScanDutyCycleStats getStats() {
+        return new ScanDutyCycleStats(windowMillis, intervalMillis, windowCount + (inWindow ? 1 : 0), getEffectiveDutyCycle());
+    }
+}
@@ -0,0 +1,47 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+/**
+ * Immutable copy of the state of {@link ScanDutyCycle}.
+ */
+public final class ScanDutyCycleStats {
+
+    private final long windowMillis;
+    private final long intervalMillis;
+    private final long windowCount;
+    private final double effectiveDutyCycle;
+
+    ScanDutyCycleStats(long windowMillis, long intervalMillis, long windowCount, double effectiveDutyCycle) {
+        this.windowMillis = windowMillis;
+        this.intervalMillis = intervalMillis;
+        this.windowCount = windowCount;
+        this.effectiveDutyCycle = effectiveDutyCycle;
+    }
+
+    /**
+     * @return time in milliseconds of one scan window
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return current time in milliseconds between starts of two windows, changed by the adaptive cycle
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @return number of scan windows opened since scanning was started
+     */
+    public long getWindowCount() {
+        return windowCount;
+    }
+
+    /**
+     * @return ratio of time spent scanning to time since scanning was started, between 0 and 1
+     */
+    public double getEffectiveDutyCycle() {
+        return effectiveDutyCycle;
+    }
+}
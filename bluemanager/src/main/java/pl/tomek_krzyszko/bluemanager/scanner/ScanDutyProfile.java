@@ -0,0 +1,61 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import android.bluetooth.le.ScanSettings;
+
+/**
+ * Scan windows and intervals used by {@link ScanDutyCycle}: the scan runs for the window once per interval
+ * and is stopped in between. Intervals are never shorter than the spacing allowed by {@link ScanStartBudget}.
+ */
+public enum ScanDutyProfile {
+
+    /**
+     * Scan runs all the time, no duty cycle
+     */
+    CONTINUOUS(0, 0, ScanSettings.SCAN_MODE_LOW_POWER),
+
+    /**
+     * 4 second window every 6 seconds in low latency mode, for finding devices quickly in the foreground
+     */
+    LATENCY(4000, 6000, ScanSettings.SCAN_MODE_LOW_LATENCY),
+
+    /**
+     * 3 second window every 15 seconds in balanced mode
+     */
+    BALANCED(3000, 15000, ScanSettings.SCAN_MODE_BALANCED),
+
+    /**
+     * 6 second window every minute in low power mode, for background monitoring
+     */
+    LOW_POWER(6000, 60000, ScanSettings.SCAN_MODE_LOW_POWER);
+
+    private final long windowMillis;
+    private final long intervalMillis;
+    private final int scanMode;
+
+    ScanDutyProfile(long windowMillis, long intervalMillis, int scanMode) {
+        this.windowMillis = windowMillis;
+        this.intervalMillis = intervalMillis;
+        this.scanMode = scanMode;
+    }
+
+    /**
+     * @return time in milliseconds of one scan window, 0 for continuous scanning
+     */
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * @return time in milliseconds between starts of two scan windows, 0 for continuous scanning
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * @return {@link ScanSettings} scan mode used inside the windows unless scan settings are passed to the scan
+     */
+    public int getScanMode() {
+        return scanMode;
+    }
+}
@@ -0,0 +1,106 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import android.bluetooth.BluetoothDevice;
+
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingData;
+
+/**
+ * Mutable holder of a single scan result.
+ * Instances are preallocated by {@link ScanRingBuffer} and reused for every advertisement,
+ * so they must not be kept after {@link ScanIngestionPipeline.ScanEventHandler#onScanEvent(ScanEvent)} returns.
+ */
+public class ScanEvent {
+
+    /**
+     * Android object associated with detected Bluetooth device
+     */
+    private BluetoothDevice device;
+
+    /**
+     * hardware bluetooth device address
+     */
+    private String address;
+
+    /**
+     * Received Signal Strength Indication
+     */
+    private int rssi;
+
+    /**
+     * raw advertisement payload, null for Bluetooth Classic results
+     */
+    private byte[] scanRecord;
+
+    /**
+     * time in milliseconds when the scan callback received the result
+     */
+    private long timestamp;
+
+    /**
+     * position of the result in its stripe, increasing in the order in which results were buffered
+     */
+    private long sequence;
+
+    public BluetoothDevice getDevice() {
+        return device;
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    public int getRssi() {
+        return rssi;
+    }
+
+    public byte[] getScanRecord() {
+        return scanRecord;
+    }
+
+    /**
+     * Wraps the view around the advertising data of the result without copying it.
+     *
+     * @param advertisingData reusable {@link AdvertisingData} view
+     * @return the given view
+     */
+    public AdvertisingData readAdvertisingData(AdvertisingData advertisingData) {
+        return advertisingData.wrap(scanRecord);
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return sequence number assigned by {@link ScanRingBuffer}. Results of one device always go to the same stripe,
+     * so their sequence numbers increase in the order in which the device was scanned.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    void set(BluetoothDevice device, String address, int rssi, byte[] scanRecord, long timestamp) {
+        this.device = device;
+        this.address = address;
+        this.rssi = rssi;
+        this.scanRecord = scanRecord;
+        this.timestamp = timestamp;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    void copyFrom(ScanEvent scanEvent) {
+        set(scanEvent.device, scanEvent.address, scanEvent.rssi, scanEvent.scanRecord, scanEvent.timestamp);
+        this.sequence = scanEvent.sequence;
+    }
+
+    /**
+     * Drops references so the slot does not keep Android objects alive
+     */
+    void clear() {
+        set(null, null, 0, null, 0);
+        this.sequence = 0;
+    }
+}
@@ -0,0 +1,202 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import timber.log.Timber;
+
+/**
+ * Ingestion stage between scan callbacks and {@link BlueScanner}.
+ * Scan callbacks only copy results into one of the {@link ScanRingBuffer} stripes,
+ * one long-lived worker thread per stripe drains it and passes every result to {@link ScanEventHandler}.
+ * The stripe is chosen by hardware address, so results of one device are always processed
+ * by the same worker in the order in which they were scanned, while different devices are processed in parallel.
+ */
+public class ScanIngestionPipeline {
+
+    /**
+     * Receives buffered scan results on the worker threads.
+     * With more than one worker it is called concurrently for different devices, never for the same device.
+     */
+    public interface ScanEventHandler {
+
+        /**
+         * @param scanEvent reused holder of the scan result, valid only until the method returns
+         */
+        void onScanEvent(ScanEvent scanEvent);
+    }
+
+    private final ScanRingBuffer[] stripes;
+    private final ScanEventHandler scanEventHandler;
+
+    private final Thread[] workers;
+    private boolean running = false;
+    private final AtomicLong processedCount = new AtomicLong();
+
+    /**
+     * Creates the pipeline with a single worker thread.
+     *
+     * @param capacity number of preallocated slots in the buffer
+     * @param overflowPolicy {@link ScanOverflowPolicy} used when the buffer is full
+     * @param scanEventHandler {@link ScanEventHandler} called on the worker thread
+     */
+    public ScanIngestionPipeline(int capacity, ScanOverflowPolicy overflowPolicy, ScanEventHandler scanEventHandler) {
+        this(capacity, overflowPolicy, 1, scanEventHandler);
+    }
+
+    /**
+     * @param capacity total number of preallocated slots, divided between the stripes
+     * @param overflowPolicy {@link ScanOverflowPolicy} used when a stripe is full
+     * @param workerCount number of stripes and worker threads
+     * @param scanEventHandler {@link ScanEventHandler} called on the worker threads
+     */
+    public ScanIngestionPipeline(int capacity, ScanOverflowPolicy overflowPolicy, int workerCount, ScanEventHandler scanEventHandler) {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("Worker count must be positive");
+        }
+        int stripeCapacity = Math.max(1, (capacity + workerCount - 1) / workerCount);
+        this.stripes = new ScanRingBuffer[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            stripes[i] = new ScanRingBuffer(stripeCapacity, overflowPolicy);
+        }
+        this.workers = new Thread[workerCount];
+        this.scanEventHandler = scanEventHandler;
+    }
+
+    /**
+     * Starts the worker threads. If they are running already, it does nothing.
+     */
+    public synchronized void start() {
+        if (!running) {
+            awaitWorkers();
+            running = true;
+            for (int i = 0; i < stripes.length; i++) {
+                final ScanRingBuffer stripe = stripes[i];
+                stripe.open();
+                workers[i] = new Thread(() -> drain(stripe), stripes.length == 1 ? "BlueScanner-ingestion" : "BlueScanner-ingestion-" + i);
+                workers[i].setDaemon(true);
+                workers[i].start();
+            }
+        }
+    }
+
+    /**
+     * Stops the worker threads. Results still waiting in the buffers are processed before they finish.
+     */
+    public synchronized void stop() {
+        if (running) {
+            running = false;
+            for (ScanRingBuffer stripe : stripes) {
+                stripe.close();
+            }
+        }
+    }
+
+    /**
+     * Waits until the previous workers drain their stripes, so two workers never consume one stripe at the same time
+     */
+    private void awaitWorkers() {
+        for (int i = 0; i < workers.length; i++) {
+            Thread worker = workers[i];
+            if (worker != null && worker != Thread.currentThread()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            workers[i] = null;
+        }
+    }
+
+    /**
+     * Called from scan callbacks. Copies the result into the stripe of the device and returns immediately,
+     * unless {@link ScanOverflowPolicy#BLOCK} is used and the stripe is full.
+     *
+     * @return true if the result was buffered, false if it was dropped
+     */
+    public boolean publish(BluetoothDevice device, String address, int rssi, byte[] scanRecord, long timestamp) {
+        return stripes[stripeOf(address, stripes.length)].offer(device, address, rssi, scanRecord, timestamp);
+    }
+
+    /**
+     * @param address hardware address of the device
+     * @param stripeCount number of stripes
+     * @return index of the stripe which processes results of the device
+     */
+    static int stripeOf(String address, int stripeCount) {
+        if (stripeCount == 1 || address == null) {
+            return 0;
+        }
+        int hash = address.hashCode();
+        // addresses of one vendor share the prefix, spread the differing low bytes
+        hash ^= hash >>> 16;
+        return (hash & 0x7fffffff) % stripeCount;
+    }
+
+    private void drain(ScanRingBuffer stripe) {
+        ScanEvent workerEvent = new ScanEvent();
+        try {
+            while (stripe.take(workerEvent)) {
+                try {
+                    scanEventHandler.onScanEvent(workerEvent);
+                } catch (RuntimeException e) {
+                    Timber.e(e, "Scan result processing failed");
+                }
+                processedCount.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            workerEvent.clear();
+        }
+    }
+
+    /**
+     * @return number of stripes and worker threads
+     */
+    public int getWorkerCount() {
+        return stripes.length;
+    }
+
+    /**
+     * @return number of results passed to {@link ScanIngestionPipeline#publish(BluetoothDevice, String, int, byte[], long)}
+     */
+    public long getPublishedCount() {
+        long count = 0;
+        for (ScanRingBuffer stripe : stripes) {
+            count += stripe.getOfferedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return number of results dropped by the buffers
+     */
+    public long getDroppedCount() {
+        long count = 0;
+        for (ScanRingBuffer stripe : stripes) {
+            count += stripe.getDroppedCount();
+        }
+        return count;
+    }
+
+    /**
+     * @return number of results passed to {@link ScanEventHandler}
+     */
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    /**
+     * @return number of results waiting for the worker threads
+     */
+    public int getQueueDepth() {
+        int depth = 0;
+        for (ScanRingBuffer stripe : stripes) {
+            depth += stripe.size();
+        }
+        return depth;
+    }
+}
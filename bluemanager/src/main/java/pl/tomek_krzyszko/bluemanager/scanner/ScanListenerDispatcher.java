@@ -0,0 +1,150 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.concurrent.Executor;
+
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+/**
+ * Delivers scan events to registered {@link BlueDeviceScanListener}s without allocating per event.
+ * Every listener has its own {@link ListenerMailbox}. Mailboxes are kept in an immutable array
+ * which is replaced on register and unregister, so dispatching iterates it without copying or locking.
+ */
+public class ScanListenerDispatcher {
+
+    private static final ListenerMailbox[] EMPTY = new ListenerMailbox[0];
+
+    private final Executor defaultExecutor;
+    private final ListenerOverflowPolicy defaultOverflowPolicy;
+    private final int defaultCapacity;
+
+    private volatile ListenerMailbox[] mailboxes = EMPTY;
+
+    /**
+     * @param defaultExecutor {@link Executor} of listeners registered without one, main thread {@link android.os.Handler} in the scanner
+     * @param defaultOverflowPolicy {@link ListenerOverflowPolicy} of listeners registered without one
+     * @param defaultCapacity mailbox capacity of listeners registered without one
+     */
+    public ScanListenerDispatcher(Executor defaultExecutor, ListenerOverflowPolicy defaultOverflowPolicy, int defaultCapacity) {
+        this.defaultExecutor = defaultExecutor;
+        this.defaultOverflowPolicy = defaultOverflowPolicy;
+        this.defaultCapacity = defaultCapacity;
+    }
+
+    /**
+     * Registers the listener with the default executor, overflow policy and capacity.
+     *
+     * @return true if the listener was not registered before
+     */
+    public boolean add(BlueDeviceScanListener blueDeviceScanListener) {
+        return add(blueDeviceScanListener, defaultExecutor, defaultOverflowPolicy, defaultCapacity);
+    }
+
+    /**
+     * @param blueDeviceScanListener listener to register
+     * @param executor {@link Executor} on which the listener is called
+     * @param overflowPolicy {@link ListenerOverflowPolicy} used when the listener falls behind
+     * @param capacity maximum number of events waiting for the listener
+     * @return true if the listener was not registered before
+     */
+    public synchronized boolean add(BlueDeviceScanListener blueDeviceScanListener, Executor executor,
+                                    ListenerOverflowPolicy overflowPolicy, int capacity) {
+        ListenerMailbox[] current = mailboxes;
+        if (indexOf(current, blueDeviceScanListener) >= 0) {
+            return false;
+        }
+        ListenerMailbox[] updated = new ListenerMailbox[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = new ListenerMailbox(blueDeviceScanListener, executor, overflowPolicy, capacity);
+        mailboxes = updated;
+        return true;
+    }
+
+    /**
+     * Unregisters the listener and discards events waiting for it.
+     *
+     * @return true if the listener was registered
+     */
+    public synchronized boolean remove(BlueDeviceScanListener blueDeviceScanListener) {
+        ListenerMailbox[] current = mailboxes;
+        int index = indexOf(current, blueDeviceScanListener);
+        if (index < 0) {
+            return false;
+        }
+        current[index].close();
+        if (current.length == 1) {
+            mailboxes = EMPTY;
+        } else {
+            ListenerMailbox[] updated = new ListenerMailbox[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            mailboxes = updated;
+        }
+        return true;
+    }
+
+    public synchronized void clear() {
+        for (ListenerMailbox mailbox : mailboxes) {
+            mailbox.close();
+        }
+        mailboxes = EMPTY;
+    }
+
+    public boolean isEmpty() {
+        return mailboxes.length == 0;
+    }
+
+    /**
+     * @return counters of the listener's mailbox or null if the listener is not registered.
+     * Failed mailboxes stay registered, so their stats can be read.
+     */
+    public ListenerMailboxStats getStats(BlueDeviceScanListener blueDeviceScanListener) {
+        ListenerMailbox[] current = mailboxes;
+        int index = indexOf(current, blueDeviceScanListener);
+        return index >= 0 ? current[index].getStats() : null;
+    }
+
+    /**
+     * Posts {@link BlueDeviceScanListener#onDeviceFound(BlueDevice)} to every listener
+     */
+    public void postFound(BlueDevice blueDevice) {
+        post(ListenerMailbox.FOUND, blueDevice, 0);
+    }
+
+    /**
+     * Posts {@link BlueDeviceScanListener#onDeviceUpdate(BlueDevice)} to every listener
+     */
+    public void postUpdate(BlueDevice blueDevice) {
+        post(ListenerMailbox.UPDATED, blueDevice, 0);
+    }
+
+    /**
+     * Posts {@link BlueDeviceScanListener#onDeviceLost(BlueDevice)} to every listener
+     */
+    public void postLost(BlueDevice blueDevice) {
+        post(ListenerMailbox.LOST, blueDevice, 0);
+    }
+
+    /**
+     * Posts {@link BlueDeviceScanListener#onDeviceScanError(int)} to every listener
+     */
+    public void postError(int errorCode) {
+        post(ListenerMailbox.ERROR, null, errorCode);
+    }
+
+    private void post(int type, BlueDevice blueDevice, int errorCode) {
+        // listeners registered or removed during the loop are applied from the next event
+        for (ListenerMailbox mailbox : mailboxes) {
+            mailbox.offer(type, blueDevice, errorCode);
+        }
+    }
+
+    private static int indexOf(ListenerMailbox[] current, BlueDeviceScanListener blueDeviceScanListener) {
+        for (int i = 0; i < current.length; i++) {
+            if (current[i].getListener().equals(blueDeviceScanListener)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
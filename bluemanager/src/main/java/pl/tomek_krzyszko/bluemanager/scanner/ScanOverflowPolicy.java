@@ -0,0 +1,22 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+/**
+ * Policy used by {@link ScanRingBuffer} when a new scan result arrives and all slots are occupied.
+ */
+public enum ScanOverflowPolicy {
+
+    /**
+     * The oldest buffered scan result is overwritten by the new one
+     */
+    DROP_OLDEST,
+
+    /**
+     * The new scan result is discarded and buffered results are kept
+     */
+    DROP_NEWEST,
+
+    /**
+     * The scan callback thread waits until the worker thread frees a slot
+     */
+    BLOCK
+}
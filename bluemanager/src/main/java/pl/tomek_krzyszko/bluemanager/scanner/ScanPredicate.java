@@ -0,0 +1,229 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.device.AdvertisingData;
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
+
+/**
+ * {@link ScanCriteria} compiled for evaluation on raw scan results.
+ * Service UUIDs are kept as primitive arrays, the name prefix as UTF-8 bytes and the manufacturer data premasked,
+ * and the advertising data is read in place with one pass over its structures,
+ * so rejecting a result does not allocate. Called on scan callback threads, before results are buffered.
+ */
+public final class ScanPredicate {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Least significant bits of the Bluetooth Base UUID 0000xxxx-0000-1000-8000-00805F9B34FB
+     */
+    private static final long BASE_UUID_LSB = 0x800000805F9B34FBL;
+    private static final long BASE_UUID_MSB_LOW = 0x00001000L;
+
+    private final ScanCriteria scanCriteria;
+
+    /**
+     * sorted addresses packed with {@link MacAddress#pack(String)}
+     */
+    private final long[] addresses;
+    private final int minRssi;
+
+    private final boolean checkServiceUuids;
+    /**
+     * 16-bit and 32-bit forms of service UUIDs derived from the Bluetooth Base UUID
+     */
+    private final long[] shortServiceUuids;
+    private final long[] serviceUuidMsbs;
+    private final long[] serviceUuidLsbs;
+
+    private final int manufacturerId;
+    private final byte[] manufacturerData;
+    private final byte[] manufacturerDataMask;
+
+    private final String namePrefix;
+    private final byte[] namePrefixBytes;
+
+    private final ThreadLocal<AdvertisingData> advertisingData = new ThreadLocal<AdvertisingData>() {
+        @Override
+        protected AdvertisingData initialValue() {
+            return new AdvertisingData();
+        }
+    };
+
+    ScanPredicate(ScanCriteria scanCriteria) {
+        this.scanCriteria = scanCriteria;
+        this.addresses = new long[scanCriteria.getAddresses().size()];
+        int addressCount = 0;
+        for (String address : scanCriteria.getAddresses()) {
+            addresses[addressCount++] = MacAddress.pack(address);
+        }
+        Arrays.sort(addresses);
+        this.minRssi = scanCriteria.getMinRssi();
+
+        List<UUID> serviceUuids = scanCriteria.getServiceUuids();
+        this.checkServiceUuids = !serviceUuids.isEmpty();
+        this.serviceUuidMsbs = new long[serviceUuids.size()];
+        this.serviceUuidLsbs = new long[serviceUuids.size()];
+        int shortCount = 0;
+        for (int i = 0; i < serviceUuids.size(); i++) {
+            serviceUuidMsbs[i] = serviceUuids.get(i).getMostSignificantBits();
+            serviceUuidLsbs[i] = serviceUuids.get(i).getLeastSignificantBits();
+            if (isBaseUuid(serviceUuidMsbs[i], serviceUuidLsbs[i])) {
+                shortCount++;
+            }
+        }
+        this.shortServiceUuids = new long[shortCount];
+        for (int i = 0, j = 0; i < serviceUuids.size(); i++) {
+            if (isBaseUuid(serviceUuidMsbs[i], serviceUuidLsbs[i])) {
+                shortServiceUuids[j++] = serviceUuidMsbs[i] >>> 32;
+            }
+        }
+
+        this.manufacturerId = scanCriteria.getManufacturerId();
+        byte[] data = scanCriteria.getManufacturerData();
+        byte[] mask = scanCriteria.getManufacturerDataMask();
+        if (data != null && mask != null) {
+            for (int i = 0; i < data.length; i++) {
+                data[i] &= mask[i];
+            }
+        }
+        this.manufacturerData = data;
+        this.manufacturerDataMask = mask;
+
+        this.namePrefix = scanCriteria.getNamePrefix();
+        this.namePrefixBytes = namePrefix != null ? namePrefix.getBytes(UTF_8) : null;
+    }
+
+    private static boolean isBaseUuid(long mostSignificantBits, long leastSignificantBits) {
+        return leastSignificantBits == BASE_UUID_LSB && (mostSignificantBits & 0xFFFFFFFFL) == BASE_UUID_MSB_LOW;
+    }
+
+    /**
+     * @return criteria the predicate was compiled from
+     */
+    public ScanCriteria getScanCriteria() {
+        return scanCriteria;
+    }
+
+    /**
+     * @param address hardware address of the device
+     * @param rssi Received Signal Strength Indication
+     * @param scanRecord raw advertising data, null for Bluetooth Classic results
+     * @param name device name known without advertising data, e.g. from Bluetooth Classic discovery, may be null
+     * @return true if the result meets all criteria
+     */
+    public boolean matches(String address, int rssi, byte[] scanRecord, String name) {
+        if (rssi < minRssi) {
+            return false;
+        }
+        if (addresses.length > 0 && Arrays.binarySearch(addresses, MacAddress.pack(address)) < 0) {
+            return false;
+        }
+        boolean serviceFound = !checkServiceUuids;
+        boolean manufacturerFound = manufacturerId < 0;
+        boolean nameFound = namePrefix == null;
+        if (serviceFound && manufacturerFound && nameFound) {
+            return true;
+        }
+        if (scanRecord != null) {
+            AdvertisingData view = advertisingData.get().wrap(scanRecord);
+            while (view.moveToNext()) {
+                switch (view.getType()) {
+                    case AdvertisingData.TYPE_SERVICE_UUIDS_16_BIT_PARTIAL:
+                    case AdvertisingData.TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
+                        serviceFound = serviceFound || containsShortUuid(view, 2);
+                        break;
+                    case AdvertisingData.TYPE_SERVICE_UUIDS_32_BIT_PARTIAL:
+                    case AdvertisingData.TYPE_SERVICE_UUIDS_32_BIT_COMPLETE:
+                        serviceFound = serviceFound || containsShortUuid(view, 4);
+                        break;
+                    case AdvertisingData.TYPE_SERVICE_UUIDS_128_BIT_PARTIAL:
+                    case AdvertisingData.TYPE_SERVICE_UUIDS_128_BIT_COMPLETE:
+                        serviceFound = serviceFound || containsUuid(view);
+                        break;
+                    case AdvertisingData.TYPE_MANUFACTURER_SPECIFIC_DATA:
+                        manufacturerFound = manufacturerFound || matchesManufacturerData(view);
+                        break;
+                    case AdvertisingData.TYPE_LOCAL_NAME_SHORT:
+                    case AdvertisingData.TYPE_LOCAL_NAME_COMPLETE:
+                        nameFound = nameFound || startsWithPrefix(view);
+                        break;
+                    default:
+                        break;
+                }
+            }
+        }
+        if (!nameFound && name != null) {
+            nameFound = name.startsWith(namePrefix);
+        }
+        return serviceFound && manufacturerFound && nameFound;
+    }
+
+    private boolean containsShortUuid(AdvertisingData view, int size) {
+        int end = view.getValueOffset() + view.getValueLength();
+        for (int i = view.getValueOffset(); i + size <= end; i += size) {
+            long uuid = size == 2 ? view.getUint16(i) : (view.getUint16(i) | (long) view.getUint16(i + 2) << 16);
+            for (long shortServiceUuid : shortServiceUuids) {
+                if (uuid == shortServiceUuid) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean containsUuid(AdvertisingData view) {
+        int end = view.getValueOffset() + view.getValueLength();
+        for (int i = view.getValueOffset(); i + 16 <= end; i += 16) {
+            // 128-bit UUIDs are advertised in little endian order
+            long leastSignificantBits = view.getInt64(i);
+            long mostSignificantBits = view.getInt64(i + 8);
+            for (int j = 0; j < serviceUuidMsbs.length; j++) {
+                if (mostSignificantBits == serviceUuidMsbs[j] && leastSignificantBits == serviceUuidLsbs[j]) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private boolean matchesManufacturerData(AdvertisingData view) {
+        int length = view.getValueLength() - 2;
+        if (length < 0 || view.getUint16(view.getValueOffset()) != manufacturerId) {
+            return false;
+        }
+        if (manufacturerData == null) {
+            return true;
+        }
+        if (length < manufacturerData.length) {
+            return false;
+        }
+        byte[] data = view.getData();
+        int offset = view.getValueOffset() + 2;
+        for (int i = 0; i < manufacturerData.length; i++) {
+            byte value = manufacturerDataMask != null ? (byte) (data[offset + i] & manufacturerDataMask[i]) : data[offset + i];
+            if (value != manufacturerData[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean startsWithPrefix(AdvertisingData view) {
+        if (view.getValueLength() < namePrefixBytes.length) {
+            return false;
+        }
+        byte[] data = view.getData();
+        int offset = view.getValueOffset();
+        for (int i = 0; i < namePrefixBytes.length; i++) {
+            if (data[offset + i] != namePrefixBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
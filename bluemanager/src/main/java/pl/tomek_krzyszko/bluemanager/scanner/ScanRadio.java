@@ -0,0 +1,31 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+/**
+ * Bluetooth adapter and scan backend driven by {@link ScanStateMachine}.
+ * Implemented by {@link BlueScannerTask}, methods are called only on the state machine's worker thread.
+ */
+public interface ScanRadio {
+
+    /**
+     * @return true if the Bluetooth adapter is turned on
+     */
+    boolean isEnabled();
+
+    /**
+     * Starts the scan backend with the current configuration.
+     *
+     * @return false if the backend refused to start, the start is retried after a back-off period then
+     */
+    boolean startScan();
+
+    /**
+     * Stops the scan backend started by {@link ScanRadio#startScan()}
+     */
+    void stopScan();
+
+    /**
+     * @return true if the running backend was started with a configuration which has to be applied by restarting it,
+     * e.g. different hardware filters
+     */
+    boolean isConfigurationChanged();
+}
@@ -0,0 +1,231 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import android.bluetooth.BluetoothDevice;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded buffer of preallocated {@link ScanEvent} slots between scan callbacks and the ingestion worker.
+ * Scan callbacks copy results into free slots, a single consumer copies them out again,
+ * so no object is allocated per advertisement.
+ * Behaviour when all slots are occupied is described by {@link ScanOverflowPolicy}.
+ */
+public class ScanRingBuffer {
+
+    private final ScanEvent[] slots;
+    private final ScanOverflowPolicy overflowPolicy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Index of the oldest buffered event
+     */
+    private int head = 0;
+
+    /**
+     * Number of buffered events
+     */
+    private int size = 0;
+
+    /**
+     * Whether or not the buffer has been closed and consumers should stop waiting
+     */
+    private boolean closed = false;
+
+    /**
+     * Sequence number of the next buffered result
+     */
+    private long nextSequence = 0;
+
+    private long offeredCount = 0;
+    private long droppedCount = 0;
+    private long takenCount = 0;
+
+    /**
+     * @param capacity number of preallocated slots
+     * @param overflowPolicy {@link ScanOverflowPolicy} used when the buffer is full
+     */
+    public ScanRingBuffer(int capacity, ScanOverflowPolicy overflowPolicy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("Overflow policy cannot be null");
+        }
+        this.overflowPolicy = overflowPolicy;
+        this.slots = new ScanEvent[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new ScanEvent();
+        }
+    }
+
+    /**
+     * Copies scan result into the next free slot.
+     *
+     * @param device           Android object associated with detected Bluetooth device
+     * @param address          hardware address of the bluetooth device
+     * @param rssi             Received Signal Strength Indication
+     * @param scanRecord       raw advertisement payload
+     * @param timestamp        time in milliseconds when the result was received
+     * @return true if the result was buffered, false if it was dropped
+     */
+    public boolean offer(BluetoothDevice device, String address, int rssi, byte[] scanRecord, long timestamp) {
+        lock.lock();
+        try {
+            offeredCount++;
+            if (closed) {
+                droppedCount++;
+                return false;
+            }
+            if (size == slots.length) {
+                switch (overflowPolicy) {
+                    case DROP_NEWEST:
+                        droppedCount++;
+                        return false;
+                    case DROP_OLDEST:
+                        slots[head].clear();
+                        head = (head + 1) % slots.length;
+                        size--;
+                        droppedCount++;
+                        break;
+                    case BLOCK:
+                        while (size == slots.length && !closed) {
+                            try {
+                                notFull.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                droppedCount++;
+                                return false;
+                            }
+                        }
+                        if (closed) {
+                            droppedCount++;
+                            return false;
+                        }
+                        break;
+                }
+            }
+            ScanEvent slot = slots[(head + size) % slots.length];
+            slot.set(device, address, rssi, scanRecord, timestamp);
+            slot.setSequence(nextSequence++);
+            size++;
+            notEmpty.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Moves the oldest buffered result to the given holder, waiting until one is available.
+     *
+     * @param out {@link ScanEvent} which receives the result
+     * @return true if a result was copied, false if the buffer was closed and drained
+     * @throws InterruptedException when the waiting thread is interrupted
+     */
+    public boolean take(ScanEvent out) throws InterruptedException {
+        lock.lock();
+        try {
+            while (size == 0) {
+                if (closed) {
+                    return false;
+                }
+                notEmpty.await();
+            }
+            ScanEvent slot = slots[head];
+            out.copyFrom(slot);
+            slot.clear();
+            head = (head + 1) % slots.length;
+            size--;
+            takenCount++;
+            notFull.signal();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wakes up waiting threads. Buffered results can still be taken, new ones are dropped.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Accepts new results again after {@link ScanRingBuffer#close()}
+     */
+    public void open() {
+        lock.lock();
+        try {
+            closed = false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return slots.length;
+    }
+
+    public ScanOverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * @return number of results currently waiting for the worker
+     */
+    public int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of results passed to {@link ScanRingBuffer#offer(BluetoothDevice, String, int, byte[], long)}
+     */
+    public long getOfferedCount() {
+        lock.lock();
+        try {
+            return offeredCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of results lost because of {@link ScanOverflowPolicy} or closed buffer
+     */
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return droppedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of results handed over to the consumer
+     */
+    public long getTakenCount() {
+        lock.lock();
+        try {
+            return takenCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
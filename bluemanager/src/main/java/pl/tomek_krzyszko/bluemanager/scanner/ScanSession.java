@@ -0,0 +1,120 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import pl.tomek_krzyszko.bluemanager.device.ConcurrentLongMap;
+
+/**
+ * Handle of one client of the shared scan, opened with {@link ScanSessionManager#open(ScanCriteria, ListenerMailbox, boolean)}.
+ * The session receives only devices matching its own {@link ScanCriteria}: a device is reported as found
+ * the first time it matches, updated on later matching results and lost when the scanner loses it.
+ * Scanning continues while any session is open, {@link ScanSession#close()} releases the session's share of it.
+ */
+public class ScanSession {
+
+    private final ScanSessionManager manager;
+    private final ScanCriteria scanCriteria;
+
+    /**
+     * Compiled {@link ScanSession#scanCriteria}, null accepts every device
+     */
+    private final ScanPredicate scanPredicate;
+    private final boolean lowEnergy;
+    private final ListenerMailbox mailbox;
+
+    /**
+     * Devices reported to the session as found and not lost yet, keyed by packed address
+     */
+    private final ConcurrentLongMap<BlueDevice> reportedDevices = new ConcurrentLongMap<>();
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    ScanSession(ScanSessionManager manager, ScanCriteria scanCriteria, ListenerMailbox mailbox, boolean lowEnergy) {
+        this.manager = manager;
+        this.scanCriteria = scanCriteria;
+        this.scanPredicate = scanCriteria.isEmpty() ? null : scanCriteria.compile();
+        this.mailbox = mailbox;
+        this.lowEnergy = lowEnergy;
+    }
+
+    /**
+     * @return criteria of the session, empty if the session accepts every device
+     */
+    public ScanCriteria getScanCriteria() {
+        return scanCriteria;
+    }
+
+    public boolean isLowEnergy() {
+        return lowEnergy;
+    }
+
+    public BlueDeviceScanListener getListener() {
+        return mailbox.getListener();
+    }
+
+    /**
+     * @return counters of the session's mailbox
+     */
+    public ListenerMailboxStats getStats() {
+        return mailbox.getStats();
+    }
+
+    /**
+     * @return devices reported to the session as found and not lost yet
+     */
+    public List<BlueDevice> getDevices() {
+        return reportedDevices.values();
+    }
+
+    public boolean isClosed() {
+        return closed.get();
+    }
+
+    /**
+     * Stops delivering events to the listener and releases the session's share of the scan.
+     * The hardware scan is reconfigured only if the session was the last one with its criteria, and stopped if it was the last session.
+     * Calling it again does nothing.
+     */
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            mailbox.close();
+            manager.close(this);
+            reportedDevices.clear();
+        }
+    }
+
+    /**
+     * Called when the scanner discovers or updates the device
+     */
+    void onSighting(BlueDevice blueDevice) {
+        if (closed.get()) {
+            return;
+        }
+        if (scanPredicate != null
+                && !scanPredicate.matches(blueDevice.getAddress(), blueDevice.getRssi(), blueDevice.getScanRecord(), blueDevice.getName())) {
+            return;
+        }
+        if (reportedDevices.putIfAbsent(blueDevice.getPackedAddress(), blueDevice) == null) {
+            mailbox.offer(ListenerMailbox.FOUND, blueDevice, 0);
+        } else {
+            mailbox.offer(ListenerMailbox.UPDATED, blueDevice, 0);
+        }
+    }
+
+    /**
+     * Called when the scanner loses the device, reported only if the device was found by the session
+     */
+    void onLost(BlueDevice blueDevice) {
+        if (reportedDevices.remove(blueDevice.getPackedAddress(), blueDevice) != null && !closed.get()) {
+            mailbox.offer(ListenerMailbox.LOST, blueDevice, 0);
+        }
+    }
+
+    void onError(int errorCode) {
+        if (!closed.get()) {
+            mailbox.offer(ListenerMailbox.ERROR, null, errorCode);
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+/**
+ * Merges open {@link ScanSession}s into one hardware scan. The scan is started when the first session opens,
+ * stopped when the last one closes and reconfigured only when the union of session criteria changes,
+ * so sessions with equal criteria share the scan without touching the radio. Results of the merged scan
+ * are routed to every session whose criteria they match.
+ */
+public class ScanSessionManager {
+
+    /**
+     * Hardware scan shared by the sessions. Called with the manager's lock held, in the order of session changes.
+     */
+    public interface SharedScan {
+
+        /**
+         * @param union distinct criteria of open sessions, a single empty {@link ScanCriteria} when any session accepts every device
+         * @param lowEnergy scanning type of the sessions
+         */
+        void start(Set<ScanCriteria> union, boolean lowEnergy);
+
+        /**
+         * @param union new union of session criteria
+         */
+        void reconfigure(Set<ScanCriteria> union);
+
+        void stop();
+    }
+
+    private static final ScanSession[] EMPTY = new ScanSession[0];
+    private static final ScanCriteria ANY = ScanCriteria.builder().build();
+
+    private final SharedScan sharedScan;
+
+    /**
+     * Copy-on-write array of open sessions, read without locking when results are routed
+     */
+    private volatile ScanSession[] sessions = EMPTY;
+    private Set<ScanCriteria> union = Collections.emptySet();
+    private boolean lowEnergy;
+    private long reconfigurationCount = 0;
+
+    public ScanSessionManager(SharedScan sharedScan) {
+        this.sharedScan = sharedScan;
+    }
+
+    /**
+     * Opens a session and starts or reconfigures the shared scan if the union of criteria changes.
+     *
+     * @param scanCriteria {@link ScanCriteria} of the session, null for all devices
+     * @param mailbox {@link ListenerMailbox} delivering the session's events
+     * @param lowEnergy information about scanning type
+     * @return handle of the session
+     * @throws IllegalStateException when sessions of the other scanning type are open, they cannot share one scan
+     */
+    public synchronized ScanSession open(ScanCriteria scanCriteria, ListenerMailbox mailbox, boolean lowEnergy) {
+        ScanSession[] current = sessions;
+        if (current.length > 0 && lowEnergy != this.lowEnergy) {
+            throw new IllegalStateException("Scan sessions of different scanning types cannot be merged");
+        }
+        ScanSession session = new ScanSession(this, scanCriteria != null ? scanCriteria : ANY, mailbox, lowEnergy);
+        ScanSession[] updated = new ScanSession[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, current.length);
+        updated[current.length] = session;
+        sessions = updated;
+        Set<ScanCriteria> previous = union;
+        union = unionOf(updated);
+        if (current.length == 0) {
+            this.lowEnergy = lowEnergy;
+            sharedScan.start(union, lowEnergy);
+        } else if (!union.equals(previous)) {
+            reconfigurationCount++;
+            sharedScan.reconfigure(union);
+        }
+        return session;
+    }
+
+    /**
+     * Called by {@link ScanSession#close()}
+     */
+    synchronized void close(ScanSession session) {
+        ScanSession[] current = sessions;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == session) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            sessions = EMPTY;
+            union = Collections.emptySet();
+            sharedScan.stop();
+            return;
+        }
+        ScanSession[] updated = new ScanSession[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        sessions = updated;
+        Set<ScanCriteria> previous = union;
+        union = unionOf(updated);
+        if (!union.equals(previous)) {
+            reconfigurationCount++;
+            sharedScan.reconfigure(union);
+        }
+    }
+
+    /**
+     * Starts the shared scan again with the current union, after it was replaced or stopped by another scan.
+     * Does nothing when no session is open.
+     */
+    public synchronized void restart() {
+        if (sessions.length > 0) {
+            sharedScan.start(union, lowEnergy);
+        }
+    }
+
+    /**
+     * Ends a direct scan which replaced the shared scan, see {@link BlueScanner#startScan(String, Long, UUID[], ScanCriteria,
+     * android.bluetooth.le.ScanSettings, java.util.List, boolean)}, and starts the shared scan again if any session is open.
+     *
+     * @param directScan stops the direct scan
+     */
+    public synchronized void endDirectScan(Runnable directScan) {
+        directScan.run();
+        restart();
+    }
+
+    /**
+     * Closes every open session and stops the shared scan
+     */
+    public void closeAll() {
+        for (ScanSession session : sessions) {
+            session.close();
+        }
+    }
+
+    private static Set<ScanCriteria> unionOf(ScanSession[] sessions) {
+        Set<ScanCriteria> union = new LinkedHashSet<>();
+        for (ScanSession session : sessions) {
+            if (session.getScanCriteria().isEmpty()) {
+                // one session accepting everything makes other criteria irrelevant for the hardware scan
+                return Collections.singleton(ANY);
+            }
+            union.add(session.getScanCriteria());
+        }
+        return Collections.unmodifiableSet(union);
+    }
+
+    /**
+     * Service UUIDs which can be offloaded to the controller for the union: a result is accepted by the union
+     * only if it advertises one of them. Null when any criteria accepts results without a service UUID.
+     *
+     * @param union union of session criteria
+     * @return service UUIDs of all criteria or null if the union cannot be narrowed down by service UUIDs
+     */
+    public static Set<UUID> serviceUuidsOf(Collection<ScanCriteria> union) {
+        if (union == null || union.isEmpty()) {
+            return null;
+        }
+        Set<UUID> serviceUuids = new LinkedHashSet<>();
+        for (ScanCriteria scanCriteria : union) {
+            if (scanCriteria.getServiceUuids().isEmpty()) {
+                return null;
+            }
+            serviceUuids.addAll(scanCriteria.getServiceUuids());
+        }
+        return serviceUuids;
+    }
+
+    public void onFound(BlueDevice blueDevice) {
+        for (ScanSession session : sessions) {
+            session.onSighting(blueDevice);
+        }
+    }
+
+    /**
+     * Updates are routed the same way as discoveries, a device which starts matching a session is found by it then
+     */
+    public void onUpdate(BlueDevice blueDevice) {
+        for (ScanSession session : sessions) {
+            session.onSighting(blueDevice);
+        }
+    }
+
+    public void onLost(BlueDevice blueDevice) {
+        for (ScanSession session : sessions) {
+            session.onLost(blueDevice);
+        }
+    }
+
+    public void onError(int errorCode) {
+        for (ScanSession session : sessions) {
+            session.onError(errorCode);
+        }
+    }
+
+    /**
+     * @return current union of session criteria, empty when no session is open
+     */
+    public synchronized Set<ScanCriteria> getUnion() {
+        return union;
+    }
+
+    /**
+     * @return scanning type of open sessions
+     */
+    public synchronized boolean isLowEnergy() {
+        return lowEnergy;
+    }
+
+    public int getSessionCount() {
+        return sessions.length;
+    }
+
+    public boolean isEmpty() {
+        return sessions.length == 0;
+    }
+
+    /**
+     * @return number of times the shared scan was reconfigured because the union changed
+     */
+    public synchronized long getReconfigurationCount() {
+        return reconfigurationCount;
+    }
+}
@@ -0,0 +1,86 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+/**
+ * Token bucket of scan starts. Android silently stops delivering results to an application
+ * which starts scans more than 5 times in 30 seconds, so every start takes a token and the token
+ * returns exactly one window after it was taken. Unlike a bucket refilled at a constant rate
+ * this never allows more starts in any window than the limit.
+ */
+public class ScanStartBudget {
+
+    private final Clock clock;
+    private final long windowMillis;
+
+    /**
+     * Ring of times when the last starts took their tokens, the oldest one at {@link ScanStartBudget#head}
+     */
+    private final long[] startTimes;
+    private int head = 0;
+    private int used = 0;
+
+    /**
+     * @param limit maximum number of starts in the window
+     * @param windowMillis length of the window in milliseconds
+     * @param clock {@link Clock} measuring the window
+     */
+    public ScanStartBudget(int limit, long windowMillis, Clock clock) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive");
+        }
+        this.startTimes = new long[limit];
+        this.windowMillis = windowMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return 0 if the start may run now, otherwise milliseconds until the next token returns
+     */
+    public synchronized long tryAcquire() {
+        long now = clock.elapsedRealtime();
+        long delay = refill(now);
+        if (delay > 0) {
+            return delay;
+        }
+        startTimes[(head + used) % startTimes.length] = now;
+        used++;
+        return 0;
+    }
+
+    /**
+     * @return milliseconds until a token is available, 0 if one is available now
+     */
+    public synchronized long getMillisUntilAvailable() {
+        return refill(clock.elapsedRealtime());
+    }
+
+    /**
+     * @return number of starts which may run now
+     */
+    public synchronized int getAvailableTokens() {
+        refill(clock.elapsedRealtime());
+        return startTimes.length - used;
+    }
+
+    public int getLimit() {
+        return startTimes.length;
+    }
+
+    public long getWindowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Returns tokens whose window has passed
+     *
+     * @return milliseconds until the oldest token returns if none is available, 0 otherwise
+     */
+    private long refill(long now) {
+        while (used > 0 && now - startTimes[head] >= windowMillis) {
+            head = (head + 1) % startTimes.length;
+            used--;
+        }
+        return used < startTimes.length ? 0 : startTimes[head] + windowMillis - now;
+    }
+}
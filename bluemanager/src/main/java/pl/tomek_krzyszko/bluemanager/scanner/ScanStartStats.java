@@ -0,0 +1,72 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+/**
+ * Immutable copy of the counters of {@link ScanStateMachine} and its {@link ScanStartBudget}.
+ */
+public final class ScanStartStats {
+
+    private final ScanStateMachine.State state;
+    private final int availableStarts;
+    private final long millisUntilNextStart;
+    private final long startCount;
+    private final long failureCount;
+    private final long deferredStartCount;
+    private final long coalescedRequestCount;
+
+    ScanStartStats(ScanStateMachine.State state, int availableStarts, long millisUntilNextStart, long startCount,
+                   long failureCount, long deferredStartCount, long coalescedRequestCount) {
+        this.state = state;
+        this.availableStarts = availableStarts;
+        this.millisUntilNextStart = millisUntilNextStart;
+        this.startCount = startCount;
+        this.failureCount = failureCount;
+        this.deferredStartCount = deferredStartCount;
+        this.coalescedRequestCount = coalescedRequestCount;
+    }
+
+    public ScanStateMachine.State getState() {
+        return state;
+    }
+
+    /**
+     * @return number of scan starts allowed by the budget right now
+     */
+    public int getAvailableStarts() {
+        return availableStarts;
+    }
+
+    /**
+     * @return milliseconds until the budget allows the next start, 0 if it allows one now
+     */
+    public long getMillisUntilNextStart() {
+        return millisUntilNextStart;
+    }
+
+    /**
+     * @return number of attempts to start the scan backend
+     */
+    public long getStartCount() {
+        return startCount;
+    }
+
+    /**
+     * @return number of failed starts and scan failures
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return number of starts and restarts postponed because the budget was used up
+     */
+    public long getDeferredStartCount() {
+        return deferredStartCount;
+    }
+
+    /**
+     * @return number of stop requests cancelled by a start request before the scan was stopped
+     */
+    public long getCoalescedRequestCount() {
+        return coalescedRequestCount;
+    }
+}
@@ -0,0 +1,406 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import timber.log.Timber;
+
+/**
+ * Lifecycle of the hardware scan as an explicit state machine driven by events: start and stop requests,
+ * adapter state changes reported by {@link android.bluetooth.BluetoothAdapter#ACTION_STATE_CHANGED} and scan failures.
+ * Events are queued on one long-lived {@link Worker} and handled in order, so {@link ScanRadio} is only touched
+ * from that thread. Nothing is polled: while the adapter is off the machine waits for the adapter event,
+ * every failed start is retried after an exponentially growing back-off period.
+ * Starts are limited by {@link ScanStartBudget}: a start over the budget is deferred until a token returns,
+ * a stop followed by a start before the stop is applied keeps the scan running, and restarts requested
+ * while the budget is used up are merged into one deferred restart.
+ */
+public class ScanStateMachine {
+
+    public enum State {
+        /**
+         * Scanning is not requested
+         */
+        IDLE,
+        /**
+         * Scanning is requested and waits for the adapter to be turned on
+         */
+        STARTING,
+        /**
+         * The scan backend is running
+         */
+        SCANNING,
+        /**
+         * The scan backend failed or the start budget is used up, start is retried after the back-off period
+         */
+        BACKOFF,
+        /**
+         * Scanning is requested but the backend is stopped between two windows of {@link ScanDutyCycle}
+         */
+        PAUSED,
+        /**
+         * The machine has been released and ignores all events
+         */
+        STOPPED
+    }
+
+    /**
+     * Single thread running the events, a {@link java.util.concurrent.ScheduledExecutorService} in the scanner
+     */
+    public interface Worker {
+
+        void execute(Runnable runnable);
+
+        void schedule(Runnable runnable, long delayMillis);
+    }
+
+    /**
+     * Maximum back-off period as a multiple of the initial one
+     */
+    private static final int MAX_BACKOFF_MULTIPLIER = 32;
+
+    private final ScanRadio radio;
+    private final Worker worker;
+    private final long initialBackoffMillis;
+
+    /**
+     * Limits starts of the scan backend, null for no limit
+     */
+    private final ScanStartBudget budget;
+
+    /**
+     * Written only on the worker thread
+     */
+    private volatile State state = State.IDLE;
+    private long backoffMillis;
+
+    /**
+     * Incremented whenever a scheduled retry becomes obsolete, a retry runs only if the generation did not change
+     */
+    private int retryGeneration = 0;
+
+    /**
+     * Whether or not a stop request waits to be applied, a start request arriving before cancels it
+     */
+    private boolean stopPending = false;
+
+    /**
+     * Whether or not a restart deferred by the budget is scheduled
+     */
+    private boolean reconfigurePending = false;
+
+    private volatile long startCount = 0;
+    private volatile long failureCount = 0;
+    private volatile long deferredStartCount = 0;
+    private volatile long coalescedRequestCount = 0;
+
+    /**
+     * @param radio {@link ScanRadio} controlled by the machine
+     * @param worker {@link Worker} running the events
+     * @param initialBackoffMillis time in milliseconds to wait before the first retry after a failure
+     */
+    public ScanStateMachine(ScanRadio radio, Worker worker, long initialBackoffMillis) {
+        this(radio, worker, initialBackoffMillis, null);
+    }
+
+    /**
+     * @param radio {@link ScanRadio} controlled by the machine
+     * @param worker {@link Worker} running the events
+     * @param initialBackoffMillis time in milliseconds to wait before the first retry after a failure
+     * @param budget {@link ScanStartBudget} limiting starts of the backend, null for no limit
+     */
+    public ScanStateMachine(ScanRadio radio, Worker worker, long initialBackoffMillis, ScanStartBudget budget) {
+        this.radio = radio;
+        this.worker = worker;
+        this.initialBackoffMillis = Math.max(1, initialBackoffMillis);
+        this.backoffMillis = this.initialBackoffMillis;
+        this.budget = budget;
+    }
+
+    public void requestStart() {
+        worker.execute(this::onStartRequested);
+    }
+
+    public void requestStop() {
+        worker.execute(this::onStopRequested);
+    }
+
+    /**
+     * Restarts the running scan backend if {@link ScanRadio#isConfigurationChanged()}. Does nothing when not scanning,
+     * the configuration is applied by the next start then.
+     */
+    public void requestReconfigure() {
+        worker.execute(this::onReconfigureRequested);
+    }
+
+    public void onAdapterEnabled() {
+        worker.execute(this::onAdapterOn);
+    }
+
+    public void onAdapterDisabled() {
+        worker.execute(this::onAdapterOff);
+    }
+
+    /**
+     * @param errorCode error code reported by the scan backend
+     */
+    public void onScanFailed(final int errorCode) {
+        worker.execute(() -> onFailure(errorCode));
+    }
+
+    /**
+     * Stops the running backend until {@link ScanStateMachine#resume()}, scanning stays requested
+     */
+    public void pause() {
+        worker.execute(this::onPause);
+    }
+
+    /**
+     * Starts the backend stopped by {@link ScanStateMachine#pause()}
+     */
+    public void resume() {
+        worker.execute(this::onResume);
+    }
+
+    /**
+     * Stops scanning for good, the machine ignores all later events
+     */
+    public void release() {
+        worker.execute(this::onRelease);
+    }
+
+    private void onStartRequested() {
+        if (stopPending) {
+            // stopping and starting again would only spend a start of the budget
+            stopPending = false;
+            coalescedRequestCount++;
+        } else if (state == State.IDLE) {
+            attemptStart();
+        }
+    }
+
+    private void onStopRequested() {
+        if (state == State.SCANNING) {
+            if (!stopPending) {
+                stopPending = true;
+                // applied after the events queued so far, a start among them cancels it
+                worker.execute(this::onStopApplied);
+            }
+        } else if (state != State.STOPPED && state != State.IDLE) {
+            cancelRetry();
+            transition(State.IDLE);
+        }
+    }
+
+    private void onStopApplied() {
+        if (stopPending && (state == State.SCANNING || state == State.PAUSED)) {
+            if (state == State.SCANNING) {
+                radio.stopScan();
+            }
+            cancelRetry();
+            transition(State.IDLE);
+        }
+        stopPending = false;
+    }
+
+    private void onPause() {
+        if (state == State.SCANNING) {
+            radio.stopScan();
+            cancelRetry();
+            transition(State.PAUSED);
+        } else if (state == State.STARTING || state == State.BACKOFF) {
+            // the next window starts the backend again
+            cancelRetry();
+            transition(State.PAUSED);
+        }
+    }
+
+    private void onResume() {
+        if (state == State.PAUSED) {
+            attemptStart();
+        }
+    }
+
+    private void onReconfigureRequested() {
+        if (state != State.SCANNING || stopPending || reconfigurePending || !radio.isConfigurationChanged()) {
+            return;
+        }
+        long delay = budget != null ? budget.getMillisUntilAvailable() : 0;
+        if (delay > 0) {
+            // keep scanning with the old configuration until the restart fits the budget
+            reconfigurePending = true;
+            deferredStartCount++;
+            final int generation = retryGeneration;
+            worker.schedule(() -> onDeferredReconfigure(generation), delay);
+            return;
+        }
+        radio.stopScan();
+        attemptStart();
+    }
+
+    private void onDeferredReconfigure(int generation) {
+        if (reconfigurePending && generation == retryGeneration) {
+            reconfigurePending = false;
+            onReconfigureRequested();
+        }
+    }
+
+    private void cancelRetry() {
+        retryGeneration++;
+        reconfigurePending = false;
+        backoffMillis = initialBackoffMillis;
+    }
+
+    private void onAdapterOn() {
+        if (state == State.STARTING) {
+            attemptStart();
+        } else if (state == State.BACKOFF) {
+            // a fresh adapter is worth trying right away
+            retryGeneration++;
+            backoffMillis = initialBackoffMillis;
+            attemptStart();
+        }
+    }
+
+    private void onAdapterOff() {
+        if (state == State.SCANNING || state == State.BACKOFF) {
+            // the system stops scans of a disabled adapter, wait for it to be turned on again
+            if (state == State.SCANNING) {
+                // releases what the backend holds besides the scan itself, e.g. its broadcast receiver
+                radio.stopScan();
+            }
+            retryGeneration++;
+            reconfigurePending = false;
+            if (stopPending) {
+                stopPending = false;
+                transition(State.IDLE);
+            } else {
+                transition(State.STARTING);
+            }
+        }
+    }
+
+    private void onFailure(int errorCode) {
+        if (state == State.SCANNING) {
+            Timber.w("Scan failed with error %d", errorCode);
+            radio.stopScan();
+            reconfigurePending = false;
+            if (stopPending) {
+                stopPending = false;
+                cancelRetry();
+                transition(State.IDLE);
+            } else {
+                backOff();
+            }
+        }
+    }
+
+    private void onRetry(int generation) {
+        if (state == State.BACKOFF && generation == retryGeneration) {
+            attemptStart();
+        }
+    }
+
+    private void onRelease() {
+        if (state == State.SCANNING) {
+            radio.stopScan();
+        }
+        stopPending = false;
+        cancelRetry();
+        transition(State.STOPPED);
+    }
+
+    private void attemptStart() {
+        if (!radio.isEnabled()) {
+            transition(State.STARTING);
+            return;
+        }
+        long delay = budget != null ? budget.tryAcquire() : 0;
+        if (delay > 0) {
+            Timber.d("Scan start deferred by %d ms to stay within the start budget", delay);
+            deferredStartCount++;
+            scheduleRetry(delay);
+            return;
+        }
+        boolean started;
+        try {
+            started = radio.startScan();
+        } catch (RuntimeException e) {
+            Timber.e(e, "Scan could not be started");
+            started = false;
+        }
+        startCount++;
+        if (started) {
+            backoffMillis = initialBackoffMillis;
+            transition(State.SCANNING);
+        } else {
+            backOff();
+        }
+    }
+
+    private void backOff() {
+        failureCount++;
+        scheduleRetry(backoffMillis);
+        backoffMillis = Math.min(backoffMillis * 2, initialBackoffMillis * MAX_BACKOFF_MULTIPLIER);
+    }
+
+    private void scheduleRetry(long delayMillis) {
+        transition(State.BACKOFF);
+        final int generation = ++retryGeneration;
+        worker.schedule(() -> onRetry(generation), delayMillis);
+    }
+
+    private void transition(State next) {
+        if (state != next) {
+            Timber.d("Scan state %s -> %s", state, next);
+            state = next;
+        }
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * @return true if scanning is requested, whether or not the backend is running at the moment
+     */
+    public boolean isActive() {
+        State current = state;
+        return current == State.STARTING || current == State.SCANNING || current == State.BACKOFF || current == State.PAUSED;
+    }
+
+    /**
+     * @return number of attempts to start the scan backend
+     */
+    public long getStartCount() {
+        return startCount;
+    }
+
+    /**
+     * @return number of failed starts and scan failures
+     */
+    public long getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * @return number of starts and restarts postponed because the start budget was used up
+     */
+    public long getDeferredStartCount() {
+        return deferredStartCount;
+    }
+
+    /**
+     * @return number of stop requests cancelled by a start request before the scan was stopped
+     */
+    public long getCoalescedRequestCount() {
+        return coalescedRequestCount;
+    }
+
+    /**
+     * @return counters of the machine and its start budget
+     */
+    public ScanStartStats getStats() {
+        int availableStarts = budget != null ? budget.getAvailableTokens() : Integer.MAX_VALUE;
+        long millisUntilNextStart = budget != null ? budget.getMillisUntilAvailable() : 0;
+        return new ScanStartStats(state, availableStarts, millisUntilNextStart, startCount, failureCount,
+                deferredStartCount, coalescedRequestCount);
+    }
+}
@@ -0,0 +1,120 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import pl.tomek_krzyszko.bluemanager.callback.TargetScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import pl.tomek_krzyszko.bluemanager.device.ConcurrentLongMap;
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
+
+/**
+ * Pending targets of a multi-target scan. Targets are kept in a {@link ConcurrentLongMap} keyed by packed address,
+ * so checking a scan result is one lock-free lookup whatever the number of targets,
+ * and removing a found target is atomic, so every target is reported exactly once
+ * even when scan results are processed by several workers.
+ */
+public class TargetTracker {
+
+    private final ConcurrentLongMap<String> pendingTargets;
+    private final int targetCount;
+    private final TargetScanListener listener;
+    private final Executor executor;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    /**
+     * @param addresses hardware addresses of the targets
+     * @param listener {@link TargetScanListener} receiving the progress
+     * @param executor {@link Executor} running the callbacks
+     * @throws IllegalArgumentException when there are no targets or an address is malformed
+     */
+    public TargetTracker(Collection<String> addresses, TargetScanListener listener, Executor executor) {
+        if (addresses == null || addresses.isEmpty()) {
+            throw new IllegalArgumentException("At least one target address is required");
+        }
+        this.pendingTargets = new ConcurrentLongMap<>(16, addresses.size());
+        for (String address : addresses) {
+            long packedAddress = MacAddress.pack(address);
+            if (packedAddress == MacAddress.INVALID) {
+                throw new IllegalArgumentException("Invalid hardware address: " + address);
+            }
+            pendingTargets.putIfAbsent(packedAddress, MacAddress.unpack(packedAddress));
+        }
+        this.targetCount = pendingTargets.size();
+        this.listener = listener;
+        this.executor = executor;
+    }
+
+    /**
+     * Called for every processed scan result.
+     *
+     * @param packedAddress hardware address packed with {@link MacAddress#pack(String)}
+     * @param blueDevice scanned {@link BlueDevice}
+     * @return true if the result completed the scan, the caller stops scanning then
+     */
+    public boolean onSighting(long packedAddress, final BlueDevice blueDevice) {
+        // lock-free miss for devices which are not targets or have been found already
+        if (finished.get() || pendingTargets.get(packedAddress) == null || pendingTargets.remove(packedAddress) == null) {
+            return false;
+        }
+        if (listener != null) {
+            executor.execute(() -> listener.onTargetFound(blueDevice));
+        }
+        if (pendingTargets.isEmpty() && finished.compareAndSet(false, true)) {
+            if (listener != null) {
+                executor.execute(listener::onAllTargetsFound);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Called when the deadline passes.
+     *
+     * @return true if the scan was still running, the caller stops scanning then
+     */
+    public boolean expire() {
+        if (finished.compareAndSet(false, true)) {
+            if (listener != null) {
+                final Set<String> pendingAddresses = getPendingAddresses();
+                executor.execute(() -> listener.onTargetScanTimeout(pendingAddresses));
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finishes tracking without callbacks, e.g. when another scan is started
+     */
+    public void cancel() {
+        finished.set(true);
+    }
+
+    /**
+     * @return true if all targets were found, the deadline passed or tracking was cancelled
+     */
+    public boolean isFinished() {
+        return finished.get();
+    }
+
+    /**
+     * @return upper case hardware addresses of targets which have not been found yet
+     */
+    public Set<String> getPendingAddresses() {
+        return Collections.unmodifiableSet(new LinkedHashSet<>(pendingTargets.values()));
+    }
+
+    public int getTargetCount() {
+        return targetCount;
+    }
+
+    public int getFoundCount() {
+        return targetCount - pendingTargets.size();
+    }
+}
@@ -0,0 +1,145 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Limits how often updates of one device are delivered.
+ * The first update of a device is delivered right away, following updates inside the minimum interval
+ * are conflated into a single delivery at the end of the interval. The pending delivery reads the device
+ * when it runs, so listeners always get the newest state, see {@link pl.tomek_krzyszko.bluemanager.device.BlueDevice#updateSighting(String, int, long)}.
+ *
+ * @param <T> type of the updated items
+ */
+public class UpdateConflator<T> {
+
+    /**
+     * Runs deliveries after a delay, {@link android.os.Handler#postDelayed(Runnable, long)} in the scanner.
+     */
+    public interface Scheduler {
+
+        void postDelayed(Runnable runnable, long delayMillis);
+    }
+
+    /**
+     * Receives conflated updates on the thread of {@link Scheduler}.
+     */
+    public interface UpdateHandler<T> {
+
+        void onUpdate(T item);
+    }
+
+    /**
+     * Delivery state of one item. The same instance is posted for every delivery of the item.
+     */
+    private final class Entry implements Runnable {
+        final T item;
+        long lastDeliveryMillis = Long.MIN_VALUE;
+        long dueMillis;
+        boolean pending;
+        boolean removed;
+
+        Entry(T item) {
+            this.item = item;
+        }
+
+        @Override
+        public void run() {
+            synchronized (UpdateConflator.this) {
+                pending = false;
+                if (removed) {
+                    return;
+                }
+                lastDeliveryMillis = dueMillis;
+            }
+            updateHandler.onUpdate(item);
+            deliveredCount++;
+        }
+    }
+
+    private final long minIntervalMillis;
+    private final Scheduler scheduler;
+    private final UpdateHandler<T> updateHandler;
+    private final Map<T, Entry> entries = new HashMap<>();
+
+    private volatile long conflatedCount = 0;
+    private volatile long deliveredCount = 0;
+
+    /**
+     * @param minIntervalMillis minimum time in milliseconds between two deliveries for the same item
+     * @param scheduler {@link Scheduler} running the deliveries
+     * @param updateHandler {@link UpdateHandler} called for every delivery
+     */
+    public UpdateConflator(long minIntervalMillis, Scheduler scheduler, UpdateHandler<T> updateHandler) {
+        if (minIntervalMillis < 0) {
+            throw new IllegalArgumentException("Minimum interval cannot be negative");
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.scheduler = scheduler;
+        this.updateHandler = updateHandler;
+    }
+
+    /**
+     * Requests delivery of the item's update. Does nothing but counting when a delivery is pending already.
+     *
+     * @param item updated item
+     * @param now time in milliseconds of the update
+     */
+    public void offer(T item, long now) {
+        Entry entry;
+        long delay;
+        synchronized (this) {
+            entry = entries.get(item);
+            if (entry == null) {
+                entry = new Entry(item);
+                entries.put(item, entry);
+            }
+            if (entry.pending) {
+                conflatedCount++;
+                return;
+            }
+            entry.pending = true;
+            long earliest = entry.lastDeliveryMillis == Long.MIN_VALUE ? now : entry.lastDeliveryMillis + minIntervalMillis;
+            entry.dueMillis = Math.max(now, earliest);
+            delay = entry.dueMillis - now;
+        }
+        scheduler.postDelayed(entry, delay);
+    }
+
+    /**
+     * Forgets the item. Its pending delivery, if any, is skipped.
+     *
+     * @param item item which is no longer updated
+     */
+    public synchronized void remove(T item) {
+        Entry entry = entries.remove(item);
+        if (entry != null) {
+            entry.removed = true;
+        }
+    }
+
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            entry.removed = true;
+        }
+        entries.clear();
+    }
+
+    /**
+     * @return number of updates merged into a pending delivery instead of being delivered
+     */
+    public long getConflatedCount() {
+        return conflatedCount;
+    }
+
+    /**
+     * @return number of updates passed to {@link UpdateHandler}
+     */
+    public long getDeliveredCount() {
+        return deliveredCount;
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+}
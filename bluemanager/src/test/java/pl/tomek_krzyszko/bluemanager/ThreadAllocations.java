@@ -0,0 +1,23 @@
+package pl.tomek_krzyszko.bluemanager;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Allocation counter of the current thread for tests of allocation free paths.
+ */
+public final class ThreadAllocations {
+
+    private ThreadAllocations() {
+    }
+
+    /**
+     * @return bytes allocated by the current thread or -1 if the JVM does not report it
+     */
+    public static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,182 @@
+package pl.tomek_krzyszko.bluemanager.beacon;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * iBeacon, AltBeacon and Eddystone frames decoded from captured scan records, and which of them pass
+ * the subscriptions: telemetry only of devices whose identity was accepted before.
+ */
+public class BeaconRegistryTest {
+
+    private static final UUID PROXIMITY_UUID = UUID.fromString("f7826da6-4fa2-4e98-8024-bc5b71e0893e");
+    private static final byte[] FLAGS = {0x02, 0x01, 0x06};
+
+    private final BeaconRegistry beaconRegistry = new BeaconRegistry();
+
+    @Test
+    public void decode_iBeacon() throws Exception {
+        BeaconFrame frame = beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 100, 7));
+        assertNotNull(frame);
+        assertEquals(BeaconType.IBEACON, frame.getType());
+        Beacon beacon = frame.toBeacon();
+        assertEquals(PROXIMITY_UUID, beacon.getProximityUuid());
+        assertEquals(100, beacon.getMajor());
+        assertEquals(7, beacon.getMinor());
+        assertEquals(-59, beacon.getTxPower());
+    }
+
+    @Test
+    public void decode_altBeacon() throws Exception {
+        byte[] record = concat(FLAGS, new byte[]{0x1B, (byte) 0xFF, 0x18, 0x01, (byte) 0xBE, (byte) 0xAC},
+                uuid(PROXIMITY_UUID), new byte[]{0x00, 0x01, 0x00, 0x02, (byte) 0xC5, 0x00});
+        BeaconFrame frame = beaconRegistry.decode(record);
+        assertNotNull(frame);
+        assertEquals(BeaconType.ALTBEACON, frame.getType());
+        assertEquals(PROXIMITY_UUID, frame.toBeacon().getProximityUuid());
+        assertEquals(1, frame.getMajor());
+        assertEquals(2, frame.getMinor());
+    }
+
+    @Test
+    public void decode_eddystoneUid() throws Exception {
+        BeaconFrame frame = beaconRegistry.decode(eddystoneUid("00112233445566778899", "aabbccddeeff"));
+        assertNotNull(frame);
+        Beacon beacon = frame.toBeacon();
+        assertEquals(BeaconType.EDDYSTONE_UID, beacon.getType());
+        assertEquals("00112233445566778899", beacon.getNamespaceId());
+        assertEquals("aabbccddeeff", beacon.getInstanceId());
+        assertEquals(-20, beacon.getTxPower());
+        assertNull(beacon.getProximityUuid());
+    }
+
+    @Test
+    public void decode_eddystoneUrl() throws Exception {
+        byte[] record = concat(FLAGS, new byte[]{0x03, 0x03, (byte) 0xAA, (byte) 0xFE},
+                new byte[]{0x0E, 0x16, (byte) 0xAA, (byte) 0xFE, 0x10, (byte) 0xEB, 0x03, 'b', 'l', 'u', 'e', 0x07, 'a', 'b', 0x00});
+        BeaconFrame frame = beaconRegistry.decode(record);
+        assertNotNull(frame);
+        Beacon beacon = frame.toBeacon();
+        assertEquals(BeaconType.EDDYSTONE_URL, beacon.getType());
+        assertEquals("https://blue.comab.com/", beacon.getUrl());
+        assertTrue(frame.sameAs(beacon));
+    }
+
+    @Test
+    public void decode_eddystoneTlm() throws Exception {
+        byte[] record = concat(FLAGS, new byte[]{0x11, 0x16, (byte) 0xAA, (byte) 0xFE, 0x20, 0x00,
+                0x0B, (byte) 0xB8, 0x15, (byte) 0x80, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x00, 0x64});
+        BeaconFrame frame = beaconRegistry.decode(record);
+        assertNotNull(frame);
+        assertFalse(frame.isIdentifying());
+        BeaconTelemetry telemetry = frame.toTelemetry(1000);
+        assertEquals(3000, telemetry.getBatteryMillivolts());
+        assertEquals(21.5f, telemetry.getTemperature(), 0.001f);
+        assertEquals(256, telemetry.getAdvertisingCount());
+        assertEquals(10000, telemetry.getUptimeMillis());
+        assertEquals(1000, telemetry.getTimestamp());
+    }
+
+    @Test
+    public void decode_ignoresOtherRecords() throws Exception {
+        assertNull(beaconRegistry.decode(null));
+        assertNull(beaconRegistry.decode(concat(FLAGS, new byte[]{0x05, 0x09, 'B', 'l', 'u', 'e'})));
+        // iBeacon prefix with a truncated payload
+        assertNull(beaconRegistry.decode(concat(FLAGS, new byte[]{0x07, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15, 0x01, 0x02})));
+    }
+
+    @Test
+    public void accept_withoutSubscriptions_acceptsEverything() throws Exception {
+        assertTrue(beaconRegistry.accept(null, false));
+        assertTrue(beaconRegistry.accept(beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 1, 1)), false));
+        assertEquals(0, beaconRegistry.getRejectedCount());
+    }
+
+    @Test
+    public void accept_rejectsFramesNotMatchingSubscriptions() throws Exception {
+        beaconRegistry.addSubscription(BeaconFilter.proximityUuid(PROXIMITY_UUID, 100, BeaconFilter.ANY));
+        beaconRegistry.addSubscription(BeaconFilter.eddystoneNamespace("00112233445566778899"));
+
+        assertTrue(beaconRegistry.accept(beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 100, 3)), false));
+        assertFalse(beaconRegistry.accept(beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 101, 3)), false));
+        assertFalse(beaconRegistry.accept(beaconRegistry.decode(iBeacon(UUID.randomUUID(), 100, 3)), false));
+        assertTrue(beaconRegistry.accept(beaconRegistry.decode(eddystoneUid("00112233445566778899", "000000000001")), false));
+        assertFalse(beaconRegistry.accept(beaconRegistry.decode(eddystoneUid("00112233445566778800", "000000000001")), false));
+        assertFalse(beaconRegistry.accept(null, true));
+        assertEquals(4, beaconRegistry.getRejectedCount());
+
+        beaconRegistry.clearSubscriptions();
+        assertTrue(beaconRegistry.accept(null, false));
+    }
+
+    @Test
+    public void accept_telemetryOnlyOfKnownDevices() throws Exception {
+        beaconRegistry.addSubscription(BeaconFilter.eddystoneNamespace("00112233445566778899"));
+        byte[] tlm = concat(FLAGS, new byte[]{0x11, 0x16, (byte) 0xAA, (byte) 0xFE, 0x20, 0x00,
+                0x0B, (byte) 0xB8, (byte) 0x80, 0x00, 0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x01});
+        assertFalse(beaconRegistry.accept(beaconRegistry.decode(tlm), false));
+        assertTrue(beaconRegistry.accept(beaconRegistry.decode(tlm), true));
+        assertTrue(Float.isNaN(beaconRegistry.decode(tlm).toTelemetry(0).getTemperature()));
+    }
+
+    @Test
+    public void subscriptions_areNotDuplicated() throws Exception {
+        beaconRegistry.addSubscription(BeaconFilter.proximityUuid(PROXIMITY_UUID));
+        beaconRegistry.addSubscription(BeaconFilter.proximityUuid(PROXIMITY_UUID));
+        assertTrue(beaconRegistry.removeSubscription(BeaconFilter.proximityUuid(PROXIMITY_UUID)));
+        assertFalse(beaconRegistry.hasSubscriptions());
+        assertFalse(beaconRegistry.removeSubscription(BeaconFilter.proximityUuid(PROXIMITY_UUID)));
+    }
+
+    @Test
+    public void sameAs_detectsChangedIdentity() throws Exception {
+        Beacon beacon = beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 1, 2)).toBeacon();
+        assertTrue(beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 1, 2)).sameAs(beacon));
+        assertFalse(beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 1, 3)).sameAs(beacon));
+        assertEquals(beacon, beaconRegistry.decode(iBeacon(PROXIMITY_UUID, 1, 2)).toBeacon());
+    }
+
+    private static byte[] iBeacon(UUID uuid, int major, int minor) {
+        return concat(FLAGS, new byte[]{0x1A, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15}, uuid(uuid),
+                new byte[]{(byte) (major >> 8), (byte) major, (byte) (minor >> 8), (byte) minor, (byte) 0xC5});
+    }
+
+    private static byte[] eddystoneUid(String namespace, String instance) {
+        return concat(FLAGS, new byte[]{0x03, 0x03, (byte) 0xAA, (byte) 0xFE},
+                new byte[]{0x17, 0x16, (byte) 0xAA, (byte) 0xFE, 0x00, (byte) 0xEC}, hex(namespace + instance), new byte[]{0x00, 0x00});
+    }
+
+    private static byte[] uuid(UUID uuid) {
+        byte[] bytes = new byte[16];
+        for (int i = 0; i < 8; i++) {
+            bytes[i] = (byte) (uuid.getMostSignificantBits() >>> (56 - 8 * i));
+            bytes[8 + i] = (byte) (uuid.getLeastSignificantBits() >>> (56 - 8 * i));
+        }
+        return bytes;
+    }
+
+    private static byte[] hex(String hex) {
+        byte[] bytes = new byte[hex.length() / 2];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(2 * i, 2 * i + 2), 16);
+        }
+        return bytes;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,98 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import pl.tomek_krzyszko.bluemanager.ThreadAllocations;
+
+import static org.junit.Assert.*;
+
+/**
+ * Manufacturer id, TX power and Eddystone frame type read from the same record with the reused view
+ * and the way ScanRecord.parseFromBytes does it. Not part of the unit test run: remove {@link Ignore} locally
+ * and compare the durations of the two methods.
+ */
+@Ignore("Benchmark, run manually")
+public class AdvertisingDataBenchmark {
+
+    private static final byte[] RECORD = AdvertisingDataTest.RECORD;
+    private static final int ITERATIONS = 3_000_000;
+
+    private final AdvertisingData advertisingData = new AdvertisingData();
+
+    @Test
+    public void flyweight() throws Exception {
+        long allocatedBefore = ThreadAllocations.allocatedBytes();
+        long checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            advertisingData.wrap(RECORD);
+            checksum += advertisingData.getManufacturerId();
+            checksum += advertisingData.getTxPowerLevel();
+            if (advertisingData.findServiceData(0xFEAA)) {
+                checksum += advertisingData.getUint8(advertisingData.getValueOffset() + 2);
+            }
+        }
+        long allocated = ThreadAllocations.allocatedBytes() - allocatedBefore;
+        assertEquals(ITERATIONS * (0x004CL - 12 + 0x10), checksum);
+        if (allocatedBefore >= 0) {
+            assertTrue("allocated " + allocated + " bytes", allocated < ITERATIONS);
+        }
+    }
+
+    /**
+     * Every structure is copied into collections first
+     */
+    @Test
+    public void mapBased() throws Exception {
+        long checksum = 0;
+        for (int i = 0; i < ITERATIONS; i++) {
+            Map<Integer, byte[]> manufacturerData = new HashMap<>();
+            Map<Integer, byte[]> serviceData = new HashMap<>();
+            List<Integer> serviceUuids = new ArrayList<>();
+            int txPower = Integer.MIN_VALUE;
+            int position = 0;
+            while (position < RECORD.length) {
+                int length = RECORD[position++] & 0xFF;
+                if (length == 0) {
+                    break;
+                }
+                int type = RECORD[position] & 0xFF;
+                byte[] value = new byte[length - 1];
+                System.arraycopy(RECORD, position + 1, value, 0, length - 1);
+                switch (type) {
+                    case AdvertisingData.TYPE_TX_POWER_LEVEL:
+                        txPower = value[0];
+                        break;
+                    case AdvertisingData.TYPE_SERVICE_UUIDS_16_BIT_COMPLETE:
+                        for (int j = 0; j + 2 <= value.length; j += 2) {
+                            serviceUuids.add((value[j] & 0xFF) | (value[j + 1] & 0xFF) << 8);
+                        }
+                        break;
+                    case AdvertisingData.TYPE_SERVICE_DATA_16_BIT:
+                        byte[] data = new byte[value.length - 2];
+                        System.arraycopy(value, 2, data, 0, data.length);
+                        serviceData.put((value[0] & 0xFF) | (value[1] & 0xFF) << 8, data);
+                        break;
+                    case AdvertisingData.TYPE_MANUFACTURER_SPECIFIC_DATA:
+                        byte[] payload = new byte[value.length - 2];
+                        System.arraycopy(value, 2, payload, 0, payload.length);
+                        manufacturerData.put((value[0] & 0xFF) | (value[1] & 0xFF) << 8, payload);
+                        break;
+                    default:
+                        break;
+                }
+                position += length;
+            }
+            checksum += manufacturerData.keySet().iterator().next();
+            checksum += txPower;
+            checksum += serviceData.get(0xFEAA)[0] & 0xFF;
+            checksum += serviceUuids.size() - 2;
+        }
+        assertEquals(ITERATIONS * (0x004CL - 12 + 0x10), checksum);
+    }
+}
@@ -0,0 +1,96 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * The view reads structures of a record in place and stops at the first malformed one.
+ * {@link AdvertisingDataBenchmark} compares it with map based parsing.
+ */
+public class AdvertisingDataTest {
+
+    private static final UUID SERVICE_128 = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+
+    /**
+     * Flags, TX power, 16-bit and 128-bit service UUIDs, Eddystone service data, Apple manufacturer data, local name
+     */
+    static final byte[] RECORD = concat(
+            new byte[]{0x02, 0x01, 0x06},
+            new byte[]{0x02, 0x0A, (byte) 0xF4},
+            new byte[]{0x05, 0x03, (byte) 0xAA, (byte) 0xFE, 0x0F, 0x18},
+            uuid128(SERVICE_128),
+            new byte[]{0x06, 0x16, (byte) 0xAA, (byte) 0xFE, 0x10, (byte) 0xEB, 0x01},
+            new byte[]{0x07, (byte) 0xFF, 0x4C, 0x00, 0x02, 0x15, 0x01, 0x02},
+            new byte[]{0x05, 0x09, 'B', 'l', 'u', 'e'},
+            new byte[]{0x00, 0x00, 0x00});
+
+    private final AdvertisingData advertisingData = new AdvertisingData();
+
+    @Test
+    public void accessors_readStructuresInPlace() throws Exception {
+        advertisingData.wrap(RECORD);
+        assertEquals(0x06, advertisingData.getFlags());
+        assertEquals(-12, advertisingData.getTxPowerLevel());
+        assertEquals(0x004C, advertisingData.getManufacturerId());
+        assertTrue(advertisingData.findManufacturerData(0x004C));
+        assertEquals(0x02, advertisingData.getUint8(advertisingData.getValueOffset() + 2));
+        assertFalse(advertisingData.findManufacturerData(0x0059));
+        assertTrue(advertisingData.findServiceData(0xFEAA));
+        assertEquals(0x10, advertisingData.getUint8(advertisingData.getValueOffset() + 2));
+        assertTrue(advertisingData.hasServiceUuid(0x180F));
+        assertFalse(advertisingData.hasServiceUuid(0x180D));
+        assertTrue(advertisingData.hasServiceUuid(SERVICE_128.getMostSignificantBits(), SERVICE_128.getLeastSignificantBits()));
+        assertEquals("Blue", advertisingData.readLocalName());
+        assertSame(RECORD, advertisingData.getData());
+    }
+
+    @Test
+    public void iteration_stopsAtMalformedStructure() throws Exception {
+        byte[] truncated = {0x02, 0x01, 0x06, 0x09, (byte) 0xFF, 0x4C};
+        advertisingData.wrap(truncated);
+        assertTrue(advertisingData.moveToNext());
+        assertEquals(AdvertisingData.TYPE_FLAGS, advertisingData.getType());
+        assertFalse(advertisingData.moveToNext());
+        assertFalse(advertisingData.moveToNext());
+        assertEquals(-1, advertisingData.getManufacturerId());
+    }
+
+    @Test
+    public void missingData_hasNoStructures() throws Exception {
+        advertisingData.wrap(null);
+        assertFalse(advertisingData.moveToNext());
+        assertEquals(-1, advertisingData.getFlags());
+        assertEquals(AdvertisingData.TX_POWER_UNKNOWN, advertisingData.getTxPowerLevel());
+        assertNull(advertisingData.readLocalName());
+    }
+
+    private static byte[] uuid128(UUID uuid) {
+        byte[] structure = new byte[18];
+        structure[0] = 17;
+        structure[1] = AdvertisingData.TYPE_SERVICE_UUIDS_128_BIT_COMPLETE;
+        long lsb = uuid.getLeastSignificantBits();
+        long msb = uuid.getMostSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            structure[2 + i] = (byte) (lsb >>> (8 * i));
+            structure[10 + i] = (byte) (msb >>> (8 * i));
+        }
+        return structure;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
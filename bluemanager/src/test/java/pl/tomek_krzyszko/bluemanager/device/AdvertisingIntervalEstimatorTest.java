@@ -0,0 +1,110 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * The lost timeout follows the advertising interval of a device: it grows at once when the device slows down, shrinks
+ * gradually when it speeds up, and a few sightings never shorten the default timeout.
+ */
+public class AdvertisingIntervalEstimatorTest {
+
+    private static final long DEFAULT_TIMEOUT = 10000;
+    private static final long MIN_TIMEOUT = 1000;
+    private static final long MAX_TIMEOUT = 60000;
+
+    @Test
+    public void fastDevice_convergesToMinimalTimeout() throws Exception {
+        AdvertisingIntervalEstimator estimator = newEstimator();
+        long timestamp = feed(estimator, 0, 100, 50);
+        assertEquals(100, estimator.getIntervalMillis());
+        assertEquals(MIN_TIMEOUT, estimator.getTimeoutMillis());
+        assertEquals(49, estimator.getSampleCount());
+        assertTrue(timestamp > 0);
+    }
+
+    @Test
+    public void slowTag_extendsTimeoutBeforeEnoughSamples() throws Exception {
+        AdvertisingIntervalEstimator estimator = newEstimator();
+        feed(estimator, 0, 10000, 2);
+        assertEquals(1, estimator.getSampleCount());
+        assertTrue(estimator.getTimeoutMillis() > DEFAULT_TIMEOUT);
+        feed(estimator, 10000, 10000, 20);
+        assertTrue(estimator.getTimeoutMillis() >= 30000);
+    }
+
+    @Test
+    public void fewSamples_doNotShortenDefaultTimeout() throws Exception {
+        AdvertisingIntervalEstimator estimator = newEstimator();
+        feed(estimator, 0, 100, AdvertisingIntervalEstimator.MIN_SAMPLES);
+        assertEquals(DEFAULT_TIMEOUT, estimator.getTimeoutMillis());
+    }
+
+    @Test
+    public void slowingDown_growsTimeoutImmediately() throws Exception {
+        AdvertisingIntervalEstimator estimator = newEstimator();
+        long timestamp = feed(estimator, 0, 100, 50);
+        estimator.onSighting(timestamp + 5000);
+        assertTrue(estimator.getTimeoutMillis() > 5000);
+    }
+
+    @Test
+    public void speedingUp_shrinksTimeoutGradually() throws Exception {
+        AdvertisingIntervalEstimator estimator = newEstimator();
+        long timestamp = feed(estimator, 0, 5000, 30);
+        long slowTimeout = estimator.getTimeoutMillis();
+        // a short burst of fast advertisements must not shorten the timeout by much
+        timestamp = feed(estimator, timestamp + 100, 100, 5);
+        assertTrue(estimator.getTimeoutMillis() > slowTimeout / 2);
+        feed(estimator, timestamp + 100, 100, 200);
+        assertEquals(MIN_TIMEOUT, estimator.getTimeoutMillis());
+    }
+
+    @Test
+    public void jitteryDevice_isNeverLostWhileAdvertising() throws Exception {
+        AdvertisingIntervalEstimator estimator = newEstimator();
+        Random random = new Random(42);
+        long timestamp = 0;
+        estimator.onSighting(timestamp);
+        for (int i = 0; i < 10000; i++) {
+            // 1 s nominal interval with advertising jitter and up to two missed advertisements
+            long interval = 1000 + random.nextInt(200) - 100;
+            if (random.nextInt(20) == 0) {
+                interval += 1000 * (1 + random.nextInt(2));
+            }
+            long timeout = estimator.getTimeoutMillis();
+            assertTrue("lost after " + i + " sightings", interval < timeout);
+            timestamp += interval;
+            estimator.onSighting(timestamp);
+        }
+    }
+
+    @Test
+    public void repeatedTimestamp_isIgnored() throws Exception {
+        AdvertisingIntervalEstimator estimator = newEstimator();
+        estimator.onSighting(1000);
+        estimator.onSighting(1000);
+        estimator.onSighting(900);
+        assertEquals(0, estimator.getSampleCount());
+        assertEquals(DEFAULT_TIMEOUT, estimator.getTimeoutMillis());
+    }
+
+    private static AdvertisingIntervalEstimator newEstimator() {
+        return new AdvertisingIntervalEstimator(DEFAULT_TIMEOUT, MIN_TIMEOUT, MAX_TIMEOUT);
+    }
+
+    /**
+     * @return timestamp of the last fed sighting
+     */
+    private static long feed(AdvertisingIntervalEstimator estimator, long start, long interval, int count) {
+        long timestamp = start;
+        for (int i = 0; i < count; i++) {
+            timestamp = start + i * interval;
+            estimator.onSighting(timestamp);
+        }
+        return timestamp;
+    }
+}
@@ -0,0 +1,81 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lookups of 10k devices by the address of a scan result, one method per map. Not part of the unit test run:
+ * remove {@link Ignore} locally and compare the durations of the methods.
+ */
+@Ignore("Benchmark, run manually")
+public class ConcurrentLongMapBenchmark {
+
+    private static final int DEVICES = 10_000;
+    private static final int LOOKUPS = 15_000_000;
+
+    private char[][] addressChars;
+    private long[] packedAddresses;
+    private Map<String, BlueDevice> stringMap;
+    private ConcurrentLongMap<BlueDevice> longMap;
+
+    @Before
+    public void setUp() {
+        addressChars = new char[DEVICES][];
+        packedAddresses = new long[DEVICES];
+        stringMap = new HashMap<>();
+        longMap = new ConcurrentLongMap<>();
+        BlueDevice blueDevice = new BlueDevice();
+        for (int i = 0; i < DEVICES; i++) {
+            String address = String.format("C4:7C:8D:%02X:%02X:%02X", i >> 16, (i >> 8) & 0xFF, i & 0xFF);
+            addressChars[i] = address.toCharArray();
+            packedAddresses[i] = MacAddress.pack(address);
+            stringMap.put(address, blueDevice);
+            longMap.putIfAbsent(packedAddresses[i], blueDevice);
+        }
+    }
+
+    /**
+     * Every scan result carries a new address String, so its hash is computed again on every lookup
+     */
+    @Test
+    public void stringHashMap() throws Exception {
+        long found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (stringMap.get(new String(addressChars[(i * 31) % DEVICES])) != null) {
+                found++;
+            }
+        }
+        assertEquals(LOOKUPS, found);
+    }
+
+    @Test
+    public void longMap_packingEveryLookup() throws Exception {
+        long found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (longMap.get(MacAddress.pack(new String(addressChars[(i * 31) % DEVICES]))) != null) {
+                found++;
+            }
+        }
+        assertEquals(LOOKUPS, found);
+    }
+
+    /**
+     * Address packed once per scan result and reused by every following lookup
+     */
+    @Test
+    public void longMap_packedKeys() throws Exception {
+        long found = 0;
+        for (int i = 0; i < LOOKUPS; i++) {
+            if (longMap.get(packedAddresses[(i * 31) % DEVICES]) != null) {
+                found++;
+            }
+        }
+        assertEquals(LOOKUPS, found);
+    }
+}
@@ -0,0 +1,102 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Keys of removed entries leave tombstones which later puts reuse, readers running next to a writer must never see
+ * a value under another key. {@link ConcurrentLongMapBenchmark} compares lookups with {@code HashMap<String, BlueDevice>}.
+ */
+public class ConcurrentLongMapTest {
+
+    @Test
+    public void putGetRemove() throws Exception {
+        ConcurrentLongMap<String> map = new ConcurrentLongMap<>();
+        assertNull(map.putIfAbsent(1, "one"));
+        assertEquals("one", map.putIfAbsent(1, "other"));
+        assertEquals("one", map.get(1));
+        assertNull(map.get(2));
+        assertNull(map.get(-5));
+        assertNull(map.remove(1, "other"));
+        assertEquals("one", map.remove(1, "one"));
+        assertNull(map.get(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void growsAndReusesTombstones() throws Exception {
+        ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(2, 4);
+        for (int round = 0; round < 5; round++) {
+            for (long key = 0; key < 1000; key++) {
+                assertNull(map.putIfAbsent(key * 7919, key));
+            }
+            assertEquals(1000, map.size());
+            for (long key = 0; key < 1000; key++) {
+                assertEquals(Long.valueOf(key), map.get(key * 7919));
+            }
+            for (long key = 0; key < 1000; key += 2) {
+                assertEquals(Long.valueOf(key), map.remove(key * 7919));
+            }
+            for (long key = 1; key < 1000; key += 2) {
+                assertEquals(Long.valueOf(key), map.remove(key * 7919));
+            }
+            assertTrue(map.isEmpty());
+            assertTrue(map.values().isEmpty());
+        }
+    }
+
+    @Test
+    public void concurrentReadersSeeConsistentValues() throws Exception {
+        final ConcurrentLongMap<Long> map = new ConcurrentLongMap<>(4, 16);
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch readersDone = new CountDownLatch(4);
+        for (int r = 0; r < 4; r++) {
+            new Thread(() -> {
+                try {
+                    while (writing.get()) {
+                        for (long key = 0; key < 2000; key++) {
+                            Long value = map.get(key);
+                            if (value != null) {
+                                assertEquals(key, value.longValue());
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    readersDone.countDown();
+                }
+            }).start();
+        }
+        for (int round = 0; round < 200; round++) {
+            for (long key = round % 2; key < 2000; key += 2) {
+                map.putIfAbsent(key, key);
+            }
+            for (long key = round % 2; key < 2000; key += 2) {
+                map.remove(key);
+            }
+        }
+        writing.set(false);
+        assertTrue(readersDone.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void deviceRegistry_usesPackedAddresses() throws Exception {
+        DeviceRegistry registry = new DeviceRegistry();
+        final BlueDevice blueDevice = new BlueDevice();
+        blueDevice.setAddress("00:11:22:aa:bb:cc");
+        assertNull(registry.putIfAbsent(blueDevice.getPackedAddress(), blueDevice));
+        assertSame(blueDevice, registry.get("00:11:22:AA:BB:CC"));
+        assertTrue(registry.contains(0x001122AABBCCL));
+        assertNull(registry.get("not an address"));
+        assertTrue(registry.remove("00:11:22:AA:BB:CC", blueDevice));
+    }
+}
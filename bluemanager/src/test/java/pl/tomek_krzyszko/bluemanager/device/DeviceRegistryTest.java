@@ -0,0 +1,132 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sightings recorded with {@link DeviceRegistry#updateSighting(long, String, int, long, byte[])} and
+ * {@link DeviceRegistry#registerSighting(long, BlueDevice, String, int, long, byte[])} by several threads at once,
+ * while other threads query the registry: every address is registered once and no sighting is lost.
+ */
+public class DeviceRegistryTest {
+
+    private static final int WRITERS = 8;
+    private static final int READERS = 4;
+    private static final int DEVICES = 500;
+    private static final int SIGHTINGS_PER_WRITER = 50_000;
+
+    @Test
+    public void concurrentSightings_noLostUpdates() throws Exception {
+        final DeviceRegistry registry = new DeviceRegistry();
+        final String[] addresses = new String[DEVICES];
+        final long[] packedAddresses = new long[DEVICES];
+        for (int i = 0; i < DEVICES; i++) {
+            addresses[i] = String.format("00:11:22:33:%02X:%02X", i >> 8, i & 0xFF);
+            packedAddresses[i] = MacAddress.pack(addresses[i]);
+        }
+        final AtomicInteger discoveries = new AtomicInteger();
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        final CountDownLatch readersDone = new CountDownLatch(READERS);
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int seed = w;
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < SIGHTINGS_PER_WRITER; i++) {
+                        int device = (i * 31 + seed * 7) % DEVICES;
+                        String name = "writer" + seed;
+                        if (registry.updateSighting(packedAddresses[device], name, -i % 100, i, null) == null) {
+                            BlueDevice newBlueDevice = new BlueDevice();
+                            newBlueDevice.setAddress(addresses[device]);
+                            if (registry.registerSighting(packedAddresses[device], newBlueDevice, name, -i % 100, i, null) == null) {
+                                discoveries.incrementAndGet();
+                            }
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    writersDone.countDown();
+                }
+            }).start();
+        }
+        for (int r = 0; r < READERS; r++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    while (writing.get()) {
+                        List<BlueDevice> blueDevices = registry.toList();
+                        for (BlueDevice blueDevice : blueDevices) {
+                            assertNotNull(blueDevice);
+                            assertSame(blueDevice, registry.get(blueDevice.getAddress()));
+                            // registered records were updated before they became visible
+                            assertTrue(blueDevice.getSightingCount() > 0);
+                        }
+                        assertTrue(registry.size() <= DEVICES);
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    readersDone.countDown();
+                }
+            }).start();
+        }
+
+        start.countDown();
+        assertTrue(writersDone.await(60, TimeUnit.SECONDS));
+        writing.set(false);
+        assertTrue(readersDone.await(10, TimeUnit.SECONDS));
+        assertNull(failure.get());
+
+        assertEquals(DEVICES, registry.size());
+        assertEquals(DEVICES, discoveries.get());
+        long sightings = 0;
+        for (BlueDevice blueDevice : registry.devices()) {
+            sightings += blueDevice.getSightingCount();
+        }
+        assertEquals((long) WRITERS * SIGHTINGS_PER_WRITER, sightings);
+    }
+
+    @Test
+    public void registerSighting_updatesRecordRegisteredMeanwhile() {
+        DeviceRegistry registry = new DeviceRegistry();
+        long address = MacAddress.pack("AA:AA:AA:AA:AA:AA");
+        assertNull(registry.updateSighting(address, "first", -40, 1000, null));
+        BlueDevice first = new BlueDevice();
+        assertNull(registry.registerSighting(address, first, "first", -40, 1000, null));
+
+        BlueDevice second = new BlueDevice();
+        assertSame(first, registry.registerSighting(address, second, "second", -50, 2000, null));
+        assertSame(first, registry.get(address));
+        assertEquals(2, first.getSightingCount());
+        assertEquals("second", first.getName());
+
+        assertSame(first, registry.updateSighting(address, null, -60, 3000, null));
+        assertEquals(3, first.getSightingCount());
+        assertEquals(1, registry.size());
+    }
+
+    @Test
+    public void conditionalRemove_removesOnlyExpectedRecord() {
+        DeviceRegistry registry = new DeviceRegistry();
+        BlueDevice first = new BlueDevice();
+        BlueDevice second = new BlueDevice();
+        assertNull(registry.putIfAbsent("AA:AA:AA:AA:AA:AA", first));
+        assertSame(first, registry.putIfAbsent("AA:AA:AA:AA:AA:AA", second));
+        assertFalse(registry.remove("AA:AA:AA:AA:AA:AA", second));
+        assertTrue(registry.remove("AA:AA:AA:AA:AA:AA", first));
+        assertTrue(registry.isEmpty());
+    }
+}
@@ -0,0 +1,86 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.action.NotifyAction;
+import pl.tomek_krzyszko.bluemanager.action.ReadAction;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
+
+import static org.junit.Assert.*;
+
+public class GattCallbackRouterTest {
+
+    private static final UUID SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+    private static final UUID OTHER_CHARACTERISTIC = UUID.fromString("00002a38-0000-1000-8000-00805f9b34fb");
+
+    private static class RecordingListener implements BlueDeviceActionListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onActionSuccess(BlueDevice blueDevice, BlueAction blueAction, byte[] value) {
+            events.add("success " + Arrays.toString(value));
+        }
+
+        @Override
+        public void onActionFailure(BlueDevice blueDevice, BlueAction blueAction) {
+            events.add("failure");
+        }
+    }
+
+    private final List<BlueAction> issued = new ArrayList<>();
+    private final GattCallbackRouter<UUID> router = new GattCallbackRouter<>(new BlueDevice(), false,
+            blueAction -> issued.add(blueAction), (writeAction, fragment) -> false);
+
+    @Test
+    public void notifyOperation_receivesNotificationsUntilDisabled() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        router.getOperationQueue().enqueue(new NotifyAction(SERVICE, CHARACTERISTIC, true), listener);
+        router.onDescriptorWrite(CHARACTERISTIC, true, new byte[]{1, 0});
+        router.onCharacteristicChanged(CHARACTERISTIC, new byte[]{7});
+        router.onCharacteristicChanged(OTHER_CHARACTERISTIC, new byte[]{8});
+
+        router.getOperationQueue().enqueue(new NotifyAction(SERVICE, CHARACTERISTIC, false), null);
+        router.onDescriptorWrite(CHARACTERISTIC, true, new byte[]{0, 0});
+        router.onCharacteristicChanged(CHARACTERISTIC, new byte[]{9});
+
+        assertEquals(2, issued.size());
+        assertEquals(Arrays.asList("success [1, 0]", "success [7]"), listener.events);
+    }
+
+    @Test
+    public void callbackOfOtherKind_doesNotCompleteIssuedOperation() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        GattOperation operation = router.getOperationQueue().enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        router.onCharacteristicWrite(true, new byte[]{1});
+        router.onDescriptorWrite(CHARACTERISTIC, true, new byte[]{1, 0});
+        assertEquals(GattOperation.Status.ISSUED, operation.getStatus());
+
+        router.onCharacteristicRead(true, new byte[]{2});
+        assertEquals(Collections.singletonList("success [2]"), listener.events);
+        assertNull(router.getOperationQueue().getCurrentAction());
+    }
+
+    @Test
+    public void close_failsIssuedOperationAndDropsNotifyOperations() throws Exception {
+        RecordingListener notifyListener = new RecordingListener();
+        router.getOperationQueue().enqueue(new NotifyAction(SERVICE, CHARACTERISTIC, true), notifyListener);
+        router.onDescriptorWrite(CHARACTERISTIC, true, new byte[]{1, 0});
+        RecordingListener readListener = new RecordingListener();
+        router.getOperationQueue().enqueue(new ReadAction(SERVICE, CHARACTERISTIC), readListener);
+
+        router.close();
+        router.onCharacteristicChanged(CHARACTERISTIC, new byte[]{7});
+        router.onCharacteristicRead(true, new byte[]{2});
+
+        assertEquals(Collections.singletonList("success [1, 0]"), notifyListener.events);
+        assertEquals(Collections.singletonList("failure"), readListener.events);
+    }
+}
@@ -0,0 +1,66 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.device.GattHandleCacheTest.FakeCharacteristic;
+import pl.tomek_krzyszko.bluemanager.device.GattHandleCacheTest.FakeDescriptor;
+import pl.tomek_krzyszko.bluemanager.device.GattHandleCacheTest.FakeService;
+
+import static org.junit.Assert.*;
+
+/**
+ * Same lookups of all characteristics through the walk and through {@link GattHandleCache}, one method each.
+ * Not part of the unit test run: remove {@link Ignore} locally and compare the durations of the two methods.
+ */
+@Ignore("Benchmark, run manually")
+public class GattHandleCacheBenchmark {
+
+    private static final int LOOKUPS = 3_000_000;
+
+    private List<FakeService> services;
+    private GattHandleCache<FakeDescriptor> cache;
+    private UUID[] serviceUuids;
+    private UUID[] characteristicUuids;
+
+    @Before
+    public void setUp() {
+        services = GattHandleCacheTest.device();
+        cache = GattHandleCacheTest.index(services);
+        int pairs = GattHandleCacheTest.SERVICES * GattHandleCacheTest.CHARACTERISTICS_PER_SERVICE;
+        serviceUuids = new UUID[pairs];
+        characteristicUuids = new UUID[pairs];
+        int i = 0;
+        for (FakeService service : services) {
+            for (FakeCharacteristic characteristic : service.characteristics) {
+                serviceUuids[i] = service.uuid;
+                characteristicUuids[i] = characteristic.uuid;
+                i++;
+            }
+        }
+    }
+
+    @Test
+    public void walk() throws Exception {
+        long found = 0;
+        for (int n = 0; n < LOOKUPS; n++) {
+            int pair = n % serviceUuids.length;
+            found += GattHandleCacheTest.walk(services, serviceUuids[pair], characteristicUuids[pair]) != null ? 1 : 0;
+        }
+        assertEquals(LOOKUPS, found);
+    }
+
+    @Test
+    public void index() throws Exception {
+        long found = 0;
+        for (int n = 0; n < LOOKUPS; n++) {
+            int pair = n % serviceUuids.length;
+            found += cache.get(serviceUuids[pair], characteristicUuids[pair]) != null ? 1 : 0;
+        }
+        assertEquals(LOOKUPS, found);
+    }
+}
@@ -0,0 +1,143 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * The index must resolve every characteristic of a device exposing 24 services to the same handle as the walk over
+ * services, characteristics and descriptors which every action did before. {@link GattHandleCacheBenchmark} compares their speed.
+ */
+public class GattHandleCacheTest {
+
+    static final int SERVICES = 24;
+    static final int CHARACTERISTICS_PER_SERVICE = 6;
+    private static final int DESCRIPTORS_PER_CHARACTERISTIC = 2;
+    private static final UUID NOTIFICATION_DESCRIPTOR = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
+
+    /**
+     * Stand-ins of Android GATT objects, which keep their children in lists searched linearly
+     */
+    static class FakeDescriptor {
+        final UUID uuid;
+
+        FakeDescriptor(UUID uuid) {
+            this.uuid = uuid;
+        }
+    }
+
+    static class FakeCharacteristic {
+        final UUID uuid;
+        final List<FakeDescriptor> descriptors = new ArrayList<>();
+
+        FakeCharacteristic(UUID uuid) {
+            this.uuid = uuid;
+        }
+    }
+
+    static class FakeService {
+        final UUID uuid;
+        final List<FakeCharacteristic> characteristics = new ArrayList<>();
+
+        FakeService(UUID uuid) {
+            this.uuid = uuid;
+        }
+
+        FakeCharacteristic getCharacteristic(UUID uuid) {
+            for (FakeCharacteristic characteristic : characteristics) {
+                if (characteristic.uuid.equals(uuid)) {
+                    return characteristic;
+                }
+            }
+            return null;
+        }
+    }
+
+    static UUID uuid(int shortUuid) {
+        return UUID.fromString(String.format("0000%04x-0000-1000-8000-00805f9b34fb", shortUuid));
+    }
+
+    static List<FakeService> device() {
+        List<FakeService> services = new ArrayList<>();
+        for (int s = 0; s < SERVICES; s++) {
+            FakeService service = new FakeService(uuid(0x1800 + s));
+            for (int c = 0; c < CHARACTERISTICS_PER_SERVICE; c++) {
+                FakeCharacteristic characteristic = new FakeCharacteristic(uuid(0x2a00 + s * CHARACTERISTICS_PER_SERVICE + c));
+                characteristic.descriptors.add(new FakeDescriptor(uuid(0x2901)));
+                for (int d = 1; d < DESCRIPTORS_PER_CHARACTERISTIC; d++) {
+                    characteristic.descriptors.add(new FakeDescriptor(NOTIFICATION_DESCRIPTOR));
+                }
+                service.characteristics.add(characteristic);
+            }
+            services.add(service);
+        }
+        return services;
+    }
+
+    static GattHandleCache<FakeDescriptor> index(List<FakeService> services) {
+        GattHandleCache.Builder<FakeDescriptor> builder = GattHandleCache.builder();
+        for (FakeService service : services) {
+            for (FakeCharacteristic characteristic : service.characteristics) {
+                builder.put(service.uuid, characteristic.uuid, notificationDescriptor(characteristic));
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Lookup done by every notify action before the index
+     */
+    static FakeDescriptor walk(List<FakeService> services, UUID serviceUuid, UUID characteristicUuid) {
+        for (FakeService service : services) {
+            if (service.uuid.equals(serviceUuid)) {
+                FakeCharacteristic characteristic = service.getCharacteristic(characteristicUuid);
+                if (characteristic != null) {
+                    return notificationDescriptor(characteristic);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static FakeDescriptor notificationDescriptor(FakeCharacteristic characteristic) {
+        for (FakeDescriptor descriptor : characteristic.descriptors) {
+            if (descriptor.uuid.equals(NOTIFICATION_DESCRIPTOR)) {
+                return descriptor;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void get_findsIndexedPairsOnly() throws Exception {
+        UUID service = uuid(0x180d);
+        UUID other = uuid(0x180f);
+        UUID characteristic = uuid(0x2a37);
+        GattHandleCache<String> cache = GattHandleCache.<String>builder()
+                .put(service, characteristic, "first")
+                .put(service, characteristic, "second instance of the service")
+                .put(other, uuid(0x2a19), "battery")
+                .build();
+        assertEquals("first", cache.get(service, characteristic));
+        assertEquals("battery", cache.get(other, uuid(0x2a19)));
+        assertNull(cache.get(other, characteristic));
+        assertNull(cache.get(uuid(0x1800), characteristic));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void index_resolvesSameHandlesAsWalk() throws Exception {
+        List<FakeService> services = device();
+        GattHandleCache<FakeDescriptor> cache = index(services);
+        assertEquals(SERVICES * CHARACTERISTICS_PER_SERVICE, cache.size());
+        for (FakeService service : services) {
+            for (FakeCharacteristic characteristic : service.characteristics) {
+                assertSame(walk(services, service.uuid, characteristic.uuid), cache.get(service.uuid, characteristic.uuid));
+            }
+        }
+    }
+}
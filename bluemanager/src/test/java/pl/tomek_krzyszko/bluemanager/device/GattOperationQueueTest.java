@@ -0,0 +1,213 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.action.ReadAction;
+import pl.tomek_krzyszko.bluemanager.action.WriteAction;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
+
+import static org.junit.Assert.*;
+
+/**
+ * One operation of a device is in flight at a time. The next one is issued before the listener of the completed one runs,
+ * an operation the device refuses fails without stalling the queue, and closing fails everything still queued.
+ */
+public class GattOperationQueueTest {
+
+    private static final UUID SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+
+    private static class RecordingIssuer implements GattOperationQueue.Issuer {
+        final List<BlueAction> issued = Collections.synchronizedList(new ArrayList<BlueAction>());
+        boolean refuse = false;
+
+        @Override
+        public boolean issue(BlueAction blueAction) {
+            issued.add(blueAction);
+            return !refuse;
+        }
+    }
+
+    private static class RecordingListener implements BlueDeviceActionListener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onActionSuccess(BlueDevice blueDevice, BlueAction blueAction, byte[] value) {
+            events.add("success " + blueAction.getActionType() + " " + (value != null ? value[0] : -1));
+        }
+
+        @Override
+        public void onActionFailure(BlueDevice blueDevice, BlueAction blueAction) {
+            events.add("failure " + blueAction.getActionType());
+        }
+    }
+
+    private final BlueDevice blueDevice = new BlueDevice();
+    private final RecordingIssuer issuer = new RecordingIssuer();
+    private final GattOperationQueue queue = new GattOperationQueue(blueDevice, issuer);
+    private final RecordingListener listener = new RecordingListener();
+
+    @Test
+    public void actions_issuedOneAtATimeInOrder() throws Exception {
+        ReadAction read = new ReadAction(SERVICE, CHARACTERISTIC);
+        WriteAction write = new WriteAction(SERVICE, CHARACTERISTIC, new byte[]{7});
+        GattOperation readOperation = queue.enqueue(read, listener);
+        GattOperation writeOperation = queue.enqueue(write, listener);
+        assertEquals(GattOperation.Status.ISSUED, readOperation.getStatus());
+        assertEquals(GattOperation.Status.QUEUED, writeOperation.getStatus());
+        assertEquals(Collections.<BlueAction>singletonList(read), issuer.issued);
+        assertSame(read, blueDevice.getCurrentAction());
+        assertEquals(2, queue.getDepth());
+
+        queue.complete(true, new byte[]{3});
+        assertEquals(Arrays.<BlueAction>asList(read, write), issuer.issued);
+        assertSame(write, queue.getCurrentAction());
+        queue.complete(true, write.getValue());
+        assertNull(blueDevice.getCurrentAction());
+        assertEquals(Arrays.asList("success READ 3", "success WRITE 7"), listener.events);
+        assertTrue(readOperation.isDone());
+        assertEquals(GattOperation.Status.SUCCEEDED, readOperation.getStatus());
+        assertArrayEquals(new byte[]{3}, readOperation.getValue());
+
+        GattQueueStats stats = queue.getStats();
+        assertEquals(0, stats.getDepth());
+        assertEquals(2, stats.getMaxDepth());
+        assertEquals(2, stats.getCompletedCount());
+        assertTrue(stats.getMaxWaitMicros() >= stats.getAverageWaitMicros());
+    }
+
+    @Test
+    public void nextAction_issuedBeforeListenerOfCompletedOne() throws Exception {
+        final List<String> order = new ArrayList<>();
+        queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), new RecordingListener() {
+            @Override
+            public void onActionSuccess(BlueDevice blueDevice, BlueAction blueAction, byte[] value) {
+                order.add("issued " + issuer.issued.size());
+            }
+        });
+        queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        queue.complete(true, null);
+        assertEquals(Collections.singletonList("issued 2"), order);
+    }
+
+    @Test
+    public void refusedIssue_failsActionAndIssuesNext() throws Exception {
+        issuer.refuse = true;
+        queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        issuer.refuse = false;
+        queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        assertEquals(Collections.singletonList("failure READ"), listener.events);
+        assertEquals(2, issuer.issued.size());
+        assertEquals(1, queue.getDepth());
+        assertEquals(1, queue.getStats().getFailedCount());
+    }
+
+    @Test
+    public void close_failsIssuedAndWaitingActions() throws Exception {
+        queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        queue.enqueue(new WriteAction(SERVICE, CHARACTERISTIC, new byte[]{1}), listener);
+        queue.close();
+        assertEquals(Arrays.asList("failure READ", "failure WRITE"), listener.events);
+        assertNull(queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener));
+        assertNull(queue.complete(true, null));
+        assertEquals(1, issuer.issued.size());
+        assertNull(blueDevice.getCurrentAction());
+    }
+
+    @Test
+    public void cancel_removesOnlyWaitingActions() throws Exception {
+        GattOperation issued = queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        GattOperation waiting = queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        GattOperation last = queue.enqueue(new WriteAction(SERVICE, CHARACTERISTIC, new byte[]{5}), listener);
+        assertFalse(issued.cancel());
+        assertTrue(waiting.cancel());
+        assertFalse(waiting.cancel());
+        assertEquals(GattOperation.Status.CANCELLED, waiting.getStatus());
+        assertTrue(waiting.await(0, TimeUnit.MILLISECONDS));
+
+        queue.complete(true, new byte[]{1});
+        assertSame(last.getAction(), queue.getCurrentAction());
+        assertEquals(Collections.singletonList("success READ 1"), listener.events);
+        assertEquals(1, queue.getStats().getCancelledCount());
+    }
+
+    @Test
+    public void writeThroughput_countsBytesOfSuccessfulWrites() throws Exception {
+        blueDevice.setMtu(247);
+        queue.enqueue(new WriteAction(SERVICE, CHARACTERISTIC, new byte[600]), listener);
+        Thread.sleep(5);
+        queue.complete(true, new byte[600]);
+        queue.enqueue(new WriteAction(SERVICE, CHARACTERISTIC, new byte[100]), listener);
+        queue.complete(false, null);
+        queue.enqueue(new ReadAction(SERVICE, CHARACTERISTIC), listener);
+        queue.complete(true, new byte[50]);
+
+        GattQueueStats stats = queue.getStats();
+        assertEquals(247, stats.getMtu());
+        assertEquals(600, stats.getWrittenBytes());
+        // 600 bytes written in at least 5 ms
+        assertTrue(stats.getWriteBytesPerSecond() > 0);
+        assertTrue(stats.getWriteBytesPerSecond() <= 120000);
+    }
+
+    /**
+     * Every device completes its operations on its own thread, like GATT callbacks of separate connections
+     */
+    @Test
+    public void queuesOfDifferentDevices_progressInParallel() throws Exception {
+        final int devices = 4;
+        final int actions = 2000;
+        final CountDownLatch done = new CountDownLatch(devices);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final List<RecordingListener> listeners = new ArrayList<>();
+        for (int d = 0; d < devices; d++) {
+            final RecordingListener deviceListener = new RecordingListener();
+            listeners.add(deviceListener);
+            final GattOperationQueue[] holder = new GattOperationQueue[1];
+            // completes every issued operation on the device's own thread
+            final ExecutorService callbacks = Executors.newSingleThreadExecutor();
+            holder[0] = new GattOperationQueue(new BlueDevice(), blueAction -> {
+                callbacks.execute(() -> holder[0].complete(true, new byte[]{1}));
+                return true;
+            });
+            new Thread(() -> {
+                try {
+                    for (int i = 0; i < actions; i++) {
+                        holder[0].enqueue(new ReadAction(SERVICE, CHARACTERISTIC), deviceListener);
+                    }
+                    long deadline = System.currentTimeMillis() + 10000;
+                    while (holder[0].getDepth() > 0 && System.currentTimeMillis() < deadline) {
+                        Thread.sleep(1);
+                    }
+                    callbacks.shutdown();
+                    assertTrue(callbacks.awaitTermination(10, TimeUnit.SECONDS));
+                    assertEquals(actions, holder[0].getStats().getCompletedCount());
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                } finally {
+                    callbacks.shutdownNow();
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(20, TimeUnit.SECONDS));
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        for (RecordingListener deviceListener : listeners) {
+            assertEquals(actions, deviceListener.events.size());
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MacAddressTest {
+
+    @Test
+    public void pack_roundTrips() throws Exception {
+        assertEquals(0x001122AABBCCL, MacAddress.pack("00:11:22:AA:BB:CC"));
+        assertEquals(0x001122AABBCCL, MacAddress.pack("00:11:22:aa:bb:cc"));
+        assertEquals(0xFFFFFFFFFFFFL, MacAddress.pack("FF:FF:FF:FF:FF:FF"));
+        assertEquals("00:11:22:AA:BB:CC", MacAddress.unpack(MacAddress.pack("00:11:22:aa:bb:cc")));
+        assertEquals("00:00:00:00:00:00", MacAddress.unpack(0));
+    }
+
+    @Test
+    public void pack_rejectsMalformedAddresses() throws Exception {
+        assertEquals(MacAddress.INVALID, MacAddress.pack(null));
+        assertEquals(MacAddress.INVALID, MacAddress.pack(""));
+        assertEquals(MacAddress.INVALID, MacAddress.pack("00:11:22:AA:BB"));
+        assertEquals(MacAddress.INVALID, MacAddress.pack("00-11-22-AA-BB-CC"));
+        assertEquals(MacAddress.INVALID, MacAddress.pack("00:11:22:AA:BB:CG"));
+        assertFalse(MacAddress.isValid("0011:22:AA:BB:CC:"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unpack_rejectsInvalidValue() throws Exception {
+        MacAddress.unpack(MacAddress.INVALID);
+    }
+}
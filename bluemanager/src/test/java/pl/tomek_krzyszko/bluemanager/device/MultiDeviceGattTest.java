@@ -0,0 +1,201 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import pl.tomek_krzyszko.bluemanager.action.BlueAction;
+import pl.tomek_krzyszko.bluemanager.action.ReadAction;
+import pl.tomek_krzyszko.bluemanager.action.WriteAction;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceActionListener;
+
+import static org.junit.Assert.*;
+
+/**
+ * Per-operation completion handles of 7 devices driven at once by several threads each, every device with its own
+ * {@link GattCallbackRouter} and a fake GATT which answers operations on its own callback thread like a binder thread.
+ * Results reach the queues only through the read and write callbacks of the routers, the way {@link BlueDeviceController}
+ * passes BluetoothGatt callbacks on, together with callbacks of the wrong kind which must not complete anything.
+ */
+public class MultiDeviceGattTest {
+
+    private static final int DEVICES = 7;
+    private static final int SUBMITTERS_PER_DEVICE = 3;
+    private static final int ACTIONS_PER_SUBMITTER = 500;
+    private static final UUID SERVICE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC = UUID.fromString("00002a37-0000-1000-8000-00805f9b34fb");
+
+    /**
+     * Answers every issued operation and fragment asynchronously through the callbacks of its router, a read first
+     * gets a write callback and a write a read callback, which the router has to ignore
+     */
+    private static class FakeGatt implements GattOperationQueue.Issuer, WriteFragmenter.Writer {
+        final int deviceIndex;
+        final ExecutorService callbackThread = Executors.newSingleThreadExecutor();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger sequence = new AtomicInteger();
+        final Map<BlueAction, byte[]> produced = new ConcurrentHashMap<>();
+        final AtomicReference<String> violation = new AtomicReference<>();
+        GattCallbackRouter<UUID> router;
+
+        FakeGatt(int deviceIndex) {
+            this.deviceIndex = deviceIndex;
+        }
+
+        @Override
+        public boolean issue(final BlueAction blueAction) {
+            started();
+            if (blueAction instanceof WriteAction) {
+                final byte[] value = ((WriteAction) blueAction).getValue();
+                produced.put(blueAction, value);
+                callbackThread.execute(() -> {
+                    router.onCharacteristicRead(true, new byte[]{(byte) -1});
+                    inFlight.decrementAndGet();
+                    router.onCharacteristicWrite(true, value);
+                });
+            } else {
+                int id = sequence.incrementAndGet();
+                final byte[] value = new byte[]{(byte) deviceIndex, (byte) id, (byte) (id >> 8)};
+                produced.put(blueAction, value);
+                callbackThread.execute(() -> {
+                    router.onCharacteristicWrite(true, new byte[]{(byte) -1});
+                    inFlight.decrementAndGet();
+                    router.onCharacteristicRead(true, value);
+                });
+            }
+            return true;
+        }
+
+        @Override
+        public boolean write(WriteAction writeAction, final byte[] fragment) {
+            started();
+            produced.put(writeAction, writeAction.getValue());
+            callbackThread.execute(() -> {
+                inFlight.decrementAndGet();
+                router.onCharacteristicWrite(true, fragment);
+            });
+            return true;
+        }
+
+        private void started() {
+            if (inFlight.incrementAndGet() != 1) {
+                violation.compareAndSet(null, "two operations in flight on device " + deviceIndex);
+            }
+        }
+    }
+
+    @Test
+    public void sevenDevices_callbackResultsRoutedToTheirOwnHandles() throws Exception {
+        final FakeGatt[] gatts = new FakeGatt[DEVICES];
+        final BlueDevice[] devices = new BlueDevice[DEVICES];
+        for (int d = 0; d < DEVICES; d++) {
+            devices[d] = new BlueDevice();
+            devices[d].setAddress(String.format("00:00:00:00:00:%02X", d));
+            gatts[d] = new FakeGatt(d);
+            devices[d].setMtu(WriteFragmenter.DEFAULT_MTU);
+            gatts[d].router = new GattCallbackRouter<>(devices[d], true, gatts[d], gatts[d]);
+            devices[d].setOperationQueue(gatts[d].router.getOperationQueue());
+        }
+        final List<GattOperation> operations = Collections.synchronizedList(new ArrayList<GattOperation>());
+        final AtomicReference<String> misrouted = new AtomicReference<>();
+        final AtomicInteger callbacks = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch submitted = new CountDownLatch(DEVICES * SUBMITTERS_PER_DEVICE);
+
+        for (int d = 0; d < DEVICES; d++) {
+            for (int t = 0; t < SUBMITTERS_PER_DEVICE; t++) {
+                final BlueDevice blueDevice = devices[d];
+                final int deviceIndex = d;
+                new Thread(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < ACTIONS_PER_SUBMITTER; i++) {
+                            final BlueAction blueAction;
+                            if (i % 3 == 0) {
+                                blueAction = new WriteAction(SERVICE, CHARACTERISTIC, new byte[]{(byte) deviceIndex, (byte) i});
+                            } else if (i % 3 == 1) {
+                                blueAction = new WriteAction(SERVICE, CHARACTERISTIC, longValue(deviceIndex, i));
+                            } else {
+                                blueAction = new ReadAction(SERVICE, CHARACTERISTIC);
+                            }
+                            operations.add(blueDevice.getOperationQueue().enqueue(blueAction, new BlueDeviceActionListener() {
+                                @Override
+                                public void onActionSuccess(BlueDevice completedDevice, BlueAction completedAction, byte[] value) {
+                                    if (completedDevice != blueDevice || completedAction != blueAction || value[0] != deviceIndex) {
+                                        misrouted.compareAndSet(null, "result of device " + value[0] + " delivered to device " + deviceIndex);
+                                    }
+                                    callbacks.incrementAndGet();
+                                }
+
+                                @Override
+                                public void onActionFailure(BlueDevice completedDevice, BlueAction completedAction) {
+                                    misrouted.compareAndSet(null, "unexpected failure on device " + deviceIndex);
+                                }
+                            }));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        submitted.countDown();
+                    }
+                }).start();
+            }
+        }
+        start.countDown();
+        assertTrue(submitted.await(20, TimeUnit.SECONDS));
+        for (GattOperation operation : operations) {
+            assertTrue(operation.await(20, TimeUnit.SECONDS));
+        }
+
+        int total = DEVICES * SUBMITTERS_PER_DEVICE * ACTIONS_PER_SUBMITTER;
+        assertEquals(total, operations.size());
+        assertNull(misrouted.get(), misrouted.get());
+        for (GattOperation operation : operations) {
+            assertEquals(GattOperation.Status.SUCCEEDED, operation.getStatus());
+            FakeGatt gatt = gatts[indexOf(devices, operation.getDevice())];
+            assertSame(gatt.produced.get(operation.getAction()), operation.getValue());
+        }
+        for (int d = 0; d < DEVICES; d++) {
+            assertNull(gatts[d].violation.get(), gatts[d].violation.get());
+            GattQueueStats stats = gatts[d].router.getOperationQueue().getStats();
+            assertEquals(SUBMITTERS_PER_DEVICE * ACTIONS_PER_SUBMITTER, stats.getCompletedCount());
+            assertEquals(0, stats.getDepth());
+            gatts[d].callbackThread.shutdown();
+        }
+        // the last listener may still be running after its handle was completed
+        for (int d = 0; d < DEVICES; d++) {
+            assertTrue(gatts[d].callbackThread.awaitTermination(10, TimeUnit.SECONDS));
+        }
+        assertEquals(total, callbacks.get());
+    }
+
+    /**
+     * @return value written in 3 fragments with {@link WriteFragmenter#DEFAULT_MTU}
+     */
+    private static byte[] longValue(int deviceIndex, int i) {
+        byte[] value = new byte[50];
+        value[0] = (byte) deviceIndex;
+        value[1] = (byte) i;
+        return value;
+    }
+
+    private static int indexOf(BlueDevice[] devices, BlueDevice blueDevice) {
+        for (int d = 0; d < devices.length; d++) {
+            if (devices[d] == blueDevice) {
+                return d;
+            }
+        }
+        throw new AssertionError("Unknown device " + blueDevice);
+    }
+}
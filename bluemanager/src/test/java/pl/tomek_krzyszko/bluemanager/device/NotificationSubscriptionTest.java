@@ -0,0 +1,212 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import pl.tomek_krzyszko.bluemanager.action.NotifyAction;
+import pl.tomek_krzyszko.bluemanager.callback.NotificationListener;
+
+import static org.junit.Assert.*;
+
+/**
+ * Notifications are polled in order with sequence numbers. A full buffer overwrites the oldest one and counts it as an overrun,
+ * and the listener is signalled once per batch. Cancelling disables notifications once, closing never does.
+ */
+public class NotificationSubscriptionTest {
+
+    private static final UUID SERVICE = UUID.fromString("0000ff00-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC = UUID.fromString("0000ff01-0000-1000-8000-00805f9b34fb");
+
+    /**
+     * Keeps callbacks until {@link QueuedExecutor#runAll()}
+     */
+    private static class QueuedExecutor implements Executor {
+        final List<Runnable> runnables = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnables.add(runnable);
+        }
+
+        void runAll() {
+            while (!runnables.isEmpty()) {
+                runnables.remove(0).run();
+            }
+        }
+    }
+
+    private static class RecordingListener implements NotificationListener {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public void onNotificationsAvailable(NotificationSubscription subscription) {
+            events.add("available");
+        }
+
+        @Override
+        public void onSubscriptionClosed(NotificationSubscription subscription) {
+            events.add("closed " + subscription.getStatus());
+        }
+    }
+
+    private final NotifyAction notifyAction = new NotifyAction(SERVICE, CHARACTERISTIC);
+    private final QueuedExecutor executor = new QueuedExecutor();
+    private final RecordingListener listener = new RecordingListener();
+    private final List<NotificationSubscription> cancelled = new ArrayList<>();
+
+    private NotificationSubscription subscription(int capacity, int slotSize) {
+        return new NotificationSubscription(new BlueDevice(), notifyAction, capacity, slotSize, listener, executor, cancelled::add);
+    }
+
+    @Test
+    public void notifications_polledInOrderWithSequenceNumbers() throws Exception {
+        NotificationSubscription subscription = subscription(4, 20);
+        subscription.onEnabled();
+        assertEquals(NotificationSubscription.Status.ACTIVE, subscription.getStatus());
+        assertTrue(subscription.offer(new byte[]{1, 2}));
+        assertTrue(subscription.offer(new byte[]{3}));
+
+        NotificationPacket packet = subscription.newPacket();
+        assertTrue(subscription.poll(packet));
+        assertEquals(0, packet.getSequence());
+        assertArrayEquals(new byte[]{1, 2}, packet.copyValue());
+        assertTrue(subscription.poll(packet));
+        assertEquals(1, packet.getSequence());
+        assertEquals(1, packet.getLength());
+        assertEquals(3, packet.getValue()[0]);
+        assertFalse(subscription.poll(packet));
+        assertEquals(1, packet.getSequence());
+    }
+
+    @Test
+    public void fullBuffer_overwritesOldestAndCountsOverruns() throws Exception {
+        NotificationSubscription subscription = subscription(3, 4);
+        for (int i = 0; i < 5; i++) {
+            subscription.offer(new byte[]{(byte) i});
+        }
+        NotificationStats stats = subscription.getStats();
+        assertEquals(5, stats.getReceivedCount());
+        assertEquals(2, stats.getOverrunCount());
+        assertEquals(3, stats.getBufferedCount());
+        assertEquals(3, stats.getMaxBufferedCount());
+
+        NotificationPacket packet = subscription.newPacket();
+        for (int i = 2; i < 5; i++) {
+            assertTrue(subscription.poll(packet));
+            assertEquals(i, packet.getSequence());
+            assertEquals(i, packet.getValue()[0]);
+        }
+        assertEquals(3, subscription.getStats().getPolledCount());
+    }
+
+    @Test
+    public void longNotification_truncatedToSlot() throws Exception {
+        NotificationSubscription subscription = subscription(2, 3);
+        subscription.offer(new byte[]{1, 2, 3, 4, 5});
+        subscription.offer(null);
+        NotificationPacket packet = subscription.newPacket();
+        assertTrue(subscription.poll(packet));
+        assertArrayEquals(new byte[]{1, 2, 3}, packet.copyValue());
+        assertTrue(subscription.poll(packet));
+        assertEquals(0, packet.getLength());
+        assertEquals(1, subscription.getStats().getTruncatedCount());
+    }
+
+    @Test
+    public void listener_signalledOncePerBatch() throws Exception {
+        final NotificationSubscription subscription = subscription(8, 4);
+        subscription.offer(new byte[]{1});
+        subscription.offer(new byte[]{2});
+        subscription.offer(new byte[]{3});
+        assertEquals(1, executor.runnables.size());
+        executor.runAll();
+        assertEquals(Collections.singletonList("available"), listener.events);
+
+        // notifications received after the signal ran signal again, even if not polled yet
+        subscription.offer(new byte[]{4});
+        assertEquals(1, executor.runnables.size());
+    }
+
+    @Test
+    public void cancel_disablesOnceAndKeepsBufferedNotifications() throws Exception {
+        NotificationSubscription subscription = subscription(4, 4);
+        subscription.offer(new byte[]{1});
+        executor.runAll();
+        assertTrue(subscription.cancel());
+        assertFalse(subscription.cancel());
+        assertFalse(subscription.offer(new byte[]{2}));
+        subscription.close();
+        executor.runAll();
+
+        assertEquals(Collections.singletonList(subscription), cancelled);
+        assertEquals(NotificationSubscription.Status.CANCELLED, subscription.getStatus());
+        assertEquals(Arrays.asList("available", "closed CANCELLED"), listener.events);
+        NotificationPacket packet = subscription.newPacket();
+        assertTrue(subscription.poll(packet));
+        assertEquals(1, packet.getValue()[0]);
+        assertFalse(subscription.poll(packet));
+    }
+
+    @Test
+    public void close_endsSubscriptionWithoutDisabling() throws Exception {
+        NotificationSubscription subscription = subscription(4, 4);
+        subscription.close();
+        subscription.onEnabled();
+        executor.runAll();
+        assertEquals(NotificationSubscription.Status.CLOSED, subscription.getStatus());
+        assertFalse(subscription.isOpen());
+        assertFalse(subscription.cancel());
+        assertTrue(cancelled.isEmpty());
+        assertEquals(Collections.singletonList("closed CLOSED"), listener.events);
+    }
+
+    /**
+     * One thread offers notifications like a binder thread, another one drains them with a single packet
+     */
+    @Test
+    public void concurrentStream_overrunsMatchSequenceGaps() throws Exception {
+        final int notifications = 500000;
+        final NotificationSubscription subscription = new NotificationSubscription(new BlueDevice(), notifyAction,
+                64, 20, null, null, null);
+        final byte[] value = new byte[20];
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < notifications; i++) {
+                    value[0] = (byte) i;
+                    subscription.offer(value);
+                }
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        NotificationPacket packet = subscription.newPacket();
+        long lastSequence = -1;
+        long gaps = 0;
+        producer.start();
+        while (producer.isAlive() || subscription.getStats().getBufferedCount() > 0) {
+            while (subscription.poll(packet)) {
+                assertTrue(packet.getSequence() > lastSequence);
+                assertEquals((byte) packet.getSequence(), packet.getValue()[0]);
+                gaps += packet.getSequence() - lastSequence - 1;
+                lastSequence = packet.getSequence();
+            }
+        }
+        producer.join();
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+
+        NotificationStats stats = subscription.getStats();
+        assertEquals(notifications, stats.getReceivedCount());
+        assertEquals(notifications, stats.getPolledCount() + stats.getOverrunCount());
+        assertEquals(stats.getOverrunCount(), gaps + (notifications - 1 - lastSequence));
+    }
+}
@@ -0,0 +1,121 @@
+package pl.tomek_krzyszko.bluemanager.device;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.action.WriteAction;
+
+import static org.junit.Assert.*;
+
+/**
+ * Fragment sequencing of long writes, with a writer recording the fragments instead of a GATT connection.
+ */
+public class WriteFragmenterTest {
+
+    private static final UUID SERVICE = UUID.fromString("0000ff00-0000-1000-8000-00805f9b34fb");
+    private static final UUID CHARACTERISTIC = UUID.fromString("0000ff02-0000-1000-8000-00805f9b34fb");
+
+    private static class RecordingWriter implements WriteFragmenter.Writer {
+        final List<byte[]> fragments = new ArrayList<>();
+        int refuseAt = -1;
+
+        @Override
+        public boolean write(WriteAction writeAction, byte[] fragment) {
+            fragments.add(fragment);
+            return fragments.size() - 1 != refuseAt;
+        }
+
+        byte[] last() {
+            return fragments.get(fragments.size() - 1);
+        }
+    }
+
+    private final RecordingWriter writer = new RecordingWriter();
+
+    private static byte[] value(int length) {
+        byte[] value = new byte[length];
+        for (int i = 0; i < length; i++) {
+            value[i] = (byte) i;
+        }
+        return value;
+    }
+
+    private WriteFragmenter fragmenter(byte[] value, int fragmentSize) {
+        return new WriteFragmenter(new WriteAction(SERVICE, CHARACTERISTIC, value), fragmentSize, writer);
+    }
+
+    @Test
+    public void fragmentSize_leavesRoomForAttHeader() throws Exception {
+        assertEquals(20, WriteFragmenter.fragmentSize(WriteFragmenter.DEFAULT_MTU));
+        assertEquals(244, WriteFragmenter.fragmentSize(247));
+    }
+
+    @Test
+    public void allFragmentsWritten_succeedsOnceAfterLast() throws Exception {
+        byte[] value = value(50);
+        WriteFragmenter fragmenter = fragmenter(value, 20);
+        assertEquals(3, fragmenter.getFragmentCount());
+        assertTrue(fragmenter.start());
+        assertEquals(WriteFragmenter.Progress.WRITING, fragmenter.onFragmentWritten(true, writer.last()));
+        assertEquals(WriteFragmenter.Progress.WRITING, fragmenter.onFragmentWritten(true, writer.last()));
+        assertEquals(WriteFragmenter.Progress.SUCCEEDED, fragmenter.onFragmentWritten(true, writer.last()));
+
+        byte[] joined = new byte[value.length];
+        int offset = 0;
+        int[] lengths = {20, 20, 10};
+        for (int i = 0; i < lengths.length; i++) {
+            byte[] fragment = writer.fragments.get(i);
+            assertEquals(lengths[i], fragment.length);
+            System.arraycopy(fragment, 0, joined, offset, fragment.length);
+            offset += fragment.length;
+        }
+        assertArrayEquals(value, joined);
+    }
+
+    @Test
+    public void exactMultiple_hasNoEmptyLastFragment() throws Exception {
+        WriteFragmenter fragmenter = fragmenter(value(488), 244);
+        assertEquals(2, fragmenter.getFragmentCount());
+        fragmenter.start();
+        fragmenter.onFragmentWritten(true, writer.last());
+        assertEquals(WriteFragmenter.Progress.SUCCEEDED, fragmenter.onFragmentWritten(true, writer.last()));
+        assertEquals(2, writer.fragments.size());
+    }
+
+    @Test
+    public void failedFragment_failsActionWithoutWritingRest() throws Exception {
+        WriteFragmenter fragmenter = fragmenter(value(60), 20);
+        fragmenter.start();
+        fragmenter.onFragmentWritten(true, writer.last());
+        assertEquals(WriteFragmenter.Progress.FAILED, fragmenter.onFragmentWritten(false, writer.last()));
+        assertEquals(2, writer.fragments.size());
+    }
+
+    @Test
+    public void fragmentWrittenWithOtherValue_failsAction() throws Exception {
+        WriteFragmenter fragmenter = fragmenter(value(60), 20);
+        fragmenter.start();
+        assertEquals(WriteFragmenter.Progress.FAILED, fragmenter.onFragmentWritten(true, new byte[20]));
+    }
+
+    @Test
+    public void refusedWrite_failsAction() throws Exception {
+        writer.refuseAt = 0;
+        assertFalse(fragmenter(value(60), 20).start());
+
+        writer.fragments.clear();
+        writer.refuseAt = 1;
+        WriteFragmenter fragmenter = fragmenter(value(60), 20);
+        assertTrue(fragmenter.start());
+        assertEquals(WriteFragmenter.Progress.FAILED, fragmenter.onFragmentWritten(true, writer.last()));
+        assertEquals(2, writer.fragments.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveFragmentSize_isRejected() throws Exception {
+        fragmenter(value(10), 0);
+    }
+}
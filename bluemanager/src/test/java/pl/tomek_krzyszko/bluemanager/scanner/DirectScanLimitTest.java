@@ -0,0 +1,153 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
+
+import static org.junit.Assert.*;
+
+/**
+ * A direct scan with a scanning time or an address ends once, the way {@link BlueScanner#stopTask()} ends it:
+ * through {@link ScanSessionManager#endDirectScan(Runnable)}, so sessions opened before it keep their scan.
+ */
+public class DirectScanLimitTest {
+
+    private static final String TARGET = "00:11:22:AA:BB:CC";
+
+    private static class TimerWorker implements ScanStateMachine.Worker {
+        final List<Runnable> timers = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            timers.add(runnable);
+        }
+
+        void runTimers() {
+            List<Runnable> due = new ArrayList<>(timers);
+            timers.clear();
+            for (Runnable runnable : due) {
+                runnable.run();
+            }
+        }
+    }
+
+    private static class RecordingScan implements ScanSessionManager.SharedScan {
+        final List<String> calls = new ArrayList<>();
+        Set<ScanCriteria> union;
+
+        @Override
+        public void start(Set<ScanCriteria> union, boolean lowEnergy) {
+            calls.add("session start");
+            this.union = union;
+        }
+
+        @Override
+        public void reconfigure(Set<ScanCriteria> union) {
+            calls.add("session reconfigure");
+            this.union = union;
+        }
+
+        @Override
+        public void stop() {
+            calls.add("session stop");
+        }
+    }
+
+    private static class RecordingListener implements BlueDeviceScanListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onDeviceFound(BlueDevice blueDevice) {
+            events.add("found " + blueDevice.getAddress());
+        }
+
+        @Override
+        public void onDeviceUpdate(BlueDevice blueDevice) {
+            events.add("update " + blueDevice.getAddress());
+        }
+
+        @Override
+        public void onDeviceLost(BlueDevice blueDevice) {
+            events.add("lost " + blueDevice.getAddress());
+        }
+
+        @Override
+        public void onDeviceScanError(int errorCode) {
+            events.add("error " + errorCode);
+        }
+    }
+
+    private final TimerWorker worker = new TimerWorker();
+    private final RecordingScan scan = new RecordingScan();
+    private final ScanSessionManager manager = new ScanSessionManager(scan);
+    private final DirectScanLimit limit = new DirectScanLimit(worker,
+            () -> manager.endDirectScan(() -> scan.calls.add("direct stop")));
+
+    @Test
+    public void sessionOutlivesTimedScan() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        ScanCriteria scanCriteria = ScanCriteria.builder().setNamePrefix("Blue").build();
+        manager.open(scanCriteria, new ListenerMailbox(listener, Runnable::run, ListenerOverflowPolicy.DROP_OLDEST, 8), true);
+
+        // a direct scan replaces the session scan for 10 seconds
+        limit.start(MacAddress.INVALID, 10000L);
+        worker.runTimers();
+
+        assertEquals(Arrays.asList("session start", "direct stop", "session start"), scan.calls);
+        assertEquals(Collections.singleton(scanCriteria), scan.union);
+        BlueDevice blueDevice = new BlueDevice();
+        blueDevice.setAddress(TARGET);
+        blueDevice.setName("Blue tag");
+        manager.onFound(blueDevice);
+        assertEquals(Collections.singletonList("found " + TARGET), listener.events);
+    }
+
+    @Test
+    public void timedScanWithoutSessions_onlyStops() throws Exception {
+        limit.start(MacAddress.INVALID, 10000L);
+        worker.runTimers();
+        assertEquals(Collections.singletonList("direct stop"), scan.calls);
+    }
+
+    @Test
+    public void targetAddress_endsScanOnce() throws Exception {
+        limit.start(MacAddress.pack(TARGET), null);
+        limit.onSighting(MacAddress.pack("00:11:22:AA:BB:CD"));
+        assertTrue(scan.calls.isEmpty());
+        limit.onSighting(MacAddress.pack(TARGET));
+        limit.onSighting(MacAddress.pack(TARGET));
+        assertEquals(Collections.singletonList("direct stop"), scan.calls);
+        assertTrue(worker.timers.isEmpty());
+    }
+
+    @Test
+    public void timerOfStoppedOrReplacedScan_doesNothing() throws Exception {
+        limit.start(MacAddress.INVALID, 10000L);
+        limit.cancel();
+        limit.start(MacAddress.INVALID, 10000L);
+        limit.start(MacAddress.INVALID, null);
+        worker.runTimers();
+        assertTrue(scan.calls.isEmpty());
+    }
+
+    @Test
+    public void targetFoundBeforeTimeout_endsScanOnce() throws Exception {
+        limit.start(MacAddress.pack(TARGET), 10000L);
+        limit.onSighting(MacAddress.pack(TARGET));
+        worker.runTimers();
+        assertEquals(Collections.singletonList("direct stop"), scan.calls);
+    }
+}
@@ -0,0 +1,108 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Lost device checks of 100, 1k and 10k devices with a full sweep of discovery timestamps and with {@link ExpiryWheel},
+ * one method per structure and device count. Devices are scanned once per tick, the scanner checks them once per tick
+ * and one percent of them stops advertising half way through. Not part of the unit test run: remove {@link Ignore}
+ * locally and compare the durations of the methods with the same device count.
+ */
+@Ignore("Benchmark, run manually")
+public class ExpiryWheelBenchmark {
+
+    private static final long TIMEOUT = 5000;
+    private static final long TICK = TIMEOUT / 16;
+    private static final int ROUNDS = 2_000;
+
+    @Test
+    public void fullSweep_100Devices() throws Exception {
+        fullSweep(100);
+    }
+
+    @Test
+    public void timingWheel_100Devices() throws Exception {
+        timingWheel(100);
+    }
+
+    @Test
+    public void fullSweep_1000Devices() throws Exception {
+        fullSweep(1_000);
+    }
+
+    @Test
+    public void timingWheel_1000Devices() throws Exception {
+        timingWheel(1_000);
+    }
+
+    @Test
+    public void fullSweep_10000Devices() throws Exception {
+        fullSweep(10_000);
+    }
+
+    @Test
+    public void timingWheel_10000Devices() throws Exception {
+        timingWheel(10_000);
+    }
+
+    private static void fullSweep(int devices) {
+        String[] addresses = addresses(devices);
+        Map<String, Long> discoveredTimestamps = new HashMap<>();
+        int lost = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long now = TIMEOUT + round * TICK;
+            for (int i = 0; i < devices; i++) {
+                if (advertising(i, round)) {
+                    discoveredTimestamps.put(addresses[i], timestamp(i, now));
+                }
+            }
+            Iterator<Map.Entry<String, Long>> iterator = discoveredTimestamps.entrySet().iterator();
+            while (iterator.hasNext()) {
+                if (now - iterator.next().getValue() > TIMEOUT) {
+                    iterator.remove();
+                    lost++;
+                }
+            }
+        }
+        assertEquals(devices / 100, lost);
+    }
+
+    private static void timingWheel(int devices) {
+        String[] addresses = addresses(devices);
+        ExpiryWheel<String> expiryWheel = new ExpiryWheel<>(TICK, 256);
+        int lost = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long now = TIMEOUT + round * TICK;
+            for (int i = 0; i < devices; i++) {
+                if (advertising(i, round)) {
+                    expiryWheel.schedule(addresses[i], timestamp(i, now) + TIMEOUT);
+                }
+            }
+            lost += expiryWheel.expire(now, (item, time) -> { });
+        }
+        assertEquals(devices / 100, lost);
+    }
+
+    private static String[] addresses(int devices) {
+        String[] addresses = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            addresses[i] = "device" + i;
+        }
+        return addresses;
+    }
+
+    private static boolean advertising(int device, int round) {
+        return device % 100 != 0 || round < ROUNDS / 2;
+    }
+
+    private static long timestamp(int device, long now) {
+        return now - (device * 7919L % TICK);
+    }
+}
@@ -0,0 +1,124 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests of {@link ExpiryWheel}, including that it loses the same devices as a full sweep of discovery timestamps.
+ * {@link ExpiryWheelBenchmark} compares the cost of both checks.
+ */
+public class ExpiryWheelTest {
+
+    private static final long TIMEOUT = 5000;
+    private static final long TICK = TIMEOUT / 16;
+
+    @Test
+    public void expire_returnsOnlyItemsPastDeadline() {
+        ExpiryWheel<String> expiryWheel = new ExpiryWheel<>(100, 16);
+        expiryWheel.schedule("a", 1000);
+        expiryWheel.schedule("b", 2000);
+        expiryWheel.schedule("c", 3000);
+        List<String> expired = new ArrayList<>();
+
+        assertEquals(0, expiryWheel.expire(999, (item, now) -> expired.add(item)));
+        assertEquals(1, expiryWheel.expire(1500, (item, now) -> expired.add(item)));
+        assertEquals("a", expired.get(0));
+        assertEquals(2, expiryWheel.size());
+    }
+
+    @Test
+    public void schedule_movesExistingItem() {
+        ExpiryWheel<String> expiryWheel = new ExpiryWheel<>(100, 16);
+        List<String> expired = new ArrayList<>();
+        expiryWheel.schedule("a", 1000);
+        expiryWheel.schedule("a", 5000);
+
+        assertEquals(0, expiryWheel.expire(1200, (item, now) -> expired.add(item)));
+        assertEquals(1, expiryWheel.size());
+        assertEquals(1, expiryWheel.expire(5000, (item, now) -> expired.add(item)));
+        assertEquals(0, expiryWheel.size());
+    }
+
+    @Test
+    public void expire_handlesDeadlinesBeyondOneLap() {
+        ExpiryWheel<String> expiryWheel = new ExpiryWheel<>(100, 4);
+        List<String> expired = new ArrayList<>();
+        expiryWheel.schedule("far", 10_000);
+        for (long now = 0; now < 10_000; now += 100) {
+            expiryWheel.expire(now, (item, time) -> expired.add(item));
+        }
+        assertTrue(expired.isEmpty());
+        expiryWheel.expire(10_050, (item, time) -> expired.add(item));
+        assertEquals(1, expired.size());
+    }
+
+    @Test
+    public void schedule_pastDeadlineExpiresOnNextCall() {
+        ExpiryWheel<String> expiryWheel = new ExpiryWheel<>(100, 16);
+        expiryWheel.expire(10_000, (item, now) -> fail());
+        expiryWheel.schedule("late", 500);
+        assertEquals(1, expiryWheel.expire(10_001, (item, now) -> { }));
+    }
+
+    @Test
+    public void cancel_removesItem() {
+        ExpiryWheel<String> expiryWheel = new ExpiryWheel<>(100, 16);
+        expiryWheel.schedule("a", 1000);
+        assertTrue(expiryWheel.cancel("a"));
+        assertFalse(expiryWheel.cancel("a"));
+        assertEquals(0, expiryWheel.expire(2000, (item, now) -> fail()));
+    }
+
+    @Test
+    public void expire_losesSameDevicesAsFullSweep() {
+        for (int devices : new int[]{100, 1_000, 10_000}) {
+            compareWithSweep(devices);
+        }
+    }
+
+    /**
+     * Devices are scanned once per tick, the scanner checks them once per tick
+     * and one percent of them stops advertising half way through.
+     */
+    private void compareWithSweep(int devices) {
+        Map<String, Long> discoveredTimestamps = new HashMap<>();
+        ExpiryWheel<String> expiryWheel = new ExpiryWheel<>(TICK, 256);
+        String[] addresses = new String[devices];
+        for (int i = 0; i < devices; i++) {
+            addresses[i] = "device" + i;
+        }
+        int sweepLost = 0;
+        int wheelLost = 0;
+        int rounds = 200;
+        for (int round = 0; round < rounds; round++) {
+            long now = TIMEOUT + round * TICK;
+            for (int i = 0; i < devices; i++) {
+                if (i % 100 != 0 || round < rounds / 2) {
+                    long timestamp = now - (i * 7919L % TICK);
+                    discoveredTimestamps.put(addresses[i], timestamp);
+                    expiryWheel.schedule(addresses[i], timestamp + TIMEOUT);
+                }
+            }
+
+            Iterator<Map.Entry<String, Long>> iterator = discoveredTimestamps.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, Long> entry = iterator.next();
+                if (now - entry.getValue() > TIMEOUT) {
+                    iterator.remove();
+                    sweepLost++;
+                }
+            }
+
+            wheelLost += expiryWheel.expire(now, (item, time) -> { });
+        }
+        assertEquals(devices / 100, wheelLost);
+        assertEquals(sweepLost, wheelLost);
+    }
+}
@@ -0,0 +1,35 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link ScanRadio} recording starts and stops, with the adapter state and backend answers set by the test
+ */
+class FakeRadio implements ScanRadio {
+    boolean enabled = true;
+    boolean refuseStart = false;
+    boolean configurationChanged = false;
+    final List<String> calls = new ArrayList<>();
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @Override
+    public boolean startScan() {
+        calls.add("start");
+        return !refuseStart;
+    }
+
+    @Override
+    public void stopScan() {
+        calls.add("stop");
+    }
+
+    @Override
+    public boolean isConfigurationChanged() {
+        return configurationChanged;
+    }
+}
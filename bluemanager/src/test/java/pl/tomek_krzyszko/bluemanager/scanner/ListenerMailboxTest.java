@@ -0,0 +1,163 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+import static org.junit.Assert.*;
+
+/**
+ * A slow listener only fills its own mailbox: what it loses depends on its overflow policy,
+ * and other listeners keep receiving events.
+ */
+public class ListenerMailboxTest {
+
+    /**
+     * Records updated devices, optionally blocking until released
+     */
+    private static class RecordingListener implements BlueDeviceScanListener {
+        final List<BlueDevice> updated = new ArrayList<>();
+        final CountDownLatch release;
+
+        RecordingListener(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onDeviceFound(BlueDevice blueDevice) {
+        }
+
+        @Override
+        public void onDeviceLost(BlueDevice blueDevice) {
+        }
+
+        @Override
+        public synchronized void onDeviceUpdate(BlueDevice blueDevice) {
+            if (release != null) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            updated.add(blueDevice);
+        }
+
+        @Override
+        public void onDeviceScanError(int errorCode) {
+        }
+    }
+
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+
+    @Test
+    public void conflate_mergesUpdatesOfWaitingDevice() throws Exception {
+        RecordingListener listener = new RecordingListener(null);
+        ListenerMailbox mailbox = new ListenerMailbox(listener, queue::add, ListenerOverflowPolicy.CONFLATE, 8);
+        BlueDevice first = new BlueDevice();
+        BlueDevice second = new BlueDevice();
+        for (int i = 0; i < 5; i++) {
+            mailbox.offer(ListenerMailbox.UPDATED, first, 0);
+            mailbox.offer(ListenerMailbox.UPDATED, second, 0);
+        }
+        assertEquals(1, queue.size());
+        assertEquals(2, mailbox.getStats().getQueueDepth());
+        assertEquals(8, mailbox.getStats().getConflatedCount());
+        runQueue();
+        assertEquals(2, listener.updated.size());
+        // delivered update no longer blocks new ones
+        mailbox.offer(ListenerMailbox.UPDATED, first, 0);
+        runQueue();
+        assertEquals(3, listener.updated.size());
+    }
+
+    @Test
+    public void dropOldest_keepsLatestEvents() throws Exception {
+        RecordingListener listener = new RecordingListener(null);
+        ListenerMailbox mailbox = new ListenerMailbox(listener, queue::add, ListenerOverflowPolicy.DROP_OLDEST, 4);
+        BlueDevice[] blueDevices = new BlueDevice[10];
+        for (int i = 0; i < blueDevices.length; i++) {
+            blueDevices[i] = new BlueDevice();
+            mailbox.offer(ListenerMailbox.UPDATED, blueDevices[i], 0);
+        }
+        assertEquals(6, mailbox.getStats().getDroppedCount());
+        runQueue();
+        assertEquals(4, listener.updated.size());
+        assertSame(blueDevices[6], listener.updated.get(0));
+        assertSame(blueDevices[9], listener.updated.get(3));
+    }
+
+    @Test
+    public void failFast_stopsDelivery() throws Exception {
+        RecordingListener listener = new RecordingListener(null);
+        ListenerMailbox mailbox = new ListenerMailbox(listener, queue::add, ListenerOverflowPolicy.FAIL_FAST, 4);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(mailbox.offer(ListenerMailbox.UPDATED, new BlueDevice(), 0));
+        }
+        assertFalse(mailbox.offer(ListenerMailbox.UPDATED, new BlueDevice(), 0));
+        assertTrue(mailbox.isFailed());
+        assertFalse(mailbox.offer(ListenerMailbox.UPDATED, new BlueDevice(), 0));
+        runQueue();
+        assertTrue(listener.updated.isEmpty());
+        assertEquals(6, mailbox.getStats().getDroppedCount());
+    }
+
+    @Test
+    public void slowListener_doesNotDelayOthers() throws Exception {
+        ExecutorService slowExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService fastExecutor = Executors.newSingleThreadExecutor();
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingListener slow = new RecordingListener(release);
+        RecordingListener fast = new RecordingListener(null);
+        ScanListenerDispatcher dispatcher = new ScanListenerDispatcher(queue::add, ListenerOverflowPolicy.DROP_OLDEST, 16);
+        dispatcher.add(slow, slowExecutor, ListenerOverflowPolicy.DROP_OLDEST, 16);
+        dispatcher.add(fast, fastExecutor, ListenerOverflowPolicy.DROP_OLDEST, 16);
+        try {
+            for (int i = 0; i < 100; i++) {
+                dispatcher.postUpdate(new BlueDevice());
+            }
+            long deadline = System.currentTimeMillis() + 10000;
+            while (dispatcher.getStats(fast).getDeliveredCount() + dispatcher.getStats(fast).getDroppedCount() < 100
+                    && System.currentTimeMillis() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(100, dispatcher.getStats(fast).getDeliveredCount() + dispatcher.getStats(fast).getDroppedCount());
+            assertEquals(0, dispatcher.getStats(slow).getDeliveredCount());
+            assertTrue(dispatcher.getStats(slow).getQueueDepth() <= 16);
+            assertTrue(dispatcher.getStats(slow).getDroppedCount() > 0);
+        } finally {
+            release.countDown();
+            slowExecutor.shutdown();
+            fastExecutor.shutdown();
+            assertTrue(slowExecutor.awaitTermination(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void removedListener_doesNotReceiveWaitingEvents() throws Exception {
+        RecordingListener listener = new RecordingListener(null);
+        ScanListenerDispatcher dispatcher = new ScanListenerDispatcher(queue::add, ListenerOverflowPolicy.CONFLATE, 16);
+        dispatcher.add(listener);
+        dispatcher.postUpdate(new BlueDevice());
+        assertTrue(dispatcher.remove(listener));
+        runQueue();
+        assertTrue(listener.updated.isEmpty());
+        assertNull(dispatcher.getStats(listener));
+    }
+
+    private void runQueue() {
+        Runnable runnable;
+        while ((runnable = queue.poll()) != null) {
+            runnable.run();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+import static org.junit.Assert.*;
+
+/**
+ * A batch holds the last state of each device changed since the previous one: repeated updates appear once,
+ * a lost device only as removed and a device found and lost within the interval not at all.
+ */
+public class ScanDeltaAccumulatorTest {
+
+    private final ScanDeltaAccumulator accumulator = new ScanDeltaAccumulator();
+
+    @Test
+    public void repeatedUpdates_areDeliveredOnce() throws Exception {
+        BlueDevice first = newDevice("00:00:00:00:00:01");
+        BlueDevice second = newDevice("00:00:00:00:00:02");
+        accumulator.onAdded(first);
+        for (int i = 0; i < 10; i++) {
+            accumulator.onUpdated(first);
+            accumulator.onUpdated(second);
+        }
+        ScanDelta scanDelta = accumulator.drain(1);
+        assertEquals(1, scanDelta.getAdded().size());
+        assertSame(first, scanDelta.getAdded().get(0));
+        assertEquals(1, scanDelta.getUpdated().size());
+        assertSame(second, scanDelta.getUpdated().get(0));
+        assertTrue(scanDelta.getRemoved().isEmpty());
+        assertEquals(1, scanDelta.getTimestamp());
+    }
+
+    @Test
+    public void updatedAndLost_isOnlyRemoved() throws Exception {
+        BlueDevice blueDevice = newDevice("00:00:00:00:00:01");
+        accumulator.onUpdated(blueDevice);
+        accumulator.onRemoved(blueDevice);
+        ScanDelta scanDelta = accumulator.drain(1);
+        assertTrue(scanDelta.getUpdated().isEmpty());
+        assertEquals(1, scanDelta.getRemoved().size());
+    }
+
+    @Test
+    public void foundAndLost_isSkipped() throws Exception {
+        BlueDevice blueDevice = newDevice("00:00:00:00:00:01");
+        accumulator.onAdded(blueDevice);
+        accumulator.onUpdated(blueDevice);
+        accumulator.onRemoved(blueDevice);
+        assertNull(accumulator.drain(1));
+    }
+
+    @Test
+    public void drain_startsNewInterval() throws Exception {
+        accumulator.onAdded(newDevice("00:00:00:00:00:01"));
+        assertNotNull(accumulator.drain(1));
+        assertEquals(0, accumulator.size());
+        assertNull(accumulator.drain(2));
+    }
+
+    private static BlueDevice newDevice(String address) {
+        BlueDevice blueDevice = new BlueDevice();
+        blueDevice.setAddress(address);
+        return blueDevice;
+    }
+}
@@ -0,0 +1,141 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Windows open and close on time against a simulated clock. New devices shorten the interval,
+ * a stable environment lengthens it, and timers left over from a stopped cycle do nothing.
+ */
+public class ScanDutyCycleTest {
+
+    /**
+     * Runs events inline, {@link TimerWorker#advance()} moves the clock to the earliest timer and runs it
+     */
+    private static class TimerWorker implements ScanStateMachine.Worker, Clock {
+        final List<Runnable> timers = new ArrayList<>();
+        final List<Long> dueTimes = new ArrayList<>();
+        long now = 0;
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            timers.add(runnable);
+            dueTimes.add(now + delayMillis);
+        }
+
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+
+        void advance() {
+            int earliest = 0;
+            for (int i = 1; i < dueTimes.size(); i++) {
+                if (dueTimes.get(i) < dueTimes.get(earliest)) {
+                    earliest = i;
+                }
+            }
+            now = dueTimes.remove(earliest);
+            timers.remove(earliest).run();
+        }
+    }
+
+    private final FakeRadio radio = new FakeRadio();
+    private final TimerWorker worker = new TimerWorker();
+    private final ScanStateMachine stateMachine = new ScanStateMachine(radio, worker, 100);
+
+    @Test
+    public void fixedCycle_scansForWindowEveryInterval() throws Exception {
+        ScanDutyCycle dutyCycle = new ScanDutyCycle(stateMachine, worker, worker, 2000, 10000, 5000, 40000, false);
+        stateMachine.requestStart();
+        dutyCycle.start();
+        assertEquals(ScanStateMachine.State.SCANNING, stateMachine.getState());
+
+        worker.advance();
+        assertEquals(2000, worker.now);
+        assertEquals(ScanStateMachine.State.PAUSED, stateMachine.getState());
+        assertTrue(stateMachine.isActive());
+
+        worker.advance();
+        assertEquals(10000, worker.now);
+        assertEquals(ScanStateMachine.State.SCANNING, stateMachine.getState());
+        worker.advance();
+        worker.advance();
+        assertEquals(20000, worker.now);
+        assertEquals(Arrays.asList("start", "stop", "start", "stop", "start"), radio.calls);
+        assertEquals(0.2, dutyCycle.getEffectiveDutyCycle(), 1e-9);
+        assertEquals(3, dutyCycle.getStats().getWindowCount());
+    }
+
+    @Test
+    public void newDevices_shortenInterval_stableEnvironment_lengthensIt() throws Exception {
+        ScanDutyCycle dutyCycle = new ScanDutyCycle(stateMachine, worker, worker, 2000, 16000, 6000, 40000, true);
+        dutyCycle.start();
+        dutyCycle.onNewDevice();
+        worker.advance();
+        assertEquals(8000, dutyCycle.getIntervalMillis());
+        worker.advance();
+        dutyCycle.onNewDevice();
+        worker.advance();
+        assertEquals(6000, dutyCycle.getIntervalMillis());
+
+        for (int i = 0; i < 10; i++) {
+            worker.advance();
+            worker.advance();
+        }
+        assertEquals(40000, dutyCycle.getIntervalMillis());
+        assertEquals(38000, dutyCycle.getMaxGapMillis());
+    }
+
+    @Test
+    public void stop_invalidatesTimers() throws Exception {
+        ScanDutyCycle dutyCycle = new ScanDutyCycle(stateMachine, worker, worker, 2000, 10000, 5000, 40000, false);
+        stateMachine.requestStart();
+        dutyCycle.start();
+        dutyCycle.stop();
+        stateMachine.requestStop();
+        worker.advance();
+        assertEquals(ScanStateMachine.State.IDLE, stateMachine.getState());
+        assertEquals(Arrays.asList("start", "stop"), radio.calls);
+        assertEquals(0, dutyCycle.getEffectiveDutyCycle(), 0);
+    }
+
+    @Test
+    public void startWhilePaused_opensWindowRightAway() throws Exception {
+        ScanDutyCycle dutyCycle = new ScanDutyCycle(stateMachine, worker, worker, 2000, 10000, 5000, 40000, false);
+        stateMachine.requestStart();
+        dutyCycle.start();
+        worker.advance();
+        assertEquals(ScanStateMachine.State.PAUSED, stateMachine.getState());
+
+        worker.now = 4000;
+        stateMachine.requestStart();
+        dutyCycle.start();
+        assertEquals(ScanStateMachine.State.SCANNING, stateMachine.getState());
+        // the timer of the skipped window is obsolete
+        worker.advance();
+        assertEquals(6000, worker.now);
+        assertEquals(ScanStateMachine.State.PAUSED, stateMachine.getState());
+        worker.advance();
+        assertEquals(10000, worker.now);
+        assertEquals(ScanStateMachine.State.PAUSED, stateMachine.getState());
+        worker.advance();
+        assertEquals(14000, worker.now);
+        assertEquals(ScanStateMachine.State.SCANNING, stateMachine.getState());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalNotLongerThanWindow_isRejected() throws Exception {
+        new ScanDutyCycle(stateMachine, worker, worker, 2000, 2000, 0, 0, false);
+    }
+}
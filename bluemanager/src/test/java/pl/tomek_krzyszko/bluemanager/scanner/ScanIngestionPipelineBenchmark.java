@@ -0,0 +1,68 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * The same burst of results of 64 devices processed by one worker and by striped workers, one method each.
+ * Every result costs a little work on its worker, like updating the record of its device.
+ * Not part of the unit test run: remove {@link Ignore} locally and compare the durations of the methods.
+ */
+@Ignore("Benchmark, run manually")
+public class ScanIngestionPipelineBenchmark {
+
+    private static final int DEVICES = 64;
+    private static final int RESULTS_PER_DEVICE = 20_000;
+    private static final int PRODUCERS = 4;
+
+    @Test
+    public void singleWorker() throws Exception {
+        ingest(1);
+    }
+
+    @Test
+    public void fourWorkers() throws Exception {
+        ingest(4);
+    }
+
+    private static void ingest(int workers) throws Exception {
+        final AtomicLong checksum = new AtomicLong();
+        final ScanIngestionPipeline pipeline = new ScanIngestionPipeline(1024, ScanOverflowPolicy.BLOCK, workers, scanEvent -> {
+            long hash = scanEvent.getTimestamp();
+            for (int i = 0; i < 200; i++) {
+                hash = hash * 31 + i;
+            }
+            if (hash == 0) {
+                checksum.incrementAndGet();
+            }
+        });
+        pipeline.start();
+        final CountDownLatch producersDone = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            new Thread(() -> {
+                for (int i = 0; i < RESULTS_PER_DEVICE; i++) {
+                    for (int d = producer; d < DEVICES; d += PRODUCERS) {
+                        pipeline.publish(null, ScanIngestionPipelineTest.address(d), -60, null, i);
+                    }
+                }
+                producersDone.countDown();
+            }).start();
+        }
+        assertTrue(producersDone.await(60, TimeUnit.SECONDS));
+        long total = (long) DEVICES * RESULTS_PER_DEVICE;
+        long deadline = System.currentTimeMillis() + 60000;
+        while (pipeline.getProcessedCount() < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        pipeline.stop();
+        assertEquals(total, pipeline.getProcessedCount());
+        assertEquals(workers, pipeline.getWorkerCount());
+    }
+}
@@ -0,0 +1,88 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Results of one device are processed in the order they were scanned even though many devices are processed in parallel.
+ * {@link ScanIngestionPipelineBenchmark} compares striped processing with a single worker.
+ */
+public class ScanIngestionPipelineTest {
+
+    private static final int DEVICES = 64;
+    private static final int RESULTS_PER_DEVICE = 5_000;
+    private static final int PRODUCERS = 4;
+
+    @Test
+    public void stripes_keepPerDeviceOrder() throws Exception {
+        final ConcurrentHashMap<String, long[]> lastSeen = new ConcurrentHashMap<>();
+        final Set<String> workerNames = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        final AtomicInteger outOfOrder = new AtomicInteger();
+        final ScanIngestionPipeline pipeline = new ScanIngestionPipeline(1024, ScanOverflowPolicy.BLOCK, 4, scanEvent -> {
+            // rssi carries the per device counter of the producer, sequence the order of buffering
+            long[] last = lastSeen.get(scanEvent.getAddress());
+            if (last == null) {
+                last = new long[]{-1, -1};
+                lastSeen.put(scanEvent.getAddress(), last);
+            }
+            if (scanEvent.getSequence() <= last[0] || scanEvent.getRssi() <= last[1]) {
+                outOfOrder.incrementAndGet();
+            }
+            last[0] = scanEvent.getSequence();
+            last[1] = scanEvent.getRssi();
+            workerNames.add(Thread.currentThread().getName());
+        });
+        pipeline.start();
+        final CountDownLatch producersDone = new CountDownLatch(PRODUCERS);
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            new Thread(() -> {
+                // every device is advertised by exactly one producer, like one scan callback thread per result
+                for (int i = 0; i < RESULTS_PER_DEVICE; i++) {
+                    for (int d = producer; d < DEVICES; d += PRODUCERS) {
+                        pipeline.publish(null, address(d), i, null, i);
+                    }
+                }
+                producersDone.countDown();
+            }).start();
+        }
+        assertTrue(producersDone.await(30, TimeUnit.SECONDS));
+        long total = (long) DEVICES * RESULTS_PER_DEVICE;
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pipeline.getProcessedCount() < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        pipeline.stop();
+
+        assertEquals(total, pipeline.getProcessedCount());
+        assertEquals(0, outOfOrder.get());
+        assertEquals(DEVICES, lastSeen.size());
+        assertTrue(workerNames.size() > 1);
+    }
+
+    @Test
+    public void stripeOf_isStableAndSpread() throws Exception {
+        Set<Integer> used = new HashSet<>();
+        for (int d = 0; d < DEVICES; d++) {
+            int stripe = ScanIngestionPipeline.stripeOf(address(d), 4);
+            assertEquals(stripe, ScanIngestionPipeline.stripeOf(address(d), 4));
+            assertTrue(stripe >= 0 && stripe < 4);
+            used.add(stripe);
+        }
+        assertEquals(4, used.size());
+        assertEquals(0, ScanIngestionPipeline.stripeOf(address(1), 1));
+    }
+
+    static String address(int device) {
+        return String.format("C4:7C:8D:00:%02X:%02X", device / 256, device % 256);
+    }
+}
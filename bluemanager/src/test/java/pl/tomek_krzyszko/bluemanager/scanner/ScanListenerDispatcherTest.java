@@ -0,0 +1,119 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayDeque;
+
+import pl.tomek_krzyszko.bluemanager.ThreadAllocations;
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every listener gets every event, and publishing events does not allocate per event.
+ */
+public class ScanListenerDispatcherTest {
+
+    private static final int EVENTS = 100_000;
+
+    /**
+     * Counts callbacks without allocating
+     */
+    private static class CountingListener implements BlueDeviceScanListener {
+        int found;
+        int updated;
+        int lost;
+        int errors;
+
+        @Override
+        public void onDeviceFound(BlueDevice blueDevice) {
+            found++;
+        }
+
+        @Override
+        public void onDeviceLost(BlueDevice blueDevice) {
+            lost++;
+        }
+
+        @Override
+        public void onDeviceUpdate(BlueDevice blueDevice) {
+            updated++;
+        }
+
+        @Override
+        public void onDeviceScanError(int errorCode) {
+            errors++;
+        }
+    }
+
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>(256);
+    private final ScanListenerDispatcher dispatcher = new ScanListenerDispatcher(queue::add, ListenerOverflowPolicy.DROP_OLDEST, 64);
+
+    @Test
+    public void events_reachEveryListener() throws Exception {
+        CountingListener first = new CountingListener();
+        CountingListener second = new CountingListener();
+        dispatcher.add(first);
+        dispatcher.add(second);
+        assertFalse(dispatcher.add(first));
+        BlueDevice blueDevice = new BlueDevice();
+        dispatcher.postFound(blueDevice);
+        dispatcher.postUpdate(blueDevice);
+        dispatcher.postLost(blueDevice);
+        dispatcher.postError(1);
+        runQueue();
+        for (CountingListener listener : new CountingListener[]{first, second}) {
+            assertEquals(1, listener.found);
+            assertEquals(1, listener.updated);
+            assertEquals(1, listener.lost);
+            assertEquals(1, listener.errors);
+        }
+        assertTrue(dispatcher.remove(first));
+        assertFalse(dispatcher.remove(first));
+        dispatcher.postUpdate(blueDevice);
+        runQueue();
+        assertEquals(1, first.updated);
+        assertEquals(2, second.updated);
+    }
+
+    @Test
+    public void fanOut_doesNotAllocatePerEvent() throws Exception {
+        CountingListener[] listeners = new CountingListener[5];
+        for (int i = 0; i < listeners.length; i++) {
+            listeners[i] = new CountingListener();
+            dispatcher.add(listeners[i]);
+        }
+        BlueDevice blueDevice = new BlueDevice();
+        // warm up so the measured loop runs compiled code
+        publish(blueDevice);
+        long before = ThreadAllocations.allocatedBytes();
+        publish(blueDevice);
+        long allocated = ThreadAllocations.allocatedBytes() - before;
+
+        assertEquals(2 * EVENTS, listeners[0].updated);
+        if (before >= 0) {
+            // a few hundred bytes of slack for the measurement itself, one object per event would be megabytes
+            assertTrue("allocated " + allocated + " bytes", allocated < 4096);
+        }
+    }
+
+    /**
+     * Posts {@link #EVENTS} updates in bursts of 32 queued messages, like a busy main thread
+     */
+    private void publish(BlueDevice blueDevice) {
+        for (int i = 0; i < EVENTS; i += 32) {
+            for (int j = 0; j < 32; j++) {
+                dispatcher.postUpdate(blueDevice);
+            }
+            runQueue();
+        }
+    }
+
+    private void runQueue() {
+        Runnable runnable;
+        while ((runnable = queue.poll()) != null) {
+            runnable.run();
+        }
+    }
+}
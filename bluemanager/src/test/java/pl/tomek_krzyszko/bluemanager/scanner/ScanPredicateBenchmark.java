@@ -0,0 +1,35 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.UUID;
+
+import static org.junit.Assert.*;
+
+/**
+ * Results rejected by the software pre-filter, which runs on the scan callback thread for every result.
+ * Not part of the unit test run: remove {@link Ignore} locally, rejected results per second are {@link #ITERATIONS}
+ * divided by the duration of the method.
+ */
+@Ignore("Benchmark, run manually")
+public class ScanPredicateBenchmark {
+
+    private static final int ITERATIONS = 20_000_000;
+
+    private ScanPredicate predicate;
+
+    @Before
+    public void setUp() {
+        predicate = ScanCriteria.builder()
+                .addServiceUuid(UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb"))
+                .setManufacturerData(0x004C, new byte[]{0x02, 0x15})
+                .build().compile();
+    }
+
+    @Test
+    public void rejectedResults() throws Exception {
+        assertEquals(ITERATIONS, ScanPredicateTest.reject(predicate, ITERATIONS));
+    }
+}
@@ -0,0 +1,158 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.ThreadAllocations;
+
+import static org.junit.Assert.*;
+
+/**
+ * Scan criteria compiled into the software pre-filter, matched against a recorded advertisement,
+ * and rejection of non matching results without allocating. {@link ScanPredicateBenchmark} measures the rejection rate.
+ */
+public class ScanPredicateTest {
+
+    static final String ADDRESS = "00:11:22:AA:BB:CC";
+    private static final UUID BATTERY_SERVICE = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+    private static final UUID UART_SERVICE = UUID.fromString("6e400001-b5a3-f393-e0a9-e50e24dcca9e");
+
+    /**
+     * Flags, 16-bit battery service, 128-bit UART service, Nordic manufacturer data, local name
+     */
+    static final byte[] RECORD = concat(
+            new byte[]{0x02, 0x01, 0x06},
+            new byte[]{0x03, 0x03, 0x0F, 0x18},
+            uuid128(UART_SERVICE),
+            new byte[]{0x05, (byte) 0xFF, 0x59, 0x00, 0x12, 0x34},
+            new byte[]{0x05, 0x09, 'B', 'l', 'u', 'e'});
+
+    @Test
+    public void emptyCriteria_acceptEverything() throws Exception {
+        ScanCriteria scanCriteria = ScanCriteria.builder().build();
+        assertTrue(scanCriteria.isEmpty());
+        assertTrue(scanCriteria.compile().matches(null, -100, null, null));
+    }
+
+    @Test
+    public void addresses_matchAnyOfThem() throws Exception {
+        ScanPredicate predicate = ScanCriteria.builder().addAddress("00:11:22:aa:bb:cc").addAddress("00:11:22:AA:BB:CD").build().compile();
+        assertTrue(predicate.matches(ADDRESS, -50, RECORD, null));
+        assertTrue(predicate.matches("00:11:22:AA:BB:CD", -50, null, null));
+        assertFalse(predicate.matches("00:11:22:AA:BB:CE", -50, RECORD, null));
+    }
+
+    @Test
+    public void serviceUuids_matchShortAndLongForms() throws Exception {
+        assertTrue(ScanCriteria.builder().addServiceUuid(BATTERY_SERVICE).build().compile().matches(ADDRESS, -50, RECORD, null));
+        assertTrue(ScanCriteria.builder().addServiceUuid(UART_SERVICE).build().compile().matches(ADDRESS, -50, RECORD, null));
+        ScanPredicate heartRate = ScanCriteria.builder()
+                .addServiceUuid(UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb")).build().compile();
+        assertFalse(heartRate.matches(ADDRESS, -50, RECORD, null));
+        // Bluetooth Classic results do not have advertising data
+        assertFalse(heartRate.matches(ADDRESS, -50, null, "Blue"));
+        byte[] longBattery = concat(new byte[]{0x02, 0x01, 0x06}, uuid128(BATTERY_SERVICE));
+        assertTrue(ScanCriteria.builder().addServiceUuid(BATTERY_SERVICE).build().compile().matches(ADDRESS, -50, longBattery, null));
+    }
+
+    @Test
+    public void manufacturerData_comparesMaskedBits() throws Exception {
+        assertTrue(ScanCriteria.builder().setManufacturerData(0x0059, null).build().compile().matches(ADDRESS, -50, RECORD, null));
+        assertTrue(ScanCriteria.builder().setManufacturerData(0x0059, new byte[]{0x12, 0x30}, new byte[]{(byte) 0xFF, (byte) 0xF0})
+                .build().compile().matches(ADDRESS, -50, RECORD, null));
+        assertFalse(ScanCriteria.builder().setManufacturerData(0x0059, new byte[]{0x12, 0x30})
+                .build().compile().matches(ADDRESS, -50, RECORD, null));
+        assertFalse(ScanCriteria.builder().setManufacturerData(0x004C, null).build().compile().matches(ADDRESS, -50, RECORD, null));
+    }
+
+    @Test
+    public void namePrefix_usesAdvertisedOrClassicName() throws Exception {
+        ScanPredicate predicate = ScanCriteria.builder().setNamePrefix("Bl").build().compile();
+        assertTrue(predicate.matches(ADDRESS, -50, RECORD, null));
+        assertTrue(predicate.matches(ADDRESS, -50, null, "Blue classic"));
+        assertFalse(predicate.matches(ADDRESS, -50, null, "Red"));
+        assertFalse(ScanCriteria.builder().setNamePrefix("Bluetooth").build().compile().matches(ADDRESS, -50, RECORD, null));
+    }
+
+    @Test
+    public void allCriteria_mustBeMet() throws Exception {
+        ScanPredicate predicate = ScanCriteria.builder()
+                .addAddress(ADDRESS)
+                .addServiceUuid(BATTERY_SERVICE)
+                .setManufacturerData(0x0059, new byte[]{0x12})
+                .setNamePrefix("Blue")
+                .setMinRssi(-70)
+                .build().compile();
+        assertTrue(predicate.matches(ADDRESS, -70, RECORD, null));
+        assertFalse(predicate.matches(ADDRESS, -71, RECORD, null));
+        assertFalse(predicate.matches(ADDRESS, -50, concat(new byte[]{0x03, 0x03, 0x0F, 0x18}), null));
+    }
+
+    @Test
+    public void toBuilder_keepsCriteria() throws Exception {
+        ScanCriteria scanCriteria = ScanCriteria.builder().setNamePrefix("Blue").setMinRssi(-80).build()
+                .toBuilder().addServiceUuids(new UUID[]{BATTERY_SERVICE}).build();
+        assertEquals("Blue", scanCriteria.getNamePrefix());
+        assertEquals(-80, scanCriteria.getMinRssi());
+        assertEquals(1, scanCriteria.getServiceUuids().size());
+        assertEquals(-1, scanCriteria.getManufacturerId());
+    }
+
+    @Test
+    public void rejection_doesNotAllocate() throws Exception {
+        ScanPredicate predicate = ScanCriteria.builder()
+                .addServiceUuid(UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb"))
+                .setManufacturerData(0x004C, new byte[]{0x02, 0x15})
+                .build().compile();
+        int iterations = 2_000_000;
+        for (int warmup = 0; warmup < 3; warmup++) {
+            reject(predicate, iterations);
+        }
+        long allocatedBefore = ThreadAllocations.allocatedBytes();
+        int rejected = reject(predicate, iterations);
+        long allocated = ThreadAllocations.allocatedBytes() - allocatedBefore;
+
+        assertEquals(iterations, rejected);
+        if (allocatedBefore >= 0) {
+            assertTrue("allocated " + allocated + " bytes", allocated < iterations);
+        }
+    }
+
+    static int reject(ScanPredicate predicate, int iterations) {
+        int rejected = 0;
+        for (int i = 0; i < iterations; i++) {
+            if (!predicate.matches(ADDRESS, -50, RECORD, null)) {
+                rejected++;
+            }
+        }
+        return rejected;
+    }
+
+    private static byte[] uuid128(UUID uuid) {
+        byte[] structure = new byte[18];
+        structure[0] = 17;
+        structure[1] = 0x07;
+        long lsb = uuid.getLeastSignificantBits();
+        long msb = uuid.getMostSignificantBits();
+        for (int i = 0; i < 8; i++) {
+            structure[2 + i] = (byte) (lsb >>> (8 * i));
+            structure[10 + i] = (byte) (msb >>> (8 * i));
+        }
+        return structure;
+    }
+
+    private static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,33 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sustained ingestion of a scan burst, two producer threads publishing {@link #RESULTS} results as fast as they can,
+ * one method per overflow policy. Not part of the unit test run: remove {@link Ignore} locally, results per second
+ * of a policy are {@link #RESULTS} divided by the duration of its method.
+ */
+@Ignore("Benchmark, run manually")
+public class ScanRingBufferBenchmark {
+
+    private static final int RESULTS = 4_000_000;
+    private static final int CAPACITY = 256;
+
+    @Test
+    public void block() throws Exception {
+        assertEquals(RESULTS, ScanRingBufferTest.runPipeline(ScanOverflowPolicy.BLOCK, CAPACITY, RESULTS));
+    }
+
+    @Test
+    public void dropOldest() throws Exception {
+        ScanRingBufferTest.runPipeline(ScanOverflowPolicy.DROP_OLDEST, CAPACITY, RESULTS);
+    }
+
+    @Test
+    public void dropNewest() throws Exception {
+        ScanRingBufferTest.runPipeline(ScanOverflowPolicy.DROP_NEWEST, CAPACITY, RESULTS);
+    }
+}
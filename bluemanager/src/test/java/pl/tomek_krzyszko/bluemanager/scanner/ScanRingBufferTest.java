@@ -0,0 +1,107 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Each overflow policy keeps the results it promises. With two producer threads publishing into the pipeline, every result
+ * is either processed or counted as dropped, and {@link ScanOverflowPolicy#BLOCK} drops none.
+ * {@link ScanRingBufferBenchmark} measures the sustained rate of each policy.
+ */
+public class ScanRingBufferTest {
+
+    private static final int RESULTS = 200_000;
+
+    @Test
+    public void dropNewest_keepsFirstResults() throws Exception {
+        ScanRingBuffer ringBuffer = new ScanRingBuffer(4, ScanOverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 10; i++) {
+            ringBuffer.offer(null, "00:00:00:00:00:0" + i, -i, null, i);
+        }
+        assertEquals(6, ringBuffer.getDroppedCount());
+        ScanEvent scanEvent = new ScanEvent();
+        for (int i = 0; i < 4; i++) {
+            assertTrue(ringBuffer.take(scanEvent));
+            assertEquals(i, scanEvent.getTimestamp());
+        }
+    }
+
+    @Test
+    public void dropOldest_keepsLatestResults() throws Exception {
+        ScanRingBuffer ringBuffer = new ScanRingBuffer(4, ScanOverflowPolicy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            ringBuffer.offer(null, "00:00:00:00:00:0" + i, -i, null, i);
+        }
+        assertEquals(6, ringBuffer.getDroppedCount());
+        ScanEvent scanEvent = new ScanEvent();
+        for (int i = 6; i < 10; i++) {
+            assertTrue(ringBuffer.take(scanEvent));
+            assertEquals(i, scanEvent.getTimestamp());
+            assertEquals(-i, scanEvent.getRssi());
+        }
+        assertEquals(0, ringBuffer.size());
+    }
+
+    @Test
+    public void close_wakesUpConsumer() throws Exception {
+        ScanRingBuffer ringBuffer = new ScanRingBuffer(4, ScanOverflowPolicy.BLOCK);
+        ringBuffer.close();
+        assertFalse(ringBuffer.take(new ScanEvent()));
+        assertFalse(ringBuffer.offer(null, "00:00:00:00:00:00", 0, null, 0));
+    }
+
+    @Test
+    public void block_doesNotDropResults() throws Exception {
+        long processed = runPipeline(ScanOverflowPolicy.BLOCK, 64, RESULTS);
+        assertEquals(RESULTS, processed);
+    }
+
+    @Test
+    public void dropOldest_countsEveryResult() throws Exception {
+        runPipeline(ScanOverflowPolicy.DROP_OLDEST, 64, RESULTS);
+    }
+
+    @Test
+    public void dropNewest_countsEveryResult() throws Exception {
+        runPipeline(ScanOverflowPolicy.DROP_NEWEST, 64, RESULTS);
+    }
+
+    /**
+     * Pushes synthetic results from two producer threads and waits until every one is processed or dropped.
+     *
+     * @return number of results processed by the worker
+     */
+    static long runPipeline(ScanOverflowPolicy overflowPolicy, int capacity, final int results) throws Exception {
+        final CountDownLatch producersDone = new CountDownLatch(2);
+        final ScanIngestionPipeline pipeline = new ScanIngestionPipeline(capacity, overflowPolicy, scanEvent -> {
+            // simulates light per-result processing on the worker thread
+            if (scanEvent.getAddress() == null) {
+                throw new IllegalStateException("Missing address");
+            }
+        });
+        pipeline.start();
+        for (int p = 0; p < 2; p++) {
+            final String address = "AA:BB:CC:DD:EE:0" + p;
+            new Thread(() -> {
+                for (int i = 0; i < results / 2; i++) {
+                    pipeline.publish(null, address, -60, null, i);
+                }
+                producersDone.countDown();
+            }).start();
+        }
+        assertTrue(producersDone.await(30, TimeUnit.SECONDS));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pipeline.getProcessedCount() + pipeline.getDroppedCount() < results && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        pipeline.stop();
+
+        assertEquals(results, pipeline.getPublishedCount());
+        assertEquals(results, pipeline.getProcessedCount() + pipeline.getDroppedCount());
+        return pipeline.getProcessedCount();
+    }
+}
@@ -0,0 +1,192 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import pl.tomek_krzyszko.bluemanager.callback.BlueDeviceScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sessions share one hardware scan with the union of their criteria, which is reconfigured only when the union changes,
+ * and each result reaches only the sessions whose criteria it matches.
+ */
+public class ScanSessionManagerTest {
+
+    private static final UUID HEART_RATE = UUID.fromString("0000180d-0000-1000-8000-00805f9b34fb");
+    private static final UUID BATTERY = UUID.fromString("0000180f-0000-1000-8000-00805f9b34fb");
+
+    private static class RecordingScan implements ScanSessionManager.SharedScan {
+        final List<String> calls = new ArrayList<>();
+        Set<ScanCriteria> union;
+
+        @Override
+        public void start(Set<ScanCriteria> union, boolean lowEnergy) {
+            calls.add("start");
+            this.union = union;
+        }
+
+        @Override
+        public void reconfigure(Set<ScanCriteria> union) {
+            calls.add("reconfigure");
+            this.union = union;
+        }
+
+        @Override
+        public void stop() {
+            calls.add("stop");
+            this.union = null;
+        }
+    }
+
+    private static class RecordingListener implements BlueDeviceScanListener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onDeviceFound(BlueDevice blueDevice) {
+            events.add("found " + blueDevice.getAddress());
+        }
+
+        @Override
+        public void onDeviceUpdate(BlueDevice blueDevice) {
+            events.add("update " + blueDevice.getAddress());
+        }
+
+        @Override
+        public void onDeviceLost(BlueDevice blueDevice) {
+            events.add("lost " + blueDevice.getAddress());
+        }
+
+        @Override
+        public void onDeviceScanError(int errorCode) {
+            events.add("error " + errorCode);
+        }
+    }
+
+    private final RecordingScan scan = new RecordingScan();
+    private final ScanSessionManager manager = new ScanSessionManager(scan);
+
+    @Test
+    public void equalCriteria_shareScanWithoutReconfiguring() throws Exception {
+        ScanSession first = open(ScanCriteria.builder().addServiceUuid(HEART_RATE).addServiceUuid(BATTERY).build());
+        ScanSession second = open(ScanCriteria.builder().addServiceUuid(BATTERY).addServiceUuid(HEART_RATE).build());
+        assertEquals(Collections.singletonList("start"), scan.calls);
+        assertEquals(1, scan.union.size());
+
+        ScanSession third = open(ScanCriteria.builder().setNamePrefix("Blue").build());
+        assertEquals(Arrays.asList("start", "reconfigure"), scan.calls);
+        assertEquals(2, scan.union.size());
+
+        third.close();
+        second.close();
+        assertEquals(Arrays.asList("start", "reconfigure", "reconfigure"), scan.calls);
+        assertEquals(1, manager.getSessionCount());
+
+        first.close();
+        first.close();
+        assertEquals(Arrays.asList("start", "reconfigure", "reconfigure", "stop"), scan.calls);
+        assertTrue(manager.isEmpty());
+        assertEquals(2, manager.getReconfigurationCount());
+    }
+
+    @Test
+    public void sessionWithoutCriteria_absorbsOtherCriteria() throws Exception {
+        open(null);
+        open(ScanCriteria.builder().addAddress("00:00:00:00:00:01").build());
+        assertEquals(Collections.singletonList("start"), scan.calls);
+        assertEquals(1, scan.union.size());
+        assertTrue(scan.union.iterator().next().isEmpty());
+    }
+
+    @Test
+    public void results_routedToMatchingSessions() throws Exception {
+        RecordingListener all = new RecordingListener();
+        RecordingListener one = new RecordingListener();
+        open(null, all);
+        open(ScanCriteria.builder().addAddress("00:00:00:00:00:01").setMinRssi(-70).build(), one);
+        BlueDevice target = device("00:00:00:00:00:01", -80);
+        BlueDevice other = device("00:00:00:00:00:02", -50);
+
+        manager.onFound(target);
+        manager.onFound(other);
+        target.updateSighting(null, -60, 2, null);
+        manager.onUpdate(target);
+        manager.onUpdate(target);
+        manager.onLost(other);
+        manager.onLost(target);
+        manager.onError(7);
+
+        assertEquals(Arrays.asList("found 00:00:00:00:00:01", "found 00:00:00:00:00:02", "update 00:00:00:00:00:01",
+                "update 00:00:00:00:00:01", "lost 00:00:00:00:00:02", "lost 00:00:00:00:00:01", "error 7"), all.events);
+        // too weak when discovered, found by the session once it matches
+        assertEquals(Arrays.asList("found 00:00:00:00:00:01", "update 00:00:00:00:00:01", "lost 00:00:00:00:00:01", "error 7"), one.events);
+    }
+
+    @Test
+    public void closedSession_receivesNothing() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        ScanSession session = open(null, listener);
+        BlueDevice blueDevice = device("00:00:00:00:00:01", -50);
+        manager.onFound(blueDevice);
+        assertEquals(1, session.getDevices().size());
+
+        session.close();
+        manager.onUpdate(blueDevice);
+        manager.onLost(blueDevice);
+        assertTrue(session.isClosed());
+        assertTrue(session.getDevices().isEmpty());
+        assertEquals(Collections.singletonList("found 00:00:00:00:00:01"), listener.events);
+    }
+
+    @Test
+    public void differentScanningTypes_areRejected() throws Exception {
+        open(null);
+        try {
+            manager.open(null, new ListenerMailbox(new RecordingListener(), Runnable::run, ListenerOverflowPolicy.DROP_OLDEST, 8), false);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(1, manager.getSessionCount());
+    }
+
+    @Test
+    public void restart_startsScanOnlyWithOpenSessions() throws Exception {
+        manager.restart();
+        assertTrue(scan.calls.isEmpty());
+        open(null);
+        manager.restart();
+        assertEquals(Arrays.asList("start", "start"), scan.calls);
+    }
+
+    @Test
+    public void serviceUuidsOf_offloadsOnlyWhenEveryCriteriaHasThem() throws Exception {
+        ScanCriteria heartRate = ScanCriteria.builder().addServiceUuid(HEART_RATE).build();
+        ScanCriteria battery = ScanCriteria.builder().addServiceUuid(BATTERY).setMinRssi(-70).build();
+        ScanCriteria named = ScanCriteria.builder().setNamePrefix("Blue").build();
+        assertEquals(2, ScanSessionManager.serviceUuidsOf(Arrays.asList(heartRate, battery)).size());
+        assertNull(ScanSessionManager.serviceUuidsOf(Arrays.asList(heartRate, named)));
+        assertNull(ScanSessionManager.serviceUuidsOf(Collections.<ScanCriteria>emptyList()));
+    }
+
+    private ScanSession open(ScanCriteria scanCriteria) {
+        return open(scanCriteria, new RecordingListener());
+    }
+
+    private ScanSession open(ScanCriteria scanCriteria, RecordingListener listener) {
+        return manager.open(scanCriteria, new ListenerMailbox(listener, Runnable::run, ListenerOverflowPolicy.DROP_OLDEST, 8), true);
+    }
+
+    private static BlueDevice device(String address, int rssi) {
+        BlueDevice blueDevice = new BlueDevice();
+        blueDevice.setAddress(address);
+        blueDevice.updateSighting(null, rssi, 1, null);
+        return blueDevice;
+    }
+}
@@ -0,0 +1,58 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ScanStartBudgetTest {
+
+    private static class SimulatedClock implements Clock {
+        long now = 1000;
+
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    }
+
+    private final SimulatedClock clock = new SimulatedClock();
+    private final ScanStartBudget budget = new ScanStartBudget(5, 30000, clock);
+
+    @Test
+    public void sixthStartInWindow_isDeferredUntilOldestTokenReturns() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, budget.tryAcquire());
+            clock.now += 1000;
+        }
+        assertEquals(0, budget.getAvailableTokens());
+        // the first start was at 1000, now is 6000
+        assertEquals(25000, budget.tryAcquire());
+        assertEquals(25000, budget.getMillisUntilAvailable());
+
+        clock.now = 31000;
+        assertEquals(1, budget.getAvailableTokens());
+        assertEquals(0, budget.tryAcquire());
+        assertEquals(1000, budget.tryAcquire());
+    }
+
+    @Test
+    public void anyWindow_neverHoldsMoreStartsThanLimit() throws Exception {
+        long[] starts = new long[200];
+        int count = 0;
+        for (long t = 0; t < 300000 && count < starts.length; t += 700) {
+            clock.now = t;
+            if (budget.tryAcquire() == 0) {
+                starts[count++] = t;
+            }
+        }
+        for (int i = 5; i < count; i++) {
+            assertTrue(starts[i] - starts[i - 5] >= 30000);
+        }
+        assertTrue(count > 40);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nonPositiveLimit_isRejected() throws Exception {
+        new ScanStartBudget(0, 30000, clock);
+    }
+}
@@ -0,0 +1,253 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Every started scan is stopped exactly once, also when the adapter turns off underneath it. Refused starts back off
+ * exponentially and starts over the budget of Android are deferred or merged, never dropped.
+ */
+public class ScanStateMachineTest {
+
+    /**
+     * Runs events inline, delayed tasks wait until {@link ManualWorker#runDelayed()}
+     */
+    private static class ManualWorker implements ScanStateMachine.Worker {
+        final List<Runnable> delayed = new ArrayList<>();
+        final List<Long> delays = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            runnable.run();
+        }
+
+        @Override
+        public void schedule(Runnable runnable, long delayMillis) {
+            delayed.add(runnable);
+            delays.add(delayMillis);
+        }
+
+        void runDelayed() {
+            List<Runnable> due = new ArrayList<>(delayed);
+            delayed.clear();
+            for (Runnable runnable : due) {
+                runnable.run();
+            }
+        }
+    }
+
+    /**
+     * Queues events until {@link QueuedWorker#drain()}, like the single worker thread in the scanner
+     */
+    private static class QueuedWorker extends ManualWorker {
+        final List<Runnable> queue = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable runnable) {
+            queue.add(runnable);
+        }
+
+        void drain() {
+            while (!queue.isEmpty()) {
+                queue.remove(0).run();
+            }
+        }
+    }
+
+    private static class SimulatedClock implements Clock {
+        long now = 0;
+
+        @Override
+        public long elapsedRealtime() {
+            return now;
+        }
+    }
+
+    private final FakeRadio radio = new FakeRadio();
+    private final ManualWorker worker = new ManualWorker();
+    private final ScanStateMachine machine = new ScanStateMachine(radio, worker, 100);
+
+    @Test
+    public void startAndStop_driveTheRadioOnce() throws Exception {
+        assertEquals(ScanStateMachine.State.IDLE, machine.getState());
+        machine.requestStart();
+        machine.requestStart();
+        assertEquals(ScanStateMachine.State.SCANNING, machine.getState());
+        machine.requestStop();
+        machine.requestStop();
+        assertEquals(ScanStateMachine.State.IDLE, machine.getState());
+        assertEquals(Arrays.asList("start", "stop"), radio.calls);
+    }
+
+    @Test
+    public void disabledAdapter_waitsForStateChangeWithoutPolling() throws Exception {
+        radio.enabled = false;
+        machine.requestStart();
+        assertEquals(ScanStateMachine.State.STARTING, machine.getState());
+        assertTrue(machine.isActive());
+        assertTrue(radio.calls.isEmpty());
+        assertTrue(worker.delayed.isEmpty());
+
+        radio.enabled = true;
+        machine.onAdapterEnabled();
+        assertEquals(ScanStateMachine.State.SCANNING, machine.getState());
+
+        radio.enabled = false;
+        machine.onAdapterDisabled();
+        assertEquals(ScanStateMachine.State.STARTING, machine.getState());
+        radio.enabled = true;
+        machine.onAdapterEnabled();
+        assertEquals(Arrays.asList("start", "stop", "start"), radio.calls);
+    }
+
+    @Test
+    public void adapterOffAndOn_stopsEveryStartedScanOnce() throws Exception {
+        machine.requestStart();
+        radio.enabled = false;
+        machine.onAdapterDisabled();
+        radio.enabled = true;
+        machine.onAdapterEnabled();
+        assertEquals(ScanStateMachine.State.SCANNING, machine.getState());
+
+        // a stop requested while waiting for the adapter has nothing left to stop
+        radio.enabled = false;
+        machine.onAdapterDisabled();
+        machine.requestStop();
+        assertEquals(ScanStateMachine.State.IDLE, machine.getState());
+        assertEquals(Arrays.asList("start", "stop", "start", "stop"), radio.calls);
+    }
+
+    @Test
+    public void failures_backOffExponentially() throws Exception {
+        radio.refuseStart = true;
+        machine.requestStart();
+        assertEquals(ScanStateMachine.State.BACKOFF, machine.getState());
+        worker.runDelayed();
+        worker.runDelayed();
+        assertEquals(Arrays.asList(100L, 200L, 400L), worker.delays);
+
+        radio.refuseStart = false;
+        worker.runDelayed();
+        assertEquals(ScanStateMachine.State.SCANNING, machine.getState());
+        assertEquals(4, machine.getStartCount());
+        assertEquals(3, machine.getFailureCount());
+
+        machine.onScanFailed(3);
+        assertEquals(ScanStateMachine.State.BACKOFF, machine.getState());
+        // a successful start resets the back-off period
+        assertEquals(Long.valueOf(100), worker.delays.get(worker.delays.size() - 1));
+        assertEquals("stop", radio.calls.get(radio.calls.size() - 1));
+    }
+
+    @Test
+    public void stopDuringBackOff_cancelsRetry() throws Exception {
+        radio.refuseStart = true;
+        machine.requestStart();
+        machine.requestStop();
+        radio.refuseStart = false;
+        worker.runDelayed();
+        assertEquals(ScanStateMachine.State.IDLE, machine.getState());
+        assertEquals(1, radio.calls.size());
+    }
+
+    @Test
+    public void adapterEnabledDuringBackOff_retriesRightAway() throws Exception {
+        radio.refuseStart = true;
+        machine.requestStart();
+        radio.refuseStart = false;
+        machine.onAdapterEnabled();
+        assertEquals(ScanStateMachine.State.SCANNING, machine.getState());
+        // the obsolete retry does nothing
+        worker.runDelayed();
+        assertEquals(Arrays.asList("start", "start"), radio.calls);
+    }
+
+    @Test
+    public void reconfigure_restartsOnlyChangedScan() throws Exception {
+        machine.requestReconfigure();
+        machine.requestStart();
+        machine.requestReconfigure();
+        radio.configurationChanged = true;
+        machine.requestReconfigure();
+        assertEquals(Arrays.asList("start", "stop", "start"), radio.calls);
+        assertEquals(ScanStateMachine.State.SCANNING, machine.getState());
+    }
+
+    @Test
+    public void release_isTerminal() throws Exception {
+        machine.requestStart();
+        machine.release();
+        machine.requestStart();
+        machine.onAdapterEnabled();
+        assertEquals(ScanStateMachine.State.STOPPED, machine.getState());
+        assertFalse(machine.isActive());
+        assertEquals(Arrays.asList("start", "stop"), radio.calls);
+    }
+
+    @Test
+    public void startsOverBudget_areDeferredNotDropped() throws Exception {
+        SimulatedClock clock = new SimulatedClock();
+        ScanStateMachine limited = new ScanStateMachine(radio, worker, 100, new ScanStartBudget(5, 30000, clock));
+        for (int i = 0; i < 5; i++) {
+            limited.requestStart();
+            limited.requestStop();
+            clock.now += 1000;
+        }
+        limited.requestStart();
+        assertEquals(ScanStateMachine.State.BACKOFF, limited.getState());
+        assertEquals(Long.valueOf(25000), worker.delays.get(worker.delays.size() - 1));
+        assertEquals(1, limited.getStats().getDeferredStartCount());
+        assertEquals(0, limited.getStats().getAvailableStarts());
+
+        clock.now = 30000;
+        worker.runDelayed();
+        assertEquals(ScanStateMachine.State.SCANNING, limited.getState());
+        assertEquals(6, limited.getStartCount());
+        assertEquals(0, limited.getFailureCount());
+    }
+
+    @Test
+    public void stopFollowedByStart_keepsScanRunning() throws Exception {
+        QueuedWorker queued = new QueuedWorker();
+        ScanStateMachine coalescing = new ScanStateMachine(radio, queued, 100);
+        coalescing.requestStart();
+        queued.drain();
+        coalescing.requestStop();
+        coalescing.requestStart();
+        coalescing.requestStop();
+        coalescing.requestStart();
+        queued.drain();
+        assertEquals(ScanStateMachine.State.SCANNING, coalescing.getState());
+        assertEquals(Arrays.asList("start"), radio.calls);
+        assertEquals(2, coalescing.getStats().getCoalescedRequestCount());
+
+        coalescing.requestStop();
+        queued.drain();
+        assertEquals(ScanStateMachine.State.IDLE, coalescing.getState());
+        assertEquals(Arrays.asList("start", "stop"), radio.calls);
+    }
+
+    @Test
+    public void restartsOverBudget_areMergedIntoOne() throws Exception {
+        SimulatedClock clock = new SimulatedClock();
+        ScanStateMachine limited = new ScanStateMachine(radio, worker, 100, new ScanStartBudget(2, 30000, clock));
+        limited.requestStart();
+        radio.configurationChanged = true;
+        limited.requestReconfigure();
+        limited.requestReconfigure();
+        limited.requestReconfigure();
+        assertEquals(Arrays.asList("start", "stop", "start"), radio.calls);
+        assertEquals(1, worker.delayed.size());
+        assertEquals(1, limited.getDeferredStartCount());
+
+        clock.now = 30000;
+        worker.runDelayed();
+        assertEquals(Arrays.asList("start", "stop", "start", "stop", "start"), radio.calls);
+        assertEquals(ScanStateMachine.State.SCANNING, limited.getState());
+    }
+}
@@ -0,0 +1,116 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import pl.tomek_krzyszko.bluemanager.callback.TargetScanListener;
+import pl.tomek_krzyszko.bluemanager.device.BlueDevice;
+import pl.tomek_krzyszko.bluemanager.device.MacAddress;
+
+import static org.junit.Assert.*;
+
+/**
+ * Each target is reported once, and the scan completes exactly once, when the last target is seen or the deadline passes,
+ * even with several workers reporting sightings at the same time.
+ */
+public class TargetTrackerTest {
+
+    private static class RecordingListener implements TargetScanListener {
+        final List<String> found = Collections.synchronizedList(new ArrayList<String>());
+        final AtomicInteger allFound = new AtomicInteger();
+        volatile Set<String> timedOut;
+
+        @Override
+        public void onTargetFound(BlueDevice blueDevice) {
+            found.add(blueDevice.getAddress());
+        }
+
+        @Override
+        public void onAllTargetsFound() {
+            allFound.incrementAndGet();
+        }
+
+        @Override
+        public void onTargetScanTimeout(Set<String> pendingAddresses) {
+            timedOut = pendingAddresses;
+        }
+    }
+
+    private final RecordingListener listener = new RecordingListener();
+
+    @Test
+    public void targets_reportedOnceAndCompleteScan() throws Exception {
+        TargetTracker tracker = new TargetTracker(Arrays.asList("00:00:00:00:00:01", "00:00:00:00:00:02"), listener, Runnable::run);
+        assertFalse(sighting(tracker, "00:00:00:00:00:03"));
+        assertFalse(sighting(tracker, "00:00:00:00:00:01"));
+        assertFalse(sighting(tracker, "00:00:00:00:00:01"));
+        assertEquals(Collections.singleton("00:00:00:00:00:02"), tracker.getPendingAddresses());
+        assertEquals(1, tracker.getFoundCount());
+        assertTrue(sighting(tracker, "00:00:00:00:00:02"));
+        assertTrue(tracker.isFinished());
+        assertFalse(tracker.expire());
+        assertEquals(Arrays.asList("00:00:00:00:00:01", "00:00:00:00:00:02"), listener.found);
+        assertEquals(1, listener.allFound.get());
+        assertNull(listener.timedOut);
+    }
+
+    @Test
+    public void expire_reportsPendingTargets() throws Exception {
+        TargetTracker tracker = new TargetTracker(Arrays.asList("00:00:00:00:00:01", "aa:00:00:00:00:02"), listener, Runnable::run);
+        sighting(tracker, "00:00:00:00:00:01");
+        assertTrue(tracker.expire());
+        assertEquals(Collections.singleton("AA:00:00:00:00:02"), listener.timedOut);
+        assertFalse(sighting(tracker, "AA:00:00:00:00:02"));
+        assertEquals(0, listener.allFound.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void malformedAddress_isRejected() throws Exception {
+        new TargetTracker(Collections.singletonList("00:00:00:00:01"), listener, Runnable::run);
+    }
+
+    @Test
+    public void concurrentWorkers_completeExactlyOnce() throws Exception {
+        final int targets = 50;
+        List<String> addresses = new ArrayList<>();
+        for (int i = 0; i < targets; i++) {
+            addresses.add(MacAddress.unpack(0xC47C8D000000L + i));
+        }
+        final TargetTracker tracker = new TargetTracker(addresses, listener, Runnable::run);
+        final AtomicInteger completions = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int w = 0; w < 4; w++) {
+            final int seed = w;
+            new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    long packedAddress = 0xC47C8D000000L + (i * 7 + seed) % (targets * 4);
+                    BlueDevice blueDevice = new BlueDevice();
+                    blueDevice.setAddress(MacAddress.unpack(packedAddress));
+                    if (tracker.onSighting(packedAddress, blueDevice)) {
+                        completions.incrementAndGet();
+                    }
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(1, completions.get());
+        assertEquals(targets, listener.found.size());
+        assertEquals(1, listener.allFound.get());
+        assertTrue(tracker.getPendingAddresses().isEmpty());
+    }
+
+    private static boolean sighting(TargetTracker tracker, String address) {
+        BlueDevice blueDevice = new BlueDevice();
+        blueDevice.setAddress(address);
+        return tracker.onSighting(blueDevice.getPackedAddress(), blueDevice);
+    }
+}
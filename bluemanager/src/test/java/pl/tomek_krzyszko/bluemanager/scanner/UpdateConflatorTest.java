@@ -0,0 +1,84 @@
+package pl.tomek_krzyszko.bluemanager.scanner;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * The first update of a device is delivered right away. Further ones within the minimal interval are merged into one
+ * delivered when the interval ends, and other devices are not delayed by it.
+ */
+public class UpdateConflatorTest {
+
+    private final List<Runnable> posted = new ArrayList<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final List<String> delivered = new ArrayList<>();
+
+    private final UpdateConflator<String> conflator = new UpdateConflator<>(1000, (runnable, delayMillis) -> {
+        posted.add(runnable);
+        delays.add(delayMillis);
+    }, delivered::add);
+
+    @Test
+    public void firstUpdate_isDeliveredImmediately() throws Exception {
+        conflator.offer("A", 0);
+        assertEquals(1, posted.size());
+        assertEquals(0L, (long) delays.get(0));
+        runPosted();
+        assertEquals(1, delivered.size());
+    }
+
+    @Test
+    public void updatesInsideWindow_areConflated() throws Exception {
+        conflator.offer("A", 0);
+        runPosted();
+        for (int i = 1; i <= 5; i++) {
+            conflator.offer("A", i * 100);
+        }
+        assertEquals(1, posted.size());
+        assertEquals(900L, (long) delays.get(0));
+        assertEquals(4, conflator.getConflatedCount());
+        runPosted();
+        assertEquals(2, delivered.size());
+        assertEquals(2, conflator.getDeliveredCount());
+    }
+
+    @Test
+    public void devices_areLimitedIndependently() throws Exception {
+        conflator.offer("A", 0);
+        conflator.offer("B", 0);
+        conflator.offer("A", 10);
+        assertEquals(2, posted.size());
+        runPosted();
+        assertEquals(2, delivered.size());
+        assertEquals(1, conflator.getConflatedCount());
+    }
+
+    @Test
+    public void updateAfterWindow_isDeliveredImmediately() throws Exception {
+        conflator.offer("A", 0);
+        runPosted();
+        conflator.offer("A", 5000);
+        assertEquals(0L, (long) delays.get(0));
+    }
+
+    @Test
+    public void removedDevice_skipsPendingDelivery() throws Exception {
+        conflator.offer("A", 0);
+        conflator.remove("A");
+        runPosted();
+        assertTrue(delivered.isEmpty());
+    }
+
+    private void runPosted() {
+        List<Runnable> runnables = new ArrayList<>(posted);
+        posted.clear();
+        delays.clear();
+        for (Runnable runnable : runnables) {
+            runnable.run();
+        }
+    }
+}